@@ -0,0 +1,288 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * LoadTest
+ *
+ * Open-loop load test of the checker and the REST endpoint against a
+ * {@link SyntheticCatalogue} served by a {@link StubOaiPmhServer} on the
+ * loopback interface, so it runs fully offline and never touches CESSDA
+ * infrastructure.
+ *
+ * Requests are started at a fixed target rate whether or not earlier ones
+ * have finished, and each latency is measured from the time the request was
+ * due rather than when it was sent, so a stalled checker shows up in the tail
+ * instead of lowering the offered load (no coordinated omission). Each target
+ * reports throughput, outcomes and p50/p99/p99.9 latency.
+ *
+ * Run with {@code mvn -Pbenchmarks test-compile exec:exec@loadtest}; pass
+ * options with {@code -Dloadtest.args="--rate 500 --latency-ms 50"}:
+ * - {@code --target} checker, rest or both (default both)
+ * - {@code --rate} requests per second (200), {@code --duration} (PT30S),
+ * {@code --warmup} (PT5S)
+ * - {@code --records} (10000), {@code --payload-kb} (64), {@code --idnos} (3),
+ * {@code --approved-share} (0.8), {@code --approved-agencies} (DOI,Handle),
+ * {@code --other-agencies} (Local,ISBN)
+ * - {@code --latency-ms} mean injected upstream latency (20),
+ * {@code --error-rate} (0.01), {@code --error-status} (503)
+ */
+public final class LoadTest {
+
+    private static final String DETAIL_URL = "https://datacatalogue.cessda.eu/detail/";
+    private static final List<String> VOCABULARY = List.of("ARK", "DOI", "Handle", "URN");
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("target", "both"),
+            Map.entry("rate", "200"),
+            Map.entry("duration", "PT30S"),
+            Map.entry("warmup", "PT5S"),
+            Map.entry("records", "10000"),
+            Map.entry("payload-kb", "64"),
+            Map.entry("idnos", "3"),
+            Map.entry("approved-share", "0.8"),
+            Map.entry("approved-agencies", "DOI,Handle"),
+            Map.entry("other-agencies", "Local,ISBN"),
+            Map.entry("latency-ms", "20"),
+            Map.entry("error-rate", "0.01"),
+            Map.entry("error-status", "503"));
+
+    private LoadTest() {
+    }
+
+    /**
+     * Latencies and outcomes of one run.
+     */
+    static final class Recorder {
+
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+        synchronized void record(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        void outcome(String outcome) {
+            outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        }
+
+        /**
+         * @param quantile - e.g. 0.99
+         * @return the latency at the quantile, in milliseconds
+         */
+        synchronized double percentileMillis(double quantile) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.ceil(quantile * count) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        long outcomeCount(String outcome) {
+            LongAdder adder = outcomes.get(outcome);
+            return adder == null ? 0 : adder.sum();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String target = options.get("target");
+        int records = Integer.parseInt(options.get("records"));
+        SyntheticCatalogue catalogue = new SyntheticCatalogue(records,
+                Integer.parseInt(options.get("payload-kb")) * 1024, Integer.parseInt(options.get("idnos")),
+                Double.parseDouble(options.get("approved-share")), list(options.get("approved-agencies")),
+                list(options.get("other-agencies")), 100);
+        StubOaiPmhServer.Faults faults = new StubOaiPmhServer.Faults(
+                Duration.ofMillis(Long.parseLong(options.get("latency-ms"))),
+                Double.parseDouble(options.get("error-rate")), Integer.parseInt(options.get("error-status")));
+
+        System.out.printf(Locale.ROOT, "Synthetic catalogue: %s%n", options);
+        System.out.printf(Locale.ROOT, "%-8s %8s %8s %8s %8s %8s %8s %10s %9s %9s %9s %9s%n", "target", "rate/s",
+                "sent", "done", "pass", "fail", "indet", "through/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+        try (StubOaiPmhServer server = new StubOaiPmhServer(catalogue, SyntheticDdi.vocabulary(VOCABULARY),
+                faults)) {
+            if (target.equals("checker") || target.equals("both")) {
+                MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(server.oaiPmhEndpoint(),
+                        server.vocabularyUrl());
+                checker.getPidVocabulary().awaitFirstLoad(Duration.ofSeconds(10));
+                run("checker", checker::containsApprovedPid, records, options);
+            }
+            if (target.equals("rest") || target.equals("both")) {
+                try (ConfigurableApplicationContext context = SpringApplication.run(
+                        MetadataUsesCessdaPidsApplication.class, "--server.port=0", "--spring.main.banner-mode=off",
+                        "--cessda.oai-pmh.endpoint=" + server.oaiPmhEndpoint(),
+                        "--cessda.vocabulary.url=" + server.vocabularyUrl())) {
+                    String endpoint = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port")
+                            + "/fc_cessda_identifier";
+                    HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor())
+                            .build();
+                    run("rest", url -> post(client, endpoint, url), records, options);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Warm up, then drive a target at the configured rate and print a report
+     * line.
+     *
+     * @param name    - the target name for the report
+     * @param check   - maps a detail URL to "pass", "fail" or "indeterminate"
+     * @param records - the number of records in the catalogue
+     * @param options - the parsed options
+     * @throws InterruptedException - if interrupted
+     */
+    private static void run(String name, Function<String, String> check, int records, Map<String, String> options)
+            throws InterruptedException {
+        double rate = Double.parseDouble(options.get("rate"));
+        AtomicLong next = new AtomicLong();
+        drive(check, records, rate, Duration.parse(options.get("warmup")), next, new Recorder());
+
+        Recorder recorder = new Recorder();
+        Duration duration = Duration.parse(options.get("duration"));
+        long start = System.nanoTime();
+        long sent = drive(check, records, rate, duration, next, recorder);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf(Locale.ROOT, "%-8s %8.0f %8d %8d %8d %8d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n", name, rate,
+                sent, recorder.count(), recorder.outcomeCount(MetadataUsesCessdaPids.RESULT_PASS),
+                recorder.outcomeCount(MetadataUsesCessdaPids.RESULT_FAIL),
+                recorder.outcomeCount(MetadataUsesCessdaPids.RESULT_INDETERMINATE),
+                recorder.count() / elapsedSeconds, recorder.percentileMillis(0.50),
+                recorder.percentileMillis(0.99), recorder.percentileMillis(0.999), recorder.percentileMillis(1.0));
+    }
+
+    /**
+     * Start one request every {@code 1/rate} seconds for the duration, each on
+     * its own virtual thread, then wait for the outstanding ones.
+     *
+     * @return the number of requests started
+     */
+    private static long drive(Function<String, String> check, int records, double rate, Duration duration,
+            AtomicLong next, Recorder recorder) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long sent = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long due = start; due < end; due += interval) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                long intended = due;
+                // cycle through the catalogue so checks are not coalesced or cached
+                String url = DETAIL_URL + SyntheticCatalogue.RECORD_PREFIX + (next.getAndIncrement() % records);
+                executor.execute(() -> {
+                    String outcome;
+                    try {
+                        outcome = check.apply(url);
+                    } catch (RuntimeException e) {
+                        outcome = "error";
+                    }
+                    recorder.record(System.nanoTime() - intended);
+                    recorder.outcome(outcome);
+                });
+                sent++;
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Check a URL through the REST endpoint.
+     *
+     * @return the result, or "error" if the request failed
+     */
+    private static String post(HttpClient client, String endpoint, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"resourceIdentifier\":\"" + url + "\"}"))
+                .build();
+        try {
+            String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            for (String outcome : List.of(MetadataUsesCessdaPids.RESULT_PASS, MetadataUsesCessdaPids.RESULT_FAIL,
+                    MetadataUsesCessdaPids.RESULT_INDETERMINATE)) {
+                if (body.contains('"' + outcome + '"')) {
+                    return outcome;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // reported as an error below
+        }
+        return "error";
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String key = args[i].replaceFirst("^--", "");
+            if (!DEFAULTS.containsKey(key)) {
+                throw new IllegalArgumentException("Unknown option " + args[i] + ", expected one of " + DEFAULTS.keySet());
+            }
+            options.put(key, args[i + 1]);
+        }
+        return options;
+    }
+
+    private static List<String> list(String value) {
+        return Arrays.stream(value.split(",")).map(String::strip).filter(s -> !s.isEmpty()).toList();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * MetadataUsesCessdaPidsBenchmark
+ *
+ * JMH benchmarks for the stages of the approved-PID check. Upstream calls go to
+ * a {@link StubOaiPmhServer} on the loopback interface, so results measure the
+ * checker rather than CESSDA infrastructure.
+ *
+ * Run with {@code mvn -Pbenchmarks test-compile exec:exec@jmh}; the profile
+ * adds {@code -prof gc} so allocation rates are reported next to throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataUsesCessdaPidsBenchmark {
+
+    private static final List<String> APPROVED = List.of("ARK", "DOI", "Handle", "URN");
+    private static final List<String> UNAPPROVED = List.of("Local", "ISBN", "Other");
+
+    /**
+     * A stub upstream serving a single record of the given size.
+     */
+    @State(Scope.Benchmark)
+    public static class PayloadState {
+
+        @Param({ "4", "1024", "32768" })
+        public int payloadKb;
+
+        MetadataUsesCessdaPids checker;
+        StubOaiPmhServer server;
+        String getRecordUrl;
+        String detailUrl;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            byte[] payload = SyntheticDdi.getRecord("bench", 3, List.of("Local", "DOI"), payloadKb * 1024);
+            server = new StubOaiPmhServer(query -> payload, SyntheticDdi.vocabulary(APPROVED));
+            checker = new MetadataUsesCessdaPids(server.oaiPmhEndpoint(), server.vocabularyUrl());
+            checker.getPidVocabulary().awaitFirstLoad(Duration.ofSeconds(10));
+            getRecordUrl = server.oaiPmhEndpoint() + "?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=bench";
+            detailUrl = "https://datacatalogue.cessda.eu/detail/bench";
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    /**
+     * A parsed DDI document with many IDNo entries, none of them approved, so
+     * the check has to inspect every entry. The values are local identifiers
+     * rather than DOIs, so the built-in PID patterns do not accept them by
+     * value either.
+     */
+    @State(Scope.Benchmark)
+    public static class DocumentState {
+
+        @Param({ "1", "100", "1000" })
+        public int idNoCount;
+
+        MetadataUsesCessdaPids checker;
+        StubOaiPmhServer server;
+        Document document;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            server = new StubOaiPmhServer(query -> null, SyntheticDdi.vocabulary(APPROVED));
+            checker = new MetadataUsesCessdaPids(server.oaiPmhEndpoint(), server.vocabularyUrl());
+            checker.getPidVocabulary().awaitFirstLoad(Duration.ofSeconds(10));
+
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            byte[] payload = SyntheticDdi.getRecord("bench", idNoCount, UNAPPROVED, "local-", 0);
+            document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(payload));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    /**
+     * The approved schema set held by the vocabulary.
+     */
+    @State(Scope.Benchmark)
+    public static class VocabularyState {
+
+        @Param({ "DOI", "Local" })
+        public String agency;
+
+        PidVocabulary vocabulary;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            vocabulary = new PidVocabulary(current -> VocabularySnapshot.of(Set.copyOf(APPROVED), Instant.now()),
+                    VocabularySnapshot.of(Set.of(), Instant.EPOCH));
+            vocabulary.awaitFirstLoad(Duration.ofSeconds(10));
+        }
+    }
+
+    @Benchmark
+    public Document fetchAndParseDocument(PayloadState state) throws Exception {
+        return state.checker.fetchAndParseDocument(state.getRecordUrl);
+    }
+
+    @Benchmark
+    public List<IdNoEntry> fetchIdNoEntriesStreaming(PayloadState state) throws Exception {
+        return state.checker.fetchIdNoEntries(state.getRecordUrl, entry -> false);
+    }
+
+    @Benchmark
+    public String checkDocumentForApprovedPid(DocumentState state) {
+        return state.checker.checkDocumentForApprovedPid(state.document, "bench");
+    }
+
+    @Benchmark
+    public boolean approvedSchemaLookup(VocabularyState state) {
+        return state.vocabulary.get().contains(state.agency);
+    }
+
+    @Benchmark
+    public String containsApprovedPidStreaming(PayloadState state) {
+        state.checker.setStreamingExtraction(true);
+        return state.checker.containsApprovedPid(state.detailUrl);
+    }
+
+    @Benchmark
+    public String containsApprovedPidDom(PayloadState state) {
+        state.checker.setStreamingExtraction(false);
+        return state.checker.containsApprovedPid(state.detailUrl);
+    }
+
+    @Benchmark
+    public String containsApprovedPidAsync(PayloadState state) {
+        state.checker.setStreamingExtraction(true);
+        return state.checker.containsApprovedPidAsync(state.detailUrl).join();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * StubOaiPmhServer
+ *
+ * In-process HTTP server standing in for the OAI-PMH endpoint and the PID
+ * vocabulary service, listening on an ephemeral loopback port and handling
+ * each exchange on a virtual thread. OAI-PMH responses can be delayed and
+ * failed at random ({@link Faults}) to emulate a slow or overloaded upstream.
+ */
+public final class StubOaiPmhServer implements AutoCloseable {
+
+    private static final String OAI_PATH = "/oai";
+    private static final String VOCABULARY_PATH = "/vocabulary";
+
+    private final HttpServer server;
+
+    /**
+     * Faults injected into OAI-PMH responses.
+     *
+     * @param meanLatency - mean of the exponentially distributed delay before
+     *                    each response; zero for none
+     * @param errorRate   - the share of requests answered with
+     *                    {@code errorStatus} instead of the record
+     * @param errorStatus - the HTTP status of an injected error, e.g. 503
+     */
+    public record Faults(Duration meanLatency, double errorRate, int errorStatus) {
+
+        /** No delay and no errors. */
+        public static final Faults NONE = new Faults(Duration.ZERO, 0, 503);
+
+        /**
+         * Sleep for the injected latency and decide whether to fail.
+         *
+         * @return the error status to answer with, or 0 to answer normally
+         */
+        private int apply() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long meanNanos = meanLatency.toNanos();
+            if (meanNanos > 0) {
+                try {
+                    Thread.sleep(Duration.ofNanos((long) (-meanNanos * Math.log(1 - random.nextDouble()))));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return errorRate > 0 && random.nextDouble() < errorRate ? errorStatus : 0;
+        }
+    }
+
+    /**
+     * Start the server without fault injection.
+     *
+     * @param records    - maps the query string of an OAI-PMH request to the
+     *                   response body
+     * @param vocabulary - the vocabulary JSON
+     * @throws IOException - if the server cannot be started
+     */
+    public StubOaiPmhServer(Function<String, byte[]> records, byte[] vocabulary) throws IOException {
+        this(records, vocabulary, Faults.NONE);
+    }
+
+    /**
+     * Start the server.
+     *
+     * @param records    - maps the query string of an OAI-PMH request to the
+     *                   response body
+     * @param vocabulary - the vocabulary JSON
+     * @param faults     - the faults injected into OAI-PMH responses
+     * @throws IOException - if the server cannot be started
+     */
+    public StubOaiPmhServer(Function<String, byte[]> records, byte[] vocabulary, Faults faults) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(OAI_PATH, exchange -> {
+            int errorStatus = faults.apply();
+            if (errorStatus != 0) {
+                try (exchange) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                    exchange.sendResponseHeaders(errorStatus, -1);
+                }
+                return;
+            }
+            respond(exchange, "text/xml", records.apply(exchange.getRequestURI().getRawQuery()));
+        });
+        server.createContext(VOCABULARY_PATH, exchange -> respond(exchange, "application/json", vocabulary));
+        server.start();
+    }
+
+    /**
+     * @return the OAI-PMH base URL, without query parameters
+     */
+    public String oaiPmhEndpoint() {
+        return baseUrl() + OAI_PATH;
+    }
+
+    /**
+     * @return the vocabulary URL
+     */
+    public String vocabularyUrl() {
+        return baseUrl() + VOCABULARY_PATH;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        try (exchange; OutputStream out = exchange.getResponseBody()) {
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            // a fresh connection per response: reusing pooled connections the
+            // server has half-closed loses the occasional request under load
+            exchange.getResponseHeaders().set("Connection", "close");
+            exchange.sendResponseHeaders(200, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            // the checker closes streamed responses early; a broken pipe is expected
+        }
+    }
+}
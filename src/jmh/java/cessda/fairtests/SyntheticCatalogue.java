@@ -0,0 +1,173 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * SyntheticCatalogue
+ *
+ * A generated catalogue of {@code recordCount} DDI 2.5 records, answering the
+ * OAI-PMH requests the checker sends ({@code GetRecord}, {@code ListRecords}
+ * with resumption tokens, {@code ListMetadataFormats}) for
+ * {@link StubOaiPmhServer}.
+ *
+ * Records are named {@code rec-0} to {@code rec-<n-1>} and generated on each
+ * request, so memory use does not grow with the catalogue. Whether a record
+ * carries an approved agency is derived from its index, so results are
+ * repeatable: a share {@code approvedShare} of the records cycle through
+ * {@code approvedAgencies}, the rest through {@code otherAgencies}.
+ */
+public final class SyntheticCatalogue implements Function<String, byte[]> {
+
+    /** Identifier prefix of the generated records. */
+    public static final String RECORD_PREFIX = "rec-";
+
+    private static final String OAI_OPEN = "<?xml version='1.0' encoding='UTF-8'?>"
+            + "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>";
+    private static final String DATESTAMP = "2025-01-01T00:00:00Z";
+
+    private final int recordCount;
+    private final int payloadBytes;
+    private final int idNoCount;
+    private final double approvedShare;
+    private final List<String> approvedAgencies;
+    private final List<String> otherAgencies;
+    private final int pageSize;
+
+    /**
+     * @param recordCount      - the number of records
+     * @param payloadBytes     - the approximate size of each record
+     * @param idNoCount        - the IDNo elements in each title statement
+     * @param approvedShare    - the share of records with an approved agency
+     * @param approvedAgencies - agencies used for approved records
+     * @param otherAgencies    - agencies used for the other records
+     * @param pageSize         - records per ListRecords page
+     */
+    public SyntheticCatalogue(int recordCount, int payloadBytes, int idNoCount, double approvedShare,
+            List<String> approvedAgencies, List<String> otherAgencies, int pageSize) {
+        this.recordCount = recordCount;
+        this.payloadBytes = payloadBytes;
+        this.idNoCount = idNoCount;
+        this.approvedShare = approvedShare;
+        this.approvedAgencies = approvedAgencies;
+        this.otherAgencies = otherAgencies;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param index - the record index
+     * @return whether the record carries an approved agency
+     */
+    public boolean isApproved(int index) {
+        return new SplittableRandom(index).nextDouble() < approvedShare;
+    }
+
+    @Override
+    public byte[] apply(String query) {
+        Map<String, String> parameters = parameters(query);
+        String verb = parameters.getOrDefault("verb", "");
+        return switch (verb) {
+            case "GetRecord" -> getRecord(parameters.getOrDefault("identifier", ""));
+            case "ListRecords" -> listRecords(parameters.get("resumptionToken"));
+            case "ListMetadataFormats" -> utf8(OAI_OPEN + "<ListMetadataFormats><metadataFormat>"
+                    + "<metadataPrefix>oai_ddi25</metadataPrefix></metadataFormat></ListMetadataFormats></OAI-PMH>");
+            default -> error("badVerb", verb);
+        };
+    }
+
+    private byte[] getRecord(String identifier) {
+        int index = indexOf(identifier);
+        if (index < 0) {
+            return error("idDoesNotExist", identifier);
+        }
+        StringBuilder xml = new StringBuilder(payloadBytes + 1024).append(OAI_OPEN).append("<GetRecord><record>");
+        SyntheticDdi.appendRecord(xml, identifier, DATESTAMP, idNoCount, agenciesOf(index), valuePrefixOf(index),
+                payloadBytes);
+        return utf8(xml.append("</record></GetRecord></OAI-PMH>").toString());
+    }
+
+    private byte[] listRecords(String resumptionToken) {
+        int from = resumptionToken == null ? 0 : Integer.parseInt(resumptionToken);
+        int to = Math.min(recordCount, from + pageSize);
+        StringBuilder xml = new StringBuilder((to - from) * (payloadBytes + 256) + 512)
+                .append(OAI_OPEN).append("<ListRecords>");
+        for (int i = from; i < to; i++) {
+            xml.append("<record>");
+            SyntheticDdi.appendRecord(xml, RECORD_PREFIX + i, DATESTAMP, idNoCount, agenciesOf(i), valuePrefixOf(i),
+                    payloadBytes);
+            xml.append("</record>");
+        }
+        xml.append("<resumptionToken>").append(to < recordCount ? String.valueOf(to) : "")
+                .append("</resumptionToken></ListRecords></OAI-PMH>");
+        return utf8(xml.toString());
+    }
+
+    private List<String> agenciesOf(int index) {
+        List<String> agencies = isApproved(index) ? approvedAgencies : otherAgencies;
+        // rotate, so different records lead with different agencies
+        int shift = agencies.isEmpty() ? 0 : index % agencies.size();
+        return Stream.concat(agencies.stream().skip(shift), agencies.stream().limit(shift)).toList();
+    }
+
+    private String valuePrefixOf(int index) {
+        // values of unapproved records must not match an approved pattern either
+        return isApproved(index) ? "10.0000/" : "local:";
+    }
+
+    private int indexOf(String identifier) {
+        if (!identifier.startsWith(RECORD_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(identifier.substring(RECORD_PREFIX.length()));
+            return index < recordCount ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] error(String code, String message) {
+        return utf8(OAI_OPEN + "<error code='" + code + "'>" + message + "</error></OAI-PMH>");
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(pair.substring(0, equals),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
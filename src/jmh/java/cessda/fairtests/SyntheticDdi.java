@@ -0,0 +1,140 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * SyntheticDdi
+ *
+ * Generates synthetic OAI-PMH GetRecord responses wrapping a DDI 2.5 codeBook,
+ * for benchmarks and load tests that must not touch CESSDA infrastructure.
+ *
+ * The title statement carries {@code idNoCount} IDNo elements whose agencies
+ * cycle through {@code agencies}; the data description is padded with
+ * variables until the payload reaches {@code targetBytes}.
+ */
+public final class SyntheticDdi {
+
+    private SyntheticDdi() {
+    }
+
+    /**
+     * Build a GetRecord response.
+     *
+     * @param identifier  - the record identifier
+     * @param idNoCount   - the number of IDNo elements in the title statement
+     * @param agencies    - the agencies assigned to the IDNo elements in turn
+     * @param targetBytes - the approximate payload size; the payload is never
+     *                    smaller than the title statement needs
+     * @return the UTF-8 encoded response
+     */
+    public static byte[] getRecord(String identifier, int idNoCount, List<String> agencies, int targetBytes) {
+        return getRecord(identifier, idNoCount, agencies, "10.0000/", targetBytes);
+    }
+
+    /**
+     * Build a GetRecord response whose IDNo values start with a given prefix,
+     * e.g. one no PID pattern matches.
+     *
+     * @param identifier  - the record identifier
+     * @param idNoCount   - the number of IDNo elements in the title statement
+     * @param agencies    - the agencies assigned to the IDNo elements in turn
+     * @param valuePrefix - the prefix of every IDNo value
+     * @param targetBytes - the approximate payload size; the payload is never
+     *                    smaller than the title statement needs
+     * @return the UTF-8 encoded response
+     */
+    public static byte[] getRecord(String identifier, int idNoCount, List<String> agencies, String valuePrefix,
+            int targetBytes) {
+        StringBuilder xml = new StringBuilder(Math.max(targetBytes, 1024) + 256);
+        xml.append("<?xml version='1.0' encoding='UTF-8'?>")
+                .append("<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><GetRecord><record>");
+        appendRecord(xml, identifier, "2025-01-01T00:00:00Z", idNoCount, agencies, valuePrefix, targetBytes);
+        xml.append("</record></GetRecord></OAI-PMH>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append the header and metadata of a single record, without the enclosing
+     * {@code record} element.
+     *
+     * @param xml         - the buffer to append to
+     * @param identifier  - the record identifier
+     * @param datestamp   - the header datestamp
+     * @param idNoCount   - the number of IDNo elements in the title statement
+     * @param agencies    - the agencies assigned to the IDNo elements in turn
+     * @param targetBytes - the approximate size of the appended content
+     */
+    public static void appendRecord(StringBuilder xml, String identifier, String datestamp, int idNoCount,
+            List<String> agencies, int targetBytes) {
+        appendRecord(xml, identifier, datestamp, idNoCount, agencies, "10.0000/", targetBytes);
+    }
+
+    /**
+     * Append the header and metadata of a single record, without the enclosing
+     * {@code record} element.
+     *
+     * @param xml         - the buffer to append to
+     * @param identifier  - the record identifier
+     * @param datestamp   - the header datestamp
+     * @param idNoCount   - the number of IDNo elements in the title statement
+     * @param agencies    - the agencies assigned to the IDNo elements in turn
+     * @param valuePrefix - prefixed to each IDNo value; a DOI prefix makes the
+     *                    values match the DOI pattern whatever the agency
+     * @param targetBytes - the approximate size of the appended content
+     */
+    public static void appendRecord(StringBuilder xml, String identifier, String datestamp, int idNoCount,
+            List<String> agencies, String valuePrefix, int targetBytes) {
+        int start = xml.length();
+        xml.append("<header><identifier>").append(identifier).append("</identifier><datestamp>")
+                .append(datestamp).append("</datestamp></header><metadata>")
+                .append("<codeBook xmlns='ddi:codebook:2_5' version='2.5'><docDscr><citation><titlStmt>")
+                .append("<titl>Synthetic study ").append(identifier).append("</titl></titlStmt></citation></docDscr>")
+                .append("<stdyDscr><citation><titlStmt><titl>Synthetic study ").append(identifier).append("</titl>");
+        for (int i = 0; i < idNoCount; i++) {
+            String agency = agencies.isEmpty() ? "" : agencies.get(i % agencies.size());
+            xml.append("<IDNo agency='").append(agency).append("'>").append(valuePrefix).append(identifier).append('.')
+                    .append(i).append("</IDNo>");
+        }
+        xml.append("</titlStmt></citation></stdyDscr><dataDscr>");
+        for (int v = 0; xml.length() - start < targetBytes; v++) {
+            xml.append("<var ID='V").append(v).append("' name='v").append(v).append("'><labl>Synthetic variable ")
+                    .append(v).append("</labl><catgry><catValu>1</catValu><labl>Yes</labl></catgry>")
+                    .append("<catgry><catValu>2</catValu><labl>No</labl></catgry></var>");
+        }
+        xml.append("</dataDscr></codeBook></metadata>");
+    }
+
+    /**
+     * Build a vocabulary response in the format served by the CESSDA
+     * vocabulary service.
+     *
+     * @param titles - the concept titles
+     * @return the UTF-8 encoded JSON
+     */
+    public static byte[] vocabulary(List<String> titles) {
+        StringBuilder json = new StringBuilder("{\"versions\":[{\"concepts\":[");
+        for (int i = 0; i < titles.size(); i++) {
+            json.append(i == 0 ? "" : ",").append("{\"title\":\"").append(titles.get(i)).append("\"}");
+        }
+        json.append("]}]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
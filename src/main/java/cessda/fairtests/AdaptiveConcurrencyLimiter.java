@@ -0,0 +1,264 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * AdaptiveConcurrencyLimiter
+ *
+ * Limits the number of concurrent calls to an upstream, adjusting the limit
+ * with additive increase, multiplicative decrease (AIMD).
+ *
+ * Behaviour:
+ * - A call takes a {@link Permit} before it is sent. If the limit has been
+ * reached, the caller waits (or its future stays pending) until a permit is
+ * returned; waiters are served in arrival order.
+ * - Each successful call that ran with at least half the limit in use grows
+ * the limit by 1/limit, i.e. by up to one per round trip at full load.
+ * - A call the upstream dropped (429, 503, timeout, connection failure)
+ * multiplies the limit by the backoff ratio. Only calls started after the last
+ * decrease can decrease it again, so a burst of rejections of calls that were
+ * already in flight halves the limit once rather than collapsing it.
+ * - The limit stays between the configured minimum and maximum.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** Default limit before any call has completed. */
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+    /** Default lower bound of the limit. */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    /** Default upper bound of the limit. */
+    public static final int DEFAULT_MAX_LIMIT = 64;
+    /** Default factor applied to the limit when the upstream drops a call. */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final LongSupplier nanoClock;
+    private final ArrayDeque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseAt;
+    private long drops;
+
+    /**
+     * Create a limiter with the default settings.
+     */
+    public AdaptiveConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * Create a limiter.
+     *
+     * @param initialLimit - the limit before any call has completed
+     * @param minLimit     - the lower bound of the limit, at least 1
+     * @param maxLimit     - the upper bound of the limit
+     * @param backoffRatio - factor, between 0 and 1, applied to the limit when
+     *                     the upstream drops a call
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit: " + minLimit + ", " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1): " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.nanoClock = nanoClock;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.lastDecreaseAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * A granted call. Exactly one of {@link #success()}, {@link #dropped()}
+     * or {@link #ignore()} takes effect; later calls are no-ops.
+     */
+    public final class Permit {
+
+        private final long startedAt = nanoClock.getAsLong();
+        private final int concurrency;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Permit(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * The call succeeded; the limit may grow.
+         */
+        public void success() {
+            if (returned.compareAndSet(false, true)) {
+                release(this, Outcome.SUCCESS);
+            }
+        }
+
+        /**
+         * The upstream rejected or failed the call because of load; the limit
+         * shrinks.
+         */
+        public void dropped() {
+            if (returned.compareAndSet(false, true)) {
+                release(this, Outcome.DROPPED);
+            }
+        }
+
+        /**
+         * The call ended without saying anything about upstream capacity, e.g.
+         * it was cancelled; the limit is unchanged.
+         */
+        public void ignore() {
+            if (returned.compareAndSet(false, true)) {
+                release(this, Outcome.IGNORED);
+            }
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    /**
+     * Take a permit, waiting while the limit is reached.
+     *
+     * @return the permit
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public Permit acquire() throws InterruptedException {
+        CompletableFuture<Permit> permit = acquireAsync();
+        try {
+            return permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                // Granted while we were being interrupted: hand it back
+                permit.join().ignore();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit future failed", e.getCause());
+        }
+    }
+
+    /**
+     * Take a permit without blocking.
+     *
+     * @return a future completed with the permit once the limit allows;
+     *         cancelling it gives up the place in the queue
+     */
+    public CompletableFuture<Permit> acquireAsync() {
+        synchronized (this) {
+            Permit permit = tryAcquire();
+            if (permit != null) {
+                return CompletableFuture.completedFuture(permit);
+            }
+            CompletableFuture<Permit> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Take a permit only if one is free now, without queueing behind waiting
+     * calls.
+     *
+     * @return the permit, or null if the limit is reached or calls are waiting
+     */
+    public synchronized Permit tryAcquire() {
+        if (waiters.isEmpty() && inFlight < currentLimit()) {
+            inFlight++;
+            return new Permit(inFlight);
+        }
+        return null;
+    }
+
+    /**
+     * @return the current limit
+     */
+    public synchronized int limit() {
+        return currentLimit();
+    }
+
+    /**
+     * @return calls currently holding a permit
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return how many calls the upstream has dropped
+     */
+    public synchronized long dropCount() {
+        return drops;
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (outcome == Outcome.SUCCESS) {
+                // Grow only when the call ran with the limit at least half used, not when demand is low
+                if (permit.concurrency >= limit / 2) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            } else if (outcome == Outcome.DROPPED) {
+                drops++;
+                if (permit.startedAt - lastDecreaseAt >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseAt = nanoClock.getAsLong();
+                }
+            }
+            while (!waiters.isEmpty() && inFlight < currentLimit()) {
+                CompletableFuture<Permit> waiter = waiters.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted.add(waiter);
+                    permits.add(new Permit(inFlight));
+                }
+            }
+        }
+        for (int i = 0; i < granted.size(); i++) {
+            Permit next = permits.get(i);
+            if (!granted.get(i).complete(next)) {
+                // The waiter was cancelled after it was dequeued
+                next.ignore();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * BatchRunner
+ *
+ * Command-line batch mode: reads detail URLs one per line, checks them
+ * concurrently in one JVM and writes a CSV or JSON Lines row per result.
+ *
+ * Behaviour:
+ * - Blank lines and lines starting with {@code #} are skipped; surrounding
+ * whitespace is trimmed.
+ * - Lines are read lazily, so input of any length runs in bounded memory;
+ * at most {@code parallelism} checks are in flight at once.
+ * - Rows are written and flushed in completion order, as soon as each check
+ * finishes.
+ * - The run ends with a {@link Summary} whose exit code is 0 if every record
+ * passed, 1 if any failed and 2 if none failed but some were indeterminate.
+ */
+public class BatchRunner {
+
+    private static final Logger logger = LogManager.getLogger(BatchRunner.class);
+
+    /** Exit code when every record passed (or there was nothing to check). */
+    public static final int EXIT_PASS = 0;
+    /** Exit code when at least one record failed. */
+    public static final int EXIT_FAIL = 1;
+    /** Exit code when no record failed but some could not be assessed. */
+    public static final int EXIT_INDETERMINATE = 2;
+    /** Exit code when the batch could not be run, e.g. unreadable input. */
+    public static final int EXIT_ERROR = 3;
+
+    private static final String CSV_HEADER = "url,result";
+    private static final String COMMENT_PREFIX = "#";
+
+    /** Output formats. */
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * Parse a format name, case-insensitively.
+         *
+         * @param name - "csv" or "jsonl"
+         * @return the format
+         * @throws IllegalArgumentException - if the name is not a known format
+         */
+        public static Format of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Outcome counts of a batch run.
+     *
+     * @param pass          records that passed
+     * @param fail          records that failed
+     * @param indeterminate records that could not be assessed
+     * @param elapsed       wall-clock time of the run
+     */
+    public record Summary(long pass, long fail, long indeterminate, Duration elapsed) {
+
+        /** @return the number of records checked */
+        public long total() {
+            return pass + fail + indeterminate;
+        }
+
+        /** @return the process exit code for this run */
+        public int exitCode() {
+            if (fail > 0) {
+                return EXIT_FAIL;
+            }
+            return indeterminate > 0 ? EXIT_INDETERMINATE : EXIT_PASS;
+        }
+    }
+
+    /** A JSON Lines row. */
+    private record Row(String url, String result) {
+    }
+
+    private final Function<String, String> check;
+    private final int parallelism;
+    private final Format format;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Create a batch runner.
+     *
+     * @param check       - the check to run, e.g.
+     *                    {@link MetadataUsesCessdaPids#containsApprovedPid}
+     * @param parallelism - the maximum number of checks in flight at once
+     * @param format      - the output format
+     */
+    public BatchRunner(Function<String, String> check, int parallelism, Format format) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.check = check;
+        this.parallelism = parallelism;
+        this.format = format;
+    }
+
+    /**
+     * Check every URL read from the input, writing one row per result.
+     *
+     * @param in  - detail URLs, one per line
+     * @param out - the stream rows are written to
+     * @return the outcome counts
+     * @throws InterruptedException - if interrupted while waiting for a check
+     * @throws UncheckedIOException - if the input cannot be read
+     */
+    public Summary run(BufferedReader in, PrintStream out) throws InterruptedException {
+        long start = System.nanoTime();
+        LongAdder pass = new LongAdder();
+        LongAdder fail = new LongAdder();
+        LongAdder indeterminate = new LongAdder();
+
+        if (format == Format.CSV) {
+            out.println(CSV_HEADER);
+        }
+        new BulkAssessor(check, parallelism).assess(urls(in), result -> {
+            switch (result.result()) {
+                case MetadataUsesCessdaPids.RESULT_PASS -> pass.increment();
+                case MetadataUsesCessdaPids.RESULT_FAIL -> fail.increment();
+                default -> indeterminate.increment();
+            }
+            out.println(formatRow(result.resourceIdentifier(), result.result()));
+            out.flush();
+        });
+        out.flush();
+
+        Summary summary = new Summary(pass.sum(), fail.sum(), indeterminate.sum(),
+                Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Batch complete: {} checked, {} pass, {} fail, {} indeterminate in {} ms",
+                summary.total(), summary.pass(), summary.fail(), summary.indeterminate(),
+                summary.elapsed().toMillis());
+        return summary;
+    }
+
+    /**
+     * Format one result row.
+     *
+     * @param url    - the checked URL
+     * @param result - the check result
+     * @return the CSV or JSON line, without a line terminator
+     */
+    String formatRow(String url, String result) {
+        if (format == Format.CSV) {
+            return csvField(url) + "," + csvField(result);
+        }
+        try {
+            return mapper.writeValueAsString(new Row(url, result));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quote a CSV field if it contains a separator, quote or line break
+     * (RFC 4180).
+     *
+     * @param value - the field value
+     * @return the field as written
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Adapt the input to an iterator over URLs, skipping blank and comment
+     * lines.
+     *
+     * @param in - the input
+     * @return the URLs, read lazily
+     */
+    private static Iterator<String> urls(BufferedReader in) {
+        return in.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith(COMMENT_PREFIX))
+                .iterator();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * BulkAssessor
+ *
+ * Runs a PID check over many resource identifiers concurrently on virtual
+ * threads and hands each result to a sink as soon as it is available.
+ *
+ * Behaviour:
+ * - At most {@code maxConcurrency} checks are in flight at once; reading
+ * further identifiers blocks until a check completes.
+ * - Results are delivered in completion order, one call to the sink at a time.
+ * - A check that throws is reported as "indeterminate".
+ * - If the sink throws (e.g. the client went away), no further checks are
+ * started and the exception is rethrown once running checks have finished.
+ */
+public class BulkAssessor {
+
+    private static final Logger logger = LogManager.getLogger(BulkAssessor.class);
+
+    /** Default number of checks allowed in flight at once. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+
+    private final Function<String, String> check;
+    private final int maxConcurrency;
+
+    /**
+     * A single bulk assessment result.
+     *
+     * @param resourceIdentifier the identifier that was checked
+     * @param result             "pass", "fail" or "indeterminate"
+     */
+    public record BulkResult(String resourceIdentifier, String result) {
+    }
+
+    /**
+     * Create a bulk assessor.
+     *
+     * @param check          - the check to run, e.g.
+     *                       {@link MetadataUsesCessdaPids#containsApprovedPid}
+     * @param maxConcurrency - the maximum number of checks in flight at once
+     */
+    public BulkAssessor(Function<String, String> check, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.check = check;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Check every identifier, streaming results to the sink as they complete.
+     * Returns once all checks have finished.
+     *
+     * @param identifiers - the identifiers to check; consumed lazily
+     * @param sink        - receives each result; never called concurrently
+     * @return the number of identifiers checked
+     * @throws InterruptedException - if interrupted while waiting for a permit
+     */
+    public long assess(Iterator<String> identifiers, Consumer<BulkResult> sink) throws InterruptedException {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+        long submitted = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (sinkFailure.get() == null && identifiers.hasNext()) {
+                String identifier = identifiers.next();
+                permits.acquire();
+                submitted++;
+                executor.execute(() -> {
+                    try {
+                        BulkResult result = new BulkResult(identifier, runCheck(identifier));
+                        synchronized (sink) {
+                            if (sinkFailure.get() == null) {
+                                sink.accept(result);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        sinkFailure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        if (sinkFailure.get() != null) {
+            throw sinkFailure.get();
+        }
+        return submitted;
+    }
+
+    /**
+     * Run the check for a single identifier, mapping unexpected errors to
+     * "indeterminate".
+     *
+     * @param identifier - the identifier to check
+     * @return the check result
+     */
+    private String runCheck(String identifier) {
+        try {
+            String result = check.apply(identifier);
+            return result != null ? result : MetadataUsesCessdaPids.RESULT_INDETERMINATE;
+        } catch (RuntimeException e) {
+            logger.warn("Bulk check failed for {}: {}", identifier, e.getMessage());
+            return MetadataUsesCessdaPids.RESULT_INDETERMINATE;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * CessdaProperties
+ *
+ * The service-wide {@code cessda.*} settings, bound once from
+ * {@code application.properties} and the environment. See
+ * {@code application.properties} for what each setting does.
+ *
+ * Behaviour:
+ * - Every group has defaults, so an absent group binds to its defaults rather
+ * than to null.
+ * - Features with a group of their own bind it themselves, e.g.
+ * {@link ResultCacheProperties} binds {@code cessda.result-cache.*}.
+ *
+ * @param bulk            - cessda.bulk.*
+ * @param check           - cessda.check.*
+ * @param http            - cessda.http.*
+ * @param oaiPmh          - cessda.oai-pmh.*
+ * @param hedge           - cessda.hedge.*
+ * @param circuitBreaker  - cessda.circuit-breaker.*
+ * @param metadataFormats - cessda.metadata-formats
+ */
+@ConfigurationProperties("cessda")
+public record CessdaProperties(
+        @DefaultValue BulkSettings bulk,
+        @DefaultValue CheckSettings check,
+        @DefaultValue HttpSettings http,
+        @DefaultValue OaiPmhSettings oaiPmh,
+        @DefaultValue HedgeSettings hedge,
+        @DefaultValue CircuitBreakerSettings circuitBreaker,
+        @DefaultValue(Ddi25PidExtractor.METADATA_PREFIX) List<String> metadataFormats) {
+
+    /**
+     * @param maxConcurrency - checks run at once by the bulk endpoint
+     */
+    public record BulkSettings(@DefaultValue("" + BulkAssessor.DEFAULT_MAX_CONCURRENCY) int maxConcurrency) {
+    }
+
+    /**
+     * @param timeout - time a single check may take before "indeterminate"
+     */
+    public record CheckSettings(@DefaultValue(MetadataUsesCessdaPidsApi.DEFAULT_CHECK_TIMEOUT) Duration timeout) {
+    }
+
+    /**
+     * @param executorThreads - platform threads of the shared HTTP client, or 0
+     *                        for virtual threads
+     */
+    public record HttpSettings(@DefaultValue("0") int executorThreads) {
+    }
+
+    /**
+     * @param endpoint - the OAI-PMH base URL
+     */
+    public record OaiPmhSettings(@DefaultValue(MetadataUsesCessdaPids.DEFAULT_OAI_PMH_ENDPOINT) String endpoint) {
+    }
+
+    /**
+     * @param percentile - the latency percentile after which a fetch is sent
+     *                   again, or 0 to disable hedging
+     */
+    public record HedgeSettings(@DefaultValue("0") double percentile) {
+    }
+
+    /**
+     * @param failureRate  - the failure rate that opens the breaker
+     * @param openDuration - how long the open breaker rejects fetches
+     */
+    public record CircuitBreakerSettings(
+            @DefaultValue("" + CircuitBreaker.DEFAULT_FAILURE_RATE_THRESHOLD) double failureRate,
+            @DefaultValue("PT30S") Duration openDuration) {
+    }
+}
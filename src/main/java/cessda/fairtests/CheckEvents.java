@@ -0,0 +1,141 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * CheckEvents
+ *
+ * Java Flight Recorder events for the stages of a single approved PID check,
+ * so that slow or allocation-heavy checks can be traced to a stage and a
+ * record in a continuous recording, without enabling INFO logging.
+ *
+ * Behaviour:
+ * - All events are in the "CESSDA / PID check" category, carry the record
+ * identifier and are recorded without stack traces.
+ * - Events are enabled by default with JFR's usual threshold of 0 ms; a
+ * recording can raise the threshold per event, e.g.
+ * {@code jfr configure cessda.pid.Fetch#threshold=100ms}.
+ * - While no recording is running, creating and committing an event costs
+ * next to nothing.
+ */
+final class CheckEvents {
+
+    private CheckEvents() {
+    }
+
+    /**
+     * Fields shared by all check events.
+     */
+    @Category({ "CESSDA", "PID check" })
+    @StackTrace(false)
+    abstract static class CheckEvent extends Event {
+
+        @Label("Record Identifier")
+        String recordId;
+    }
+
+    @Name("cessda.pid.Fetch")
+    @Label("OAI-PMH Fetch")
+    @Description("Sending a GetRecord request until the response headers (or the buffered body) arrived")
+    static final class Fetch extends CheckEvent {
+
+        @Label("Status")
+        int status;
+
+        @Label("Body Size")
+        @DataAmount
+        long bytes = -1;
+    }
+
+    @Name("cessda.pid.Extract")
+    @Label("Streaming Extraction")
+    @Description("Reading the IDNo entries from an OAI-PMH response without building a DOM")
+    static final class Extract extends CheckEvent {
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("cessda.pid.Parse")
+    @Label("XML Parse")
+    @Description("Parsing an OAI-PMH response into a DOM document")
+    static final class Parse extends CheckEvent {
+
+        @Label("Body Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("cessda.pid.CodeBookImport")
+    @Label("CodeBook Import")
+    @Description("Locating the DDI codeBook and importing it into its own document")
+    static final class CodeBookImport extends CheckEvent {
+    }
+
+    @Name("cessda.pid.XPath")
+    @Label("IDNo XPath Evaluation")
+    @Description("Evaluating the IDNo XPath against a DDI document")
+    static final class XPath extends CheckEvent {
+
+        @Label("IDNo Count")
+        int idNoCount;
+    }
+
+    @Name("cessda.pid.VocabularyRefresh")
+    @Label("Vocabulary Refresh")
+    @Description("Fetching the approved PID schemas from the vocabulary service")
+    static final class VocabularyRefresh extends CheckEvent {
+
+        @Label("Body Size")
+        @DataAmount
+        long bytes = -1;
+
+        @Label("Schema Count")
+        int schemaCount;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("cessda.pid.Decision")
+    @Label("Check Decision")
+    @Description("The outcome of a check and why it was reached")
+    static final class Decision extends CheckEvent {
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Cause")
+        String cause;
+
+        @Label("IDNo Count")
+        int idNoCount;
+
+        @Label("Matched Agency")
+        String matchedAgency;
+    }
+}
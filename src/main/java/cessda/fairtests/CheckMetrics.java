@@ -0,0 +1,274 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.xml.sax.SAXException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * CheckMetrics
+ *
+ * Micrometer instrumentation of {@link MetadataUsesCessdaPids}.
+ *
+ * Meters:
+ * - {@code cessda.pid.check.stage} timer, tagged {@code stage}: the OAI-PMH
+ * fetch, streaming extraction, XML parse, codeBook extraction, XPath
+ * evaluation and vocabulary fetch.
+ * - {@code cessda.pid.response.size} distribution of OAI-PMH response sizes in
+ * bytes (bytes actually read when the response is streamed).
+ * - {@code cessda.pid.check.result} counter, tagged {@code outcome} and
+ * {@code cause}.
+ * - {@code cessda.pid.vocabulary.age} gauge, seconds since the served
+ * vocabulary was loaded.
+ * - {@code cessda.pid.check.coalescing} counter, tagged {@code role}: checks
+ * that ran ("leader") and checks that shared the result of a concurrent check
+ * of the same record ("coalesced").
+ * - {@code cessda.pid.fetch.hedges} counter, tagged {@code result}: hedged
+ * OAI-PMH fetches sent ("sent") and those whose hedge answered first ("won").
+ * - {@code cessda.pid.fetch.circuit.state} gauge, the OAI-PMH circuit breaker
+ * state (0 closed, 1 open, 2 half-open), and
+ * {@code cessda.pid.fetch.circuit.rejected} counter of fetches rejected while
+ * it was open.
+ * - {@code cessda.pid.fetch.concurrency.limit} gauge, the adaptive limit on
+ * concurrent OAI-PMH fetches, and {@code cessda.pid.fetch.retries} counter of
+ * fetches repeated after a 429 or 503.
+ * - {@code cessda.pid.result.cache} counter, tagged {@code result}: result
+ * cache lookups answered from the cache ("hit"), answered after the record
+ * datestamp showed it unchanged ("revalidated") or not answered ("miss"), and
+ * entries dropped to stay within the size bound ("evicted"); with
+ * {@code cessda.pid.result.cache.size} gauge of the entries held.
+ */
+public class CheckMetrics {
+
+    static final String STAGE_FETCH = "fetch";
+    static final String STAGE_EXTRACT = "extract";
+    static final String STAGE_PARSE = "parse";
+    static final String STAGE_CODE_BOOK = "codebook";
+    static final String STAGE_XPATH = "xpath";
+    static final String STAGE_VOCABULARY = "vocabulary";
+
+    static final String CAUSE_NONE = "none";
+    static final String CAUSE_NO_IDNO = "no_idno";
+    static final String CAUSE_NO_APPROVED_AGENCY = "no_approved_agency";
+    static final String CAUSE_INVALID_URL = "invalid_url";
+    static final String CAUSE_TIMEOUT = "timeout";
+    static final String CAUSE_PARSE = "parse";
+    static final String CAUSE_UPSTREAM = "upstream";
+    static final String CAUSE_CIRCUIT_OPEN = "circuit_open";
+    static final String CAUSE_INTERRUPTED = "interrupted";
+    static final String CAUSE_ERROR = "error";
+
+    private static final String STAGE_TIMER = "cessda.pid.check.stage";
+    private static final String RESULT_COUNTER = "cessda.pid.check.result";
+    private static final String COALESCING_COUNTER = "cessda.pid.check.coalescing";
+    private static final String HEDGE_COUNTER = "cessda.pid.fetch.hedges";
+    private static final String RESULT_CACHE_COUNTER = "cessda.pid.result.cache";
+
+    private final MeterRegistry registry;
+    private final DistributionSummary responseSize;
+
+    /**
+     * Register the meters.
+     *
+     * @param registry   - the registry to register with
+     * @param vocabulary - the vocabulary whose age is reported
+     * @param coalescing - the coalescer whose counts are reported
+     * @param sender     - the sender whose hedging and circuit breaker are
+     *                   reported
+     * @param cache      - the result cache currently in use, or null if
+     *                   results are not cached; read whenever the meters are
+     *                   published, so a cache set later is reported
+     */
+    public CheckMetrics(MeterRegistry registry, PidVocabulary vocabulary, SingleFlight<?, ?> coalescing,
+            GuardedHttpSender sender, Supplier<ResultCache> cache) {
+        this.registry = registry;
+        this.responseSize = DistributionSummary.builder("cessda.pid.response.size")
+                .description("Size of OAI-PMH responses read")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("cessda.pid.vocabulary.age", vocabulary, CheckMetrics::vocabularyAgeSeconds)
+                .description("Seconds since the approved PID vocabulary being served was loaded")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder(COALESCING_COUNTER, coalescing, flight -> flight.stats().leaders())
+                .description("Checks that ran, or shared a concurrent check of the same record")
+                .tag("role", "leader")
+                .register(registry);
+        FunctionCounter.builder(COALESCING_COUNTER, coalescing, flight -> flight.stats().coalesced())
+                .description("Checks that ran, or shared a concurrent check of the same record")
+                .tag("role", "coalesced")
+                .register(registry);
+        FunctionCounter.builder(HEDGE_COUNTER, sender, s -> s.stats().hedgesSent())
+                .description("Hedged OAI-PMH record fetches")
+                .tag("result", "sent")
+                .register(registry);
+        FunctionCounter.builder(HEDGE_COUNTER, sender, s -> s.stats().hedgesWon())
+                .description("Hedged OAI-PMH record fetches")
+                .tag("result", "won")
+                .register(registry);
+        Gauge.builder("cessda.pid.fetch.circuit.state", sender, s -> s.stats().state().ordinal())
+                .description("OAI-PMH circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        FunctionCounter.builder("cessda.pid.fetch.circuit.rejected", sender, s -> s.stats().rejected())
+                .description("OAI-PMH record fetches rejected while the circuit breaker was open")
+                .register(registry);
+        Gauge.builder("cessda.pid.fetch.concurrency.limit", sender, s -> s.stats().concurrencyLimit())
+                .description("Adaptive limit on concurrent OAI-PMH record fetches")
+                .register(registry);
+        FunctionCounter.builder("cessda.pid.fetch.retries", sender, s -> s.stats().retries())
+                .description("OAI-PMH record fetches repeated after a 429 or 503 response")
+                .register(registry);
+        registerResultCacheCounter(registry, cache, "hit", ResultCache.Stats::hits);
+        registerResultCacheCounter(registry, cache, "revalidated", ResultCache.Stats::revalidations);
+        registerResultCacheCounter(registry, cache, "miss", ResultCache.Stats::misses);
+        registerResultCacheCounter(registry, cache, "evicted", ResultCache.Stats::evictions);
+        Gauge.builder("cessda.pid.result.cache.size", cache, c -> cacheStat(c, ResultCache.Stats::size))
+                .description("Check results held by the result cache")
+                .register(registry);
+    }
+
+    private static void registerResultCacheCounter(MeterRegistry registry, Supplier<ResultCache> cache,
+            String result, ToLongFunction<ResultCache.Stats> count) {
+        FunctionCounter.builder(RESULT_CACHE_COUNTER, cache, c -> cacheStat(c, count))
+                .description("Result cache lookups and evictions")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Read one statistic of the current result cache.
+     *
+     * @param cache - supplies the result cache, or null
+     * @param stat  - the statistic to read
+     * @return the statistic, or 0 if results are not cached
+     */
+    private static double cacheStat(Supplier<ResultCache> cache, ToLongFunction<ResultCache.Stats> stat) {
+        ResultCache current = cache.get();
+        return current == null ? 0 : stat.applyAsLong(current.stats());
+    }
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param stage      - one of the {@code STAGE_} constants
+     * @param startNanos - the {@link System#nanoTime()} at which the stage
+     *                   started
+     */
+    void recordStage(String stage, long startNanos) {
+        Timer.builder(STAGE_TIMER)
+                .description("Time spent in each stage of the approved PID check")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the size of an OAI-PMH response.
+     *
+     * @param bytes - the number of bytes read
+     */
+    void recordResponseSize(long bytes) {
+        responseSize.record(bytes);
+    }
+
+    /**
+     * Count a check outcome.
+     *
+     * @param outcome - "pass", "fail" or "indeterminate"
+     * @param cause   - one of the {@code CAUSE_} constants
+     */
+    void recordOutcome(String outcome, String cause) {
+        Counter.builder(RESULT_COUNTER)
+                .description("Approved PID check outcomes")
+                .tag("outcome", outcome)
+                .tag("cause", cause)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * The cause of a "pass" or "fail" decided from the IDNo entries.
+     *
+     * @param result  - the check result
+     * @param entries - the IDNo entries the result was decided on
+     * @return the cause tag
+     */
+    static String causeOf(String result, List<IdNoEntry> entries) {
+        if (MetadataUsesCessdaPids.RESULT_PASS.equals(result)) {
+            return CAUSE_NONE;
+        }
+        return entries.isEmpty() ? CAUSE_NO_IDNO : CAUSE_NO_APPROVED_AGENCY;
+    }
+
+    /**
+     * The cause of an "indeterminate" outcome.
+     *
+     * @param e - the exception that ended the check
+     * @return the cause tag
+     */
+    static String causeOf(Exception e) {
+        if (e instanceof InterruptedException) {
+            return CAUSE_INTERRUPTED;
+        }
+        if (e instanceof IllegalArgumentException) {
+            return CAUSE_INVALID_URL;
+        }
+        if (e instanceof HttpTimeoutException) {
+            return CAUSE_TIMEOUT;
+        }
+        if (e instanceof CircuitBreaker.OpenException) {
+            return CAUSE_CIRCUIT_OPEN;
+        }
+        if (e instanceof IOException) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof XMLStreamException || cause instanceof SAXException) {
+                    return CAUSE_PARSE;
+                }
+            }
+            return CAUSE_UPSTREAM;
+        }
+        return CAUSE_ERROR;
+    }
+
+    private static double vocabularyAgeSeconds(PidVocabulary vocabulary) {
+        PidVocabulary.Snapshot snapshot = vocabulary.snapshot();
+        if (snapshot == null) {
+            return Double.NaN;
+        }
+        return Duration.between(snapshot.loadedAt(), Instant.now()).toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * CircuitBreaker
+ *
+ * Stops calls to an upstream that is clearly unhealthy, so callers fail fast
+ * instead of waiting for timeouts.
+ *
+ * Behaviour:
+ * - Closed: calls pass; the outcomes of the most recent calls are kept in a
+ * sliding window. Once the window holds the minimum number of calls and the
+ * failure rate reaches the threshold, the breaker opens.
+ * - Open: calls are rejected without being sent, until the open duration has
+ * passed.
+ * - Half-open: a single trial call is let through. Its success closes the
+ * breaker; its failure opens it again.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LogManager.getLogger(CircuitBreaker.class);
+
+    /** Default failure rate that opens the breaker. */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    /** Default number of recent calls the failure rate is computed over. */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    /** Default number of calls needed before the breaker may open. */
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    /** Default time the breaker stays open before a trial call. */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of sending a call while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException() {
+            super("Circuit breaker is open, upstream considered unhealthy");
+        }
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private final boolean[] window;
+
+    private State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long openUntil;
+    private boolean trialInFlight;
+    private long rejected;
+
+    /**
+     * Create a breaker with the default settings.
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Create a breaker.
+     *
+     * @param failureRateThreshold - failure rate, between 0 and 1, that opens
+     *                             the breaker
+     * @param windowSize           - number of recent calls the rate is computed
+     *                             over
+     * @param minimumCalls         - calls needed in the window before the
+     *                             breaker may open
+     * @param openDuration         - time the breaker stays open before a trial
+     *                             call
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls, Duration openDuration) {
+        this(failureRateThreshold, windowSize, minimumCalls, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls, Duration openDuration,
+            LongSupplier nanoClock) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]: " + failureRateThreshold);
+        }
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Need 1 <= minimumCalls <= windowSize: " + minimumCalls + ", "
+                    + windowSize);
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+        this.window = new boolean[windowSize];
+    }
+
+    /**
+     * Ask to make a call. Every permitted call must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #release()}.
+     *
+     * @throws OpenException - if the call must not be made
+     */
+    public synchronized void acquire() throws OpenException {
+        if (state == State.OPEN && nanoClock.getAsLong() - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return;
+        }
+        rejected++;
+        throw new OpenException();
+    }
+
+    /**
+     * Record a successful call.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            logger.info("Circuit breaker closed, upstream recovered");
+            reset(State.CLOSED);
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Record a failed call.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Release a permitted call without an outcome, e.g. when it was
+     * cancelled.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * @return the current state; an open breaker whose open duration has
+     *         passed is reported as open until the next call
+     */
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * @return the number of calls rejected while open
+     */
+    public synchronized long rejectedCount() {
+        return rejected;
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        logger.warn("Circuit breaker opened for {}, upstream considered unhealthy", Duration.ofNanos(openNanos));
+        reset(State.OPEN);
+        openUntil = nanoClock.getAsLong() + openNanos;
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        calls = 0;
+        failures = 0;
+        next = 0;
+        trialInFlight = false;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ContentEncoding
+ *
+ * Negotiates compressed OAI-PMH responses and decodes them as streams, so the
+ * inflated body is never held in memory: the parser reads it as it is
+ * inflated.
+ *
+ * Behaviour:
+ * - Requests advertise {@link #ACCEPTED}; a response without a
+ * {@code Content-Encoding}, or with {@code identity}, is read as is.
+ * - {@code gzip} (and its alias {@code x-gzip}) is read through a
+ * {@link GZIPInputStream}.
+ * - {@code deflate} is meant to be zlib-wrapped, but some servers send a raw
+ * deflate stream; the zlib header is sniffed and either is accepted.
+ * - Any other encoding is an {@link IOException}: the body cannot be parsed.
+ */
+final class ContentEncoding {
+
+    /** The value of the {@code Accept-Encoding} request header. */
+    static final String ACCEPTED = "gzip, deflate";
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    private static final String IDENTITY = "identity";
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * A response body as received, still in its content encoding.
+     *
+     * @param bytes    - the received bytes
+     * @param encoding - the content encoding, or null for none
+     */
+    record EncodedBody(byte[] bytes, String encoding) {
+
+        /**
+         * @return a stream of the decoded body
+         * @throws IOException - if the encoding is not supported
+         */
+        InputStream open() throws IOException {
+            return decode(new ByteArrayInputStream(bytes), encoding);
+        }
+    }
+
+    /**
+     * The content encoding of a response.
+     *
+     * @param response - the response
+     * @return the normalised encoding, or null if the body is not encoded
+     */
+    static String of(HttpResponse<?> response) {
+        HttpHeaders headers = response.headers();
+        if (headers == null) {
+            return null;
+        }
+        return headers.firstValue("Content-Encoding")
+                .map(value -> value.trim().toLowerCase(Locale.ROOT))
+                .filter(value -> !value.isEmpty() && !IDENTITY.equals(value))
+                .orElse(null);
+    }
+
+    /**
+     * Decode a body as it is read.
+     *
+     * @param in       - the body as received
+     * @param encoding - the content encoding, or null for none
+     * @return a stream of the decoded body
+     * @throws IOException - if the encoding is not supported or the stream
+     *                     header cannot be read
+     */
+    static InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding == null || IDENTITY.equals(encoding)) {
+            return in;
+        }
+        return switch (encoding) {
+            case GZIP, "x-gzip" -> new GZIPInputStream(in);
+            case DEFLATE -> inflate(in);
+            default -> throw new IOException("Unsupported Content-Encoding: " + encoding);
+        };
+    }
+
+    /**
+     * Inflate a deflate body, zlib-wrapped or raw.
+     *
+     * @param in - the body as received
+     * @return a stream of the inflated body
+     * @throws IOException - if the first bytes cannot be read
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] head = pushback.readNBytes(2);
+        pushback.unread(head);
+        // A zlib header is CM=8 in the low nibble and a 16-bit check value divisible by 31
+        boolean zlib = head.length == 2 && (head[0] & 0x0f) == 8
+                && (((head[0] & 0xff) << 8) | (head[1] & 0xff)) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // An inflater passed in is not ended by the stream itself
+                    inf.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * DataCitePidExtractor
+ *
+ * Reads the identifiers of a DataCite kernel 3 or 4 resource
+ * ({@code oai_datacite}).
+ *
+ * Behaviour:
+ * - {@code identifier} and {@code alternateIdentifier} values are returned
+ * with their {@code identifierType} / {@code alternateIdentifierType} as the
+ * agency, e.g. DOI or Handle.
+ * - A small format: a DataCite record holds citation metadata only, no
+ * variable descriptions.
+ */
+public class DataCitePidExtractor extends StaxPidExtractor {
+
+    /** The usual DataCite metadata prefix. */
+    public static final String METADATA_PREFIX = "oai_datacite";
+
+    static final int RELATIVE_COST = 20;
+
+    private static final String DATACITE_NAMESPACE_PREFIX = "http://datacite.org/schema/kernel-";
+
+    public DataCitePidExtractor() {
+        this(METADATA_PREFIX);
+    }
+
+    /**
+     * @param metadataPrefix - the prefix the repository uses for DataCite,
+     *                       e.g. oai_datacite or datacite
+     */
+    public DataCitePidExtractor(String metadataPrefix) {
+        super(metadataPrefix, RELATIVE_COST);
+    }
+
+    @Override
+    Collector newCollector() {
+        return new Collector() {
+            private String agency;
+            private boolean done;
+
+            @Override
+            public void startElement(XMLStreamReader reader, int depth) {
+                if (StaxPidExtractor.isElement(reader, DATACITE_NAMESPACE_PREFIX, "identifier")) {
+                    agency = reader.getAttributeValue(null, "identifierType");
+                } else if (StaxPidExtractor.isElement(reader, DATACITE_NAMESPACE_PREFIX, "alternateIdentifier")) {
+                    agency = reader.getAttributeValue(null, "alternateIdentifierType");
+                }
+            }
+
+            @Override
+            public IdNoEntry endElement(XMLStreamReader reader, int depth, String text) {
+                if (StaxPidExtractor.isElement(reader, DATACITE_NAMESPACE_PREFIX, "identifier")
+                        || StaxPidExtractor.isElement(reader, DATACITE_NAMESPACE_PREFIX, "alternateIdentifier")) {
+                    return new IdNoEntry(agency, text);
+                }
+                done = StaxPidExtractor.isElement(reader, DATACITE_NAMESPACE_PREFIX, "resource");
+                return null;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done;
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Predicate;
+
+/**
+ * Ddi25PidExtractor
+ *
+ * Reads the title statement {@code IDNo} entries of a DDI 2.5 codeBook
+ * ({@code oai_ddi25}) with {@link IdNoStreamExtractor}.
+ *
+ * Behaviour:
+ * - The most complete and most expensive format: the whole codeBook,
+ * including the data description, is usually transferred.
+ */
+public class Ddi25PidExtractor implements PidSourceExtractor {
+
+    /** The DDI 2.5 metadata prefix. */
+    public static final String METADATA_PREFIX = "oai_ddi25";
+
+    static final int RELATIVE_COST = 100;
+
+    private final IdNoStreamExtractor extractor;
+
+    public Ddi25PidExtractor() {
+        this(new IdNoStreamExtractor());
+    }
+
+    /**
+     * @param extractor - the StAX extractor to delegate to
+     */
+    Ddi25PidExtractor(IdNoStreamExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    @Override
+    public String metadataPrefix() {
+        return METADATA_PREFIX;
+    }
+
+    @Override
+    public int relativeCost() {
+        return RELATIVE_COST;
+    }
+
+    @Override
+    public OaiPmhHarvester.HarvestedRecord extractRecord(InputStream in, Predicate<IdNoEntry> stopWhen)
+            throws IOException {
+        return extractor.extractRecord(in, stopWhen);
+    }
+}
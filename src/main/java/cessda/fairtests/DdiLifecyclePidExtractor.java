@@ -0,0 +1,123 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * DdiLifecyclePidExtractor
+ *
+ * Reads the study identifiers of a DDI-Lifecycle 3.x record, e.g.
+ * {@code oai_ddi32} or {@code oai_ddi33}.
+ *
+ * Behaviour:
+ * - Only the first {@code StudyUnit} is read: the
+ * {@code r:InternationalIdentifier} entries of its {@code r:Citation}, with
+ * {@code r:ManagingAgency} as the agency, and its {@code r:UserID} children,
+ * with {@code typeOfUserID} as the agency.
+ * - Reading stops once that study unit ends, so the data collection and
+ * logical product descriptions that follow are not parsed.
+ */
+public class DdiLifecyclePidExtractor extends StaxPidExtractor {
+
+    /** The usual DDI-Lifecycle 3.2 metadata prefix. */
+    public static final String METADATA_PREFIX = "oai_ddi32";
+
+    static final int RELATIVE_COST = 80;
+
+    private static final String REUSABLE_NAMESPACE_PREFIX = "ddi:reusable:3_";
+    private static final String STUDY_UNIT_NAMESPACE_PREFIX = "ddi:studyunit:3_";
+
+    public DdiLifecyclePidExtractor() {
+        this(METADATA_PREFIX);
+    }
+
+    /**
+     * @param metadataPrefix - the prefix the repository uses for DDI-Lifecycle
+     */
+    public DdiLifecyclePidExtractor(String metadataPrefix) {
+        super(metadataPrefix, RELATIVE_COST);
+    }
+
+    @Override
+    Collector newCollector() {
+        return new Collector() {
+            private int studyUnitDepth;
+            private int citationDepth;
+            private boolean inIdentifier;
+            private String agency;
+            private String value;
+            private boolean done;
+
+            @Override
+            public void startElement(XMLStreamReader reader, int depth) {
+                if (studyUnitDepth == 0) {
+                    if (StaxPidExtractor.isElement(reader, STUDY_UNIT_NAMESPACE_PREFIX, "StudyUnit")) {
+                        studyUnitDepth = depth;
+                    }
+                } else if (depth == studyUnitDepth + 1) {
+                    if (citationDepth == 0 && isReusable(reader, "Citation")) {
+                        citationDepth = depth;
+                    } else if (isReusable(reader, "UserID")) {
+                        agency = reader.getAttributeValue(null, "typeOfUserID");
+                    }
+                } else if (citationDepth > 0 && depth == citationDepth + 1
+                        && isReusable(reader, "InternationalIdentifier")) {
+                    inIdentifier = true;
+                    agency = null;
+                    value = null;
+                }
+            }
+
+            @Override
+            public IdNoEntry endElement(XMLStreamReader reader, int depth, String text) {
+                if (studyUnitDepth == 0) {
+                    return null;
+                }
+                if (depth == studyUnitDepth) {
+                    done = true;
+                } else if (depth == studyUnitDepth + 1) {
+                    if (depth == citationDepth) {
+                        citationDepth = -1;
+                    } else if (isReusable(reader, "UserID")) {
+                        return new IdNoEntry(agency, text);
+                    }
+                } else if (inIdentifier) {
+                    if (isReusable(reader, "IdentifierContent")) {
+                        value = text;
+                    } else if (isReusable(reader, "ManagingAgency")) {
+                        agency = text;
+                    } else if (depth == citationDepth + 1 && isReusable(reader, "InternationalIdentifier")) {
+                        inIdentifier = false;
+                        return value != null ? new IdNoEntry(agency, value) : null;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done;
+            }
+        };
+    }
+
+    private static boolean isReusable(XMLStreamReader reader, String localName) {
+        return StaxPidExtractor.isElement(reader, REUSABLE_NAMESPACE_PREFIX, localName);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * DdiParsingContext
+ *
+ * Thread-safe source of the JAXP objects used by the DOM path of
+ * {@link MetadataUsesCessdaPids}: a namespace-aware {@link DocumentBuilder} and
+ * the precompiled {@code //ddi:codeBook} and IDNo search expressions.
+ *
+ * Behaviour:
+ * - None of these JAXP objects is thread-safe, so each caller leases a
+ * {@link Parser} for exclusive use and returns it by closing the lease.
+ * - Idle parsers are kept in a lock-free pool rather than in thread locals, so
+ * reuse works for short-lived virtual threads as well as for pooled platform
+ * threads. At most {@code maxIdle} idle parsers are retained.
+ * - Builders are reset before they are reused. The factories are only touched,
+ * under a lock, when a new parser has to be created.
+ * - The DDI {@link NamespaceContext} is immutable and shared.
+ */
+public class DdiParsingContext {
+
+    /** Default number of idle parsers retained. */
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    static final String CODE_BOOK_PATH = "//ddi:codeBook";
+    static final String DDI_SEARCH_PATH = "//ddi:codeBook/ddi:stdyDscr/ddi:citation/ddi:titlStmt/ddi:IDNo";
+
+    /** Namespace context resolving the {@code ddi} prefix; shared by all parsers. */
+    static final NamespaceContext DDI_NAMESPACE_CONTEXT = new NamespaceContext() {
+        public String getNamespaceURI(String prefix) {
+            return "ddi".equals(prefix) ? MetadataUsesCessdaPids.DDI_NAMESPACE : XMLConstants.NULL_NS_URI;
+        }
+
+        public String getPrefix(String namespaceURI) {
+            return MetadataUsesCessdaPids.DDI_NAMESPACE.equals(namespaceURI) ? "ddi" : null;
+        }
+
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            String prefix = getPrefix(namespaceURI);
+            return prefix == null ? Collections.emptyIterator() : Collections.singleton(prefix).iterator();
+        }
+    };
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final XPathFactory xPathFactory;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Parser> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * The JAXP objects leased to a single caller.
+     *
+     * @param builder        a namespace-aware document builder
+     * @param codeBookPath   compiled {@code //ddi:codeBook}
+     * @param idNoSearchPath compiled {@code DDI_SEARCH_PATH}
+     */
+    public record Parser(DocumentBuilder builder, XPathExpression codeBookPath, XPathExpression idNoSearchPath) {
+    }
+
+    /**
+     * A leased parser; closing the lease returns the parser to the pool.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Parser parser;
+        private boolean closed;
+
+        private Lease(Parser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * @return the leased parser; only valid until the lease is closed
+         */
+        public Parser parser() {
+            return parser;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(parser);
+            }
+        }
+    }
+
+    public DdiParsingContext() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Create a parsing context.
+     *
+     * @param maxIdle - the maximum number of idle parsers retained
+     */
+    public DdiParsingContext(int maxIdle) {
+        this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        this.documentBuilderFactory.setNamespaceAware(true);
+        this.xPathFactory = XPathFactory.newInstance();
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Lease a parser for exclusive use by the caller.
+     *
+     * @return a lease to be closed when the caller is done
+     * @throws ParserConfigurationException - if a document builder cannot be
+     *                                      created
+     * @throws XPathExpressionException     - if the search paths cannot be
+     *                                      compiled
+     */
+    public Lease acquire() throws ParserConfigurationException, XPathExpressionException {
+        Parser parser = idle.poll();
+        if (parser != null) {
+            idleCount.decrementAndGet();
+            return new Lease(parser);
+        }
+        return new Lease(newParser());
+    }
+
+    /**
+     * @return the number of idle parsers currently pooled
+     */
+    int idleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Reset a parser and pool it, unless the pool is full.
+     *
+     * @param parser - the parser being returned
+     */
+    private void release(Parser parser) {
+        parser.builder().reset();
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(parser);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Create a parser. The JAXP factories are not thread-safe, so creation is
+     * serialised; it only happens while the pool is warming up.
+     *
+     * @return a new parser
+     * @throws ParserConfigurationException - if a document builder cannot be
+     *                                      created
+     * @throws XPathExpressionException     - if the search paths cannot be
+     *                                      compiled
+     */
+    private Parser newParser() throws ParserConfigurationException, XPathExpressionException {
+        synchronized (this) {
+            DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
+            XPath xpath = xPathFactory.newXPath();
+            xpath.setNamespaceContext(DDI_NAMESPACE_CONTEXT);
+            return new Parser(builder, xpath.compile(CODE_BOOK_PATH), xpath.compile(DDI_SEARCH_PATH));
+        }
+    }
+}
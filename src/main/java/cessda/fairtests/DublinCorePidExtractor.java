@@ -0,0 +1,72 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * DublinCorePidExtractor
+ *
+ * Reads the {@code dc:identifier} values of an unqualified Dublin Core record
+ * ({@code oai_dc}).
+ *
+ * Behaviour:
+ * - Dublin Core has no identifier type, so entries carry no agency and are
+ * only recognised as approved PIDs by their value (e.g. a doi.org URL),
+ * through the vocabulary patterns.
+ * - The smallest format every OAI-PMH repository must offer.
+ */
+public class DublinCorePidExtractor extends StaxPidExtractor {
+
+    /** The Dublin Core metadata prefix. */
+    public static final String METADATA_PREFIX = "oai_dc";
+
+    static final int RELATIVE_COST = 10;
+
+    private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+
+    public DublinCorePidExtractor() {
+        super(METADATA_PREFIX, RELATIVE_COST);
+    }
+
+    @Override
+    Collector newCollector() {
+        return new Collector() {
+            private boolean done;
+
+            @Override
+            public void startElement(XMLStreamReader reader, int depth) {
+                // identifiers are recognised when they end
+            }
+
+            @Override
+            public IdNoEntry endElement(XMLStreamReader reader, int depth, String text) {
+                if (StaxPidExtractor.isElement(reader, DC_NAMESPACE, "identifier")) {
+                    return new IdNoEntry(null, text);
+                }
+                done = depth == 1;
+                return null;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done;
+            }
+        };
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * GuardedHttpSender
+ *
+ * Sends idempotent OAI-PMH requests through a circuit breaker and an adaptive
+ * concurrency limit, retries requests the upstream turned away because of
+ * load, and, if configured, hedges them to cut tail latency.
+ *
+ * Behaviour:
+ * - While the circuit breaker is open, requests fail fast with
+ * {@link CircuitBreaker.OpenException} instead of being sent. The breaker sees
+ * the final outcome of each request, after retries: exceptions and 429 or 5xx
+ * responses count as failures.
+ * - Each attempt takes a permit from an {@link AdaptiveConcurrencyLimiter}.
+ * 429 and 503 responses and I/O failures shrink the limit; other responses
+ * grow it.
+ * - A 429 or 503 response is retried as the {@link RetryPolicy} allows: after
+ * the Retry-After the upstream asked for, or after a jittered exponential
+ * backoff if it gave none. The final 429 or 503 is returned to the caller.
+ * - With hedging enabled, an attempt that has not answered within the
+ * configured percentile of recently observed latencies is sent a second time;
+ * whichever response arrives first is used and the other request is
+ * cancelled. No hedge is sent while the breaker is not closed.
+ * - Without hedging, blocking calls use {@link HttpClient#send}.
+ */
+public class GuardedHttpSender {
+
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("oai-pmh-hedge").daemon(true).factory());
+
+    /**
+     * When to send a hedged request.
+     *
+     * @param percentile   - the observed latency percentile, between 0 and 1,
+     *                     after which the hedge is sent
+     * @param minDelay     - the hedge is never sent sooner than this
+     * @param initialDelay - the delay used until enough latencies have been
+     *                     observed
+     * @param minSamples   - latencies needed before the percentile is used
+     */
+    public record HedgePolicy(double percentile, Duration minDelay, Duration initialDelay, int minSamples) {
+
+        public HedgePolicy {
+            if (percentile <= 0 || percentile >= 1) {
+                throw new IllegalArgumentException("percentile must be in (0, 1): " + percentile);
+            }
+        }
+
+        /**
+         * @param percentile - the observed latency percentile after which the
+         *                   hedge is sent, e.g. 0.95
+         * @return a policy with a 50 ms floor, a 1 s initial delay and 20
+         *         samples before the percentile is used
+         */
+        public static HedgePolicy atPercentile(double percentile) {
+            return new HedgePolicy(percentile, Duration.ofMillis(50), Duration.ofSeconds(1), 20);
+        }
+    }
+
+    /**
+     * How to retry requests the upstream turned away with 429 or 503.
+     *
+     * @param maxRetries - retries after the first attempt; 0 disables retries
+     * @param baseDelay  - the backoff before the first retry when the upstream
+     *                   sent no Retry-After; doubled for each further retry
+     * @param maxDelay   - the longest wait before a retry; a Retry-After beyond
+     *                   it is not honoured and the response is returned instead
+     */
+    public record RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+
+        /** Three retries, backing off from 250 ms, waiting at most 30 s. */
+        public static final RetryPolicy DEFAULT = new RetryPolicy(3, Duration.ofMillis(250), Duration.ofSeconds(30));
+
+        /**
+         * The wait before a retry.
+         *
+         * @param retry    - the retry about to be made, from 1
+         * @param response - the 429 or 503 response
+         * @return the wait, or null if the request should not be retried
+         */
+        Duration delayBefore(int retry, HttpResponse<?> response) {
+            if (retry > maxRetries) {
+                return null;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Duration retryAfter = response.headers() == null ? null : retryAfter(response.headers(), Instant.now());
+            if (retryAfter != null) {
+                if (retryAfter.compareTo(maxDelay) > 0) {
+                    return null;
+                }
+                // Spread the clients told to come back at the same moment over a further 20 %
+                long spread = Math.max(1, retryAfter.toMillis() / 5);
+                return retryAfter.plusMillis(random.nextLong(spread));
+            }
+            long backoff = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(retry - 1, 20));
+            // Equal jitter: half the backoff, plus a random share of the other half
+            return Duration.ofMillis(backoff / 2 + random.nextLong(backoff / 2 + 1));
+        }
+
+        /**
+         * Parse a Retry-After header, given either in seconds or as an HTTP
+         * date.
+         *
+         * @param headers - the response headers
+         * @param now     - the current time
+         * @return the wait the upstream asked for, or null if there is none or
+         *         it cannot be parsed
+         */
+        static Duration retryAfter(HttpHeaders headers, Instant now) {
+            String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            try {
+                if (value.chars().allMatch(Character::isDigit)) {
+                    return Duration.ofSeconds(Long.parseLong(value));
+                }
+                Instant at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return at.isAfter(now) ? Duration.between(now, at) : Duration.ZERO;
+            } catch (NumberFormatException | DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Counters at a point in time.
+     *
+     * @param hedgesSent       requests sent a second time
+     * @param hedgesWon        hedged requests whose second response arrived
+     *                         first
+     * @param rejected         requests rejected by the open circuit breaker
+     * @param state            the circuit breaker state
+     * @param retries          attempts repeated after a 429 or 503
+     * @param concurrencyLimit the current adaptive concurrency limit
+     */
+    public record Stats(long hedgesSent, long hedgesWon, long rejected, CircuitBreaker.State state, long retries,
+            int concurrencyLimit) {
+    }
+
+    private final LatencyWindow latencies = new LatencyWindow(512);
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private volatile RetryPolicy retryPolicy;
+    private volatile HedgePolicy hedgePolicy;
+
+    /**
+     * Create a sender with a default circuit breaker, concurrency limiter and
+     * retry policy, and no hedging.
+     */
+    public GuardedHttpSender() {
+        this.circuitBreaker = new CircuitBreaker();
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter();
+        this.retryPolicy = RetryPolicy.DEFAULT;
+    }
+
+    /**
+     * @param circuitBreaker - the breaker guarding the upstream
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return the breaker guarding the upstream
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param concurrencyLimiter - the limiter bounding concurrent attempts
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * @return the limiter bounding concurrent attempts
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * @param retryPolicy - how to retry 429 and 503 responses
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @param hedgePolicy - when to hedge, or null to disable hedging
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * A sender sharing this sender's circuit breaker, concurrency limiter and
+     * retry policy, but never hedging, for requests too heavy to send twice
+     * such as ListRecords pages. Its counters and latencies are its own.
+     *
+     * @return the new sender
+     */
+    public GuardedHttpSender withoutHedging() {
+        GuardedHttpSender sender = new GuardedHttpSender();
+        sender.setCircuitBreaker(circuitBreaker);
+        sender.setConcurrencyLimiter(concurrencyLimiter);
+        sender.setRetryPolicy(retryPolicy);
+        return sender;
+    }
+
+    /**
+     * @return the current counters
+     */
+    public Stats stats() {
+        CircuitBreaker breaker = circuitBreaker;
+        return new Stats(hedgesSent.get(), hedgesWon.get(), breaker.rejectedCount(), breaker.state(),
+                retries.get(), concurrencyLimiter.limit());
+    }
+
+    /**
+     * Send a request and wait for the response headers.
+     *
+     * @param client  - the client to send with
+     * @param request - the request, which must be idempotent
+     * @param handler - the body handler
+     * @param discard - releases the body of a response that is not used, e.g.
+     *                closes a streamed body
+     * @return the response
+     * @throws IOException          - if the request fails or the breaker is open
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+            Consumer<HttpResponse<T>> discard) throws IOException, InterruptedException {
+        HedgePolicy policy = hedgePolicy;
+        if (policy != null) {
+            CompletableFuture<HttpResponse<T>> response = sendAsync(client, request, handler, discard);
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                response.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                throw asIoException(e.getCause());
+            }
+        }
+        CircuitBreaker breaker = circuitBreaker;
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+        RetryPolicy retry = retryPolicy;
+        breaker.acquire();
+        try {
+            for (int attempt = 0;; attempt++) {
+                AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+                long start = System.nanoTime();
+                HttpResponse<T> response;
+                try {
+                    response = client.send(request, handler);
+                } catch (IOException e) {
+                    permit.dropped();
+                    throw e;
+                } catch (InterruptedException | RuntimeException e) {
+                    permit.ignore();
+                    throw e;
+                }
+                Duration delay = onAttempt(permit, response, start, retry, attempt);
+                if (delay == null) {
+                    recordOutcome(breaker, response);
+                    return response;
+                }
+                discard.accept(response);
+                Thread.sleep(delay);
+            }
+        } catch (IOException e) {
+            breaker.onFailure();
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a request asynchronously, retrying and hedging it as configured.
+     *
+     * @param client  - the client to send with
+     * @param request - the request, which must be idempotent
+     * @param handler - the body handler
+     * @param discard - releases the body of a response that is not used
+     * @return a future of the response, completed exceptionally if the request
+     *         fails or the breaker is open; cancelling it cancels the request
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpClient client, HttpRequest request,
+            HttpResponse.BodyHandler<T> handler, Consumer<HttpResponse<T>> discard) {
+        CircuitBreaker breaker = circuitBreaker;
+        try {
+            breaker.acquire();
+        } catch (CircuitBreaker.OpenException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        RetryingExchange<T> exchange = new RetryingExchange<>(client, request, handler, discard,
+                concurrencyLimiter, retryPolicy);
+        exchange.result.whenComplete((response, error) -> {
+            if (error == null) {
+                recordOutcome(breaker, response);
+            } else if (error instanceof CancellationException) {
+                breaker.release();
+            } else {
+                breaker.onFailure();
+            }
+        });
+        exchange.attempt(0);
+        return exchange.result;
+    }
+
+    /**
+     * Return an attempt's permit and decide whether to retry it.
+     *
+     * @return the wait before retrying, or null if the response is final
+     */
+    private Duration onAttempt(AdaptiveConcurrencyLimiter.Permit permit, HttpResponse<?> response, long start,
+            RetryPolicy retry, int attempt) {
+        int status = response.statusCode();
+        if (status != 429 && status != 503) {
+            permit.success();
+            if (status < 500) {
+                latencies.record(System.nanoTime() - start);
+            }
+            return null;
+        }
+        permit.dropped();
+        Duration delay = retry.delayBefore(attempt + 1, response);
+        if (delay != null) {
+            retries.incrementAndGet();
+        }
+        return delay;
+    }
+
+    private static void recordOutcome(CircuitBreaker breaker, HttpResponse<?> response) {
+        int status = response.statusCode();
+        if (status == 429 || status >= 500) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    private static IOException asIoException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        return new IOException(cause.getMessage(), cause);
+    }
+
+    /**
+     * One logical request: attempts, each under a concurrency permit, repeated
+     * while the upstream answers 429 or 503 and the retry policy allows.
+     */
+    private final class RetryingExchange<T> {
+
+        final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<T> handler;
+        private final Consumer<HttpResponse<T>> discard;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final RetryPolicy retry;
+        private volatile CompletableFuture<?> current;
+
+        RetryingExchange(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                Consumer<HttpResponse<T>> discard, AdaptiveConcurrencyLimiter limiter, RetryPolicy retry) {
+            this.client = client;
+            this.request = request;
+            this.handler = handler;
+            this.discard = discard;
+            this.limiter = limiter;
+            this.retry = retry;
+            // Cancelling the result cancels the attempt, so no connection outlives the caller's interest
+            result.whenComplete((response, error) -> {
+                CompletableFuture<?> attempt = current;
+                if (error instanceof CancellationException && attempt != null) {
+                    attempt.cancel(true);
+                }
+            });
+        }
+
+        void attempt(int attempt) {
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permitFuture = limiter.acquireAsync();
+            current = permitFuture;
+            if (result.isDone()) {
+                permitFuture.cancel(false);
+            }
+            permitFuture.whenComplete((permit, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else if (result.isDone()) {
+                    permit.ignore();
+                } else {
+                    send(attempt, permit);
+                }
+            });
+        }
+
+        private void send(int attempt, AdaptiveConcurrencyLimiter.Permit permit) {
+            long start = System.nanoTime();
+            HedgedExchange<T> exchange = new HedgedExchange<>(client, request, handler, discard, limiter);
+            current = exchange.result;
+            if (result.isDone()) {
+                exchange.result.cancel(true);
+            }
+            exchange.result.whenComplete((response, error) -> {
+                if (error != null) {
+                    if (error instanceof CancellationException) {
+                        permit.ignore();
+                    } else {
+                        permit.dropped();
+                    }
+                    result.completeExceptionally(error);
+                    return;
+                }
+                Duration delay = onAttempt(permit, response, start, retry, attempt);
+                if (delay == null || result.isDone()) {
+                    if (!result.complete(response)) {
+                        discard.accept(response);
+                    }
+                    return;
+                }
+                discard.accept(response);
+                CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS)
+                        .execute(() -> attempt(attempt + 1));
+            });
+            exchange.start(hedgePolicy);
+        }
+    }
+
+    /**
+     * One attempt: the primary request and, possibly, a hedge. The primary
+     * runs under the permit of its retrying exchange; the hedge needs a permit
+     * of its own and is skipped if none is free, so hedging never pushes the
+     * upstream past the concurrency limit.
+     */
+    private final class HedgedExchange<T> {
+
+        final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<T> handler;
+        private final Consumer<HttpResponse<T>> discard;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final List<CompletableFuture<HttpResponse<T>>> attempts = new ArrayList<>(2);
+        private int inFlight;
+        private boolean settled;
+        private boolean hedgePending;
+        private ScheduledFuture<?> hedgeTimer;
+        private Throwable lastError;
+
+        HedgedExchange(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                Consumer<HttpResponse<T>> discard, AdaptiveConcurrencyLimiter limiter) {
+            this.client = client;
+            this.request = request;
+            this.handler = handler;
+            this.discard = discard;
+            this.limiter = limiter;
+            result.whenComplete((response, error) -> {
+                if (error instanceof CancellationException) {
+                    cancelAttempts(null);
+                }
+            });
+        }
+
+        void start(HedgePolicy policy) {
+            synchronized (this) {
+                launch(null);
+                if (policy != null && !settled) {
+                    hedgePending = true;
+                    hedgeTimer = HEDGE_TIMER.schedule(this::hedge, hedgeDelay(policy).toNanos(),
+                            TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        private void hedge() {
+            AdaptiveConcurrencyLimiter.Permit permit = null;
+            Throwable error = null;
+            synchronized (this) {
+                hedgePending = false;
+                if (settled) {
+                    return;
+                }
+                if (circuitBreaker.state() == CircuitBreaker.State.CLOSED) {
+                    permit = limiter.tryAcquire();
+                }
+                if (permit == null) {
+                    if (inFlight > 0) {
+                        return;
+                    }
+                    // The primary failed while this hedge was being decided, and no hedge will follow
+                    settled = true;
+                    error = lastError;
+                }
+            }
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            hedgesSent.incrementAndGet();
+            launch(permit);
+        }
+
+        /**
+         * Send the primary request, or a hedge under its own permit.
+         *
+         * @param hedgePermit - the hedge's permit, or null for the primary
+         */
+        private void launch(AdaptiveConcurrencyLimiter.Permit hedgePermit) {
+            boolean isHedge = hedgePermit != null;
+            CompletableFuture<HttpResponse<T>> attempt;
+            synchronized (this) {
+                if (result.isDone()) {
+                    if (isHedge) {
+                        hedgePermit.ignore();
+                    }
+                    return;
+                }
+                inFlight++;
+                attempt = client.sendAsync(request, handler);
+                attempts.add(attempt);
+            }
+            if (isHedge) {
+                attempt.whenComplete((response, error) -> returnHedgePermit(hedgePermit, response, error));
+            }
+            attempt.whenComplete((response, error) -> onAttempt(attempt, isHedge, response, error));
+        }
+
+        private static void returnHedgePermit(AdaptiveConcurrencyLimiter.Permit permit, HttpResponse<?> response,
+                Throwable error) {
+            if (error instanceof CancellationException) {
+                permit.ignore();
+            } else if (error != null || response.statusCode() == 429 || response.statusCode() == 503) {
+                permit.dropped();
+            } else {
+                permit.success();
+            }
+        }
+
+        private void onAttempt(CompletableFuture<HttpResponse<T>> attempt, boolean isHedge,
+                HttpResponse<T> response, Throwable error) {
+            boolean won = false;
+            boolean failed = false;
+            synchronized (this) {
+                inFlight--;
+                if (error == null && !settled) {
+                    won = true;
+                    settled = true;
+                } else if (error != null && !settled && inFlight == 0) {
+                    lastError = error;
+                    // Without a hedge on the way, the last failed attempt fails the exchange
+                    failed = !hedgePending || hedgeTimer.cancel(false);
+                    settled = failed;
+                    hedgePending = false;
+                }
+            }
+            if (won) {
+                if (isHedge) {
+                    hedgesWon.incrementAndGet();
+                }
+                cancelAttempts(attempt);
+                if (!result.complete(response)) {
+                    discard.accept(response);
+                }
+            } else if (failed) {
+                result.completeExceptionally(error);
+            } else if (error == null) {
+                discard.accept(response);
+            }
+        }
+
+        private void cancelAttempts(CompletableFuture<HttpResponse<T>> except) {
+            List<CompletableFuture<HttpResponse<T>>> others;
+            synchronized (this) {
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+                others = new ArrayList<>(attempts);
+            }
+            for (CompletableFuture<HttpResponse<T>> other : others) {
+                if (other != except) {
+                    other.cancel(true);
+                }
+            }
+        }
+    }
+
+    private Duration hedgeDelay(HedgePolicy policy) {
+        long observed = latencies.percentile(policy.percentile(), policy.minSamples());
+        Duration delay = observed < 0 ? policy.initialDelay() : Duration.ofNanos(observed);
+        return delay.compareTo(policy.minDelay()) < 0 ? policy.minDelay() : delay;
+    }
+
+    /**
+     * The most recent latencies, in a fixed-size ring.
+     */
+    static final class LatencyWindow {
+
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        /**
+         * @return the percentile in nanoseconds, or -1 if fewer than
+         *         {@code minSamples} latencies have been recorded
+         */
+        long percentile(double percentile, int minSamples) {
+            long[] sorted;
+            synchronized (this) {
+                if (count < minSamples || count == 0) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HarvestCheckpoint
+ *
+ * Persists the {@code from} datestamp of the next incremental harvest: the
+ * time the last completed harvest started, so the next run only asks for
+ * records changed since.
+ *
+ * Behaviour:
+ * - The checkpoint is a single line of text holding the datestamp as the
+ * repository reported it (a day or a UTC second).
+ * - Saving writes and syncs a temporary file next to the checkpoint and
+ * renames it over the old one atomically, so a crash leaves either the old or
+ * the new datestamp, never a torn file.
+ * - A missing or empty checkpoint means no run has completed yet.
+ */
+public class HarvestCheckpoint {
+
+    private static final String TMP_SUFFIX = ".tmp";
+    /** Length of a day-granularity datestamp, YYYY-MM-DD. */
+    private static final int DAY_LENGTH = 10;
+
+    private final Path path;
+
+    /**
+     * Create a checkpoint backed by a file.
+     *
+     * @param path - the checkpoint file; its directory must exist
+     */
+    public HarvestCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Read the saved datestamp.
+     *
+     * @return the datestamp, or null if no checkpoint has been saved
+     * @throws IOException - if the checkpoint exists but cannot be read
+     */
+    public String load() throws IOException {
+        try {
+            String datestamp = Files.readString(path, StandardCharsets.UTF_8).strip();
+            return datestamp.isEmpty() ? null : datestamp;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Atomically replace the saved datestamp.
+     *
+     * @param datestamp - the new datestamp
+     * @throws IOException - if the checkpoint cannot be written
+     */
+    public void save(String datestamp) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap((datestamp + "\n").getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reduce a UTC datetime to the granularity of a repository's datestamps.
+     * Every OAI-PMH repository accepts a day as {@code from}, but only some
+     * accept seconds, so seconds are kept only if the repository is known to
+     * use them.
+     *
+     * @param dateTime - a UTC datetime, YYYY-MM-DDThh:mm:ssZ
+     * @param sample   - a datestamp from the same repository, or null if none
+     *                 is known
+     * @return the datetime, or its day if the sample is a day or unknown
+     */
+    static String atGranularityOf(String dateTime, String sample) {
+        if (sample != null && sample.length() > DAY_LENGTH && dateTime.length() > DAY_LENGTH) {
+            return dateTime;
+        }
+        return dateTime.substring(0, Math.min(DAY_LENGTH, dateTime.length()));
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+/**
+ * IdNoEntry
+ *
+ * A single {@code IDNo} element taken from the title statement of a DDI
+ * codeBook, holding the {@code agency} attribute and the element text.
+ *
+ * @param agency the value of the {@code agency} attribute, or {@code null} if
+ *               the attribute is missing
+ * @param value  the trimmed text content of the {@code IDNo} element
+ */
+public record IdNoEntry(String agency, String value) {
+}
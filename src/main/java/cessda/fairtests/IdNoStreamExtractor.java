@@ -0,0 +1,347 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * IdNoStreamExtractor
+ *
+ * Pulls the {@code IDNo} agency/value pairs out of an OAI-PMH response (or a
+ * bare DDI codeBook) with a StAX reader, without building a DOM.
+ *
+ * Behaviour:
+ * - Only {@code IDNo} children of
+ * {@code codeBook/stdyDscr/citation/titlStmt} are collected, matching
+ * {@code DDI_SEARCH_PATH} in {@link DdiParsingContext}.
+ * - Reading stops as soon as the first title statement ends, the study
+ * description has been passed, or the stop predicate accepts an entry.
+ * - At most {@link #MAX_ENTRIES} entries of at most {@link #MAX_VALUE_LENGTH}
+ * characters are kept, so memory use does not grow with the record size.
+ */
+public class IdNoStreamExtractor {
+
+    private static final Logger logger = LogManager.getLogger(IdNoStreamExtractor.class);
+
+    /** Maximum number of IDNo entries collected from a single record. */
+    static final int MAX_ENTRIES = 256;
+    /** Maximum number of characters kept from a single IDNo value. */
+    static final int MAX_VALUE_LENGTH = 1024;
+
+    private static final String[] TITLE_STATEMENT_PATH = { "codeBook", "stdyDscr", "citation", "titlStmt", "IDNo" };
+    private static final int TITLE_STATEMENT_DEPTH = 4;
+    private static final int STUDY_DESCRIPTION_DEPTH = 2;
+    private static final String AGENCY_ATTRIBUTE = "agency";
+
+    private final XMLInputFactory inputFactory;
+    private final Lock inputFactoryLock = new ReentrantLock();
+
+    public IdNoStreamExtractor() {
+        this.inputFactory = XMLInputFactory.newFactory();
+        this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Extract all IDNo entries from the first title statement in the stream.
+     *
+     * @param in - the XML input stream; it is not closed by this method
+     * @return the IDNo entries in document order
+     * @throws IOException - if the XML cannot be read or parsed
+     */
+    public List<IdNoEntry> extract(InputStream in) throws IOException {
+        return extract(in, entry -> false);
+    }
+
+    /**
+     * Extract IDNo entries from the first title statement in the stream,
+     * stopping early once {@code stopWhen} accepts an entry.
+     *
+     * @param in       - the XML input stream; it is not closed by this method
+     * @param stopWhen - predicate that ends extraction when it returns true; the
+     *                 accepted entry is the last one in the returned list
+     * @return the IDNo entries read before extraction stopped
+     * @throws IOException - if the XML cannot be read or parsed
+     */
+    public List<IdNoEntry> extract(InputStream in, Predicate<IdNoEntry> stopWhen) throws IOException {
+        return extractRecord(in, stopWhen).idNos();
+    }
+
+    /**
+     * Extract the OAI-PMH header fields and the IDNo entries from the first
+     * title statement in the stream, stopping early once {@code stopWhen}
+     * accepts an entry. Header fields are null when the stream is a bare
+     * codeBook.
+     *
+     * @param in       - the XML input stream; it is not closed by this method
+     * @param stopWhen - predicate that ends extraction when it returns true
+     * @return the record header and the IDNo entries read before extraction
+     *         stopped
+     * @throws IOException - if the XML cannot be read or parsed
+     */
+    public OaiPmhHarvester.HarvestedRecord extractRecord(InputStream in, Predicate<IdNoEntry> stopWhen)
+            throws IOException {
+        return read(in, stopWhen, false);
+    }
+
+    /**
+     * Read only the OAI-PMH header of a GetRecord response, stopping as soon as
+     * the header ends so the metadata is never transferred in full.
+     *
+     * @param in - the XML input stream; it is not closed by this method
+     * @return the header datestamp, or null if there is none
+     * @throws IOException - if the XML cannot be read or parsed
+     */
+    public String readDatestamp(InputStream in) throws IOException {
+        return read(in, entry -> false, true).datestamp();
+    }
+
+    /**
+     * Open a StAX reader over the stream and walk it.
+     *
+     * @param in         - the XML input stream
+     * @param stopWhen   - the early exit predicate
+     * @param headerOnly - whether to stop at the end of the OAI-PMH header
+     * @return the record read
+     * @throws IOException - if the XML cannot be read or parsed
+     */
+    private OaiPmhHarvester.HarvestedRecord read(InputStream in, Predicate<IdNoEntry> stopWhen, boolean headerOnly)
+            throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = createReader(in);
+            return readRecord(reader, stopWhen, headerOnly);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse XML stream", e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Walk the stream, picking up OAI-PMH header fields and feeding every
+     * event to a {@link TitleStatementCollector}.
+     *
+     * @param reader     - the StAX reader
+     * @param stopWhen   - the early exit predicate
+     * @param headerOnly - whether to stop at the end of the OAI-PMH header
+     * @return the record read
+     * @throws XMLStreamException - if the XML is malformed
+     */
+    private static OaiPmhHarvester.HarvestedRecord readRecord(XMLStreamReader reader,
+            Predicate<IdNoEntry> stopWhen, boolean headerOnly) throws XMLStreamException {
+        TitleStatementCollector collector = new TitleStatementCollector();
+        String identifier = null;
+        String datestamp = null;
+        boolean deleted = false;
+
+        while (reader.hasNext() && !collector.isDone()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                collector.startElement(reader);
+                if (OaiPmhHarvester.OAI_NAMESPACE.equals(reader.getNamespaceURI())) {
+                    switch (reader.getLocalName()) {
+                        case "header" -> deleted = "deleted".equals(reader.getAttributeValue(null, "status"));
+                        case "identifier" -> {
+                            identifier = reader.getElementText().trim();
+                            collector.endElement();
+                        }
+                        case "datestamp" -> {
+                            datestamp = reader.getElementText().trim();
+                            collector.endElement();
+                        }
+                        default -> {
+                            // other OAI-PMH elements carry nothing the check needs
+                        }
+                    }
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                collector.characters(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                IdNoEntry entry = collector.endElement();
+                if ((entry != null && stopWhen.test(entry))
+                        || (headerOnly && "header".equals(reader.getLocalName())
+                                && OaiPmhHarvester.OAI_NAMESPACE.equals(reader.getNamespaceURI()))) {
+                    break;
+                }
+            }
+        }
+        return new OaiPmhHarvester.HarvestedRecord(identifier, datestamp, deleted, collector.entries());
+    }
+
+    /**
+     * TitleStatementCollector
+     *
+     * Incremental matcher for the IDNo elements of the first
+     * {@code codeBook/stdyDscr/citation/titlStmt}. Callers feed it start
+     * element, character and end element events from a StAX reader positioned
+     * anywhere above the codeBook; depth is counted from the first event fed.
+     */
+    static final class TitleStatementCollector {
+
+        private final List<IdNoEntry> entries = new ArrayList<>();
+        private final int[] matchedDepth = new int[TITLE_STATEMENT_PATH.length];
+        private int matched;
+        private int depth;
+        private boolean done;
+        private String agency;
+        private StringBuilder value;
+
+        /**
+         * Handle a start element event.
+         *
+         * @param reader - the StAX reader positioned on a start element
+         */
+        void startElement(XMLStreamReader reader) {
+            depth++;
+            if (done) {
+                return;
+            }
+            if (matched < TITLE_STATEMENT_PATH.length
+                    && (matched == 0 || depth == matchedDepth[matched - 1] + 1)
+                    && isDdiElement(reader, TITLE_STATEMENT_PATH[matched])) {
+                matchedDepth[matched++] = depth;
+                if (matched == TITLE_STATEMENT_PATH.length) {
+                    agency = reader.getAttributeValue(null, AGENCY_ATTRIBUTE);
+                    value = new StringBuilder();
+                }
+            } else if (matched == 1 && depth == matchedDepth[0] + 1 && !isDdiElement(reader, "docDscr")) {
+                // codeBook children after stdyDscr cannot contain a title statement
+                done = true;
+            }
+        }
+
+        /**
+         * Handle a characters or CDATA event.
+         *
+         * @param reader - the StAX reader positioned on character data
+         */
+        void characters(XMLStreamReader reader) {
+            if (value != null && value.length() < MAX_VALUE_LENGTH) {
+                int length = Math.min(reader.getTextLength(), MAX_VALUE_LENGTH - value.length());
+                value.append(reader.getTextCharacters(), reader.getTextStart(), length);
+            }
+        }
+
+        /**
+         * Handle an end element event.
+         *
+         * @return the IDNo entry completed by this event, or null
+         */
+        IdNoEntry endElement() {
+            IdNoEntry entry = null;
+            if (!done && matched > 0 && depth == matchedDepth[matched - 1]) {
+                matched--;
+                if (matched == TITLE_STATEMENT_PATH.length - 1 && value != null) {
+                    entry = new IdNoEntry(agency, value.toString().trim());
+                    entries.add(entry);
+                    value = null;
+                    done = entries.size() >= MAX_ENTRIES;
+                } else if (matched == TITLE_STATEMENT_DEPTH - 1 || matched < STUDY_DESCRIPTION_DEPTH) {
+                    // first title statement (or the study description / codeBook) has ended
+                    done = true;
+                }
+            }
+            depth--;
+            return entry;
+        }
+
+        /**
+         * Whether the title statement has been fully read, so later events
+         * cannot add entries.
+         *
+         * @return true once collection is complete
+         */
+        boolean isDone() {
+            return done;
+        }
+
+        /**
+         * The entries collected so far.
+         *
+         * @return an unmodifiable view of the entries in document order
+         */
+        List<IdNoEntry> entries() {
+            return Collections.unmodifiableList(entries);
+        }
+    }
+
+    /**
+     * Whether the current element is the named element in the DDI namespace.
+     *
+     * @param reader    - the StAX reader positioned on a start element
+     * @param localName - the expected local name
+     * @return true if the element matches
+     */
+    private static boolean isDdiElement(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName())
+                && MetadataUsesCessdaPids.DDI_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Create a StAX reader. XMLInputFactory is not documented as thread-safe,
+     * so creation through the shared factory is serialised; reading itself is
+     * not. Creation reads the prolog from the stream, so the guard is a lock
+     * rather than a monitor: a virtual thread waiting on the network inside a
+     * monitor pins its carrier.
+     *
+     * @param in - the XML input stream
+     * @return a new reader
+     * @throws XMLStreamException - if the reader cannot be created
+     */
+    private XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        inputFactoryLock.lock();
+        try {
+            return inputFactory.createXMLStreamReader(in);
+        } finally {
+            inputFactoryLock.unlock();
+        }
+    }
+
+    /**
+     * Close a StAX reader, ignoring any errors.
+     *
+     * @param reader - the reader to close, may be null
+     */
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            logger.debug("Failed to close XML stream reader: {}", e.getMessage());
+        }
+    }
+}
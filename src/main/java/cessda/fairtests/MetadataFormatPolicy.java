@@ -0,0 +1,174 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * MetadataFormatPolicy
+ *
+ * Chooses the metadata formats a record is fetched in: the configured
+ * extractors the repository offers, cheapest first.
+ *
+ * Behaviour:
+ * - With a single configured format no discovery is needed and that format is
+ * always used.
+ * - Otherwise the repository's formats are listed once with OAI-PMH
+ * {@code ListMetadataFormats}; if listing fails, every configured format is
+ * returned and listing is retried on the next check.
+ * - A check reads formats in order and stops at the first one that yields an
+ * approved PID; the last (most expensive) format decides otherwise, so cheap
+ * formats only save work and never change the outcome.
+ */
+public class MetadataFormatPolicy {
+
+    private static final Logger logger = LogManager.getLogger(MetadataFormatPolicy.class);
+
+    /**
+     * Lists the metadata prefixes a repository offers.
+     */
+    @FunctionalInterface
+    public interface FormatLister {
+
+        /**
+         * @return the metadata prefixes offered
+         * @throws IOException          - if the formats cannot be listed
+         * @throws InterruptedException - if interrupted while listing
+         */
+        Set<String> list() throws IOException, InterruptedException;
+    }
+
+    private final List<PidSourceExtractor> candidates;
+    private volatile List<PidSourceExtractor> offered;
+
+    /**
+     * Create a policy over the given extractors.
+     *
+     * @param candidates - the formats that may be used, in any order
+     * @throws IllegalArgumentException - if no extractor is given
+     */
+    public MetadataFormatPolicy(List<PidSourceExtractor> candidates) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("At least one metadata format is required");
+        }
+        this.candidates = candidates.stream()
+                .sorted(Comparator.comparingInt(PidSourceExtractor::relativeCost))
+                .toList();
+        this.offered = candidates.size() == 1 ? this.candidates : null;
+    }
+
+    /**
+     * @return a policy that only uses DDI 2.5
+     */
+    public static MetadataFormatPolicy ddi25Only() {
+        return new MetadataFormatPolicy(List.of(new Ddi25PidExtractor()));
+    }
+
+    /**
+     * @return whether the formats are known, so {@link #formats(FormatLister)}
+     *         will not call the lister
+     */
+    public boolean isResolved() {
+        return offered != null;
+    }
+
+    /**
+     * The formats to read a record in, cheapest first.
+     *
+     * @param lister - lists the repository's formats, called until it succeeds
+     * @return the formats; never empty
+     */
+    public List<PidSourceExtractor> formats(FormatLister lister) {
+        List<PidSourceExtractor> known = offered;
+        if (known != null) {
+            return known;
+        }
+        try {
+            Set<String> prefixes = lister.list();
+            List<PidSourceExtractor> usable = candidates.stream()
+                    .filter(extractor -> prefixes.contains(extractor.metadataPrefix()))
+                    .toList();
+            if (usable.isEmpty()) {
+                logger.warn("Repository offers none of the configured metadata formats {}, offered: {}",
+                        candidates.stream().map(PidSourceExtractor::metadataPrefix).toList(), prefixes);
+                usable = candidates;
+            }
+            logger.info("Reading PIDs from metadata formats, cheapest first: {}",
+                    usable.stream().map(PidSourceExtractor::metadataPrefix).toList());
+            offered = usable;
+            return usable;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to list metadata formats, trying all configured formats: {}", e.getMessage());
+        }
+        return candidates;
+    }
+
+    /**
+     * Read the metadata prefixes from a {@code ListMetadataFormats} response.
+     *
+     * @param in - the response body
+     * @return the metadata prefixes
+     * @throws IOException - if the response cannot be parsed
+     */
+    static Set<String> parseMetadataFormats(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        Set<String> prefixes = new HashSet<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && OaiPmhHarvester.OAI_NAMESPACE.equals(reader.getNamespaceURI())) {
+                    if ("metadataPrefix".equals(reader.getLocalName())) {
+                        prefixes.add(reader.getElementText().trim());
+                    } else if ("error".equals(reader.getLocalName())) {
+                        throw new IOException("OAI-PMH error " + reader.getAttributeValue(null, "code"));
+                    }
+                }
+            }
+            return prefixes;
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse ListMetadataFormats response", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Failed to close XML stream reader: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
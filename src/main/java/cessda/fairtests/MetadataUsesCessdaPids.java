@@ -17,35 +17,58 @@
 
 package cessda.fairtests;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
-import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
 /**
  * MetadataUsesCessdaPids
  *
@@ -56,298 +79,2049 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *
  * Behaviour:
  * - Examines JSON field {@code agency} for agency values.
- * - Returns "pass" if any agency matches an approved PID schema.
+ * - Returns "pass" if any agency matches an approved PID schema, or if an
+ * identifier value matches the pattern of an approved schema (so a missing or
+ * wrong agency does not hide a valid PID).
  * - Returns "fail" if none match or if no PIDs are present.
  * - Returns "indeterminate" if an error occurs (e.g. network or JSON parsing).
  */
 public class MetadataUsesCessdaPids {
 
-    private static final String DDI_NAMESPACE = "ddi:codebook:2_5";
-    private static final String OAI_PMH_BASE = "https://datacatalogue.cessda.eu/oai-pmh/v0/oai?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=";
-    private static final String DDI_SEARCH_PATH = "//ddi:codeBook/ddi:stdyDscr/ddi:citation/ddi:titlStmt/ddi:IDNo";
+    static final String DDI_NAMESPACE = "ddi:codebook:2_5";
+    /** The CESSDA Data Catalogue OAI-PMH endpoint. */
+    public static final String DEFAULT_OAI_PMH_ENDPOINT = "https://datacatalogue.cessda.eu/oai-pmh/v0/oai";
+    private static final String METADATA_PREFIX = "oai_ddi25";
+    private static final String IDENTIFIER_PARAMETER = "&identifier=";
+    private static final String GET_RECORD_QUERY = "?verb=GetRecord&metadataPrefix=" + METADATA_PREFIX + IDENTIFIER_PARAMETER;
+    private static final String LIST_METADATA_FORMATS_QUERY = "?verb=ListMetadataFormats";
 
+    private static final Duration VOCABULARY_WARM_UP = Duration.ofSeconds(20);
+    private static final String HARVEST_OPTION = "--harvest";
+    private static final String OFFLINE_OPTION = "--offline";
+    private static final String BATCH_OPTION = "--batch";
+    private static final String OAI_PMH_ENDPOINT_PROPERTY = "cessda.oai-pmh.endpoint";
+    private static final String PID_VOCAB_URL_PROPERTY = "cessda.vocabulary.url";
+    private static final String VOCABULARY_SNAPSHOT_PROPERTY = "cessda.vocabulary.snapshot-path";
+    private static final String VOCABULARY_VERSION_PROPERTY = "cessda.vocabulary.version";
+    private static final String PAYLOAD_CACHE_PROPERTY = "cessda.payload-cache.path";
+    private static final String PID_INDEX_PROPERTY = "cessda.pid-index.path";
+    private static final String RESULT_CACHE_ENABLED_PROPERTY = "cessda.result-cache.enabled";
+    private static final String RESULT_CACHE_TTL_PROPERTY = "cessda.result-cache.ttl";
+    private static final String RESULT_CACHE_MAX_ENTRIES_PROPERTY = "cessda.result-cache.max-entries";
+    private static final String RESULT_CACHE_REVALIDATE_PROPERTY = "cessda.result-cache.revalidate";
+    private static final String INCREMENTAL_OPTION = "--incremental";
+    private static final String PARALLELISM_OPTION = "--parallelism";
+    private static final String FORMAT_OPTION = "--format";
+    private static final String STDIN_SOURCE = "-";
     private static final String DETAIL_SEGMENT = "/detail/";
-    private static final String RESULT_PASS = "pass";
-    private static final String RESULT_FAIL = "fail";
-    private static final String RESULT_INDETERMINATE = "indeterminate";
-    private static final String PID_VOCAB_URL = "https://vocabularies.cessda.eu/v2/vocabularies/CessdaPersistentIdentifierTypes/1.0.0?languageVersion=en-1.0.0&format=json";
+    static final String RESULT_PASS = "pass";
+    static final String RESULT_FAIL = "fail";
+    static final String RESULT_INDETERMINATE = "indeterminate";
+    static final String RESULT_DELETED = "deleted";
+    /** The CESSDA persistent identifier types vocabulary. */
+    public static final String DEFAULT_PID_VOCAB_URL = "https://vocabularies.cessda.eu/v2/vocabularies/CessdaPersistentIdentifierTypes/1.0.0?languageVersion=en-1.0.0&format=json";
 
+    private final String oaiPmhEndpoint;
+    private final String oaiPmhBase;
+    private final String pidVocabUrl;
     private final HttpClient httpClient;
+    private final Executor asyncExecutor;
     private final ObjectMapper mapper;
-    private static volatile Set<String> cachedApprovedSchemas;
-    private final DocumentBuilderFactory documentBuilderFactory;
-    private final XPathFactory xPathFactory;
-    private static final Logger logger = Logger.getLogger(MetadataUsesCessdaPids.class.getName());
+    private final PidVocabulary pidVocabulary;
+    private final DdiParsingContext parsingContext;
+    private final IdNoStreamExtractor idNoStreamExtractor;
+    private volatile boolean streamingExtraction = true;
+    private volatile MetadataFormatPolicy formatPolicy = MetadataFormatPolicy.ddi25Only();
+    // A holder rather than a volatile field, so the metrics can read it without capturing the checker
+    private final AtomicReference<ResultCache> resultCache = new AtomicReference<>();
+    private volatile ResultStore resultStore;
+    private volatile PayloadCache payloadCache;
+    private volatile PidIndex pidIndex = new PidIndex();
+    private volatile Path pidIndexPath;
+    private volatile FileTime pidIndexModified;
+    private final ReentrantLock pidIndexReload = new ReentrantLock();
+    private final SingleFlight<String, String> inFlightChecks = new SingleFlight<>();
+    private final GuardedHttpSender recordSender = new GuardedHttpSender();
+    private volatile CheckMetrics metrics;
+    private volatile Path vocabularySnapshotPath;
+    private volatile String vocabularyPin = VocabularySnapshot.FOLLOW_LATEST;
+    private volatile CompiledPatterns compiledPatterns;
+    private static final Logger logger = LogManager.getLogger(MetadataUsesCessdaPids.class);
 
     public MetadataUsesCessdaPids() {
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .followRedirects(HttpClient.Redirect.NORMAL)
-                .build();
-        this.mapper = new ObjectMapper();
-        this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        this.documentBuilderFactory.setNamespaceAware(true);
-        this.xPathFactory = XPathFactory.newInstance();
-        logger.setLevel(Level.INFO);
+        this(DEFAULT_OAI_PMH_ENDPOINT, DEFAULT_PID_VOCAB_URL);
     }
 
     /**
-     * Checks whether a CESSDA record contains an approved PID schema.
+     * Create a checker against other upstream endpoints, e.g. a mirror or a
+     * local stub for offline load tests.
      *
-     * @param url The CESSDA detail URL (e.g.
-     *            https://datacatalogue.cessda.eu/detail/abc123?lang=en)
-     * @return "pass", "fail", or "indeterminate"
+     * @param oaiPmhEndpoint - the OAI-PMH base URL, without query parameters
+     * @param pidVocabUrl    - the URL of the PID vocabulary JSON
      */
-    public String containsApprovedPid(String url) {
-        try {
-            String recordId = extractRecordIdentifier(url);
+    public MetadataUsesCessdaPids(String oaiPmhEndpoint, String pidVocabUrl) {
+        this(oaiPmhEndpoint, pidVocabUrl, SharedHttpClient.get());
+    }
 
-            Document doc = fetchAndParseDocument(OAI_PMH_BASE + recordId);
-            return checkDocumentForApprovedPid(doc, recordId);
+    /**
+     * Create a checker that uses its own HTTP client, e.g. one built with
+     * {@link SharedHttpClient#newClient(Executor)}.
+     *
+     * @param oaiPmhEndpoint - the OAI-PMH base URL, without query parameters
+     * @param pidVocabUrl    - the URL of the PID vocabulary JSON
+     * @param httpClient     - the client; its executor also runs the parsing
+     *                       stages of {@link #containsApprovedPidAsync(String)}
+     */
+    MetadataUsesCessdaPids(String oaiPmhEndpoint, String pidVocabUrl, HttpClient httpClient) {
+        this.oaiPmhEndpoint = oaiPmhEndpoint;
+        this.oaiPmhBase = oaiPmhEndpoint + GET_RECORD_QUERY;
+        this.pidVocabUrl = pidVocabUrl;
+        this.httpClient = httpClient;
+        this.asyncExecutor = httpClient.executor().orElseGet(Executors::newVirtualThreadPerTaskExecutor);
+        this.mapper = new ObjectMapper();
+        this.parsingContext = new DdiParsingContext();
+        this.idNoStreamExtractor = new IdNoStreamExtractor();
+        this.pidVocabulary = new PidVocabulary(this::loadVocabulary, VocabularySnapshot.bundled());
+        // A composite without member registries records nothing until setMeterRegistry is called
+        this.metrics = new CheckMetrics(new CompositeMeterRegistry(), pidVocabulary, inFlightChecks, recordSender,
+            resultCache::get);
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            logSevere("Error processing document: " + e.getMessage());
-        } catch (Exception e) {
-            logSevere("Error: " + e.getMessage());
-        }
-        return RESULT_INDETERMINATE;
+    /**
+     * Select between streaming (StAX) extraction of the IDNo entries and the
+     * DOM path used by {@link #fetchAndParseDocument(String)}.
+     *
+     * @param streamingExtraction true to stream the response (the default),
+     *                            false to build a DOM document
+     */
+    public void setStreamingExtraction(boolean streamingExtraction) {
+        this.streamingExtraction = streamingExtraction;
     }
 
     /**
-     * Extract the record identifier from the CESSDA detail URL.
-     * 
-     * @param url - the CESSDA detail URL
-     * @return the record identifier
+     * Select the OAI-PMH metadata formats records are read in with streaming
+     * extraction. The cheapest format the repository offers is read first;
+     * more expensive ones are only read if it yields no approved PID, so the
+     * outcome is that of the most expensive format. Defaults to oai_ddi25
+     * only.
+     *
+     * @param metadataPrefixes - e.g. oai_dc, oai_datacite, oai_ddi32, oai_ddi25
+     * @throws IllegalArgumentException - if a prefix has no extractor, or none
+     *                                  is given
      */
-    private String extractRecordIdentifier(String url) {
-        if (!url.contains(DETAIL_SEGMENT)) {
-            throw new IllegalArgumentException("URL must contain '" + DETAIL_SEGMENT + "': " + url);
+    public void setMetadataFormats(List<String> metadataPrefixes) {
+        this.formatPolicy = new MetadataFormatPolicy(
+                metadataPrefixes.stream().map(PidSourceExtractor::forPrefix).toList());
+    }
+
+    /**
+     * Keep the vocabulary on disk: a snapshot saved by an earlier run is served
+     * at once, instead of the bundled fallback while the first fetch runs, and
+     * each vocabulary fetched is saved for the next run. Refreshes send the
+     * snapshot's validators, so an unchanged vocabulary costs a 304. A saved
+     * snapshot of another version than the pinned one is not served; set the
+     * version first.
+     *
+     * @param path - the snapshot file, or null to keep the vocabulary in memory
+     *             only (the default)
+     */
+    public void setVocabularySnapshotPath(Path path) {
+        this.vocabularySnapshotPath = path;
+        if (path == null) {
+            return;
         }
-        String cleanUrl = url.split("\\?")[0];
-        String id = cleanUrl.substring(cleanUrl.indexOf(DETAIL_SEGMENT) + DETAIL_SEGMENT.length());
-        if (id.isEmpty()) {
-            throw new IllegalArgumentException("No record identifier in URL: " + url);
+        try {
+            VocabularySnapshot saved = VocabularySnapshot.load(path);
+            String pin = vocabularyPin;
+            if (saved != null && (VocabularySnapshot.isFollowingLatest(pin) || pin.equals(saved.number()))) {
+                pidVocabulary.seed(saved);
+            }
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable PID vocabulary snapshot {}: {}", path, e.getMessage());
         }
-        return id;
     }
 
     /**
-     * Fetch the OAI-PMH GetRecord XML and parse to extract the DDI codeBook
-     * element.
-     * 
-     * @param url - the OAI-PMH GetRecord URL
-     * @return Document - the parsed DDI document
-     * @throws IOException          - if an I/O error occurs
-     * @throws InterruptedException - if the operation is interrupted
+     * Pin the vocabulary version, or follow the newest one the vocabulary
+     * service lists. A refresh that does not offer the pinned version fails,
+     * and the vocabulary already loaded stays in use.
+     *
+     * @param version - a version number, e.g. 1.0.0, or
+     *                {@link VocabularySnapshot#FOLLOW_LATEST} (the default)
      */
-    public Document fetchAndParseDocument(String url) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Accept", "application/xml, text/xml, */*")
-                .header("User-Agent", "Java-HttpClient")
-                .timeout(Duration.ofSeconds(30))
-                .GET()
-                .build();
+    public void setVocabularyVersion(String version) {
+        this.vocabularyPin = VocabularySnapshot.isFollowingLatest(version) ? VocabularySnapshot.FOLLOW_LATEST
+                : version.trim();
+    }
 
-        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    /**
+     * The version of the vocabulary results are currently decided with.
+     *
+     * @return the vocabulary version, see {@link VocabularySnapshot#version()}
+     */
+    public String getVocabularyVersion() {
+        return pidVocabulary.version();
+    }
 
-        if (response.statusCode() != 200)
-            throw new IOException("Failed to fetch document: HTTP " + response.statusCode());
-        if (response.body() == null || response.body().length == 0)
-            throw new IOException("Empty response body");
+    /**
+     * Cache results per record identifier. Only "pass" and "fail" are cached.
+     *
+     * @param resultCache the cache to use, or null to disable caching (the
+     *                    default)
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache.set(resultCache);
+    }
 
-        try {
-            logInfo("Parsing XML response from OAI-PMH endpoint at: " + url);
-            DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-            Document oaiDoc = builder.parse(new ByteArrayInputStream(response.body()));
+    /**
+     * @return the result cache, or null if caching is disabled
+     */
+    public ResultCache getResultCache() {
+        return resultCache.get();
+    }
 
-            XPath xpath = createXPath();
-            Node codeBookNode = (Node) xpath.evaluate("//ddi:codeBook", oaiDoc, XPathConstants.NODE);
-            if (codeBookNode == null)
-                throw new IllegalArgumentException("No DDI codeBook found");
+    /**
+     * Persist results on disk and reuse them across restarts. Only "pass" and
+     * "fail" are stored.
+     *
+     * @param resultStore the store to use, or null to disable it (the default)
+     */
+    public void setResultStore(ResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
 
-            Document ddiDoc = builder.newDocument();
-            ddiDoc.appendChild(ddiDoc.importNode(codeBookNode, true));
-            return ddiDoc;
+    /**
+     * @return the result store, or null if results are not persisted
+     */
+    public ResultStore getResultStore() {
+        return resultStore;
+    }
 
-        } catch (Exception e) {
-            logSevere("Failed to parse XML. Preview: "
-                    + new String(response.body(), 0, Math.min(500, response.body().length), StandardCharsets.UTF_8));
-            throw new IOException("Failed to parse XML response", e);
+    /**
+     * Keep the raw GetRecord payloads on disk, so records assessed again, e.g.
+     * after the PID vocabulary changed, are re-parsed without downloading them
+     * again.
+     *
+     * @param payloadCache the cache to use, or null to disable it (the default)
+     */
+    public void setPayloadCache(PayloadCache payloadCache) {
+        this.payloadCache = payloadCache;
+    }
+
+    /**
+     * @return the payload cache, or null if payloads are not cached
+     */
+    public PayloadCache getPayloadCache() {
+        return payloadCache;
+    }
+
+    /**
+     * Resolve PIDs to records with an index kept in a file. The file is loaded
+     * now and saved after every completed harvest, which keeps it up to date.
+     * When another process, e.g. a {@code --harvest} run, replaces the file,
+     * it is loaded again before the next PID is resolved.
+     *
+     * @param path - the index file; an index is started if it does not exist
+     * @throws IOException - if the file exists but cannot be loaded
+     */
+    public void setPidIndexPath(Path path) throws IOException {
+        pidIndexReload.lock();
+        try {
+            this.pidIndexModified = modifiedTimeOf(path);
+            this.pidIndex = PidIndex.load(path);
+            this.pidIndexPath = path;
+        } finally {
+            pidIndexReload.unlock();
         }
+        logger.info("Loaded PID index with {} PIDs from {}", pidIndex.size(), path);
     }
 
     /**
-     * Create an XPath instance with DDI namespace context.
-     * 
-     * @return XPath - the configured XPath with DDI namespace context
+     * The PID index, loaded again first if its file has changed since it was
+     * loaded or saved. While another thread is loading it, the index loaded
+     * before is used.
+     *
+     * @return the index
      */
-    private XPath createXPath() {
-        XPath xpath = xPathFactory.newXPath();
-        xpath.setNamespaceContext(new NamespaceContext() {
-            public String getNamespaceURI(String prefix) {
-                return "ddi".equals(prefix) ? DDI_NAMESPACE : null;
+    private PidIndex currentPidIndex() {
+        Path path = pidIndexPath;
+        if (path == null || !pidIndexReload.tryLock()) {
+            return pidIndex;
+        }
+        try {
+            FileTime modified = modifiedTimeOf(path);
+            if (modified != null && !modified.equals(pidIndexModified)) {
+                // Recorded first, so a file that cannot be loaded is not tried again until it changes
+                pidIndexModified = modified;
+                pidIndex = PidIndex.load(path);
+                logger.info("Reloaded PID index with {} PIDs from {}", pidIndex.size(), path);
             }
+        } catch (IOException e) {
+            logger.warn("Failed to reload PID index from {}: {}", path, e.getMessage());
+        } finally {
+            pidIndexReload.unlock();
+        }
+        return pidIndex;
+    }
 
-            public String getPrefix(String namespaceURI) {
-                return null;
-            }
+    private static FileTime modifiedTimeOf(Path path) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
 
-            public Iterator<String> getPrefixes(String namespaceURI) {
-                return null;
-            }
-        });
-        return xpath;
+    /**
+     * @return the index resolving PIDs to the records listing them
+     */
+    public PidIndex getPidIndex() {
+        return pidIndex;
     }
 
     /**
-     * Check the DDI document for approved PID schemas.
-     * 
-     * @param ddiDoc   The DDI document
-     * @param recordId The record identifier (for logging)
+     * Register this checker's meters with a registry, e.g. Spring Boot's. Until
+     * then meters are not reported anywhere; in particular nothing is
+     * registered with the Micrometer global registry, so several checkers in
+     * one JVM do not compete for the same meter names.
+     *
+     * @param registry - the registry to report to
+     */
+    public void setMeterRegistry(MeterRegistry registry) {
+        this.metrics = new CheckMetrics(registry, pidVocabulary, inFlightChecks, recordSender,
+            resultCache::get);
+    }
+
+    /**
+     * Hedge OAI-PMH record fetches: a fetch that is slower than the policy's
+     * latency percentile is sent again and the first response wins.
+     *
+     * @param hedgePolicy - when to hedge, or null to disable hedging (the
+     *                    default)
+     */
+    public void setHedgePolicy(GuardedHttpSender.HedgePolicy hedgePolicy) {
+        recordSender.setHedgePolicy(hedgePolicy);
+    }
+
+    /**
+     * Replace the circuit breaker guarding OAI-PMH record fetches. While it is
+     * open, checks are "indeterminate" without contacting the endpoint.
+     *
+     * @param circuitBreaker - the breaker to use
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        recordSender.setCircuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * Replace the limiter bounding concurrent OAI-PMH record fetches. The
+     * limit adapts to the load the endpoint accepts.
+     *
+     * @param concurrencyLimiter - the limiter to use
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        recordSender.setConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    /**
+     * Set how OAI-PMH record fetches answered with 429 or 503 are retried.
+     *
+     * @param retryPolicy - the policy to use
+     */
+    public void setRetryPolicy(GuardedHttpSender.RetryPolicy retryPolicy) {
+        recordSender.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * @return hedging, retry, concurrency limit and circuit breaker counters
+     *         for OAI-PMH record fetches
+     */
+    public GuardedHttpSender.Stats getRecordFetchStats() {
+        return recordSender.stats();
+    }
+
+    /**
+     * @return how many checks ran, and how many shared the result of a
+     *         concurrent check of the same record
+     */
+    public SingleFlight.Stats getCoalescingStats() {
+        return inFlightChecks.stats();
+    }
+
+    /**
+     * Checks whether a CESSDA record contains an approved PID schema.
+     * Concurrent checks of the same record are coalesced: while one is in
+     * flight, the others wait for and share its result.
+     *
+     * @param url The CESSDA detail URL (e.g.
+     *            https://datacatalogue.cessda.eu/detail/abc123?lang=en), or a
+     *            PID of the record found in the PID index (e.g.
+     *            https://doi.org/10.1000/182)
      * @return "pass", "fail", or "indeterminate"
      */
-    private String checkDocumentForApprovedPid(Document ddiDoc, String recordId) {
+    public String containsApprovedPid(String url) {
+        String recordId;
         try {
-            XPath xpath = createXPath();
-            NodeList idNoNodes = (NodeList) xpath.evaluate(DDI_SEARCH_PATH, ddiDoc, XPathConstants.NODESET);
+            recordId = resolveRecordIdentifier(url);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown resource identifier: {}", e.getMessage());
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.CAUSE_INVALID_URL);
+            return RESULT_INDETERMINATE;
+        }
+        try {
+            return inFlightChecks.execute(recordId, () -> checkRecord(recordId));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted waiting for a concurrent check of record: {}", recordId);
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.CAUSE_INTERRUPTED);
+            return RESULT_INDETERMINATE;
+        }
+    }
 
-            if (idNoNodes == null || idNoNodes.getLength() == 0) {
-                logInfo("No IDNo elements found in DDI document for record: " + recordId);
-                return RESULT_FAIL;
+    /**
+     * Check a record, using the result cache and store if they are set.
+     *
+     * @param recordId - the record identifier
+     * @return "pass", "fail", or "indeterminate"
+     */
+    private String checkRecord(String recordId) {
+        try {
+            KnownResult known = lookUpResult(recordId);
+            if (known.result() != null) {
+                return known.result();
             }
-            Set<String> approvedSchemas = getApprovedPidSchemas();
-            for (int i = 0; i < idNoNodes.getLength(); i++) {
-                Node idNoNode = idNoNodes.item(i);
-                String agency = idNoNode.getAttributes().getNamedItem("agency").getNodeValue();
-                if (approvedSchemas.contains(agency)) {
-                    logInfo("Found approved PID schema '" + agency + "' in record: " + recordId);
-                    return RESULT_PASS;
-                }
+
+            Decision decision;
+            String datestamp = null;
+            if (streamingExtraction) {
+                Set<String> approvedSchemas = getApprovedPidSchemas();
+                OaiPmhHarvester.HarvestedRecord oaiRecord = fetchCheapestRecord(recordId, approvedSchemas,
+                        known.currentDatestamp());
+                datestamp = oaiRecord.datestamp();
+                pidIndex.add(recordId, oaiRecord.idNos());
+                decision = decideEntries(oaiRecord.idNos(), approvedSchemas, recordId);
+                metrics.recordOutcome(decision.result(), CheckMetrics.causeOf(decision.result(), oaiRecord.idNos()));
+            } else {
+                Document doc = fetchAndParseDocument(oaiPmhBase + recordId, known.currentDatestamp());
+                decision = decideDocument(doc, recordId, pidIndex);
             }
-            logInfo("No approved PID schemas found in record: " + recordId);
-            return RESULT_FAIL;
+
+            rememberResult(recordId, decision, datestamp, resultCache.get());
+            return decision.result();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted checking record {}: {}", recordId, e.getMessage());
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.causeOf(e));
+            commitDecision(recordId, RESULT_INDETERMINATE, CheckMetrics.causeOf(e), 0, null);
         } catch (Exception e) {
-            logSevere("Error checking document for approved PID: " + e.getMessage());
-            return RESULT_INDETERMINATE;
+            logger.warn("Check of record {} is indeterminate: {}", recordId, e.getMessage());
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.causeOf(e));
+            commitDecision(recordId, RESULT_INDETERMINATE, CheckMetrics.causeOf(e), 0, null);
         }
+        return RESULT_INDETERMINATE;
     }
 
     /**
-     * Fetch and cache the approved PID schemas from the CESSDA vocabulary.
-     * 
-     * @return Set of approved PID schema notations
+     * Asynchronous variant of {@link #containsApprovedPid(String)}. The record
+     * is fetched with {@link HttpClient#sendAsync}, so no thread waits on the
+     * network; the response is parsed on the HTTP client's executor once it
+     * has arrived. Concurrent checks of the same record are coalesced as in
+     * {@link #containsApprovedPid(String)}. The returned future always
+     * completes normally.
+     *
+     * @param url The CESSDA detail URL (e.g.
+     *            https://datacatalogue.cessda.eu/detail/abc123?lang=en), or a
+     *            PID of the record found in the PID index
+     * @return a future of "pass", "fail", or "indeterminate"
      */
-    private Set<String> getApprovedPidSchemas() {
-        if (cachedApprovedSchemas != null && !cachedApprovedSchemas.isEmpty()) {
-            return cachedApprovedSchemas;
+    public CompletableFuture<String> containsApprovedPidAsync(String url) {
+        String recordId;
+        try {
+            recordId = resolveRecordIdentifier(url);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown resource identifier: {}", e.getMessage());
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.CAUSE_INVALID_URL);
+            return CompletableFuture.completedFuture(RESULT_INDETERMINATE);
         }
 
-        synchronized (MetadataUsesCessdaPids.class) {
-            if (cachedApprovedSchemas != null && !cachedApprovedSchemas.isEmpty()) {
-                return cachedApprovedSchemas;
-            }
+        return inFlightChecks.executeAsync(recordId, () -> checkRecordAsync(recordId));
+    }
 
-            logInfo("Fetching approved PID schemas from CESSDA vocabulary...");
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(PID_VOCAB_URL))
-                        .header("Accept", "application/json")
-                        .timeout(Duration.ofSeconds(20))
-                        .GET()
-                        .build();
-
-                HttpResponse<String> response = httpClient.send(request,
-                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-
-                if (response.statusCode() != 200) {
-                    logSevere("PID vocabulary API returned " + response.statusCode());
-                    return defaultPidSchemas();
-                }
+    /**
+     * Check a record asynchronously, using the result cache and store if they
+     * are set.
+     *
+     * @param recordId - the record identifier
+     * @return a future of "pass", "fail", or "indeterminate" that always
+     *         completes normally
+     */
+    private CompletableFuture<String> checkRecordAsync(String recordId) {
+        // A cache lookup may revalidate by fetching the record header, and a store lookup reads
+        // the disk, so they run off the caller's thread
+        CompletableFuture<KnownResult> known = resultCache.get() == null && resultStore == null
+                ? CompletableFuture.completedFuture(KnownResult.NONE)
+                : CompletableFuture.supplyAsync(() -> lookUpResult(recordId), asyncExecutor);
 
-                JsonNode root = mapper.readTree(response.body());
-                Set<String> schemas = new HashSet<>();
-
-                JsonNode versions = root.path("versions");
-                if (versions.isArray() && !versions.isEmpty()) {
-                    JsonNode firstVersion = versions.get(0);
-                    JsonNode concepts = firstVersion.path("concepts");
-
-                    if (concepts.isArray()) {
-                        for (JsonNode titleNode : concepts) {
-                            String value = titleNode.path("title").asText(null);
-                            if (value != null && !value.isBlank()) {
-                                value = value.trim();
-                                logInfo("Found PID schema entry: " + value);
-                                schemas.add(value);
-                            }
-                        }
-                    }
-                }
+        return known
+                .thenCompose(hit -> hit.result() != null
+                        ? CompletableFuture.completedFuture(hit.result())
+                        : fetchAndCheckAsync(recordId, hit.currentDatestamp()))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.warn("Check of record {} is indeterminate: {}", recordId, cause.getMessage());
+                    String causeTag = cause instanceof Exception exception
+                            ? CheckMetrics.causeOf(exception)
+                            : CheckMetrics.CAUSE_ERROR;
+                    metrics.recordOutcome(RESULT_INDETERMINATE, causeTag);
+                    commitDecision(recordId, RESULT_INDETERMINATE, causeTag, 0, null);
+                    return RESULT_INDETERMINATE;
+                });
+    }
 
-                if (schemas.isEmpty()) {
-                    logSevere("No valid PID schemas found in vocabulary response");
-                    return defaultPidSchemas();
-                }
+    /**
+     * Fetch a record asynchronously and check it.
+     *
+     * @param recordId         - the record identifier
+     * @param currentDatestamp - the record's current datestamp if it was just
+     *                         read, so an older cached payload is not used,
+     *                         or null
+     * @return a future of "pass" or "fail", completed exceptionally on error
+     */
+    private CompletableFuture<String> fetchAndCheckAsync(String recordId, String currentDatestamp) {
+        if (!streamingExtraction) {
+            String url = oaiPmhBase + recordId;
+            return readPayloadAsync(url, currentDatestamp, body -> {
+                Decision decision = decideDocument(parseDocument(body, url), recordId, pidIndex);
+                rememberResult(recordId, decision, null, resultCache.get());
+                return decision.result();
+            });
+        }
+
+        Set<String> approvedSchemas = getApprovedPidSchemas();
+        Predicate<IdNoEntry> approved = isApprovedPid(approvedSchemas);
+        MetadataFormatPolicy policy = formatPolicy;
+        // Listing the repository's formats blocks, so the first check runs it off the caller's thread
+        CompletableFuture<List<PidSourceExtractor>> formats = policy.isResolved()
+                ? CompletableFuture.completedFuture(policy.formats(this::listMetadataFormats))
+                : CompletableFuture.supplyAsync(() -> policy.formats(this::listMetadataFormats), asyncExecutor);
+        return formats
+                .thenCompose(extractors -> fetchRecordAsync(recordId, extractors, 0, approved, currentDatestamp))
+                .thenApply(oaiRecord -> {
+                    pidIndex.add(recordId, oaiRecord.idNos());
+                    Decision decision = decideEntries(oaiRecord.idNos(), approvedSchemas, recordId);
+                    metrics.recordOutcome(decision.result(),
+                            CheckMetrics.causeOf(decision.result(), oaiRecord.idNos()));
+                    rememberResult(recordId, decision, oaiRecord.datestamp(), resultCache.get());
+                    return decision.result();
+                });
+    }
 
-                cachedApprovedSchemas = Collections.unmodifiableSet(schemas);
-                logInfo("Fetched " + schemas.size() + " approved PID schemas: " + cachedApprovedSchemas);
-                return cachedApprovedSchemas;
+    /**
+     * Fetch a record asynchronously in the formats from {@code index} on,
+     * stopping at the first that yields an approved PID.
+     *
+     * @param recordId - the record identifier
+     * @param formats  - the formats, cheapest first
+     * @param index    - the format to fetch now
+     * @param approved - accepts approved PIDs
+     * @param currentDatestamp - the record's current datestamp, or null
+     * @return a future of the record read, completed exceptionally on error
+     */
+    private CompletableFuture<OaiPmhHarvester.HarvestedRecord> fetchRecordAsync(String recordId,
+            List<PidSourceExtractor> formats, int index, Predicate<IdNoEntry> approved, String currentDatestamp) {
+        PidSourceExtractor extractor = formats.get(index);
+        CompletableFuture<OaiPmhHarvester.HarvestedRecord> attempt = readRecordStreamAsync(
+                getRecordUrl(extractor, recordId), currentDatestamp, in -> extractor.extractRecord(in, approved));
+        if (index == formats.size() - 1) {
+            return attempt;
+        }
+        return attempt.handle((oaiRecord, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause == null && isSettled(oaiRecord, approved)) {
+                return CompletableFuture.completedFuture(oaiRecord);
+            } else if (cause != null && !(cause instanceof PidSourceExtractor.FormatUnavailableException)) {
+                return CompletableFuture.<OaiPmhHarvester.HarvestedRecord>failedFuture(cause);
+            }
+            logger.debug("No approved PID in {} for record {}, reading {}", extractor.metadataPrefix(), recordId,
+                    formats.get(index + 1).metadataPrefix());
+            return fetchRecordAsync(recordId, formats, index + 1, approved, currentDatestamp);
+        }).thenCompose(next -> next);
+    }
 
-            } catch (Exception e) {
-                Thread.currentThread().interrupt();
-                logSevere("Failed to fetch PID vocabulary: " + e.getMessage());
-                return defaultPidSchemas();
+    /**
+     * Check a DDI document read from local storage, e.g. by
+     * {@link OfflineAssessor}. Uses the same approved PID logic as
+     * {@link #containsApprovedPid(String)}, without fetching the record, and
+     * honours {@link #setStreamingExtraction(boolean)}.
+     *
+     * @param in     - the document: a DDI codeBook, bare or inside an OAI-PMH
+     *               response
+     * @param source - identifies the document (for logging)
+     * @return "pass", "fail", or "indeterminate"
+     */
+    public String checkLocalDocument(InputStream in, String source) {
+        try {
+            if (streamingExtraction) {
+                Set<String> approvedSchemas = getApprovedPidSchemas();
+                List<IdNoEntry> entries = idNoStreamExtractor.extract(in,
+                        isApprovedPid(approvedSchemas));
+                Decision decision = decideEntries(entries, approvedSchemas, source);
+                metrics.recordOutcome(decision.result(), CheckMetrics.causeOf(decision.result(), entries));
+                return decision.result();
             }
+            return decideDocument(parseDocument(new ContentEncoding.EncodedBody(in.readAllBytes(), null), source),
+                    source, null).result();
+        } catch (IOException e) {
+            logger.warn("Check of {} is indeterminate: {}", source, e.getMessage());
+            metrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.causeOf(e));
+            commitDecision(source, RESULT_INDETERMINATE, CheckMetrics.causeOf(e), 0, null);
+            return RESULT_INDETERMINATE;
         }
     }
 
     /**
-     * Default PID schemas if vocabulary fetch fails.
-     * 
-     * @return Set of default PID schema notations
+     * A result looked up before checking a record.
+     *
+     * @param result           - "pass" or "fail", or null if the record has to
+     *                         be checked
+     * @param currentDatestamp - the record's datestamp read while revalidating
+     *                         a cached result, or null if it was not read
      */
-    private static Set<String> defaultPidSchemas() {
-        return Set.of("DOI", "Handle", "URN", "ARK");
+    private record KnownResult(String result, String currentDatestamp) {
+        static final KnownResult NONE = new KnownResult(null, null);
     }
 
     /**
-     * Log info messages, escaping % characters.
-     * 
-     * @param msg The message to log
+     * Look up a reusable result in the cache, then in the store. A result
+     * found in the store is also put in the cache.
+     *
+     * @param recordId - the record identifier
+     * @return the result, and the datestamp read if a cached result was
+     *         revalidated
      */
-    static void logInfo(String msg) {
-        if (logger.isLoggable(Level.INFO)) {
-            logger.info(msg.replace("%", "%%"));
+    private KnownResult lookUpResult(String recordId) {
+        ResultCache cache = resultCache.get();
+        AtomicReference<String> revalidated = new AtomicReference<>();
+        if (cache != null) {
+            String cached = cache.get(recordId, pidVocabulary.version(), id -> {
+                String datestamp = fetchDatestamp(id);
+                revalidated.set(datestamp);
+                return datestamp;
+            });
+            if (cached != null) {
+                logger.debug("Using cached result '{}' for record: {}", cached, recordId);
+                return new KnownResult(cached, null);
+            }
         }
+        ResultStore store = resultStore;
+        if (store != null) {
+            try {
+                String stored = store.reusableOutcome(recordId, pidVocabulary);
+                if (stored != null) {
+                    logger.debug("Using stored result '{}' for record: {}", stored, recordId);
+                    if (cache != null) {
+                        cache.put(recordId, stored, null, pidVocabulary.version());
+                    }
+                    return new KnownResult(stored, null);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to read stored result for {}: {}", recordId, e.getMessage());
+            }
+        }
+        return new KnownResult(null, revalidated.get());
     }
 
     /**
-     * Log severe messages, escaping % characters.
-     * 
-     * @param msg The message to log
+     * Put a decided result in the cache and the store, if they are set.
+     *
+     * @param recordId  - the record identifier
+     * @param decision  - the decision
+     * @param datestamp - the OAI-PMH header datestamp of the checked record, or
+     *                  null if unknown
+     * @param cache     - the cache to put the result in, or null
      */
-    static void logSevere(String msg) {
-        if (logger.isLoggable(Level.SEVERE)) {
-            logger.severe(msg.replace("%", "%%"));
+    private void rememberResult(String recordId, Decision decision, String datestamp, ResultCache cache) {
+        String vocabularyVersion = pidVocabulary.version();
+        if (cache != null) {
+            cache.put(recordId, decision.result(), datestamp, vocabularyVersion);
+        }
+        ResultStore store = resultStore;
+        if (store != null) {
+            try {
+                store.put(new ResultStore.Entry(recordId, decision.result(), decision.matchedAgency(),
+                        vocabularyVersion, Instant.now()));
+            } catch (IOException e) {
+                logger.error("Failed to store result for {}: {}", recordId, e.getMessage());
+            }
         }
     }
 
     /**
-     * Main method for command-line testing.
-     * 
-     * @param args Command-line arguments (expects a single CESSDA detail URL)
+     * Result of checking a single harvested record.
+     *
+     * @param identifier        the OAI-PMH record identifier
+     * @param datestamp         the OAI-PMH header datestamp
+     * @param result            "pass" or "fail"
+     * @param vocabularyVersion the version of the vocabulary the result was
+     *                          decided with
      */
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            logSevere("Usage: java MetadataUsesCessdaPids <url>");
-            System.exit(1);
-        }
+    public record HarvestResult(String identifier, String datestamp, String result, String vocabularyVersion) {
+    }
+
+    /**
+     * Harvest the whole catalogue with OAI-PMH ListRecords and check every
+     * record as it streams in. The next page is fetched while records of the
+     * current page are still being checked; deleted records are skipped.
+     *
+     * @param sink - receives each result, in harvest order, as soon as it is
+     *             known
+     * @return the number of records checked
+     * @throws IOException          - if a page cannot be fetched or parsed
+     * @throws InterruptedException - if the harvest is interrupted
+     */
+    public long harvestApprovedPids(Consumer<HarvestResult> sink) throws IOException, InterruptedException {
+        pidVocabulary.awaitFirstLoad(VOCABULARY_WARM_UP);
+        Set<String> approvedSchemas = getApprovedPidSchemas();
+        String vocabularyVersion = getVocabularyVersion();
+        OaiPmhHarvester harvester = new OaiPmhHarvester(httpClient, recordSender.withoutHedging(), oaiPmhEndpoint,
+                METADATA_PREFIX);
+        long[] checked = { 0 };
+        harvester.harvest(harvested -> {
+            if (harvested.deleted()) {
+                logger.debug("Skipping deleted record: {}", harvested.identifier());
+                pidIndex.remove(harvested.identifier());
+                return;
+            }
+            sink.accept(checkHarvested(harvested, approvedSchemas, vocabularyVersion));
+            checked[0]++;
+        });
+        return checked[0];
+    }
 
-        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids();
+    /**
+     * Harvest only the records created, changed or deleted since a datestamp
+     * (OAI-PMH ListRecords with {@code from}) and check each one as it streams
+     * in. Deleted records are reported with the result "deleted".
+     *
+     * @param from - the datestamp of the previous run (inclusive), or null to
+     *             harvest the whole catalogue
+     * @param sink - receives each result, in harvest order, as soon as it is
+     *             known
+     * @return the {@code from} of the next run: the repository's
+     *         {@code responseDate} for the first page, or the local time the
+     *         harvest started if the repository gave none, at the granularity
+     *         of the repository's datestamps. Records changed while the harvest
+     *         was running are therefore harvested again rather than skipped.
+     * @throws IOException          - if a page cannot be fetched or parsed
+     * @throws InterruptedException - if the harvest is interrupted
+     */
+    public String reassessChangedSince(String from, Consumer<HarvestResult> sink)
+            throws IOException, InterruptedException {
+        pidVocabulary.awaitFirstLoad(VOCABULARY_WARM_UP);
+        Set<String> approvedSchemas = getApprovedPidSchemas();
+        String vocabularyVersion = getVocabularyVersion();
+        OaiPmhHarvester harvester = new OaiPmhHarvester(httpClient, recordSender.withoutHedging(), oaiPmhEndpoint,
+                METADATA_PREFIX);
+        String started = DateTimeFormatter.ISO_INSTANT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        String[] sample = { from };
+        harvester.harvest(from, harvested -> {
+            if (sample[0] == null) {
+                sample[0] = harvested.datestamp();
+            }
+            if (harvested.deleted()) {
+                pidIndex.remove(harvested.identifier());
+                sink.accept(new HarvestResult(harvested.identifier(), harvested.datestamp(), RESULT_DELETED,
+                        vocabularyVersion));
+            } else {
+                sink.accept(checkHarvested(harvested, approvedSchemas, vocabularyVersion));
+            }
+        });
+        String responseDate = harvester.responseDate();
+        return HarvestCheckpoint.atGranularityOf(responseDate != null ? responseDate : started, sample[0]);
+    }
+
+    /**
+     * Check a harvested record, remember the result and index its PIDs.
+     *
+     * @param harvested         - the harvested record, not deleted
+     * @param approvedSchemas   - the approved PID schemas
+     * @param vocabularyVersion - the version of the vocabulary they come from
+     * @return the result
+     */
+    private HarvestResult checkHarvested(OaiPmhHarvester.HarvestedRecord harvested, Set<String> approvedSchemas,
+            String vocabularyVersion) {
+        Decision decision = decideEntries(harvested.idNos(), approvedSchemas, harvested.identifier());
+        metrics.recordOutcome(decision.result(), CheckMetrics.causeOf(decision.result(), harvested.idNos()));
+        rememberResult(harvested.identifier(), decision, harvested.datestamp(), null);
+        pidIndex.put(harvested.identifier(), harvested.idNos());
+        return new HarvestResult(harvested.identifier(), harvested.datestamp(), decision.result(),
+                vocabularyVersion);
+    }
+
+    /**
+     * The record a resource identifier names: a CESSDA detail URL, or a PID
+     * found in the PID index.
+     *
+     * @param identifier - the resource identifier
+     * @return the record identifier
+     * @throws IllegalArgumentException - if the identifier is neither
+     */
+    private String resolveRecordIdentifier(String identifier) {
+        if (identifier.contains(DETAIL_SEGMENT)) {
+            return extractRecordIdentifier(identifier);
+        }
+        String recordId = currentPidIndex().resolve(identifier);
+        if (recordId == null) {
+            throw new IllegalArgumentException("Neither a detail URL nor an indexed PID: " + identifier);
+        }
+        logger.debug("Resolved {} to record {}", identifier, recordId);
+        return recordId;
+    }
+
+    /**
+     * Extract the record identifier from the CESSDA detail URL.
+     * 
+     * @param url - the CESSDA detail URL
+     * @return the record identifier
+     */
+    private String extractRecordIdentifier(String url) {
+        if (!url.contains(DETAIL_SEGMENT)) {
+            throw new IllegalArgumentException("URL must contain '" + DETAIL_SEGMENT + "': " + url);
+        }
+        String cleanUrl = url.split("\\?")[0];
+        String id = cleanUrl.substring(cleanUrl.indexOf(DETAIL_SEGMENT) + DETAIL_SEGMENT.length());
+        if (id.isEmpty()) {
+            throw new IllegalArgumentException("No record identifier in URL: " + url);
+        }
+        return id;
+    }
+
+    /**
+     * Fetch the OAI-PMH GetRecord XML and parse to extract the DDI codeBook
+     * element.
+     * 
+     * @param url - the OAI-PMH GetRecord URL
+     * @return Document - the parsed DDI document
+     * @throws IOException          - if an I/O error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    public Document fetchAndParseDocument(String url) throws IOException, InterruptedException {
+        return fetchAndParseDocument(url, null);
+    }
+
+    /**
+     * Fetch and parse a GetRecord response, not using a cached payload stored
+     * with another datestamp than the record's current one.
+     *
+     * @param url              - the OAI-PMH GetRecord URL
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @return the parsed DDI document
+     * @throws IOException          - if an I/O error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    private Document fetchAndParseDocument(String url, String currentDatestamp)
+            throws IOException, InterruptedException {
+        PayloadCache cache = payloadCache;
+        ContentEncoding.EncodedBody cached = cachedPayload(cache, url, currentDatestamp);
+        if (cached != null) {
+            return parseDocument(cached, url);
+        }
+        CheckMetrics stageMetrics = metrics;
+        CheckEvents.Fetch event = new CheckEvents.Fetch();
+        event.begin();
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = recordSender.send(httpClient, newXmlRequest(url),
+                HttpResponse.BodyHandlers.ofByteArray(), MetadataUsesCessdaPids::discardBody);
+        stageMetrics.recordStage(CheckMetrics.STAGE_FETCH, start);
+        commitFetch(event, url, response);
+        ContentEncoding.EncodedBody body = checkedBody(response);
+        Document document = parseDocument(body, url);
+        storePayload(cache, url, body);
+        return document;
+    }
+
+    /**
+     * Reads a buffered response body.
+     *
+     * @param <T> the type read from the body
+     */
+    @FunctionalInterface
+    private interface PayloadReader<T> {
+        T read(ContentEncoding.EncodedBody body) throws IOException;
+    }
+
+    /**
+     * Read a GetRecord payload asynchronously for DOM parsing: from the payload
+     * cache if it holds the URL, otherwise fetched and then cached once it has
+     * been read. DOM parsing needs the whole document, so unlike
+     * {@link #readRecordStreamAsync} the body is buffered in full before it is
+     * read, and the fetch never stops early.
+     *
+     * @param url              - the OAI-PMH GetRecord URL
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @param reader           - reads the payload, on the asynchronous executor
+     * @return a future of the value read, completed exceptionally on error
+     */
+    private <T> CompletableFuture<T> readPayloadAsync(String url, String currentDatestamp,
+            PayloadReader<T> reader) {
+        PayloadCache cache = payloadCache;
+        // A cache lookup reads the disk, so it runs off the caller's thread
+        CompletableFuture<ContentEncoding.EncodedBody> cached = cache == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> cachedPayload(cache, url, currentDatestamp), asyncExecutor);
+        return cached.thenCompose(hit -> {
+            if (hit != null) {
+                return CompletableFuture.supplyAsync(() -> readPayload(reader, hit), asyncExecutor);
+            }
+            return fetchBytesAsync(url).thenApplyAsync(body -> {
+                T value = readPayload(reader, body);
+                storePayload(cache, url, body);
+                return value;
+            }, asyncExecutor);
+        });
+    }
+
+    private static <T> T readPayload(PayloadReader<T> reader, ContentEncoding.EncodedBody body) {
+        try {
+            return reader.read(body);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Look up a payload in the cache. A payload that cannot be read, or that
+     * was stored with another datestamp than the record's current one, is
+     * fetched again.
+     *
+     * @param cache            - the payload cache, or null
+     * @param url              - the GetRecord URL
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @return the cached payload, or null
+     */
+    private static ContentEncoding.EncodedBody cachedPayload(PayloadCache cache, String url,
+            String currentDatestamp) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            ContentEncoding.EncodedBody cached = cache.find(url, currentDatestamp);
+            if (cached != null) {
+                logger.debug("Re-parsing cached payload of {}", url);
+            }
+            return cached;
+        } catch (IOException e) {
+            logger.warn("Failed to read cached payload of {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Put a payload that has been read successfully in the cache, with the
+     * datestamp read from its record header.
+     *
+     * @param cache - the payload cache, or null
+     * @param url   - the GetRecord URL
+     * @param body  - the payload as received
+     */
+    private void storePayload(PayloadCache cache, String url, ContentEncoding.EncodedBody body) {
+        if (cache == null) {
+            return;
+        }
+        try (InputStream in = body.open()) {
+            cache.put(url, body, idNoStreamExtractor.readDatestamp(in));
+        } catch (IOException e) {
+            logger.warn("Failed to cache payload of {}: {}", url, e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch the OAI-PMH GetRecord XML without blocking the calling thread,
+     * buffering the whole body. Only the DOM path uses this; streaming
+     * extraction reads the body as it arrives.
+     *
+     * @param url - the OAI-PMH GetRecord URL
+     * @return a future of the response body, still in its content encoding,
+     *         completed exceptionally with an {@link IOException} on a non-200
+     *         status or an empty body
+     */
+    CompletableFuture<ContentEncoding.EncodedBody> fetchBytesAsync(String url) {
+        CheckMetrics stageMetrics = metrics;
+        CheckEvents.Fetch event = new CheckEvents.Fetch();
+        event.begin();
+        long start = System.nanoTime();
+        return recordSender.sendAsync(httpClient, newXmlRequest(url), HttpResponse.BodyHandlers.ofByteArray(),
+                MetadataUsesCessdaPids::discardBody)
+                .thenApply(response -> {
+                    stageMetrics.recordStage(CheckMetrics.STAGE_FETCH, start);
+                    commitFetch(event, url, response);
+                    try {
+                        return checkedBody(response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Complete and commit a fetch event, if it is enabled.
+     *
+     * @param event    - the event, begun before the request was sent
+     * @param url      - the URL fetched
+     * @param response - the response
+     */
+    private void commitFetch(CheckEvents.Fetch event, String url, HttpResponse<?> response) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.recordId = recordIdOf(url);
+            event.status = response.statusCode();
+            if (response.body() instanceof byte[] body) {
+                event.bytes = body.length;
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * The record identifier a GetRecord URL was built for.
+     *
+     * @param url - the URL
+     * @return the record identifier, or the URL itself if it is not a
+     *         GetRecord URL of this checker
+     */
+    private String recordIdOf(String url) {
+        int at = url.indexOf(IDENTIFIER_PARAMETER);
+        return at >= 0 ? url.substring(at + IDENTIFIER_PARAMETER.length()) : url;
+    }
+
+    /**
+     * Check the status and body of a buffered OAI-PMH response.
+     *
+     * @param response - the response
+     * @return the non-empty body, still in its content encoding
+     * @throws IOException - on a non-200 status or an empty body
+     */
+    private ContentEncoding.EncodedBody checkedBody(HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() != 200)
+            throw new IOException("Failed to fetch document: HTTP " + response.statusCode());
+        if (response.body() == null || response.body().length == 0)
+            throw new IOException("Empty response body");
+        metrics.recordResponseSize(response.body().length);
+        return new ContentEncoding.EncodedBody(response.body(), ContentEncoding.of(response));
+    }
+
+    /**
+     * Parse an OAI-PMH GetRecord response and extract the DDI codeBook
+     * element.
+     *
+     * @param body - the response body, inflated as it is parsed
+     * @param url  - the URL the body was fetched from (for logging)
+     * @return Document - the parsed DDI document
+     * @throws IOException - if the body cannot be parsed or has no codeBook
+     */
+    private Document parseDocument(ContentEncoding.EncodedBody body, String url) throws IOException {
+        CheckMetrics stageMetrics = metrics;
+        try (DdiParsingContext.Lease lease = parsingContext.acquire()) {
+            logger.debug("Parsing XML document from: {}", url);
+            DocumentBuilder builder = lease.parser().builder();
+            CheckEvents.Parse parseEvent = new CheckEvents.Parse();
+            parseEvent.begin();
+            long start = System.nanoTime();
+            Document oaiDoc;
+            try (InputStream in = body.open()) {
+                oaiDoc = builder.parse(in);
+            }
+            stageMetrics.recordStage(CheckMetrics.STAGE_PARSE, start);
+            parseEvent.end();
+            if (parseEvent.shouldCommit()) {
+                parseEvent.recordId = recordIdOf(url);
+                parseEvent.bytes = body.bytes().length;
+                parseEvent.commit();
+            }
+
+            CheckEvents.CodeBookImport importEvent = new CheckEvents.CodeBookImport();
+            importEvent.begin();
+            start = System.nanoTime();
+            Node codeBookNode = (Node) lease.parser().codeBookPath().evaluate(oaiDoc, XPathConstants.NODE);
+            if (codeBookNode == null)
+                throw new IllegalArgumentException("No DDI codeBook found");
+
+            Document ddiDoc = builder.newDocument();
+            ddiDoc.appendChild(ddiDoc.importNode(codeBookNode, true));
+            stageMetrics.recordStage(CheckMetrics.STAGE_CODE_BOOK, start);
+            importEvent.end();
+            if (importEvent.shouldCommit()) {
+                importEvent.recordId = recordIdOf(url);
+                importEvent.commit();
+            }
+            return ddiDoc;
+
+        } catch (Exception e) {
+            logger.warn("Failed to parse XML from {}: {}", url, e.getMessage());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Unparseable XML preview: {}", previewOf(body));
+            }
+            throw new IOException("Failed to parse XML response", e);
+        }
+    }
+
+    /**
+     * The start of a body, for logging.
+     *
+     * @param body - the body
+     * @return up to 500 decoded bytes as text
+     */
+    private static String previewOf(ContentEncoding.EncodedBody body) {
+        try (InputStream in = body.open()) {
+            return new String(in.readNBytes(500), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "(undecodable " + body.encoding() + " body: " + e.getMessage() + ")";
+        }
+    }
+
+    /**
+     * Fetch the OAI-PMH GetRecord XML as a stream and extract the IDNo entries
+     * of the DDI title statement without building a DOM. The response body is
+     * closed, and the connection released, as soon as extraction stops.
+     *
+     * @param url      - the OAI-PMH GetRecord URL
+     * @param stopWhen - predicate that stops reading once it accepts an entry
+     * @return the IDNo entries read before extraction stopped
+     * @throws IOException          - if an I/O or parse error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    public List<IdNoEntry> fetchIdNoEntries(String url, Predicate<IdNoEntry> stopWhen)
+            throws IOException, InterruptedException {
+        return fetchRecord(url, stopWhen).idNos();
+    }
+
+    /**
+     * Fetch a record in the formats chosen by the metadata format policy,
+     * cheapest first, stopping at the first that yields an approved PID. A
+     * format the repository cannot disseminate for this record is skipped.
+     *
+     * @param recordId         - the record identifier
+     * @param approvedSchemas  - the approved PID schemas
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @return the record read from the cheapest format with an approved PID,
+     *         otherwise from the most expensive format
+     * @throws IOException          - if a fetch or parse fails
+     * @throws InterruptedException - if the fetch is interrupted
+     */
+    private OaiPmhHarvester.HarvestedRecord fetchCheapestRecord(String recordId, Set<String> approvedSchemas,
+            String currentDatestamp) throws IOException, InterruptedException {
+        Predicate<IdNoEntry> approved = isApprovedPid(approvedSchemas);
+        List<PidSourceExtractor> formats = formatPolicy.formats(this::listMetadataFormats);
+        for (int i = 0;; i++) {
+            PidSourceExtractor extractor = formats.get(i);
+            boolean last = i == formats.size() - 1;
+            try {
+                OaiPmhHarvester.HarvestedRecord oaiRecord = readRecordStream(getRecordUrl(extractor, recordId),
+                        currentDatestamp, body -> extractor.extractRecord(body, approved));
+                if (last || isSettled(oaiRecord, approved)) {
+                    return oaiRecord;
+                }
+            } catch (PidSourceExtractor.FormatUnavailableException e) {
+                if (last) {
+                    throw e;
+                }
+            }
+            logger.debug("No approved PID in {} for record {}, reading {}", extractor.metadataPrefix(), recordId,
+                    formats.get(i + 1).metadataPrefix());
+        }
+    }
+
+    /**
+     * Whether a record read in a cheap format needs no more expensive format:
+     * it is deleted or already has an approved PID.
+     *
+     * @param oaiRecord - the record read
+     * @param approved  - accepts approved PIDs
+     * @return true if the record is settled
+     */
+    private static boolean isSettled(OaiPmhHarvester.HarvestedRecord oaiRecord, Predicate<IdNoEntry> approved) {
+        return oaiRecord.deleted() || oaiRecord.idNos().stream().anyMatch(approved);
+    }
+
+    /**
+     * The GetRecord URL of a record in the format read by an extractor.
+     *
+     * @param extractor - the extractor
+     * @param recordId  - the record identifier
+     * @return the URL
+     */
+    private String getRecordUrl(PidSourceExtractor extractor, String recordId) {
+        if (METADATA_PREFIX.equals(extractor.metadataPrefix())) {
+            return oaiPmhBase + recordId;
+        }
+        return oaiPmhEndpoint + "?verb=GetRecord&metadataPrefix="
+                + URLEncoder.encode(extractor.metadataPrefix(), StandardCharsets.UTF_8) + IDENTIFIER_PARAMETER + recordId;
+    }
+
+    /**
+     * List the metadata prefixes the repository offers.
+     *
+     * @return the metadata prefixes
+     * @throws IOException          - if the formats cannot be fetched or parsed
+     * @throws InterruptedException - if the fetch is interrupted
+     */
+    private Set<String> listMetadataFormats() throws IOException, InterruptedException {
+        return readResponseStream(oaiPmhEndpoint + LIST_METADATA_FORMATS_QUERY, null,
+                MetadataFormatPolicy::parseMetadataFormats, null);
+    }
+
+    /**
+     * Fetch the OAI-PMH GetRecord XML as a stream and extract the record header
+     * and the IDNo entries of the DDI title statement.
+     *
+     * @param url      - the OAI-PMH GetRecord URL
+     * @param stopWhen - predicate that stops reading once it accepts an entry
+     * @return the record header and the IDNo entries read before extraction
+     *         stopped
+     * @throws IOException          - if an I/O or parse error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    OaiPmhHarvester.HarvestedRecord fetchRecord(String url, Predicate<IdNoEntry> stopWhen)
+            throws IOException, InterruptedException {
+        return readRecordStream(url, null, body -> idNoStreamExtractor.extractRecord(body, stopWhen));
+    }
+
+    /**
+     * Fetch only the OAI-PMH header datestamp of a record. The response is
+     * closed as soon as the header has been read.
+     *
+     * @param recordId - the record identifier
+     * @return the header datestamp, or null if there is none
+     * @throws IOException          - if an I/O or parse error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    String fetchDatestamp(String recordId) throws IOException, InterruptedException {
+        // Revalidation must see the repository's current header, never a cached payload
+        return readResponseStream(oaiPmhBase + recordId, null, idNoStreamExtractor::readDatestamp, null);
+    }
+
+    /**
+     * Reads a streamed response body.
+     *
+     * @param <T> the type read from the body
+     */
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    /**
+     * Read a GetRecord payload as a stream: from the payload cache if it holds
+     * the URL, otherwise fetched and captured into the cache, with the
+     * datestamp of the record read, as it is read.
+     *
+     * @param url              - the OAI-PMH GetRecord URL
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @param reader           - reads the record from the body
+     * @return the record read
+     * @throws IOException          - if an I/O or parse error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    private OaiPmhHarvester.HarvestedRecord readRecordStream(String url, String currentDatestamp,
+            BodyReader<OaiPmhHarvester.HarvestedRecord> reader) throws IOException, InterruptedException {
+        PayloadCache cache = payloadCache;
+        ContentEncoding.EncodedBody cached = cachedPayload(cache, url, currentDatestamp);
+        if (cached == null) {
+            return readResponseStream(url, cache, reader, OaiPmhHarvester.HarvestedRecord::datestamp);
+        }
+        return readCachedRecord(cached, reader);
+    }
+
+    /**
+     * Read a GetRecord payload as a stream without blocking the calling
+     * thread, like {@link #readRecordStream}. The response body is read on the
+     * asynchronous executor as it arrives, so extraction can stop, and the
+     * connection be released, as soon as the reader has what it needs.
+     *
+     * @param url              - the OAI-PMH GetRecord URL
+     * @param currentDatestamp - the record's current datestamp, or null if not
+     *                         known
+     * @param reader           - reads the record from the body, on the
+     *                         asynchronous executor
+     * @return a future of the record read, completed exceptionally on error
+     */
+    private CompletableFuture<OaiPmhHarvester.HarvestedRecord> readRecordStreamAsync(String url,
+            String currentDatestamp, BodyReader<OaiPmhHarvester.HarvestedRecord> reader) {
+        PayloadCache cache = payloadCache;
+        // A cache lookup reads the disk, so it runs off the caller's thread
+        CompletableFuture<ContentEncoding.EncodedBody> cached = cache == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> cachedPayload(cache, url, currentDatestamp), asyncExecutor);
+        return cached.thenCompose(hit -> {
+            if (hit != null) {
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return readCachedRecord(hit, reader);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, asyncExecutor);
+            }
+            CheckMetrics stageMetrics = metrics;
+            CheckEvents.Fetch event = new CheckEvents.Fetch();
+            event.begin();
+            long start = System.nanoTime();
+            return recordSender.sendAsync(httpClient, newXmlRequest(url), HttpResponse.BodyHandlers.ofInputStream(),
+                    MetadataUsesCessdaPids::discardBody)
+                    .thenApplyAsync(response -> {
+                        stageMetrics.recordStage(CheckMetrics.STAGE_FETCH, start);
+                        commitFetch(event, url, response);
+                        try {
+                            return readStreamedResponse(url, response, cache, reader,
+                                    OaiPmhHarvester.HarvestedRecord::datestamp);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, asyncExecutor);
+        });
+    }
+
+    /**
+     * Read a record from a cached payload.
+     *
+     * @param cached - the cached payload
+     * @param reader - reads the record from the body
+     * @return the record read
+     * @throws IOException - if an I/O or parse error occurs
+     */
+    private OaiPmhHarvester.HarvestedRecord readCachedRecord(ContentEncoding.EncodedBody cached,
+            BodyReader<OaiPmhHarvester.HarvestedRecord> reader) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream body = cached.open()) {
+            return reader.read(body);
+        } finally {
+            metrics.recordStage(CheckMetrics.STAGE_EXTRACT, start);
+        }
+    }
+
+    /**
+     * Send a GET request and read the response body as a stream, inflating it
+     * as it is read if it is compressed. The body is closed, and the
+     * connection released, as soon as the reader returns, unless it is being
+     * captured into the payload cache, which reads it to the end.
+     *
+     * @param url         - the URL to fetch
+     * @param cache       - the payload cache to capture the body into, or null
+     * @param reader      - reads what it needs from the body
+     * @param datestampOf - the datestamp to cache the body with, from the value
+     *                    read; only used with a cache
+     * @return the value read
+     * @throws IOException          - if an I/O or parse error occurs
+     * @throws InterruptedException - if the operation is interrupted
+     */
+    private <T> T readResponseStream(String url, PayloadCache cache, BodyReader<T> reader,
+            Function<? super T, String> datestampOf) throws IOException, InterruptedException {
+        CheckMetrics stageMetrics = metrics;
+        CheckEvents.Fetch fetchEvent = new CheckEvents.Fetch();
+        fetchEvent.begin();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = recordSender.send(httpClient, newXmlRequest(url),
+                HttpResponse.BodyHandlers.ofInputStream(), MetadataUsesCessdaPids::discardBody);
+        stageMetrics.recordStage(CheckMetrics.STAGE_FETCH, start);
+        commitFetch(fetchEvent, url, response);
+        return readStreamedResponse(url, response, cache, reader, datestampOf);
+    }
+
+    /**
+     * Read a streamed response body, inflating it as it is read if it is
+     * compressed, and close it as soon as the reader returns, unless it is
+     * being captured into the payload cache.
+     *
+     * @param url         - the URL fetched
+     * @param response    - the response, with its body not yet read
+     * @param cache       - the payload cache to capture the body into, or null
+     * @param reader      - reads what it needs from the body
+     * @param datestampOf - the datestamp to cache the body with, from the value
+     *                    read; only used with a cache
+     * @return the value read
+     * @throws IOException - if the status is not 200, or an I/O or parse error
+     *                     occurs
+     */
+    private <T> T readStreamedResponse(String url, HttpResponse<InputStream> response, PayloadCache cache,
+            BodyReader<T> reader, Function<? super T, String> datestampOf) throws IOException {
+        CheckMetrics stageMetrics = metrics;
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200)
+                throw new IOException("Failed to fetch document: HTTP " + response.statusCode());
+            if (body == null)
+                throw new IOException("Empty response body");
+
+            logger.debug("Streaming XML response from OAI-PMH endpoint at: {}", url);
+            CountingInputStream counted = new CountingInputStream(body);
+            String encoding = ContentEncoding.of(response);
+            CheckEvents.Extract extractEvent = new CheckEvents.Extract();
+            extractEvent.begin();
+            long start = System.nanoTime();
+            try (PayloadCache.Capture capture = cache == null ? null : cache.capture(url, counted, encoding)) {
+                if (capture == null) {
+                    return reader.read(ContentEncoding.decode(counted, encoding));
+                }
+                T value = reader.read(capture.body());
+                try {
+                    capture.commit(datestampOf.apply(value));
+                } catch (IOException e) {
+                    logger.warn("Failed to cache payload of {}: {}", url, e.getMessage());
+                }
+                return value;
+            } finally {
+                stageMetrics.recordStage(CheckMetrics.STAGE_EXTRACT, start);
+                stageMetrics.recordResponseSize(counted.getCount());
+                extractEvent.end();
+                if (extractEvent.shouldCommit()) {
+                    extractEvent.recordId = recordIdOf(url);
+                    extractEvent.bytes = counted.getCount();
+                    extractEvent.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the body of a response that lost a hedged race.
+     *
+     * @param response - the unused response
+     */
+    private static void discardBody(HttpResponse<?> response) {
+        if (response.body() instanceof InputStream body) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close unused response body: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Build a GET request for an OAI-PMH XML response.
+     *
+     * @param url - the URL to fetch
+     * @return the request
+     */
+    private static HttpRequest newXmlRequest(String url) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept", "application/xml, text/xml, */*")
+                .header("Accept-Encoding", ContentEncoding.ACCEPTED)
+                .header("User-Agent", "Java-HttpClient")
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    /**
+     * Check the DDI document for approved PID schemas.
+     * 
+     * @param ddiDoc   The DDI document
+     * @param recordId The record identifier (for logging)
+     * @return "pass", "fail", or "indeterminate"
+     */
+    String checkDocumentForApprovedPid(Document ddiDoc, String recordId) {
+        return decideDocument(ddiDoc, recordId, null).result();
+    }
+
+    /**
+     * The outcome of a check and the agency that decided it.
+     *
+     * @param result        "pass", "fail" or "indeterminate"
+     * @param matchedAgency the approved agency found, or null unless "pass"
+     */
+    private record Decision(String result, String matchedAgency) {
+        static final Decision FAIL = new Decision(RESULT_FAIL, null);
+        static final Decision INDETERMINATE = new Decision(RESULT_INDETERMINATE, null);
+    }
+
+    /**
+     * Check the DDI document for approved PID schemas.
+     *
+     * @param ddiDoc   The DDI document
+     * @param recordId The record identifier (for logging)
+     * @param index    The PID index to put the record's PIDs in, or null if the
+     *                 document is not a catalogue record
+     * @return the decision
+     */
+    private Decision decideDocument(Document ddiDoc, String recordId, PidIndex index) {
+        CheckMetrics outcomeMetrics = metrics;
+        try {
+            NodeList idNoNodes;
+            CheckEvents.XPath xpathEvent = new CheckEvents.XPath();
+            xpathEvent.begin();
+            long start = System.nanoTime();
+            try (DdiParsingContext.Lease lease = parsingContext.acquire()) {
+                idNoNodes = (NodeList) lease.parser().idNoSearchPath().evaluate(ddiDoc, XPathConstants.NODESET);
+            }
+            outcomeMetrics.recordStage(CheckMetrics.STAGE_XPATH, start);
+            int idNoCount = idNoNodes == null ? 0 : idNoNodes.getLength();
+            xpathEvent.end();
+            if (xpathEvent.shouldCommit()) {
+                xpathEvent.recordId = recordId;
+                xpathEvent.idNoCount = idNoCount;
+                xpathEvent.commit();
+            }
+
+            List<IdNoEntry> entries = new ArrayList<>(idNoCount);
+            for (int i = 0; i < idNoCount; i++) {
+                Node idNoNode = idNoNodes.item(i);
+                Node agencyNode = idNoNode.getAttributes().getNamedItem("agency");
+                entries.add(new IdNoEntry(agencyNode == null ? null : agencyNode.getNodeValue(),
+                        idNoNode.getTextContent()));
+            }
+            if (index != null) {
+                // The whole document is parsed, so these are all of the record's PIDs
+                index.put(recordId, entries);
+            }
+
+            if (idNoCount == 0) {
+                logger.debug("No IDNo elements found in DDI document for record: {}", recordId);
+                outcomeMetrics.recordOutcome(RESULT_FAIL, CheckMetrics.CAUSE_NO_IDNO);
+                commitDecision(recordId, RESULT_FAIL, CheckMetrics.CAUSE_NO_IDNO, 0, null);
+                return Decision.FAIL;
+            }
+            Set<String> approvedSchemas = getApprovedPidSchemas();
+            PidPatternMatcher matcher = pidPatternMatcher(approvedSchemas);
+            for (IdNoEntry entry : entries) {
+                String schema = approvedSchemaOf(entry, approvedSchemas, matcher);
+                if (schema != null) {
+                    logger.debug("Found approved PID schema '{}' in record: {}", schema, recordId);
+                    outcomeMetrics.recordOutcome(RESULT_PASS, CheckMetrics.CAUSE_NONE);
+                    commitDecision(recordId, RESULT_PASS, CheckMetrics.CAUSE_NONE, idNoCount, schema);
+                    return new Decision(RESULT_PASS, schema);
+                }
+            }
+            logger.debug("No approved PID schemas found in record: {}", recordId);
+            outcomeMetrics.recordOutcome(RESULT_FAIL, CheckMetrics.CAUSE_NO_APPROVED_AGENCY);
+            commitDecision(recordId, RESULT_FAIL, CheckMetrics.CAUSE_NO_APPROVED_AGENCY, idNoCount, null);
+            return Decision.FAIL;
+        } catch (Exception e) {
+            logger.warn("Error checking record {} for an approved PID: {}", recordId, e.getMessage());
+            outcomeMetrics.recordOutcome(RESULT_INDETERMINATE, CheckMetrics.causeOf(e));
+            commitDecision(recordId, RESULT_INDETERMINATE, CheckMetrics.causeOf(e), 0, null);
+            return Decision.INDETERMINATE;
+        }
+    }
+
+    /**
+     * Check streamed IDNo entries for approved PID schemas.
+     *
+     * @param entries         The IDNo entries extracted from the record
+     * @param approvedSchemas The approved PID schema notations
+     * @param recordId        The record identifier (for logging)
+     * @return the decision, "pass" or "fail"
+     */
+    private Decision decideEntries(List<IdNoEntry> entries, Set<String> approvedSchemas, String recordId) {
+        if (entries.isEmpty()) {
+            logger.debug("No IDNo elements found in DDI document for record: {}", recordId);
+            commitDecision(recordId, RESULT_FAIL, CheckMetrics.CAUSE_NO_IDNO, 0, null);
+            return Decision.FAIL;
+        }
+        PidPatternMatcher matcher = pidPatternMatcher(approvedSchemas);
+        for (IdNoEntry entry : entries) {
+            String schema = approvedSchemaOf(entry, approvedSchemas, matcher);
+            if (schema != null) {
+                logger.debug("Found approved PID schema '{}' in record: {}", schema, recordId);
+                commitDecision(recordId, RESULT_PASS, CheckMetrics.CAUSE_NONE, entries.size(), schema);
+                return new Decision(RESULT_PASS, schema);
+            }
+        }
+        logger.debug("No approved PID schemas found in record: {}", recordId);
+        commitDecision(recordId, RESULT_FAIL, CheckMetrics.CAUSE_NO_APPROVED_AGENCY, entries.size(), null);
+        return Decision.FAIL;
+    }
+
+    /**
+     * Commit a flight recorder event for a decision, if it is enabled. The
+     * event is instant: the stages leading to the decision have their own
+     * events.
+     *
+     * @param recordId      - the record identifier
+     * @param outcome       - "pass", "fail" or "indeterminate"
+     * @param cause         - one of the {@code CheckMetrics.CAUSE_} constants
+     * @param idNoCount     - the IDNo entries examined
+     * @param matchedAgency - the approved agency found, or null
+     */
+    private static void commitDecision(String recordId, String outcome, String cause, int idNoCount,
+            String matchedAgency) {
+        CheckEvents.Decision event = new CheckEvents.Decision();
+        if (event.shouldCommit()) {
+            event.recordId = recordId;
+            event.outcome = outcome;
+            event.cause = cause;
+            event.idNoCount = idNoCount;
+            event.matchedAgency = matchedAgency;
+            event.commit();
+        }
+    }
+
+    /**
+     * The approved schema an IDNo belongs to: its agency, if that is approved,
+     * otherwise the approved schema whose pattern its value matches.
+     *
+     * @param entry           The IDNo entry
+     * @param approvedSchemas The approved PID schema notations
+     * @param matcher         The matcher compiled for the approved schemas
+     * @return the schema, or null if the entry is not an approved PID
+     */
+    private static String approvedSchemaOf(IdNoEntry entry, Set<String> approvedSchemas, PidPatternMatcher matcher) {
+        if (entry.agency() != null && approvedSchemas.contains(entry.agency())) {
+            return entry.agency();
+        }
+        return matcher.classify(entry.value());
+    }
+
+    /**
+     * A predicate accepting IDNo entries that are approved PIDs, used to stop
+     * streaming extraction at the first one.
+     *
+     * @param approvedSchemas The approved PID schema notations
+     * @return the predicate
+     */
+    private Predicate<IdNoEntry> isApprovedPid(Set<String> approvedSchemas) {
+        PidPatternMatcher matcher = pidPatternMatcher(approvedSchemas);
+        return entry -> approvedSchemaOf(entry, approvedSchemas, matcher) != null;
+    }
+
+    /**
+     * A matcher compiled for a set of approved schemas and the vocabulary
+     * patterns it was compiled with.
+     */
+    private record CompiledPatterns(Set<String> schemas, Map<String, String> patterns, PidPatternMatcher matcher) {
+    }
+
+    /**
+     * The pattern matcher for the approved schemas. Compiled once per
+     * vocabulary load, not per record.
+     *
+     * @param approvedSchemas The approved PID schema notations
+     * @return the matcher
+     */
+    private PidPatternMatcher pidPatternMatcher(Set<String> approvedSchemas) {
+        Map<String, String> patterns = pidVocabulary.vocabulary().patterns();
+        CompiledPatterns compiled = compiledPatterns;
+        if (compiled == null || compiled.schemas() != approvedSchemas || compiled.patterns() != patterns) {
+            compiled = new CompiledPatterns(approvedSchemas, patterns,
+                    PidPatternMatcher.compile(approvedSchemas, patterns));
+            compiledPatterns = compiled;
+        }
+        return compiled.matcher();
+    }
+
+    /**
+     * The approved PID schemas currently held by the vocabulary. Never blocks
+     * on network I/O; the vocabulary is refreshed in the background.
+     * 
+     * @return Set of approved PID schema notations
+     */
+    private Set<String> getApprovedPidSchemas() {
+        return pidVocabulary.get();
+    }
+
+    /**
+     * @return the holder of the approved PID schemas used by this checker
+     */
+    public PidVocabulary getPidVocabulary() {
+        return pidVocabulary;
+    }
+
+    /**
+     * Fetch the CESSDA vocabulary, or revalidate the one served, and save it
+     * to the snapshot file if one is set. Called on the vocabulary refresh
+     * thread.
+     *
+     * @param current - the vocabulary currently served, or null
+     * @return the vocabulary
+     * @throws IOException          - if the vocabulary cannot be fetched or
+     *                              contains no schemas
+     * @throws InterruptedException - if the fetch is interrupted
+     */
+    private VocabularySnapshot loadVocabulary(VocabularySnapshot current) throws IOException, InterruptedException {
+        logger.debug("Fetching approved PID schemas from: {}", pidVocabUrl);
+        CheckEvents.VocabularyRefresh event = new CheckEvents.VocabularyRefresh();
+        event.begin();
+        long start = System.nanoTime();
+        event.outcome = "failed";
+        try {
+            VocabularySnapshot vocabulary = fetchVocabulary(current, event);
+            event.schemaCount = vocabulary.schemas().size();
+            saveVocabulary(vocabulary);
+            return vocabulary;
+        } finally {
+            metrics.recordStage(CheckMetrics.STAGE_VOCABULARY, start);
+            event.commit();
+        }
+    }
+
+    /**
+     * Fetch and parse the vocabulary JSON. If a vocabulary is already served,
+     * the request carries its validators and a 304 answer revalidates it.
+     *
+     * @param current - the vocabulary currently served, or null
+     * @param event   - the flight recorder event to report the response size to
+     * @return the vocabulary
+     * @throws IOException          - if the vocabulary cannot be fetched, does
+     *                              not offer the pinned version or contains no
+     *                              schemas
+     * @throws InterruptedException - if the fetch is interrupted
+     */
+    private VocabularySnapshot fetchVocabulary(VocabularySnapshot current, CheckEvents.VocabularyRefresh event)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(pidVocabUrl))
+                .header("Accept", "application/json")
+                .timeout(Duration.ofSeconds(20))
+                .GET();
+        if (current != null && current.etag() != null) {
+            request.header("If-None-Match", current.etag());
+        }
+        if (current != null && current.lastModified() != null) {
+            request.header("If-Modified-Since", current.lastModified());
+        }
+
+        HttpResponse<String> response = httpClient.send(request.build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+        if (response.statusCode() == 304 && current != null) {
+            event.bytes = 0;
+            event.outcome = "unchanged";
+            return current.revalidated(Instant.now());
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("PID vocabulary API returned " + response.statusCode());
+        }
+        event.bytes = response.body().length();
+
+        JsonNode root = mapper.readTree(response.body());
+        VocabularySnapshot vocabulary = VocabularySnapshot.parse(root, vocabularyPin, header(response, "ETag"),
+                header(response, "Last-Modified"), Instant.now());
+        event.outcome = "loaded";
+        return vocabulary;
+    }
+
+    /**
+     * Save a fetched vocabulary to the snapshot file, if one is set. A failure
+     * is logged; the vocabulary is still served.
+     *
+     * @param vocabulary - the vocabulary
+     */
+    private void saveVocabulary(VocabularySnapshot vocabulary) {
+        Path path = vocabularySnapshotPath;
+        if (path != null) {
+            try {
+                vocabulary.save(path);
+            } catch (IOException e) {
+                logger.error("Failed to save PID vocabulary snapshot {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param response - the response
+     * @param name     - the header name
+     * @return the first value of the header, or null if it is absent
+     */
+    private static String header(HttpResponse<?> response, String name) {
+        HttpHeaders headers = response.headers();
+        return headers == null ? null : headers.firstValue(name).orElse(null);
+    }
+
+    /**
+     * Default PID schemas if vocabulary fetch fails: those of the bundled
+     * vocabulary.
+     * 
+     * @return Set of default PID schema notations
+     */
+    private static Set<String> defaultPidSchemas() {
+        return VocabularySnapshot.bundled().schemas();
+    }
+
+    /**
+     * Log an info message that is already formatted. Code on the check path
+     * logs through a Log4j logger with parameterised messages instead, so
+     * nothing is formatted unless the level is enabled.
+     * 
+     * @param msg The message to log
+     */
+    static void logInfo(String msg) {
+        logger.info(msg);
+    }
+
+    /**
+     * Log an error message that is already formatted.
+     * 
+     * @param msg The message to log
+     */
+    static void logSevere(String msg) {
+        logger.error(msg);
+    }
+
+    /**
+     * Wait (bounded) for the first vocabulary load, so one-shot command-line
+     * runs use the published vocabulary rather than the fallback set.
+     */
+    void warmUpVocabulary() {
+        try {
+            if (!pidVocabulary.awaitFirstLoad(VOCABULARY_WARM_UP)) {
+                logger.warn("PID vocabulary not loaded within {}, using fallback schemas", VOCABULARY_WARM_UP);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a full harvest, writing one JSON line per record.
+     *
+     * @param out - the stream results are written to
+     * @return the process exit code: 0 if the harvest completed, 1 otherwise
+     */
+    int runHarvest(PrintStream out) {
+        try {
+            long checked = harvestApprovedPids(result -> {
+                try {
+                    out.println(mapper.writeValueAsString(result));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            savePidIndex();
+            logger.info("Harvest complete, records checked: {}", checked);
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Harvest interrupted: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Harvest failed", e);
+        }
+        return 1;
+    }
+
+    /**
+     * Re-check the records changed since the last incremental run, writing one
+     * JSON line per record, then advance the checkpoint. The checkpoint is
+     * only saved once the harvest has completed, so a failed run is repeated
+     * in full next time.
+     *
+     * @param checkpointPath - the file holding the previous run's datestamp;
+     *                       the whole catalogue is checked if it is missing
+     * @param out            - the stream results are written to
+     * @return the process exit code: 0 if the harvest completed, 1 otherwise
+     */
+    int runIncremental(Path checkpointPath, PrintStream out) {
+        HarvestCheckpoint checkpoint = new HarvestCheckpoint(checkpointPath);
+        try {
+            String from = checkpoint.load();
+            long[] checked = { 0 };
+            String next = reassessChangedSince(from, result -> {
+                try {
+                    out.println(mapper.writeValueAsString(result));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+                checked[0]++;
+            });
+            out.flush();
+            savePidIndex();
+            checkpoint.save(next);
+            logger.info("Incremental harvest complete, records changed since {}: {}, checkpoint now {}",
+                    from, checked[0], next);
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Incremental harvest interrupted: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Incremental harvest failed", e);
+        }
+        return 1;
+    }
+
+    /**
+     * Save the PID index to its file, if it has one.
+     *
+     * @throws IOException - if the index cannot be written
+     */
+    void savePidIndex() throws IOException {
+        Path path = pidIndexPath;
+        if (path != null) {
+            pidIndexReload.lock();
+            try {
+                pidIndex.save(path);
+                // Our own save is not a change to load again
+                pidIndexModified = modifiedTimeOf(path);
+            } finally {
+                pidIndexReload.unlock();
+            }
+            logger.info("Saved PID index with {} PIDs to {}", pidIndex.size(), path);
+        }
+    }
+
+    /**
+     * Check local DDI files, writing one JSON line per file.
+     *
+     * @param roots - directories, zip archives or XML files
+     * @param out   - the stream results are written to
+     * @return the process exit code: 0 if every file was read, 1 otherwise
+     */
+    int runOffline(List<Path> roots, PrintStream out) {
+        try {
+            long checked = new OfflineAssessor(this).assess(roots, result -> {
+                try {
+                    out.println(mapper.writeValueAsString(result));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            logger.info("Offline assessment complete, files checked: {}", checked);
+            return 0;
+        } catch (Exception e) {
+            logger.error("Offline assessment failed", e);
+        }
+        return 1;
+    }
+
+    /**
+     * Check detail URLs read from a file or standard input, writing one CSV or
+     * JSON Lines row per record as each check completes. All checks share
+     * this checker's HTTP client, vocabulary and caches.
+     *
+     * @param source      - a file of URLs, one per line, or {@code -} for
+     *                    standard input
+     * @param parallelism - the maximum number of checks in flight at once
+     * @param format      - the output format
+     * @param stdin       - read when the source is {@code -}
+     * @param out         - the stream rows are written to
+     * @return the process exit code, see {@link BatchRunner.Summary#exitCode()}
+     */
+    int runBatch(String source, int parallelism, BatchRunner.Format format, InputStream stdin, PrintStream out) {
+        BatchRunner runner = new BatchRunner(this::containsApprovedPid, parallelism, format);
+        try (BufferedReader in = STDIN_SOURCE.equals(source)
+                ? new BufferedReader(new InputStreamReader(stdin, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)) {
+            int exitCode = runner.run(in, out).exitCode();
+            logger.info("Batch decided with PID vocabulary {}", getVocabularyVersion());
+            return exitCode;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Batch interrupted: {}", e.getMessage());
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Batch failed, cannot read {}: {}", source, e.getMessage());
+        }
+        return BatchRunner.EXIT_ERROR;
+    }
+
+    /**
+     * Parse the options following {@code --batch <source>} and run the batch.
+     *
+     * @param args - the command-line arguments, starting with {@code --batch}
+     * @return the process exit code
+     */
+    private int runBatch(String[] args) {
+        if (args.length < 2) {
+            logger.error("Usage: --batch <file|-> [--parallelism <n>] [--format csv|jsonl]");
+            return BatchRunner.EXIT_ERROR;
+        }
+        int parallelism = BulkAssessor.DEFAULT_MAX_CONCURRENCY;
+        BatchRunner.Format format = BatchRunner.Format.CSV;
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case PARALLELISM_OPTION -> parallelism = Integer.parseInt(args[i + 1]);
+                    case FORMAT_OPTION -> format = BatchRunner.Format.of(args[i + 1]);
+                    default -> throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid batch arguments: {}", e.getMessage());
+            return BatchRunner.EXIT_ERROR;
+        }
+        return runBatch(args[1], parallelism, format, System.in, System.out);
+    }
+
+    /**
+     * Main method for command-line testing.
+     * 
+     * @param args Command-line arguments (expects a single CESSDA detail URL,
+     *             {@code --harvest} to check the whole catalogue,
+     *             {@code --incremental <checkpoint>} to check only the
+     *             records changed since the last run, or
+     *             {@code --offline <path>...} to check local DDI files,
+     *             directories and zip archives; these three write one JSON
+     *             line per record to standard output), or
+     *             {@code --batch <file|-> [--parallelism <n>] [--format csv|jsonl]}
+     *             to check the detail URLs listed in a file or on standard
+     *             input
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger.error("Usage: java MetadataUsesCessdaPids <url> | --harvest | --incremental <checkpoint>"
+                    + " | --offline <path>..."
+                    + " | --batch <file|-> [--parallelism <n>] [--format csv|jsonl]");
+            System.exit(1);
+        }
+
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(
+                System.getProperty(OAI_PMH_ENDPOINT_PROPERTY, DEFAULT_OAI_PMH_ENDPOINT),
+                System.getProperty(PID_VOCAB_URL_PROPERTY, DEFAULT_PID_VOCAB_URL));
+        checker.setVocabularyVersion(System.getProperty(VOCABULARY_VERSION_PROPERTY));
+        String snapshotPath = System.getProperty(VOCABULARY_SNAPSHOT_PROPERTY, "");
+        if (!snapshotPath.isBlank()) {
+            checker.setVocabularySnapshotPath(Path.of(snapshotPath));
+        }
+        String pidIndexPath = System.getProperty(PID_INDEX_PROPERTY, "");
+        if (!pidIndexPath.isBlank()) {
+            try {
+                checker.setPidIndexPath(Path.of(pidIndexPath));
+            } catch (IOException e) {
+                logger.warn("PIDs are not resolved to records: {}", e.getMessage());
+            }
+        }
+        if (Boolean.parseBoolean(System.getProperty(RESULT_CACHE_ENABLED_PROPERTY, "true"))) {
+            checker.setResultCache(new ResultCache(
+                    Duration.parse(System.getProperty(RESULT_CACHE_TTL_PROPERTY, ResultCache.DEFAULT_TTL.toString())),
+                    Integer.getInteger(RESULT_CACHE_MAX_ENTRIES_PROPERTY, ResultCache.DEFAULT_MAX_ENTRIES),
+                    Boolean.parseBoolean(System.getProperty(RESULT_CACHE_REVALIDATE_PROPERTY, "true"))));
+        }
+        String payloadCachePath = System.getProperty(PAYLOAD_CACHE_PROPERTY, "");
+        if (!payloadCachePath.isBlank()) {
+            try {
+                checker.setPayloadCache(PayloadCache.open(Path.of(payloadCachePath), PayloadCache.DEFAULT_MAX_AGE));
+            } catch (IOException e) {
+                logger.warn("Payloads are not cached: {}", e.getMessage());
+            }
+        }
+        if (HARVEST_OPTION.equals(args[0])) {
+            System.exit(checker.runHarvest(System.out));
+        }
+        if (INCREMENTAL_OPTION.equals(args[0])) {
+            if (args.length != 2) {
+                logger.error("Usage: --incremental <checkpoint>");
+                System.exit(1);
+            }
+            System.exit(checker.runIncremental(Path.of(args[1]), System.out));
+        }
+        checker.warmUpVocabulary();
+        if (OFFLINE_OPTION.equals(args[0])) {
+            List<Path> roots = Arrays.stream(args, 1, args.length).map(Path::of).toList();
+            System.exit(checker.runOffline(roots, System.out));
+        }
+        if (BATCH_OPTION.equals(args[0])) {
+            System.exit(checker.runBatch(args));
+        }
         String result = checker.containsApprovedPid(args[0]);
-        logInfo("Result: " + result);
+        logger.info("Result: {} (PID vocabulary {})", result, checker.getVocabularyVersion());
         System.exit(result.equals(RESULT_PASS) ? 0 : 1);
     }
 }
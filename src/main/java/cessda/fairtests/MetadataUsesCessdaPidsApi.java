@@ -17,11 +17,30 @@
 
  package cessda.fairtests;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.extensions.Extension;
 import io.swagger.v3.oas.annotations.extensions.ExtensionProperty;
@@ -29,9 +48,9 @@ import io.swagger.v3.oas.annotations.info.Contact;
 import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
-import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.servers.Server;
+import jakarta.annotation.PreDestroy;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 
@@ -61,6 +80,92 @@ import jakarta.validation.constraints.NotNull;
 @RestController
 public class MetadataUsesCessdaPidsApi {
 
+    private static final String RESOURCE_IDENTIFIER = "resourceIdentifier";
+
+    /** Default time a single check may take before "indeterminate" is returned. */
+    public static final String DEFAULT_CHECK_TIMEOUT = "PT45S";
+
+    private final MetadataUsesCessdaPids checker;
+    private final int bulkMaxConcurrency;
+    private final Duration checkTimeout;
+    private final ExecutorService checkExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    public MetadataUsesCessdaPidsApi(CessdaProperties properties, VocabularyProperties vocabulary,
+            UpstreamProperties upstream, PayloadCacheProperties payloadCache, PidIndexProperties pidIndex,
+            ResultCacheProperties resultCache, ResultStoreProperties resultStore, MeterRegistry meterRegistry)
+            throws IOException {
+        this(newChecker(properties, vocabulary.url(), meterRegistry), properties.bulk().maxConcurrency(),
+            properties.check().timeout());
+        vocabulary.applyTo(checker);
+        upstream.applyTo(checker);
+        payloadCache.applyTo(checker);
+        pidIndex.applyTo(checker);
+        resultCache.applyTo(checker);
+        resultStore.applyTo(checker);
+    }
+
+    /**
+     * Shut down on context shutdown: checks in flight are given up to the
+     * check timeout to finish, then the shared HTTP client and its executor
+     * are shut down and the result store, if one is open, is flushed and
+     * closed.
+     *
+     * @throws IOException          - if the store cannot be closed
+     * @throws InterruptedException - if interrupted while waiting for checks
+     */
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        try {
+            checkExecutor.shutdown();
+            if (!checkExecutor.awaitTermination(checkTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                checkExecutor.shutdownNow();
+            }
+            SharedHttpClient.shutdown(checkTimeout);
+        } finally {
+            ResultStore store = checker.getResultStore();
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    MetadataUsesCessdaPidsApi(MetadataUsesCessdaPids checker, int bulkMaxConcurrency, Duration checkTimeout) {
+        this.checker = checker;
+        this.bulkMaxConcurrency = bulkMaxConcurrency;
+        this.checkTimeout = checkTimeout;
+    }
+
+    /**
+     * Create the checker and apply the service-wide settings, first sizing the
+     * shared HTTP client's executor if a thread count is configured. Feature
+     * settings are applied by their own properties records.
+     *
+     * @param properties    - the service-wide cessda.* settings
+     * @param vocabularyUrl - the URL of the PID vocabulary JSON
+     * @param meterRegistry - the registry the checker reports to
+     * @return the checker
+     */
+    static MetadataUsesCessdaPids newChecker(CessdaProperties properties, String vocabularyUrl,
+            MeterRegistry meterRegistry) {
+        if (properties.http().executorThreads() > 0) {
+            SharedHttpClient.configure(Executors.newFixedThreadPool(properties.http().executorThreads()));
+        }
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(properties.oaiPmh().endpoint(),
+            vocabularyUrl);
+
+        CessdaProperties.CircuitBreakerSettings breaker = properties.circuitBreaker();
+        checker.setCircuitBreaker(new CircuitBreaker(breaker.failureRate(), CircuitBreaker.DEFAULT_WINDOW_SIZE,
+            CircuitBreaker.DEFAULT_MINIMUM_CALLS, breaker.openDuration()));
+        if (properties.hedge().percentile() > 0) {
+            checker.setHedgePolicy(GuardedHttpSender.HedgePolicy.atPercentile(properties.hedge().percentile()));
+        }
+        checker.setMetadataFormats(properties.metadataFormats());
+        checker.setMeterRegistry(meterRegistry);
+        return checker;
+    }
+
     @PostMapping(
         value = "/fc_cessda_identifier",
         consumes = MediaType.APPLICATION_JSON_VALUE,
@@ -68,20 +173,110 @@ public class MetadataUsesCessdaPidsApi {
     )
     @ApiResponse(
         responseCode = "200", 
-        description = "The response is \"pass\", \"fail\" or \"indeterminate\"",
+        description = "The response is \"pass\", \"fail\" or \"indeterminate\"; \"indeterminate\" is also returned "
+            + "when the check does not finish within the server-side timeout. vocabularyVersion names the PID "
+            + "vocabulary the result was decided with",
         content = @Content(
             mediaType = MediaType.APPLICATION_JSON_VALUE,
-            schema = @Schema(implementation = String.class)
+            schema = @Schema(implementation = UniqueIdentifierResponse.class)
         )
     )
-    public ResponseEntity<String> cessdaPidResponse(
+    public CompletableFuture<ResponseEntity<UniqueIdentifierResponse>> cessdaPidResponse(
         @Valid @RequestBody CessdaPidRequest request
     ) {
-        // Implementation logic goes here
-        // This would contain the actual validation logic for GUIDs
-        
-        // Example response - replace with actual implementation
-        return ResponseEntity.ok("\"pass\"");
+        // The check blocks on upstream I/O, so it runs on a virtual thread and the
+        // servlet thread is released until the result (or the timeout) completes the future
+        return CompletableFuture
+            .supplyAsync(() -> checker.containsApprovedPid(request.getResourceIdentifier()), checkExecutor)
+            .completeOnTimeout(MetadataUsesCessdaPids.RESULT_INDETERMINATE, checkTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .exceptionally(e -> MetadataUsesCessdaPids.RESULT_INDETERMINATE)
+            .thenApply(result -> ResponseEntity.ok(
+                new UniqueIdentifierResponse(result, checker.getVocabularyVersion())));
+    }
+
+    @PostMapping(
+        value = "/fc_cessda_identifier/bulk",
+        consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE },
+        produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "One JSON object per line, {\"resourceIdentifier\": ..., \"result\": \"pass\" | \"fail\" | \"indeterminate\", "
+            + "\"vocabularyVersion\": ...}, written in completion order as each check finishes",
+        content = @Content(
+            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+            schema = @Schema(implementation = BulkResponse.class)
+        )
+    )
+    public ResponseEntity<StreamingResponseBody> cessdaPidBulkResponse(
+        @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            description = "A JSON array, or newline-delimited JSON, of detail URLs or CessdaPidRequest objects"
+        ) InputStream body
+    ) {
+        StreamingResponseBody stream = out -> streamBulkResults(body, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(stream);
+    }
+
+    /**
+     * Read identifiers from the request body and write one NDJSON line per
+     * result as soon as each check completes.
+     *
+     * @param body - the request body
+     * @param out  - the response body
+     * @throws IOException - if reading the request or writing the response fails
+     */
+    void streamBulkResults(InputStream body, OutputStream out) throws IOException {
+        BulkAssessor assessor = new BulkAssessor(checker::containsApprovedPid, bulkMaxConcurrency);
+        try (MappingIterator<JsonNode> nodes = mapper.readerFor(JsonNode.class).readValues(body)) {
+            assessor.assess(resourceIdentifiers(nodes), result -> {
+                try {
+                    out.write(mapper.writeValueAsBytes(new BulkResponse(result.resourceIdentifier(), result.result(),
+                        checker.getVocabularyVersion())));
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bulk assessment interrupted", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Adapt a stream of JSON values to resource identifiers. Each value is
+     * either a string or an object with a {@code resourceIdentifier} field.
+     *
+     * @param nodes - the JSON values
+     * @return an iterator over the identifiers
+     */
+    private static Iterator<String> resourceIdentifiers(MappingIterator<JsonNode> nodes) {
+        return new Iterator<>() {
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            public String next() {
+                JsonNode node = nodes.next();
+                return node.isTextual() ? node.asText() : node.path(RESOURCE_IDENTIFIER).asText("");
+            }
+        };
+    }
+
+    /**
+     * One line of a bulk response.
+     *
+     * @param resourceIdentifier the identifier as given in the request
+     * @param result             "pass", "fail" or "indeterminate"
+     * @param vocabularyVersion  the version of the PID vocabulary the result
+     *                           was decided with
+     */
+    public record BulkResponse(String resourceIdentifier, String result, String vocabularyVersion) {
     }
 
     /**
@@ -91,7 +286,8 @@ public class MetadataUsesCessdaPidsApi {
     public static class CessdaPidRequest {
         
         @Schema(
-            description = "the GUID being tested",
+            description = "the GUID being tested: a CESSDA catalogue detail URL, or a DOI, Handle, URN or ARK "
+                + "of a harvested record",
             example = "https://doi.org/10.1000/182"
         )
         @NotNull
@@ -127,7 +323,24 @@ public class MetadataUsesCessdaPidsApi {
         )
         private String result;
 
+        @Schema(
+            description = "Version of the PID vocabulary the result was decided with",
+            example = "1.0.0+1a2b3c4d5e6f7a8b"
+        )
+        private String vocabularyVersion;
+
         // Constructors
+        public UniqueIdentifierResponse() {}
+
+        public UniqueIdentifierResponse(String result) {
+            this.result = result;
+        }
+
+        public UniqueIdentifierResponse(String result, String vocabularyVersion) {
+            this.result = result;
+            this.vocabularyVersion = vocabularyVersion;
+        }
+
         public String cessdaPidResponse() {
             return result;
         }
@@ -145,5 +358,13 @@ public class MetadataUsesCessdaPidsApi {
         public void setResult(String result) {
             this.result = result;
         }
+
+        public String getVocabularyVersion() {
+            return vocabularyVersion;
+        }
+
+        public void setVocabularyVersion(String vocabularyVersion) {
+            this.vocabularyVersion = vocabularyVersion;
+        }
     }
 }
\ No newline at end of file
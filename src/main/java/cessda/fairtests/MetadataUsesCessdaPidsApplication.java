@@ -0,0 +1,40 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+
+/**
+ * MetadataUsesCessdaPidsApplication
+ *
+ * Spring Boot entry point serving {@link MetadataUsesCessdaPidsApi}. Request
+ * handling runs on virtual threads (see {@code application.properties}), so
+ * slow upstream calls do not exhaust the servlet thread pool.
+ */
+@SpringBootApplication
+@EnableConfigurationProperties({ CessdaProperties.class, ResultCacheProperties.class,
+        ResultStoreProperties.class, UpstreamProperties.class, VocabularyProperties.class,
+        PayloadCacheProperties.class, PidIndexProperties.class })
+public class MetadataUsesCessdaPidsApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(MetadataUsesCessdaPidsApplication.class, args);
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * OaiPmhHarvester
+ *
+ * Walks an OAI-PMH {@code ListRecords} result set, following resumption
+ * tokens, and extracts the header and title statement IDNo entries of every
+ * record as it streams in.
+ *
+ * Behaviour:
+ * - Pages are parsed with StAX on a background virtual thread, which requests
+ * the next page as soon as the resumption token of the current page is read.
+ * - Parsed records are handed over through a bounded queue, so the next page is
+ * fetched while the caller is still processing the current one, and a slow
+ * caller applies back pressure instead of letting pages pile up in memory.
+ * - Pages are fetched through a {@link GuardedHttpSender}, so a 429 or 503
+ * answer is retried as its retry policy allows, honouring Retry-After, and the
+ * harvest shares the circuit breaker and concurrency limit of the sender it
+ * was given.
+ * - An OAI-PMH {@code noRecordsMatch} error ends the harvest normally; any
+ * other OAI-PMH error, non-200 status left after retries or parse failure
+ * aborts it.
+ * - The {@code responseDate} of the first page is kept: it is the repository's
+ * own clock at the start of the harvest, so it is a safe {@code from} for the
+ * next incremental run.
+ */
+public class OaiPmhHarvester {
+
+    private static final Logger logger = LogManager.getLogger(OaiPmhHarvester.class);
+
+    /** Number of parsed records buffered ahead of the caller. */
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    static final String OAI_NAMESPACE = "http://www.openarchives.org/OAI/2.0/";
+    private static final String NO_RECORDS_MATCH = "noRecordsMatch";
+    private static final HarvestedRecord END_OF_HARVEST = new HarvestedRecord(null, null, false, List.of());
+
+    private final HttpClient httpClient;
+    private final GuardedHttpSender sender;
+    private final String endpoint;
+    private final String metadataPrefix;
+    private final int queueCapacity;
+    private final XMLInputFactory inputFactory;
+    private final Lock inputFactoryLock = new ReentrantLock();
+    private volatile String responseDate;
+
+    /**
+     * A record read from a ListRecords page.
+     *
+     * @param identifier the OAI-PMH record identifier
+     * @param datestamp  the OAI-PMH header datestamp
+     * @param deleted    whether the header has {@code status="deleted"}
+     * @param idNos      the title statement IDNo entries (empty for deleted
+     *                   records)
+     */
+    public record HarvestedRecord(String identifier, String datestamp, boolean deleted, List<IdNoEntry> idNos) {
+    }
+
+    /**
+     * What a ListRecords page says besides its records.
+     *
+     * @param responseDate    the OAI-PMH {@code responseDate}, or null if
+     *                        absent
+     * @param resumptionToken the resumption token, or null if there is none
+     */
+    record Page(String responseDate, String resumptionToken) {
+    }
+
+    /**
+     * Create a harvester with the default queue capacity and a sender of its
+     * own.
+     *
+     * @param httpClient     - the HTTP client used to fetch pages
+     * @param endpoint       - the OAI-PMH base URL, without query parameters
+     * @param metadataPrefix - the metadata prefix to harvest, e.g. oai_ddi25
+     */
+    public OaiPmhHarvester(HttpClient httpClient, String endpoint, String metadataPrefix) {
+        this(httpClient, new GuardedHttpSender(), endpoint, metadataPrefix);
+    }
+
+    /**
+     * Create a harvester with the default queue capacity.
+     *
+     * @param httpClient     - the HTTP client used to fetch pages
+     * @param sender         - guards and retries page requests; it should not
+     *                       hedge, as pages are large
+     * @param endpoint       - the OAI-PMH base URL, without query parameters
+     * @param metadataPrefix - the metadata prefix to harvest, e.g. oai_ddi25
+     */
+    public OaiPmhHarvester(HttpClient httpClient, GuardedHttpSender sender, String endpoint, String metadataPrefix) {
+        this(httpClient, sender, endpoint, metadataPrefix, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    OaiPmhHarvester(HttpClient httpClient, String endpoint, String metadataPrefix, int queueCapacity) {
+        this(httpClient, new GuardedHttpSender(), endpoint, metadataPrefix, queueCapacity);
+    }
+
+    OaiPmhHarvester(HttpClient httpClient, GuardedHttpSender sender, String endpoint, String metadataPrefix,
+            int queueCapacity) {
+        this.httpClient = httpClient;
+        this.sender = sender;
+        this.endpoint = endpoint;
+        this.metadataPrefix = metadataPrefix;
+        this.queueCapacity = queueCapacity;
+        this.inputFactory = XMLInputFactory.newFactory();
+        this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Harvest every record, passing each one to the sink on the calling thread
+     * as soon as it has been parsed.
+     *
+     * @param sink - receives each harvested record in document order
+     * @return the number of records harvested
+     * @throws IOException          - if a page cannot be fetched or parsed
+     * @throws InterruptedException - if the harvest is interrupted
+     */
+    public long harvest(Consumer<HarvestedRecord> sink) throws IOException, InterruptedException {
+        return harvest(null, sink);
+    }
+
+    /**
+     * Harvest the records created, changed or deleted on or after a datestamp,
+     * passing each one to the sink on the calling thread as soon as it has
+     * been parsed.
+     *
+     * @param from - the OAI-PMH {@code from} datestamp (inclusive), or null to
+     *             harvest every record
+     * @param sink - receives each harvested record in document order
+     * @return the number of records harvested
+     * @throws IOException          - if a page cannot be fetched or parsed
+     * @throws InterruptedException - if the harvest is interrupted
+     */
+    public long harvest(String from, Consumer<HarvestedRecord> sink) throws IOException, InterruptedException {
+        responseDate = null;
+        BlockingQueue<HarvestedRecord> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        Thread producer = Thread.ofVirtual().name("oai-pmh-harvest").start(() -> {
+            try {
+                fetchAllPages(from, queue);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failure.set(e);
+            } finally {
+                signalEnd(queue);
+            }
+        });
+
+        long count = 0;
+        try {
+            for (HarvestedRecord record = queue.take(); record != END_OF_HARVEST; record = queue.take()) {
+                sink.accept(record);
+                count++;
+            }
+        } finally {
+            producer.interrupt();
+            producer.join();
+        }
+
+        Exception e = failure.get();
+        if (e instanceof IOException ioException) {
+            throw ioException;
+        } else if (e != null) {
+            throw new IOException("Harvest failed", e);
+        }
+        return count;
+    }
+
+    /**
+     * The {@code responseDate} of the first page of the last harvest. Records
+     * changed after it was produced may have been missed, so it is where the
+     * next incremental harvest has to start.
+     *
+     * @return the UTC datetime the repository reported, or null if no page has
+     *         been read or the first page had none
+     */
+    public String responseDate() {
+        return responseDate;
+    }
+
+    /**
+     * Queue the end marker, waiting for space if the caller is still draining
+     * the queue. If the producer has been interrupted the caller has already
+     * stopped reading, so the marker is dropped.
+     *
+     * @param queue - the queue receiving parsed records
+     */
+    private static void signalEnd(BlockingQueue<HarvestedRecord> queue) {
+        try {
+            queue.put(END_OF_HARVEST);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fetch and parse pages until the resumption token is empty.
+     *
+     * @param from  - the {@code from} datestamp, or null for no lower bound
+     * @param queue - the queue receiving parsed records
+     * @throws IOException          - if a page cannot be fetched or parsed
+     * @throws InterruptedException - if interrupted while fetching or queueing
+     */
+    private void fetchAllPages(String from, BlockingQueue<HarvestedRecord> queue)
+            throws IOException, InterruptedException {
+        String url = endpoint + "?verb=ListRecords&metadataPrefix="
+                + URLEncoder.encode(metadataPrefix, StandardCharsets.UTF_8);
+        if (from != null) {
+            url += "&from=" + URLEncoder.encode(from, StandardCharsets.UTF_8);
+        }
+        int page = 0;
+        while (url != null) {
+            page++;
+            logger.info("Harvesting ListRecords page {} from: {}", page, url);
+            Page result = fetchPage(url, queue);
+            if (page == 1) {
+                responseDate = result.responseDate();
+            }
+            String token = result.resumptionToken();
+            url = token == null || token.isBlank()
+                    ? null
+                    : endpoint + "?verb=ListRecords&resumptionToken=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Fetch a single ListRecords page and queue its records.
+     *
+     * @param url   - the page URL
+     * @param queue - the queue receiving parsed records
+     * @return the page's response date and resumption token
+     * @throws IOException          - if the page cannot be fetched or parsed
+     * @throws InterruptedException - if interrupted while fetching or queueing
+     */
+    private Page fetchPage(String url, BlockingQueue<HarvestedRecord> queue)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept", "application/xml, text/xml, */*")
+                .header("Accept-Encoding", ContentEncoding.ACCEPTED)
+                .header("User-Agent", "Java-HttpClient")
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+
+        HttpResponse<InputStream> response = sender.send(httpClient, request,
+                HttpResponse.BodyHandlers.ofInputStream(), OaiPmhHarvester::discardBody);
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200)
+                throw new IOException("Failed to fetch ListRecords page: HTTP " + response.statusCode());
+            return parsePage(ContentEncoding.decode(body, ContentEncoding.of(response)), queue);
+        }
+    }
+
+    /**
+     * Release the body of a page response that is being retried.
+     *
+     * @param response - the unused response
+     */
+    private static void discardBody(HttpResponse<InputStream> response) {
+        InputStream body = response.body();
+        if (body == null) {
+            return;
+        }
+        try {
+            body.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close unused page body: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Parse a ListRecords page, queueing each record as soon as its end tag
+     * is read.
+     *
+     * @param in    - the page body
+     * @param queue - the queue receiving parsed records
+     * @return the page's response date and resumption token
+     * @throws IOException          - if the page cannot be parsed or is an
+     *                              OAI-PMH error
+     * @throws InterruptedException - if interrupted while queueing
+     */
+    Page parsePage(InputStream in, BlockingQueue<HarvestedRecord> queue)
+            throws IOException, InterruptedException {
+        XMLStreamReader reader = null;
+        try {
+            reader = createReader(in);
+            return readPage(reader, queue);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse ListRecords page", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Failed to close XML stream reader: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a StAX reader. XMLInputFactory is not documented as thread-safe,
+     * so creation through the shared factory is serialised; reading itself is
+     * not. Creation reads the prolog from the stream, so the guard is a lock
+     * rather than a monitor: a virtual thread waiting on the network inside a
+     * monitor pins its carrier.
+     *
+     * @param in - the XML input stream
+     * @return a new reader
+     * @throws XMLStreamException - if the reader cannot be created
+     */
+    private XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        inputFactoryLock.lock();
+        try {
+            return inputFactory.createXMLStreamReader(in);
+        } finally {
+            inputFactoryLock.unlock();
+        }
+    }
+
+    /**
+     * Walk a ListRecords page.
+     *
+     * @param reader - the StAX reader
+     * @param queue  - the queue receiving parsed records
+     * @return the page's response date and resumption token
+     * @throws XMLStreamException   - if the XML is malformed
+     * @throws IOException          - if the page is an OAI-PMH error
+     * @throws InterruptedException - if interrupted while queueing
+     */
+    private static Page readPage(XMLStreamReader reader, BlockingQueue<HarvestedRecord> queue)
+            throws XMLStreamException, IOException, InterruptedException {
+        String responseDate = null;
+        String resumptionToken = null;
+        String identifier = null;
+        String datestamp = null;
+        boolean deleted = false;
+        IdNoStreamExtractor.TitleStatementCollector collector = null;
+        int metadataDepth = 0;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (metadataDepth > 0) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    metadataDepth++;
+                    collector.startElement(reader);
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    collector.characters(reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    metadataDepth--;
+                    if (metadataDepth > 0) {
+                        collector.endElement();
+                    }
+                }
+                continue;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && OAI_NAMESPACE.equals(reader.getNamespaceURI())) {
+                switch (reader.getLocalName()) {
+                    case "record" -> {
+                        identifier = null;
+                        datestamp = null;
+                        deleted = false;
+                        collector = new IdNoStreamExtractor.TitleStatementCollector();
+                    }
+                    case "header" -> deleted = "deleted".equals(reader.getAttributeValue(null, "status"));
+                    case "identifier" -> identifier = reader.getElementText().trim();
+                    case "datestamp" -> datestamp = reader.getElementText().trim();
+                    case "metadata" -> metadataDepth = 1;
+                    case "responseDate" -> responseDate = reader.getElementText().trim();
+                    case "resumptionToken" -> resumptionToken = reader.getElementText().trim();
+                    case "error" -> {
+                        String code = reader.getAttributeValue(null, "code");
+                        if (NO_RECORDS_MATCH.equals(code)) {
+                            return new Page(responseDate, null);
+                        }
+                        throw new IOException("OAI-PMH error " + code + ": " + reader.getElementText().trim());
+                    }
+                    default -> {
+                        // other OAI-PMH elements carry nothing the check needs
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && collector != null
+                    && "record".equals(reader.getLocalName()) && OAI_NAMESPACE.equals(reader.getNamespaceURI())) {
+                queue.put(new HarvestedRecord(identifier, datestamp, deleted, collector.entries()));
+                collector = null;
+            }
+        }
+        return new Page(responseDate, resumptionToken);
+    }
+}
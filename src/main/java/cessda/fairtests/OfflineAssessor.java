@@ -0,0 +1,269 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * OfflineAssessor
+ *
+ * Runs the approved PID check over DDI files on local storage, with no
+ * network access for the records themselves.
+ *
+ * Behaviour:
+ * - Accepts directories, zip archives and single XML files; directories are
+ * searched recursively and zip archives are read through the NIO zip file
+ * system without being extracted.
+ * - Each XML file is expected to hold a DDI codeBook, bare or inside an
+ * OAI-PMH response.
+ * - Directory trees and archives are split into fork/join tasks, so all cores
+ * of the pool are used.
+ * - Large files are memory-mapped instead of copied through a heap buffer.
+ * - Results are handed to the sink one at a time, in completion order; a file
+ * that cannot be read is reported as "indeterminate".
+ */
+public class OfflineAssessor {
+
+    private static final Logger logger = LogManager.getLogger(OfflineAssessor.class);
+
+    /** Files at least this large are memory-mapped. */
+    static final long MAP_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final String XML_SUFFIX = ".xml";
+    private static final String ZIP_SUFFIX = ".zip";
+    private static final String ARCHIVE_SEPARATOR = "!/";
+
+    /**
+     * Result of checking a single local file.
+     *
+     * @param source the file, or {@code archive.zip!/entry.xml} for an archive
+     *               entry
+     * @param result "pass", "fail" or "indeterminate"
+     */
+    public record OfflineResult(String source, String result) {
+    }
+
+    /**
+     * Checks a DDI document read from local storage.
+     */
+    @FunctionalInterface
+    interface DocumentCheck {
+        /**
+         * @param in     - the document
+         * @param source - identifies the document (for logging)
+         * @return "pass", "fail" or "indeterminate"
+         */
+        String check(InputStream in, String source);
+    }
+
+    private final DocumentCheck check;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an assessor that uses the checker's approved PID logic on the
+     * common fork/join pool.
+     *
+     * @param checker - the checker whose logic and vocabulary are used
+     */
+    public OfflineAssessor(MetadataUsesCessdaPids checker) {
+        this(checker::checkLocalDocument, ForkJoinPool.commonPool());
+    }
+
+    OfflineAssessor(DocumentCheck check, ForkJoinPool pool) {
+        this.check = check;
+        this.pool = pool;
+    }
+
+    /**
+     * Check every DDI file under the given paths.
+     *
+     * @param roots - directories, zip archives or XML files
+     * @param sink  - receives each result as soon as it is known; calls are
+     *              serialised
+     * @return the number of files checked
+     * @throws IOException - if a directory or archive cannot be read
+     */
+    public long assess(List<Path> roots, Consumer<OfflineResult> sink) throws IOException {
+        Consumer<OfflineResult> serialSink = result -> {
+            synchronized (sink) {
+                sink.accept(result);
+            }
+        };
+        List<PathTask> tasks = new ArrayList<>();
+        for (Path root : roots) {
+            if (!Files.exists(root)) {
+                throw new IOException("No such file or directory: " + root);
+            }
+            tasks.add(new PathTask(root, root.toString(), serialSink));
+        }
+        try {
+            return pool.invoke(new RecursiveTask<Long>() {
+                @Override
+                protected Long compute() {
+                    return sum(invokeAll(tasks));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long sum(Iterable<PathTask> tasks) {
+        long total = 0;
+        for (PathTask task : tasks) {
+            total += task.join();
+        }
+        return total;
+    }
+
+    /**
+     * Checks one path: recurses into a directory or archive, or checks a
+     * single file.
+     */
+    private final class PathTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path path;
+        private final String source;
+        private final transient Consumer<OfflineResult> sink;
+
+        PathTask(Path path, String source, Consumer<OfflineResult> sink) {
+            this.path = path;
+            this.source = source;
+            this.sink = sink;
+        }
+
+        @Override
+        protected Long compute() {
+            try {
+                if (Files.isDirectory(path)) {
+                    return sum(invokeAll(children()));
+                }
+                String name = path.getFileName() == null ? "" : path.getFileName().toString().toLowerCase(Locale.ROOT);
+                if (name.endsWith(ZIP_SUFFIX) && path.getFileSystem() == FileSystems.getDefault()) {
+                    try (FileSystem archive = FileSystems.newFileSystem(path)) {
+                        List<PathTask> entries = new ArrayList<>();
+                        for (Path root : archive.getRootDirectories()) {
+                            entries.add(new PathTask(root, source + ARCHIVE_SEPARATOR, sink));
+                        }
+                        return sum(invokeAll(entries));
+                    }
+                }
+                if (name.endsWith(XML_SUFFIX)) {
+                    sink.accept(new OfflineResult(source, checkFile()));
+                    return 1L;
+                }
+                return 0L;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<PathTask> children() throws IOException {
+            List<PathTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path child : entries) {
+                    children.add(new PathTask(child, childSource(child), sink));
+                }
+            }
+            return children;
+        }
+
+        private String childSource(Path child) {
+            String name = child.getFileName().toString();
+            return source.endsWith("/") ? source + name : source + "/" + name;
+        }
+
+        private String checkFile() {
+            try (InputStream in = open(path)) {
+                return check.check(in, source);
+            } catch (IOException e) {
+                logger.warn("Failed to read {}: {}", source, e.getMessage());
+                return MetadataUsesCessdaPids.RESULT_INDETERMINATE;
+            }
+        }
+    }
+
+    /**
+     * Open a file for reading, memory-mapping it if it is large and on the
+     * default file system.
+     */
+    private static InputStream open(Path path) throws IOException {
+        if (path.getFileSystem() == FileSystems.getDefault() && Files.size(path) >= MAP_THRESHOLD_BYTES) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Reads a (mapped) buffer as a stream.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
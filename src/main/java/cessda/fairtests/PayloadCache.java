@@ -0,0 +1,400 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * PayloadCache
+ *
+ * Keeps the raw OAI-PMH GetRecord payloads on disk, gzip-compressed, so a
+ * record assessed again after a rule change (e.g. a new PID vocabulary) is
+ * re-parsed locally instead of downloaded again.
+ *
+ * Layout:
+ * - One file per GetRecord URL, named by the SHA-256 of the URL, so each
+ * record is cached separately in each metadata format.
+ * - A file starts with a fixed-size header holding the OAI-PMH header
+ * datestamp of the record the payload was read from, followed by the payload
+ * as a gzip stream. A file without the header (e.g. written by an earlier
+ * version) is treated as not cached.
+ *
+ * Behaviour:
+ * - A payload received gzip-encoded is stored as received; any other payload
+ * is compressed while it is stored. Either way the payload is a gzip stream and
+ * is inflated as it is parsed.
+ * - A payload captured from a streamed response is written while the parser
+ * reads it. Once the parser stops, the rest of the body is still read, so the
+ * cached payload is complete.
+ * - A payload is stored only once it has been read successfully, by writing
+ * and syncing a temporary file and renaming it atomically, so a crash or a
+ * failed parse never leaves a truncated payload behind.
+ * - A payload is reused while it is younger than the maximum age; older
+ * payloads are deleted when looked up and the record is fetched again.
+ * - A lookup may pass the record's current datestamp, e.g. one just read to
+ * revalidate a cached result; a payload stored with another datestamp, or
+ * without one, is out of date and is deleted, so the record is fetched again.
+ */
+public class PayloadCache {
+
+    /** Default age after which a cached payload is fetched again. */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+
+    static final String SUFFIX = ".xml.gz";
+    private static final String TMP_SUFFIX = ".tmp";
+    // Header: magic, datestamp length, then the UTF-8 datestamp padded to the header size
+    private static final int MAGIC = 0x43504331;
+    static final int HEADER_SIZE = 64;
+    private static final int MAX_DATESTAMP_BYTES = HEADER_SIZE - Integer.BYTES - 1;
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final Clock clock;
+
+    private PayloadCache(Path directory, Duration maxAge, Clock clock) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    /**
+     * Open the cache in a directory, creating it if needed.
+     *
+     * @param directory - the directory holding the payload files
+     * @param maxAge    - how long a cached payload may be reused
+     * @return the opened cache
+     * @throws IOException - if the directory cannot be created
+     */
+    public static PayloadCache open(Path directory, Duration maxAge) throws IOException {
+        return open(directory, maxAge, Clock.systemUTC());
+    }
+
+    static PayloadCache open(Path directory, Duration maxAge, Clock clock) throws IOException {
+        Files.createDirectories(directory);
+        return new PayloadCache(directory, maxAge, clock);
+    }
+
+    /**
+     * Find the cached payload of a URL.
+     *
+     * @param url - the GetRecord URL
+     * @return the gzip-encoded payload, or null if none is cached or it is
+     *         older than the maximum age
+     * @throws IOException - if the payload cannot be read
+     */
+    ContentEncoding.EncodedBody find(String url) throws IOException {
+        return find(url, null);
+    }
+
+    /**
+     * Find the cached payload of a URL, if it was read from the record as it
+     * is now.
+     *
+     * @param url              - the GetRecord URL
+     * @param currentDatestamp - the record's current OAI-PMH header datestamp,
+     *                         or null if it is not known
+     * @return the gzip-encoded payload, or null if none is cached, it is older
+     *         than the maximum age or it was stored with another datestamp
+     * @throws IOException - if the payload cannot be read
+     */
+    ContentEncoding.EncodedBody find(String url, String currentDatestamp) throws IOException {
+        Path path = pathOf(url);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Instant storedAt = Files.getLastModifiedTime(path).toInstant();
+            if (storedAt.plus(maxAge).isBefore(clock.instant())) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            header.flip();
+            String storedDatestamp = header.remaining() == HEADER_SIZE ? datestampOf(header) : null;
+            if (storedDatestamp == null || currentDatestamp != null && !currentDatestamp.equals(storedDatestamp)) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(Math.toIntExact(channel.size() - HEADER_SIZE));
+            readFully(channel, payload);
+            return new ContentEncoding.EncodedBody(payload.array(), ContentEncoding.GZIP);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a buffered payload.
+     *
+     * @param url       - the GetRecord URL
+     * @param body      - the payload as received
+     * @param datestamp - the OAI-PMH header datestamp of the record, or null if
+     *                  it has none
+     * @throws IOException - if the payload cannot be decoded or written
+     */
+    void put(String url, ContentEncoding.EncodedBody body, String datestamp) throws IOException {
+        try (Capture capture = new Capture(url)) {
+            if (ContentEncoding.GZIP.equals(body.encoding())) {
+                capture.raw().write(body.bytes());
+            } else {
+                try (InputStream decoded = body.open()) {
+                    decoded.transferTo(capture.compressing());
+                }
+            }
+            capture.commit(datestamp);
+        }
+    }
+
+    /**
+     * Start capturing a streamed payload.
+     *
+     * @param url      - the GetRecord URL
+     * @param body     - the body as received
+     * @param encoding - its content encoding, or null for none
+     * @return the capture; {@link Capture#commit(String)} stores the payload, and
+     *         closing an uncommitted capture discards it
+     * @throws IOException - if the temporary file cannot be created
+     */
+    Capture capture(String url, InputStream body, String encoding) throws IOException {
+        Capture capture = new Capture(url);
+        try {
+            capture.open(body, encoding);
+            return capture;
+        } catch (IOException | RuntimeException e) {
+            capture.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The file a URL's payload is cached in.
+     *
+     * @param url - the GetRecord URL
+     * @return the path
+     */
+    Path pathOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest) + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Read the datestamp from a file header.
+     *
+     * @param header - the header, positioned at its start
+     * @return the datestamp, or an empty string if none was stored, or null if
+     *         the header is not valid
+     */
+    private static String datestampOf(ByteBuffer header) {
+        if (header.getInt() != MAGIC) {
+            return null;
+        }
+        int length = Byte.toUnsignedInt(header.get());
+        if (length > MAX_DATESTAMP_BYTES) {
+            return null;
+        }
+        return new String(header.array(), header.position(), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build a file header.
+     *
+     * @param datestamp - the datestamp, or null if the record has none
+     * @return the header, ready to be written
+     */
+    private static ByteBuffer headerOf(String datestamp) {
+        byte[] bytes = datestamp == null ? new byte[0] : datestamp.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_DATESTAMP_BYTES) {
+            // Not a datestamp OAI-PMH allows; store none so a revalidated lookup never matches it
+            bytes = new byte[0];
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put((byte) bytes.length).put(bytes);
+        return header.clear();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading until the buffer is full or the file ends
+        }
+    }
+
+    /**
+     * A payload being written to a temporary file.
+     */
+    final class Capture implements Closeable {
+
+        private final Path path;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final OutputStream file;
+        private GZIPOutputStream compressor;
+        private InputStream received;
+        private InputStream decoded;
+        private boolean committed;
+
+        private Capture(String url) throws IOException {
+            this.path = pathOf(url);
+            this.tmp = Files.createTempFile(directory, path.getFileName().toString(), TMP_SUFFIX);
+            this.channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            // The header is written over this space once the datestamp has been read
+            channel.position(HEADER_SIZE);
+            this.file = new BufferedOutputStream(Channels.newOutputStream(channel));
+        }
+
+        /**
+         * @return the file, for a payload that is already gzip-encoded
+         */
+        private OutputStream raw() {
+            return file;
+        }
+
+        /**
+         * @return a stream compressing what is written to it into the file
+         * @throws IOException - if the gzip header cannot be written
+         */
+        private OutputStream compressing() throws IOException {
+            compressor = new GZIPOutputStream(file, 8192);
+            return compressor;
+        }
+
+        private void open(InputStream body, String encoding) throws IOException {
+            if (ContentEncoding.GZIP.equals(encoding)) {
+                // Already compressed: store the bytes as they arrive, before they are inflated
+                received = new TeeInputStream(body, raw());
+                decoded = ContentEncoding.decode(received, encoding);
+            } else {
+                received = body;
+                decoded = new TeeInputStream(ContentEncoding.decode(body, encoding), compressing());
+            }
+        }
+
+        /**
+         * @return the decoded body, written to the cache as it is read
+         */
+        InputStream body() {
+            return decoded;
+        }
+
+        /**
+         * Read the rest of the body and store the payload.
+         *
+         * @param datestamp - the OAI-PMH header datestamp read from the body,
+         *                  or null if it has none
+         * @throws IOException - if the body cannot be read or the payload
+         *                     cannot be written
+         */
+        void commit(String datestamp) throws IOException {
+            if (decoded != null) {
+                decoded.transferTo(OutputStream.nullOutputStream());
+                received.transferTo(OutputStream.nullOutputStream());
+            }
+            if (compressor != null) {
+                compressor.finish();
+            }
+            file.flush();
+            ByteBuffer header = headerOf(datestamp);
+            for (long position = 0; header.hasRemaining();) {
+                position += channel.write(header, position);
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            try (channel) {
+                if (compressor != null) {
+                    // Ends the deflater; what it writes goes to a file about to be deleted
+                    compressor.close();
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes read through it to a sink.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream sink;
+
+        TeeInputStream(InputStream in, OutputStream sink) {
+            super(in);
+            this.sink = sink;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                sink.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                sink.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes still have to reach the sink
+            return Math.max(read(new byte[(int) Math.min(n, 8192)]), 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
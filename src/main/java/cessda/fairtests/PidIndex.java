@@ -0,0 +1,279 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PidIndex
+ *
+ * Maps persistent identifiers found in catalogue records (DOI, Handle, URN and
+ * ARK) to the identifiers of those records, so a request naming a study by its
+ * PID instead of its detail URL is resolved without a search round-trip.
+ *
+ * Behaviour:
+ * - PIDs are normalised before they are indexed or looked up: lower-cased,
+ * with resolver prefixes (e.g. {@code https://doi.org/}, {@code hdl:}) removed.
+ * They are recognised with {@link PidPatternMatcher}'s built-in syntaxes, tried
+ * in the same order, so a value is indexed under the schema the checker
+ * classifies it as (e.g. a value under {@code https://hdl.handle.net/} is a
+ * Handle, even under the {@code 10.} prefix).
+ * - Values that are not recognisable PIDs are not indexed.
+ * - {@link #put(String, List)} replaces a record's PIDs, for records read in
+ * full (e.g. harvested); {@link #add(String, List)} only adds to them, for
+ * records whose reading stopped at the first approved PID.
+ * - A PID listed by several records resolves to the last one indexed.
+ * - Saving writes and syncs a temporary file and renames it over the old one
+ * atomically, so a crash leaves either the old or the new index.
+ */
+public class PidIndex {
+
+    private static final long MAGIC = 0x4345535344415049L;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // The checker's built-in syntaxes, with the identifier proper captured
+    private static final List<Map.Entry<Pattern, String>> SYNTAXES = PidPatternMatcher.BUILT_IN_SYNTAXES.values()
+            .stream()
+            .map(syntax -> Map.entry(Pattern.compile(syntax.resolver() + "(" + syntax.identifier() + ")"),
+                    syntax.indexPrefix()))
+            .toList();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, String> recordByPid = new HashMap<>();
+    private final Map<String, String[]> pidsByRecord = new HashMap<>();
+
+    /**
+     * Load an index saved with {@link #save(Path)}.
+     *
+     * @param path - the index file
+     * @return the index, empty if the file does not exist
+     * @throws IOException - if the file cannot be read or is not a PID index
+     */
+    public static PidIndex load(Path path) throws IOException {
+        PidIndex index = new PidIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a PID index: " + path);
+            }
+            int records = in.readInt();
+            for (int i = 0; i < records; i++) {
+                String recordId = in.readUTF();
+                String[] pids = new String[in.readUnsignedShort()];
+                for (int j = 0; j < pids.length; j++) {
+                    pids[j] = in.readUTF();
+                }
+                index.index(recordId, pids);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing harvested yet
+        }
+        return index;
+    }
+
+    /**
+     * Save the index.
+     *
+     * @param path - the index file; its directory must exist
+     * @throws IOException - if the index cannot be written
+     */
+    public void save(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeLong(MAGIC);
+            out.writeInt(pidsByRecord.size());
+            for (Map.Entry<String, String[]> entry : pidsByRecord.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeShort(entry.getValue().length);
+                for (String pid : entry.getValue()) {
+                    out.writeUTF(pid);
+                }
+            }
+            out.flush();
+            channel.force(true);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Resolve a PID to the record listing it.
+     *
+     * @param identifier - the PID, in any form {@link #normalise(String)}
+     *                   accepts
+     * @return the record identifier, or null if the PID is not indexed
+     */
+    public String resolve(String identifier) {
+        String pid = normalise(identifier);
+        if (pid == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return recordByPid.get(pid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the PIDs of a record.
+     *
+     * @param recordId - the record identifier
+     * @param idNos    - all IDNo entries of the record
+     */
+    public void put(String recordId, List<IdNoEntry> idNos) {
+        String[] pids = normalise(idNos, Set.of());
+        lock.writeLock().lock();
+        try {
+            unindex(recordId);
+            index(recordId, pids);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add PIDs to those of a record.
+     *
+     * @param recordId - the record identifier
+     * @param idNos    - some IDNo entries of the record
+     */
+    public void add(String recordId, List<IdNoEntry> idNos) {
+        lock.writeLock().lock();
+        try {
+            String[] known = pidsByRecord.get(recordId);
+            String[] pids = normalise(idNos, known == null ? Set.of() : Set.of(known));
+            if (known == null || pids.length > known.length) {
+                index(recordId, pids);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a record, e.g. one deleted from the catalogue.
+     *
+     * @param recordId - the record identifier
+     */
+    public void remove(String recordId) {
+        lock.writeLock().lock();
+        try {
+            unindex(recordId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of PIDs indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return recordByPid.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Normalise a PID.
+     *
+     * @param value - the PID, bare or as a resolver URL
+     * @return the PID as {@code doi:...}, {@code hdl:...}, {@code urn:...} or
+     *         {@code ark:...}, lower-cased; or null if it is not a recognisable
+     *         PID
+     */
+    static String normalise(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pid = value.trim().toLowerCase(Locale.ROOT);
+        for (Map.Entry<Pattern, String> syntax : SYNTAXES) {
+            Matcher matcher = syntax.getKey().matcher(pid);
+            if (matcher.matches()) {
+                return syntax.getValue() + matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Normalise the PIDs among IDNo entries.
+     *
+     * @param idNos - the entries
+     * @param known - PIDs to keep in front of those found
+     * @return the distinct PIDs
+     */
+    private static String[] normalise(List<IdNoEntry> idNos, Set<String> known) {
+        Set<String> pids = new LinkedHashSet<>(known);
+        for (IdNoEntry entry : idNos) {
+            String pid = normalise(entry.value());
+            if (pid != null) {
+                pids.add(pid);
+            }
+        }
+        return pids.toArray(String[]::new);
+    }
+
+    private void index(String recordId, String[] pids) {
+        if (pids.length == 0) {
+            return;
+        }
+        pidsByRecord.put(recordId, pids);
+        for (String pid : pids) {
+            recordByPid.put(pid, recordId);
+        }
+    }
+
+    private void unindex(String recordId) {
+        String[] pids = pidsByRecord.remove(recordId);
+        if (pids == null) {
+            return;
+        }
+        for (String pid : pids) {
+            recordByPid.remove(pid, recordId);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * PidIndexProperties
+ *
+ * The {@code cessda.pid-index.*} settings of the {@link PidIndex} that
+ * resolves DOIs, Handles, URNs and ARKs to catalogue records.
+ *
+ * @param path - the PID index file, or empty to resolve no PIDs
+ */
+@ConfigurationProperties("cessda.pid-index")
+public record PidIndexProperties(@DefaultValue("") String path) {
+
+    /**
+     * Load the index into the checker, if a path is set.
+     *
+     * @param checker - the checker to configure
+     * @throws IOException - if the index file exists but cannot be loaded
+     */
+    void applyTo(MetadataUsesCessdaPids checker) throws IOException {
+        if (path != null && !path.isBlank()) {
+            checker.setPidIndexPath(Path.of(path));
+        }
+    }
+}
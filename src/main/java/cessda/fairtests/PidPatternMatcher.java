@@ -0,0 +1,203 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * PidPatternMatcher
+ *
+ * Classifies identifier values by PID schema with a single compiled regular
+ * expression, so an IDNo whose {@code agency} attribute is missing or wrong can
+ * still be recognised from its value.
+ *
+ * Behaviour:
+ * - The patterns of all schemas are combined into one alternation of named
+ * groups and compiled once; a value is classified with a single match, not
+ * one match per schema.
+ * - A schema's pattern comes from the vocabulary when it publishes one, and
+ * otherwise from the built-in patterns for DOI, Handle, URN and ARK. Schemas
+ * with neither are matched by agency only.
+ * - Matching is case-insensitive and must cover the whole (trimmed) value.
+ * - More specific schemas are tried first: a DOI is also a syntactically valid
+ * Handle, and is reported as a DOI.
+ * - A built-in Handle needs the {@code hdl:} or {@code https://hdl.handle.net/}
+ * resolver, or a dotted prefix, so bare local identifiers such as
+ * {@code 2021/001} are not taken for Handles.
+ */
+public final class PidPatternMatcher {
+
+    private static final Logger logger = LogManager.getLogger(PidPatternMatcher.class);
+
+    /**
+     * Built-in syntax of a PID schema: an optional resolver prefix followed by
+     * the identifier proper. Shared with {@link PidIndex}, so a value the
+     * checker recognises as a PID is the value the index is keyed by.
+     *
+     * @param resolver    - pattern of the resolver prefix, e.g. a resolver URL
+     *                    or {@code doi:}; it may be optional
+     * @param identifier  - pattern of the identifier proper
+     * @param indexPrefix - what {@link PidIndex} puts in front of the
+     *                    lower-cased identifier proper
+     */
+    record Syntax(String resolver, String identifier, String indexPrefix) {
+
+        /**
+         * @return the pattern of the whole value
+         */
+        String pattern() {
+            return resolver + identifier;
+        }
+    }
+
+    /** Built-in syntaxes, in the order they are tried. */
+    static final Map<String, Syntax> BUILT_IN_SYNTAXES = builtInSyntaxes();
+
+    /** Built-in patterns, in the order they are tried. */
+    static final Map<String, String> DEFAULT_PATTERNS = defaultPatterns();
+
+    private static final PidPatternMatcher NONE = new PidPatternMatcher(null, List.of());
+
+    private final Pattern combined;
+    private final List<String> groupSchemas;
+
+    private PidPatternMatcher(Pattern combined, List<String> groupSchemas) {
+        this.combined = combined;
+        this.groupSchemas = groupSchemas;
+    }
+
+    /**
+     * Compile a matcher for the given schemas.
+     *
+     * @param schemas            - the schemas to recognise
+     * @param vocabularyPatterns - patterns published by the vocabulary, by
+     *                           schema; these take precedence over the
+     *                           built-in ones
+     * @return the matcher
+     */
+    public static PidPatternMatcher compile(Set<String> schemas, Map<String, String> vocabularyPatterns) {
+        List<String> ordered = new ArrayList<>(schemas);
+        List<String> builtInOrder = List.copyOf(DEFAULT_PATTERNS.keySet());
+        ordered.sort(Comparator.<String>comparingInt(schema -> {
+            int position = builtInOrder.indexOf(schema);
+            return position < 0 ? builtInOrder.size() : position;
+        }).thenComparing(Comparator.naturalOrder()));
+
+        StringBuilder alternation = new StringBuilder();
+        List<String> groupSchemas = new ArrayList<>();
+        for (String schema : ordered) {
+            String pattern = vocabularyPatterns.getOrDefault(schema, DEFAULT_PATTERNS.get(schema));
+            if (pattern == null || !isValid(schema, pattern)) {
+                continue;
+            }
+            alternation.append(groupSchemas.isEmpty() ? "" : "|")
+                    .append("(?<s").append(groupSchemas.size()).append('>')
+                    .append(stripAnchors(pattern)).append(')');
+            groupSchemas.add(schema);
+        }
+        if (groupSchemas.isEmpty()) {
+            return NONE;
+        }
+        return new PidPatternMatcher(Pattern.compile(alternation.toString(), Pattern.CASE_INSENSITIVE),
+                List.copyOf(groupSchemas));
+    }
+
+    /**
+     * Classify an identifier value.
+     *
+     * @param value - the IDNo value, or null
+     * @return the schema the value belongs to, or null if it matches none
+     */
+    public String classify(String value) {
+        if (combined == null || value == null) {
+            return null;
+        }
+        Matcher matcher = combined.matcher(value.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        for (int i = 0; i < groupSchemas.size(); i++) {
+            if (matcher.start("s" + i) >= 0) {
+                return groupSchemas.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the schemas this matcher can classify, in the order they are
+     *         tried
+     */
+    public List<String> schemas() {
+        return groupSchemas;
+    }
+
+    private static boolean isValid(String schema, String pattern) {
+        try {
+            Pattern.compile(pattern);
+            return true;
+        } catch (PatternSyntaxException e) {
+            logger.warn("Ignoring invalid pattern for PID schema '{}': {}", schema, e.getDescription());
+            return false;
+        }
+    }
+
+    /**
+     * Remove leading and trailing anchors; the combined pattern always matches
+     * the whole value.
+     */
+    private static String stripAnchors(String pattern) {
+        String stripped = pattern;
+        if (stripped.startsWith("^")) {
+            stripped = stripped.substring(1);
+        }
+        if (stripped.endsWith("$") && !stripped.endsWith("\\$")) {
+            stripped = stripped.substring(0, stripped.length() - 1);
+        }
+        return stripped;
+    }
+
+    private static Map<String, Syntax> builtInSyntaxes() {
+        Map<String, Syntax> syntaxes = new LinkedHashMap<>();
+        syntaxes.put("DOI", new Syntax("(?:https?://(?:dx\\.)?doi\\.org/|doi:)?", "10\\.\\d{4,9}/\\S+", "doi:"));
+        syntaxes.put("ARK", new Syntax("(?:https?://[^/\\s]+/)?ark:/?", "[0-9a-z]{5,}/\\S+", "ark:"));
+        syntaxes.put("URN", new Syntax("(?:https?://[^/\\s]+/)?", "urn:[a-z0-9][a-z0-9-]{0,31}:\\S+", ""));
+        // A bare Handle needs a dotted prefix (e.g. 21.11116/...); otherwise local IDs such as 2021/001 would match
+        syntaxes.put("Handle", new Syntax("(?:https?://hdl\\.handle\\.net/|hdl:|(?=\\d+(?:\\.\\d+)+/))",
+                "\\d+(?:\\.\\d+)*/\\S+", "hdl:"));
+        return Collections.unmodifiableMap(syntaxes);
+    }
+
+    private static Map<String, String> defaultPatterns() {
+        Map<String, String> patterns = new LinkedHashMap<>();
+        BUILT_IN_SYNTAXES.forEach((schema, syntax) -> patterns.put(schema, syntax.pattern()));
+        return Collections.unmodifiableMap(patterns);
+    }
+}
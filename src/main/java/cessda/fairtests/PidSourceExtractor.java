@@ -0,0 +1,105 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * PidSourceExtractor
+ *
+ * Reads the persistent identifiers of a record, with their agencies where the
+ * format carries them, from an OAI-PMH GetRecord response in one metadata
+ * format.
+ *
+ * Behaviour:
+ * - Identifiers are returned as {@link IdNoEntry} values, so the same approved
+ * PID decision applies whichever format supplied them.
+ * - Implementations stream the response and stop once {@code stopWhen}
+ * accepts an entry or the part of the record holding identifiers has ended.
+ * - {@link #relativeCost()} orders formats from cheapest to most expensive to
+ * transfer and parse; {@link MetadataFormatPolicy} tries the cheapest first.
+ */
+public interface PidSourceExtractor {
+
+    /**
+     * Thrown when the repository cannot disseminate a record in the requested
+     * format (OAI-PMH error {@code cannotDisseminateFormat}), so a more
+     * expensive format has to be tried.
+     */
+    class FormatUnavailableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message - the OAI-PMH error message
+         */
+        public FormatUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @return the OAI-PMH metadata prefix, e.g. oai_ddi25
+     */
+    String metadataPrefix();
+
+    /**
+     * @return the relative cost of fetching and parsing a record in this
+     *         format; lower is cheaper
+     */
+    int relativeCost();
+
+    /**
+     * Extract the OAI-PMH header fields and identifiers from a GetRecord
+     * response.
+     *
+     * @param in       - the response body; it is not closed by this method
+     * @param stopWhen - predicate that ends extraction when it returns true
+     * @return the record header and the identifiers read before extraction
+     *         stopped
+     * @throws IOException - if the response cannot be parsed or is an OAI-PMH
+     *                     error
+     */
+    OaiPmhHarvester.HarvestedRecord extractRecord(InputStream in, Predicate<IdNoEntry> stopWhen) throws IOException;
+
+    /**
+     * The extractor for a metadata prefix.
+     *
+     * @param metadataPrefix - oai_ddi25, oai_dc, oai_datacite (or datacite), or
+     *                       a DDI-Lifecycle 3.x prefix such as oai_ddi32
+     * @return the extractor
+     * @throws IllegalArgumentException - if no extractor handles the prefix
+     */
+    static PidSourceExtractor forPrefix(String metadataPrefix) {
+        String prefix = metadataPrefix.strip();
+        String normalised = prefix.toLowerCase(Locale.ROOT);
+        if (normalised.equals(Ddi25PidExtractor.METADATA_PREFIX)) {
+            return new Ddi25PidExtractor();
+        } else if (normalised.equals(DublinCorePidExtractor.METADATA_PREFIX)) {
+            return new DublinCorePidExtractor();
+        } else if (normalised.endsWith("datacite")) {
+            return new DataCitePidExtractor(prefix);
+        } else if (normalised.matches("(oai_)?ddi_?3.*")) {
+            return new DdiLifecyclePidExtractor(prefix);
+        }
+        throw new IllegalArgumentException("No PID extractor for metadata prefix: " + metadataPrefix);
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * PidVocabulary
+ *
+ * Holds the approved PID schemas and keeps them up to date in the background.
+ *
+ * Behaviour:
+ * - {@link #get()} never blocks on network I/O. Before the first load has
+ * finished it returns the fallback set.
+ * - Each snapshot carries the time its refresh is due: the refresh interval
+ * after a successful load, the (shorter) retry interval after a failed one.
+ * The first read after that time starts a refresh on a background thread and
+ * keeps serving the current snapshot (stale-while-revalidate).
+ * - Refreshed on a {@link ScheduledExecutorService} (the shared one by
+ * default), a refresh is also scheduled for that time, so an idle service
+ * does not serve a stale vocabulary to its first request after a quiet
+ * period. The first load still starts with the first read (or
+ * {@link #awaitFirstLoad(Duration)}), or, after a
+ * {@link #seed(VocabularySnapshot) seed}, when the seeded vocabulary is due.
+ * - If no good set has been loaded yet, a failed load caches the fallback set
+ * as the current snapshot, so readers neither block nor trigger a load on
+ * every call while the vocabulary service is down.
+ * - Only one load runs at a time. A {@link Fetcher} is handed the vocabulary
+ * currently served, so it can revalidate it (conditional GET) instead of
+ * downloading it again.
+ * - A vocabulary saved by an earlier run can be {@link #seed(VocabularySnapshot)
+ * seeded}; it is served at once, as if loaded when it was fetched, and
+ * refreshed in the background once due.
+ */
+public class PidVocabulary {
+
+    private static final Logger logger = LogManager.getLogger(PidVocabulary.class);
+
+    /** Default interval between successful refreshes. */
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofHours(6);
+    /** Default interval before retrying a failed refresh. */
+    public static final Duration DEFAULT_RETRY_INTERVAL = Duration.ofMinutes(1);
+
+    private static final ScheduledExecutorService SHARED_REFRESH_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("pid-vocabulary-refresh").daemon(true).factory());
+
+    private final Fetcher fetcher;
+    private final VocabularySnapshot fallback;
+    private final Duration refreshInterval;
+    private final Duration retryInterval;
+    private final Executor refreshExecutor;
+    private final Clock clock;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicReference<ScheduledFuture<?>> scheduledRefresh = new AtomicReference<>();
+    private final CountDownLatch firstLoad = new CountDownLatch(1);
+    private volatile Snapshot current;
+
+    /**
+     * Loads the approved PID schemas from the vocabulary service.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @return the approved PID schemas; never empty
+         * @throws IOException          - if the vocabulary cannot be fetched or
+         *                              contains no schemas
+         * @throws InterruptedException - if the load is interrupted
+         */
+        Set<String> load() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Fetches the vocabulary from the vocabulary service.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+        /**
+         * @param current - the vocabulary currently served, or null if none has
+         *                been loaded; returned revalidated if it is unchanged
+         * @return the vocabulary; never empty
+         * @throws IOException          - if the vocabulary cannot be fetched or
+         *                              contains no schemas
+         * @throws InterruptedException - if the fetch is interrupted
+         */
+        VocabularySnapshot fetch(VocabularySnapshot current) throws IOException, InterruptedException;
+    }
+
+    /**
+     * The vocabulary being served.
+     *
+     * @param vocabulary   the vocabulary
+     * @param loadedAt     when it was loaded or revalidated (or the fallback
+     *                     was cached)
+     * @param refreshDueAt when the next refresh should start
+     * @param fallback     whether this is the fallback vocabulary
+     */
+    public record Snapshot(VocabularySnapshot vocabulary, Instant loadedAt, Instant refreshDueAt, boolean fallback) {
+
+        /**
+         * @return the approved PID schemas
+         */
+        public Set<String> schemas() {
+            return vocabulary.schemas();
+        }
+
+        /**
+         * @return the version of the vocabulary, see
+         *         {@link VocabularySnapshot#version()}
+         */
+        public String version() {
+            return vocabulary.version();
+        }
+    }
+
+    /**
+     * Create a vocabulary holder with the default intervals, refreshed on a
+     * shared background thread.
+     *
+     * @param fetcher  - fetches or revalidates the vocabulary
+     * @param fallback - the vocabulary served until a fetch succeeds
+     */
+    public PidVocabulary(Fetcher fetcher, VocabularySnapshot fallback) {
+        this(fetcher, fallback, DEFAULT_REFRESH_INTERVAL, DEFAULT_RETRY_INTERVAL, SHARED_REFRESH_EXECUTOR,
+                Clock.systemUTC());
+    }
+
+    PidVocabulary(Loader loader, Set<String> fallback, Duration refreshInterval, Duration retryInterval,
+            Executor refreshExecutor, Clock clock) {
+        this(current -> VocabularySnapshot.of(loader.load(), clock.instant()),
+                VocabularySnapshot.of(fallback, Instant.EPOCH), refreshInterval, retryInterval, refreshExecutor,
+                clock);
+    }
+
+    PidVocabulary(Fetcher fetcher, VocabularySnapshot fallback, Duration refreshInterval, Duration retryInterval,
+            Executor refreshExecutor, Clock clock) {
+        this.fetcher = fetcher;
+        this.fallback = fallback;
+        this.refreshInterval = refreshInterval;
+        this.retryInterval = retryInterval;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * The current approved PID schemas. Never blocks; starts a background
+     * refresh on first use and whenever the current snapshot is due.
+     *
+     * @return the last good schemas, or the fallback set if none have been
+     *         loaded
+     */
+    public Set<String> get() {
+        Snapshot snapshot = current;
+        if (snapshot == null) {
+            refreshInBackground();
+            return fallback.schemas();
+        }
+        if (!clock.instant().isBefore(snapshot.refreshDueAt())) {
+            refreshInBackground();
+        }
+        return snapshot.schemas();
+    }
+
+    /**
+     * The snapshot currently served.
+     *
+     * @return the current snapshot, or null before the first load attempt has
+     *         finished
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * The vocabulary currently served, without starting a refresh.
+     *
+     * @return the current vocabulary, or the fallback before the first load
+     *         attempt has finished
+     */
+    public VocabularySnapshot vocabulary() {
+        Snapshot snapshot = current;
+        return snapshot == null ? fallback : snapshot.vocabulary();
+    }
+
+    /**
+     * The version of the vocabulary currently served, without starting a
+     * refresh.
+     *
+     * @return the version of the current vocabulary, or of the fallback before
+     *         the first load attempt has finished
+     */
+    public String version() {
+        return vocabulary().version();
+    }
+
+    /**
+     * Serve a vocabulary saved by an earlier run until the next refresh, which
+     * is due the refresh interval after it was fetched. Ignored once a
+     * vocabulary has been loaded.
+     *
+     * @param saved - the saved vocabulary
+     */
+    public void seed(VocabularySnapshot saved) {
+        Snapshot snapshot = current;
+        if (snapshot == null || snapshot.fallback()) {
+            current = new Snapshot(saved, saved.fetchedAt(), saved.fetchedAt().plus(refreshInterval), false);
+            firstLoad.countDown();
+            scheduleRefresh(current.refreshDueAt());
+            logger.info("Serving saved PID vocabulary {} fetched at {}", saved.version(), saved.fetchedAt());
+        }
+    }
+
+    /**
+     * Identify a set of schemas by content, so results can record which
+     * vocabulary they were decided with and be recognised as stale once it
+     * changes.
+     *
+     * @param schemas - the approved PID schemas
+     * @return the first 8 bytes of the SHA-256 of the sorted schemas, in hex
+     */
+    public static String versionOf(Set<String> schemas) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String schema : new TreeSet<>(schemas)) {
+                digest.update(schema.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Start background loading if it has not been started yet, and wait up to
+     * the timeout for the first load attempt to finish. Intended for batch
+     * runs that prefer the published vocabulary over the fallback.
+     *
+     * @param timeout - the maximum time to wait
+     * @return true if the first load attempt finished in time
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public boolean awaitFirstLoad(Duration timeout) throws InterruptedException {
+        if (current == null) {
+            refreshInBackground();
+        }
+        return firstLoad.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start a refresh on the background executor unless one is in flight.
+     */
+    private void refreshInBackground() {
+        if (refreshing.compareAndSet(false, true)) {
+            try {
+                refreshExecutor.execute(this::refresh);
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+                logger.error("Failed to schedule PID vocabulary refresh: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Schedule a refresh for when the current snapshot is due, replacing the
+     * one scheduled before, if the refresh executor can schedule.
+     *
+     * @param dueAt - when the refresh should start
+     */
+    private void scheduleRefresh(Instant dueAt) {
+        if (!(refreshExecutor instanceof ScheduledExecutorService scheduler)) {
+            return;
+        }
+        long delayMillis = Math.max(0, Duration.between(clock.instant(), dueAt).toMillis());
+        try {
+            ScheduledFuture<?> previous = scheduledRefresh.getAndSet(
+                    scheduler.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS));
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.error("Failed to schedule PID vocabulary refresh: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the schemas and replace the current snapshot. Runs on the refresh
+     * executor.
+     */
+    private void refresh() {
+        try {
+            Snapshot previous = current;
+            VocabularySnapshot vocabulary = fetcher.fetch(
+                    previous == null || previous.fallback() ? null : previous.vocabulary());
+            Instant now = clock.instant();
+            current = new Snapshot(vocabulary, now, now.plus(refreshInterval), false);
+            if (previous != null && !previous.fallback() && previous.version().equals(vocabulary.version())) {
+                logger.debug("PID vocabulary {} is unchanged", vocabulary.version());
+            } else {
+                logger.info("Loaded {} approved PID schemas (vocabulary {}): {}", vocabulary.schemas().size(),
+                        vocabulary.version(), vocabulary.schemas());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Instant now = clock.instant();
+            Snapshot snapshot = current;
+            current = snapshot == null || snapshot.fallback()
+                    ? new Snapshot(fallback, now, now.plus(retryInterval), true)
+                    : new Snapshot(snapshot.vocabulary(), snapshot.loadedAt(), now.plus(retryInterval), false);
+            logger.warn("Failed to refresh PID vocabulary, retrying in {}: {}", retryInterval, e.getMessage());
+        } finally {
+            refreshing.set(false);
+            firstLoad.countDown();
+            Snapshot snapshot = current;
+            if (snapshot != null) {
+                scheduleRefresh(snapshot.refreshDueAt());
+            }
+        }
+    }
+}
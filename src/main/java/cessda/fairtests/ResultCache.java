@@ -0,0 +1,236 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * ResultCache
+ *
+ * Caches "pass"/"fail" outcomes per record identifier so repeated checks of the
+ * same record do not re-download and re-parse it.
+ *
+ * Behaviour:
+ * - Entries are fresh for the configured time-to-live.
+ * - The number of entries is bounded; the least recently used entry is evicted
+ * first.
+ * - With datestamp revalidation enabled, an expired entry that recorded the
+ * OAI-PMH header datestamp is renewed if the record's current datestamp is
+ * unchanged, which only needs the record header instead of the full body.
+ * - Each entry records the PID vocabulary version it was decided with; a
+ * lookup under a different version is a miss, so neither a fresh entry nor a
+ * datestamp renewal outlives a vocabulary update.
+ * - Hit, miss, revalidation and eviction counts are kept for sizing.
+ */
+public class ResultCache {
+
+    private static final Logger logger = LogManager.getLogger(ResultCache.class);
+
+    /** Default time-to-live of an entry. */
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    /** Default maximum number of entries. */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final boolean revalidateByDatestamp;
+    private final LongSupplier nanoClock;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Looks up the current OAI-PMH header datestamp of a record.
+     */
+    @FunctionalInterface
+    public interface DatestampSource {
+        /**
+         * @param recordId - the record identifier
+         * @return the current datestamp, or null if unknown
+         * @throws IOException          - if the header cannot be fetched
+         * @throws InterruptedException - if the lookup is interrupted
+         */
+        String currentDatestamp(String recordId) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Cache counters at a point in time.
+     *
+     * @param hits          lookups answered from a fresh entry
+     * @param revalidations lookups answered from an expired entry whose
+     *                      datestamp was unchanged (not counted as hits)
+     * @param misses        lookups that required a full check
+     * @param evictions     entries removed to stay within the size bound
+     * @param size          current number of entries
+     */
+    public record Stats(long hits, long revalidations, long misses, long evictions, int size) {
+    }
+
+    private record Entry(String result, String datestamp, String vocabularyVersion, long expiresAt) {
+    }
+
+    /**
+     * Create a result cache.
+     *
+     * @param ttl                   - how long an entry stays fresh
+     * @param maxEntries            - the maximum number of entries kept
+     * @param revalidateByDatestamp - whether expired entries may be renewed by
+     *                              comparing the record datestamp
+     */
+    public ResultCache(Duration ttl, int maxEntries, boolean revalidateByDatestamp) {
+        this(ttl, maxEntries, revalidateByDatestamp, System::nanoTime);
+    }
+
+    ResultCache(Duration ttl, int maxEntries, boolean revalidateByDatestamp, LongSupplier nanoClock) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.revalidateByDatestamp = revalidateByDatestamp;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up the cached result of a record.
+     *
+     * @param recordId          - the record identifier
+     * @param vocabularyVersion - the current PID vocabulary version; an entry
+     *                          decided with another version is a miss
+     * @param source            - used to revalidate an expired entry by
+     *                          datestamp; only called when revalidation is
+     *                          enabled
+     * @return the cached result, or null if the record has to be checked
+     */
+    public String get(String recordId, String vocabularyVersion, DatestampSource source) {
+        Entry entry;
+        long now = nanoClock.getAsLong();
+        synchronized (entries) {
+            entry = entries.get(recordId);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!Objects.equals(entry.vocabularyVersion(), vocabularyVersion)) {
+            synchronized (entries) {
+                entries.remove(recordId, entry);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        if (now - entry.expiresAt() < 0) {
+            hits.incrementAndGet();
+            return entry.result();
+        }
+        if (revalidateByDatestamp && entry.datestamp() != null && isUnchanged(recordId, entry, source)) {
+            put(recordId, entry.result(), entry.datestamp(), vocabularyVersion);
+            revalidations.incrementAndGet();
+            return entry.result();
+        }
+        synchronized (entries) {
+            entries.remove(recordId, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store the result of a record. Only "pass" and "fail" are cached.
+     *
+     * @param recordId          - the record identifier
+     * @param result            - the check result
+     * @param datestamp         - the OAI-PMH header datestamp of the checked
+     *                          record, or null if unknown
+     * @param vocabularyVersion - the PID vocabulary version the result was
+     *                          decided with
+     */
+    public void put(String recordId, String result, String datestamp, String vocabularyVersion) {
+        if (!MetadataUsesCessdaPids.RESULT_PASS.equals(result) && !MetadataUsesCessdaPids.RESULT_FAIL.equals(result)) {
+            return;
+        }
+        Entry entry = new Entry(result, datestamp, vocabularyVersion, nanoClock.getAsLong() + ttlNanos);
+        synchronized (entries) {
+            entries.put(recordId, entry);
+        }
+    }
+
+    /**
+     * Remove all entries. Counters are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the current cache counters
+     */
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), revalidations.get(), misses.get(), evictions.get(), size);
+    }
+
+    /**
+     * Compare the datestamp of an expired entry with the record's current one.
+     *
+     * @param recordId - the record identifier
+     * @param entry    - the expired entry
+     * @param source   - the datestamp source
+     * @return true if the record has not changed since it was checked
+     */
+    private static boolean isUnchanged(String recordId, Entry entry, DatestampSource source) {
+        try {
+            return entry.datestamp().equals(source.currentDatestamp(recordId));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Failed to revalidate cached result for {}: {}", recordId, e.getMessage());
+        }
+        return false;
+    }
+}
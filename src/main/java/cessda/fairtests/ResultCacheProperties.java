@@ -0,0 +1,54 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * ResultCacheProperties
+ *
+ * The {@code cessda.result-cache.*} settings of the in-memory
+ * {@link ResultCache}.
+ *
+ * @param enabled    - whether check results are cached in memory
+ * @param ttl        - how long a cached result is reused
+ * @param maxEntries - the maximum number of results kept
+ * @param revalidate - whether an expired result is renewed when the record
+ *                   datestamp is unchanged
+ */
+@ConfigurationProperties("cessda.result-cache")
+public record ResultCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("PT1H") Duration ttl,
+        @DefaultValue("" + ResultCache.DEFAULT_MAX_ENTRIES) int maxEntries,
+        @DefaultValue("true") boolean revalidate) {
+
+    /**
+     * Give the checker a result cache, if it is enabled.
+     *
+     * @param checker - the checker to configure
+     */
+    void applyTo(MetadataUsesCessdaPids checker) {
+        if (enabled) {
+            checker.setResultCache(new ResultCache(ttl, maxEntries, revalidate));
+        }
+    }
+}
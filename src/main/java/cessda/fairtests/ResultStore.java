@@ -0,0 +1,585 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * ResultStore
+ *
+ * Persists assessment results on disk, so a restarted service answers records
+ * it has already checked without going back to OAI-PMH.
+ *
+ * Layout:
+ * - {@code results.log}: an append-only log of entries, each framed by its
+ * length and a CRC32 so a write torn by a crash is detected and dropped.
+ * - {@code results.idx}: an open-addressing hash table of (key hash, log
+ * offset) slots, written at compaction and memory-mapped when the store is
+ * opened. It covers the log up to the length recorded in its header.
+ *
+ * Behaviour:
+ * - Opening maps the index and replays only the log tail written after the
+ * last compaction, so start-up time does not grow with the number of records.
+ * - A lookup probes the mapped index (or the in-memory index of the tail) and
+ * reads the single entry it points at.
+ * - Once the tail reaches the compaction threshold, or the log has grown to
+ * more than {@value #COMPACTION_LOG_TO_LIVE_RATIO} times the bytes of the
+ * latest entry per record (records checked again and again add log bytes but
+ * no tail entries), the log is rewritten with only the latest entry per record
+ * and a new index is written; both are replaced by atomic renames.
+ * - Appends are not forced to disk individually; a crash can lose the most
+ * recent entries, which are then simply checked again.
+ * - A stored outcome is reused while it is younger than the maximum age and
+ * was decided with the vocabulary version currently served. Until the
+ * published vocabulary has been loaded, stored outcomes are trusted.
+ */
+public class ResultStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ResultStore.class);
+
+    /** Default age after which a stored outcome is checked again. */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+    /** Default number of appended entries that triggers a compaction. */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+    /** Log size, as a multiple of the live entries' size, that triggers a compaction. */
+    static final int COMPACTION_LOG_TO_LIVE_RATIO = 4;
+
+    static final String LOG_FILE = "results.log";
+    static final String INDEX_FILE = "results.idx";
+
+    private static final long LOG_MAGIC = 0x4345535344415253L;
+    private static final long INDEX_MAGIC = 0x4345535344414958L;
+    private static final int LOG_HEADER_BYTES = 16;
+    private static final int INDEX_HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+    private static final int FRAME_BYTES = 8;
+    private static final int MAX_ENTRY_BYTES = 64 * 1024;
+
+    /**
+     * A stored assessment result.
+     *
+     * @param recordId          the record identifier
+     * @param outcome           "pass" or "fail"
+     * @param matchedAgency     the IDNo agency that matched an approved schema,
+     *                          or null on "fail"
+     * @param vocabularyVersion the version of the approved schemas used, see
+     *                          {@link PidVocabulary#versionOf(java.util.Set)}
+     * @param checkedAt         when the record was checked
+     */
+    public record Entry(String recordId, String outcome, String matchedAgency, String vocabularyVersion,
+            Instant checkedAt) {
+    }
+
+    /**
+     * Store counters at a point in time.
+     *
+     * @param indexedEntries records covered by the mapped index
+     * @param tailEntries    records appended since the last compaction
+     * @param logBytes       size of the log file
+     * @param liveBytes      size of the latest entry of every record in the log
+     */
+    public record Stats(int indexedEntries, int tailEntries, long logBytes, long liveBytes) {
+    }
+
+    /**
+     * The mapped index. Immutable once built; replaced as a whole at
+     * compaction.
+     */
+    private record Index(MappedByteBuffer slots, int slotCount, int entryCount) {
+        static final Index EMPTY = new Index(null, 0, 0);
+    }
+
+    /**
+     * An entry found through the index, with its log offset.
+     */
+    private record Located(long offset, Entry entry) {
+    }
+
+    private final Path directory;
+    private final Path logPath;
+    private final Path indexPath;
+    private final Duration maxAge;
+    private final int compactionThreshold;
+    private final Clock clock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Long> tail = new ConcurrentHashMap<>();
+
+    private FileChannel log;
+    private long generation;
+    private Index index = Index.EMPTY;
+    private long liveBytes;
+
+    private ResultStore(Path directory, Duration maxAge, int compactionThreshold, Clock clock) {
+        this.directory = directory;
+        this.logPath = directory.resolve(LOG_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.maxAge = maxAge;
+        this.compactionThreshold = compactionThreshold;
+        this.clock = clock;
+    }
+
+    /**
+     * Open the store in a directory, creating it if needed.
+     *
+     * @param directory - the directory holding the log and index files
+     * @param maxAge    - how long a stored outcome may be reused
+     * @return the opened store
+     * @throws IOException - if the files cannot be read or created, or do not
+     *                     belong to a result store
+     */
+    public static ResultStore open(Path directory, Duration maxAge) throws IOException {
+        return open(directory, maxAge, DEFAULT_COMPACTION_THRESHOLD, Clock.systemUTC());
+    }
+
+    static ResultStore open(Path directory, Duration maxAge, int compactionThreshold, Clock clock)
+            throws IOException {
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("compactionThreshold must be at least 1: " + compactionThreshold);
+        }
+        ResultStore store = new ResultStore(directory, maxAge, compactionThreshold, clock);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Find the latest stored entry of a record.
+     *
+     * @param recordId - the record identifier
+     * @return the entry, or null if the record has not been stored
+     * @throws IOException - if the log cannot be read
+     */
+    public Entry find(String recordId) throws IOException {
+        lock.readLock().lock();
+        try {
+            Long offset = tail.get(recordId);
+            if (offset != null) {
+                return readEntry(offset);
+            }
+            Located located = probe(recordId);
+            return located == null ? null : located.entry();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The stored outcome of a record, if it may be reused.
+     *
+     * @param recordId   - the record identifier
+     * @param vocabulary - the vocabulary currently served
+     * @return "pass" or "fail", or null if the record has to be checked
+     * @throws IOException - if the log cannot be read
+     */
+    public String reusableOutcome(String recordId, PidVocabulary vocabulary) throws IOException {
+        Entry entry = find(recordId);
+        if (entry == null || entry.checkedAt().plus(maxAge).isBefore(clock.instant())) {
+            return null;
+        }
+        PidVocabulary.Snapshot snapshot = vocabulary.snapshot();
+        if (snapshot != null && !snapshot.fallback() && !snapshot.version().equals(entry.vocabularyVersion())) {
+            return null;
+        }
+        return entry.outcome();
+    }
+
+    /**
+     * Append an entry. Only "pass" and "fail" are stored.
+     *
+     * @param entry - the entry to store
+     * @throws IOException - if the entry cannot be written
+     */
+    public void put(Entry entry) throws IOException {
+        if (!MetadataUsesCessdaPids.RESULT_PASS.equals(entry.outcome())
+                && !MetadataUsesCessdaPids.RESULT_FAIL.equals(entry.outcome())) {
+            return;
+        }
+        ByteBuffer frame = encode(entry);
+        int frameBytes = frame.remaining();
+        lock.writeLock().lock();
+        try {
+            long offset = log.size();
+            writeFully(log, frame, offset);
+            appendToTail(entry.recordId(), offset, frameBytes);
+            if (needsCompaction()) {
+                compactLocked();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with only the latest entry per record and write a new
+     * index covering it.
+     *
+     * @throws IOException - if the new files cannot be written
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the current store counters
+     * @throws IOException - if the log size cannot be read
+     */
+    public Stats stats() throws IOException {
+        lock.readLock().lock();
+        try {
+            return new Stats(index.entryCount(), tail.size(), log.size(), liveBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force appended entries to disk and close the log.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (log.isOpen()) {
+                log.force(false);
+                log.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Open or create the log, map the index if it belongs to the log, and
+     * replay the tail the index does not cover.
+     */
+    private void load() throws IOException {
+        Files.createDirectories(directory);
+        if (!Files.exists(logPath)) {
+            writeEmptyLog(logPath, ThreadLocalRandom.current().nextLong());
+        }
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        readFully(log, header, 0);
+        if (header.getLong(0) != LOG_MAGIC) {
+            log.close();
+            throw new IOException("Not a result store log: " + logPath);
+        }
+        generation = header.getLong(8);
+
+        long replayFrom = LOG_HEADER_BYTES;
+        if (Files.exists(indexPath)) {
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                if (channel.size() >= INDEX_HEADER_BYTES) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    long covered = mapped.getLong(16);
+                    int slotCount = mapped.getInt(24);
+                    if (mapped.getLong(0) == INDEX_MAGIC && mapped.getLong(8) == generation
+                            && covered <= log.size()
+                            && channel.size() == INDEX_HEADER_BYTES + (long) slotCount * SLOT_BYTES) {
+                        index = new Index(mapped, slotCount, mapped.getInt(28));
+                        replayFrom = covered;
+                        liveBytes = covered - LOG_HEADER_BYTES;
+                    }
+                }
+            }
+            if (index == Index.EMPTY) {
+                logger.warn("Ignoring result store index that does not match the log: {}", indexPath);
+            }
+        }
+        replayTail(replayFrom);
+        logger.info("Opened result store {} with {} indexed and {} replayed entries", directory,
+                index.entryCount(), tail.size());
+        if (needsCompaction()) {
+            compactLocked();
+        }
+    }
+
+    /**
+     * @return whether the tail has reached the compaction threshold or the log
+     *         holds too many superseded entries
+     */
+    private boolean needsCompaction() throws IOException {
+        return tail.size() >= compactionThreshold
+                || log.size() - LOG_HEADER_BYTES > COMPACTION_LOG_TO_LIVE_RATIO * liveBytes;
+    }
+
+    /**
+     * Put an appended entry in the tail, counting its bytes as live and those
+     * of the entry it supersedes, if any, as dead.
+     *
+     * @param recordId   - the record identifier
+     * @param offset     - the entry's log offset
+     * @param frameBytes - the entry's size in the log
+     */
+    private void appendToTail(String recordId, long offset, int frameBytes) throws IOException {
+        Long previous = tail.put(recordId, offset);
+        long superseded = 0;
+        if (previous != null) {
+            superseded = FRAME_BYTES + frameLength(previous);
+        } else {
+            Located indexed = probe(recordId);
+            if (indexed != null) {
+                superseded = FRAME_BYTES + frameLength(indexed.offset());
+            }
+        }
+        liveBytes += frameBytes - superseded;
+    }
+
+    /**
+     * Index the entries after the given offset. A truncated or corrupt entry
+     * ends the log: it and anything after it are discarded.
+     */
+    private void replayTail(long from) throws IOException {
+        long offset = from;
+        long size = log.size();
+        while (offset < size) {
+            Entry entry = size - offset < FRAME_BYTES ? null : tryReadEntry(offset, size);
+            if (entry == null) {
+                logger.warn("Discarding {} bytes of incomplete result store log at offset {}", size - offset, offset);
+                log.truncate(offset);
+                break;
+            }
+            int frameBytes = FRAME_BYTES + frameLength(offset);
+            appendToTail(entry.recordId(), offset, frameBytes);
+            offset += frameBytes;
+        }
+    }
+
+    private Located probe(String recordId) throws IOException {
+        Index current = index;
+        if (current.slotCount() == 0) {
+            return null;
+        }
+        long hash = hash(recordId);
+        int mask = current.slotCount() - 1;
+        for (int i = 0, slot = (int) hash & mask; i < current.slotCount(); i++, slot = (slot + 1) & mask) {
+            int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+            long offset = current.slots().getLong(position + 8);
+            if (offset == 0) {
+                return null;
+            }
+            if (current.slots().getLong(position) == hash) {
+                Entry entry = readEntry(offset);
+                if (entry.recordId().equals(recordId)) {
+                    return new Located(offset, entry);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void compactLocked() throws IOException {
+        Map<String, Entry> latest = new LinkedHashMap<>();
+        Index current = index;
+        for (int slot = 0; slot < current.slotCount(); slot++) {
+            long offset = current.slots().getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8);
+            if (offset != 0) {
+                Entry entry = readEntry(offset);
+                latest.put(entry.recordId(), entry);
+            }
+        }
+        for (Long offset : tail.values()) {
+            Entry entry = readEntry(offset);
+            latest.put(entry.recordId(), entry);
+        }
+
+        long newGeneration = ThreadLocalRandom.current().nextLong();
+        int slotCount = Math.max(16, Integer.highestOneBit(Math.max(1, latest.size() * 2 - 1)) << 1);
+        ByteBuffer slots = ByteBuffer.allocate(INDEX_HEADER_BYTES + slotCount * SLOT_BYTES);
+        Path logTmp = directory.resolve(LOG_FILE + ".tmp");
+        Path indexTmp = directory.resolve(INDEX_FILE + ".tmp");
+
+        writeEmptyLog(logTmp, newGeneration);
+        long covered;
+        try (FileChannel out = FileChannel.open(logTmp, StandardOpenOption.WRITE)) {
+            long offset = LOG_HEADER_BYTES;
+            for (Entry entry : latest.values()) {
+                ByteBuffer frame = encode(entry);
+                int length = frame.remaining();
+                writeFully(out, frame, offset);
+                insert(slots, slotCount, hash(entry.recordId()), offset);
+                offset += length;
+            }
+            out.force(true);
+            covered = offset;
+        }
+        slots.putLong(0, INDEX_MAGIC).putLong(8, newGeneration).putLong(16, covered)
+                .putInt(24, slotCount).putInt(28, latest.size());
+        try (FileChannel out = FileChannel.open(indexTmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, slots, 0);
+            out.force(true);
+        }
+
+        // The log is replaced first: a crash before the index follows leaves an index of another
+        // generation, which is ignored on open in favour of replaying the whole (compacted) log
+        log.close();
+        Files.move(logTmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        generation = newGeneration;
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            index = new Index(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), slotCount,
+                    latest.size());
+        }
+        tail.clear();
+        liveBytes = covered - LOG_HEADER_BYTES;
+        logger.info("Compacted result store {} to {} entries", directory, latest.size());
+    }
+
+    private static void insert(ByteBuffer slots, int slotCount, long hash, long offset) {
+        int mask = slotCount - 1;
+        int slot = (int) hash & mask;
+        while (slots.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES, hash);
+        slots.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8, offset);
+    }
+
+    private Entry readEntry(long offset) throws IOException {
+        Entry entry = tryReadEntry(offset, log.size());
+        if (entry == null) {
+            throw new IOException("Corrupt result store entry at offset " + offset + " in " + logPath);
+        }
+        return entry;
+    }
+
+    /**
+     * Read and verify the entry at an offset.
+     *
+     * @return the entry, or null if it is truncated or fails its checksum
+     */
+    private Entry tryReadEntry(long offset, long size) throws IOException {
+        int length = frameLength(offset);
+        if (length < 0 || length > MAX_ENTRY_BYTES || offset + FRAME_BYTES + length > size) {
+            return null;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(length + 4);
+        readFully(log, frame, offset + 4);
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, length);
+        if ((int) crc.getValue() != frame.getInt(length)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame.array(), 0, length))) {
+            String recordId = in.readUTF();
+            String outcome = in.readUTF();
+            String agency = in.readUTF();
+            String version = in.readUTF();
+            Instant checkedAt = Instant.ofEpochMilli(in.readLong());
+            return new Entry(recordId, outcome, agency.isEmpty() ? null : agency, version, checkedAt);
+        }
+    }
+
+    private int frameLength(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(log, length, offset);
+        return length.getInt(0);
+    }
+
+    /**
+     * Frame an entry as length, payload, CRC32 of the payload.
+     */
+    private static ByteBuffer encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeUTF(entry.recordId());
+            out.writeUTF(entry.outcome());
+            out.writeUTF(entry.matchedAgency() == null ? "" : entry.matchedAgency());
+            out.writeUTF(entry.vocabularyVersion() == null ? "" : entry.vocabularyVersion());
+            out.writeLong(entry.checkedAt().toEpochMilli());
+            out.writeInt(0);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        int length = frame.capacity() - FRAME_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 4, length);
+        frame.putInt(0, length).putInt(4 + length, (int) crc.getValue());
+        return frame;
+    }
+
+    private static void writeEmptyLog(Path path, long generation) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(LOG_HEADER_BYTES).putLong(0, LOG_MAGIC).putLong(8, generation), 0);
+            out.force(true);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of result store file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 key.
+     */
+    private static long hash(String recordId) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : recordId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * ResultStoreProperties
+ *
+ * The {@code cessda.result-store.*} settings of the on-disk
+ * {@link ResultStore}.
+ *
+ * @param path   - the directory of the result store, or empty to keep no
+ *               store
+ * @param maxAge - how long a stored result is reused
+ */
+@ConfigurationProperties("cessda.result-store")
+public record ResultStoreProperties(@DefaultValue("") String path, @DefaultValue("P7D") Duration maxAge) {
+
+    /**
+     * Open the store and give it to the checker, if a path is set.
+     *
+     * @param checker - the checker to configure
+     * @throws IOException - if the store cannot be opened
+     */
+    void applyTo(MetadataUsesCessdaPids checker) throws IOException {
+        if (path != null && !path.isBlank()) {
+            checker.setResultStore(ResultStore.open(Path.of(path), maxAge));
+        }
+    }
+}
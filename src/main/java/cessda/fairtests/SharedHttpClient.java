@@ -0,0 +1,130 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedHttpClient
+ *
+ * The application-wide {@link HttpClient} used for OAI-PMH and vocabulary
+ * requests, so every checker reuses the same connection pool.
+ *
+ * Behaviour:
+ * - Prefers HTTP/2, so concurrent requests to the same host are multiplexed
+ * over one connection; falls back to HTTP/1.1 with pooled keep-alive
+ * connections when the server does not negotiate HTTP/2.
+ * - Created on first use. Asynchronous tasks and dependent stages run on
+ * virtual threads unless another executor is configured before then.
+ * - {@link #shutdown(Duration)} lets exchanges in flight finish, then closes
+ * the client and its executor; the next use creates a new client.
+ */
+public final class SharedHttpClient {
+
+    /** Time allowed to establish a connection. */
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static Executor configuredExecutor;
+    private static Executor clientExecutor;
+    private static HttpClient client;
+
+    private SharedHttpClient() {
+    }
+
+    /**
+     * Set the executor of the shared client. Must be called before the client
+     * is first used.
+     *
+     * @param executor - runs the client's asynchronous tasks and dependent
+     *                 stages
+     * @throws IllegalStateException - if the shared client has already been
+     *                               created
+     */
+    public static synchronized void configure(Executor executor) {
+        if (client != null) {
+            throw new IllegalStateException("The shared HttpClient has already been created");
+        }
+        configuredExecutor = executor;
+    }
+
+    /**
+     * @return the shared client, created on first use
+     */
+    public static synchronized HttpClient get() {
+        if (client == null) {
+            clientExecutor = configuredExecutor != null ? configuredExecutor
+                    : Executors.newVirtualThreadPerTaskExecutor();
+            client = newClient(clientExecutor);
+        }
+        return client;
+    }
+
+    /**
+     * Shut the shared client down, if it has been created: no new requests are
+     * accepted, exchanges in flight are given up to the timeout to finish and
+     * are then aborted, and the client's executor is shut down.
+     *
+     * @param timeout - the time exchanges in flight are given
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public static synchronized void shutdown(Duration timeout) throws InterruptedException {
+        if (client == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            client.shutdown();
+            if (!client.awaitTermination(timeout)) {
+                client.shutdownNow();
+            }
+            if (clientExecutor instanceof ExecutorService executorService) {
+                executorService.shutdown();
+                if (!executorService.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS)) {
+                    executorService.shutdownNow();
+                }
+            }
+        } finally {
+            client = null;
+            clientExecutor = null;
+            configuredExecutor = null;
+        }
+    }
+
+    /**
+     * Build a client with the same settings as the shared one, e.g. for an
+     * isolated connection pool.
+     *
+     * @param executor - runs the client's asynchronous tasks and dependent
+     *                 stages
+     * @return a new client
+     */
+    public static HttpClient newClient(Executor executor) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+}
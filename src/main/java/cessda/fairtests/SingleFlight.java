@@ -0,0 +1,149 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight
+ *
+ * Coalesces concurrent calls for the same key, so only one of them does the
+ * work and the others share its result.
+ *
+ * Behaviour:
+ * - The first caller for a key becomes the leader and runs the call.
+ * - Callers arriving while the leader's call is in flight wait for, and
+ * return, the leader's result instead of running the call themselves.
+ * - Once the call completes the key is released; a later caller starts a new
+ * call.
+ * - Leader and coalesced caller counts are kept, to show the work saved.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Coalescing counters at a point in time.
+     *
+     * @param leaders   calls that ran the work
+     * @param coalesced calls that shared a leader's result
+     * @param inFlight  keys currently being worked on
+     */
+    public record Stats(long leaders, long coalesced, int inFlight) {
+    }
+
+    /**
+     * Run a blocking call, or wait for the call already in flight for the key.
+     *
+     * @param key  - the key calls are coalesced by
+     * @param call - the work, run on the calling thread if it becomes the
+     *             leader
+     * @return the result of the call
+     * @throws InterruptedException - if interrupted while waiting for the
+     *                              leader
+     */
+    public V execute(K key, Supplier<V> call) throws InterruptedException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        leaders.incrementAndGet();
+        try {
+            V value = call.get();
+            land(key, flight, value, null);
+            return value;
+        } catch (RuntimeException | Error e) {
+            land(key, flight, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Start an asynchronous call, or join the call already in flight for the
+     * key.
+     *
+     * @param key  - the key calls are coalesced by
+     * @param call - starts the work if this call becomes the leader
+     * @return a future of the result; completing or cancelling it does not
+     *         affect other callers
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.copy();
+        }
+        leaders.incrementAndGet();
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException | Error e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((value, error) -> land(key, flight, value, error));
+        return flight.copy();
+    }
+
+    /**
+     * @return the current coalescing counters
+     */
+    public Stats stats() {
+        return new Stats(leaders.get(), coalesced.get(), inFlight.size());
+    }
+
+    /**
+     * Release the key, then hand the outcome to the waiting callers. Releasing
+     * first means callers arriving afterwards start a new call rather than
+     * reuse a result that has already been delivered.
+     */
+    private void land(K key, CompletableFuture<V> flight, V value, Throwable error) {
+        inFlight.remove(key, flight);
+        if (error != null) {
+            flight.completeExceptionally(error);
+        } else {
+            flight.complete(value);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws InterruptedException {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * StaxPidExtractor
+ *
+ * Base class of the extractors for formats other than DDI 2.5: walks an
+ * OAI-PMH GetRecord response with StAX, reads the header and hands the events
+ * inside {@code metadata} to a format-specific {@link Collector}.
+ *
+ * Behaviour:
+ * - An OAI-PMH {@code cannotDisseminateFormat} error is thrown as
+ * {@link PidSourceExtractor.FormatUnavailableException}; any other OAI-PMH
+ * error as an {@link IOException}.
+ * - The text of the current element is kept up to
+ * {@link IdNoStreamExtractor#MAX_VALUE_LENGTH} characters, and at most
+ * {@link IdNoStreamExtractor#MAX_ENTRIES} entries are collected.
+ * - Reading stops as soon as {@code stopWhen} accepts an entry or the
+ * collector reports that no further identifiers can follow.
+ */
+abstract class StaxPidExtractor implements PidSourceExtractor {
+
+    private static final Logger logger = LogManager.getLogger(StaxPidExtractor.class);
+
+    private static final String CANNOT_DISSEMINATE_FORMAT = "cannotDisseminateFormat";
+
+    private final String metadataPrefix;
+    private final int relativeCost;
+    private final XMLInputFactory inputFactory;
+    private final Lock inputFactoryLock = new ReentrantLock();
+
+    /**
+     * Collector
+     *
+     * Format-specific matcher fed the events inside the OAI-PMH
+     * {@code metadata} element. Depth 1 is the root element of the metadata.
+     */
+    interface Collector {
+
+        /**
+         * Handle a start element event.
+         *
+         * @param reader - the StAX reader positioned on a start element
+         * @param depth  - the depth of the element
+         */
+        void startElement(XMLStreamReader reader, int depth);
+
+        /**
+         * Handle an end element event.
+         *
+         * @param reader - the StAX reader positioned on an end element
+         * @param depth  - the depth of the element
+         * @param text   - the text of the element, if it has no child elements
+         * @return the identifier completed by this event, or null
+         */
+        IdNoEntry endElement(XMLStreamReader reader, int depth, String text);
+
+        /**
+         * @return true once no further identifiers can follow
+         */
+        boolean isDone();
+    }
+
+    /**
+     * @param metadataPrefix - the OAI-PMH metadata prefix
+     * @param relativeCost   - see {@link PidSourceExtractor#relativeCost()}
+     */
+    StaxPidExtractor(String metadataPrefix, int relativeCost) {
+        this.metadataPrefix = metadataPrefix;
+        this.relativeCost = relativeCost;
+        this.inputFactory = XMLInputFactory.newFactory();
+        this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return a collector for one record
+     */
+    abstract Collector newCollector();
+
+    @Override
+    public String metadataPrefix() {
+        return metadataPrefix;
+    }
+
+    @Override
+    public int relativeCost() {
+        return relativeCost;
+    }
+
+    @Override
+    public OaiPmhHarvester.HarvestedRecord extractRecord(InputStream in, Predicate<IdNoEntry> stopWhen)
+            throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            // XMLInputFactory is not documented as thread-safe; a lock, not a monitor, guards it
+            // because creation reads the prolog from the stream (see IdNoStreamExtractor)
+            inputFactoryLock.lock();
+            try {
+                reader = inputFactory.createXMLStreamReader(in);
+            } finally {
+                inputFactoryLock.unlock();
+            }
+            return readRecord(reader, newCollector(), stopWhen);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse " + metadataPrefix + " record", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Failed to close XML stream reader: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the response, picking up OAI-PMH header fields and feeding the
+     * metadata events to the collector.
+     *
+     * @param reader    - the StAX reader
+     * @param collector - the format-specific collector
+     * @param stopWhen  - the early exit predicate
+     * @return the record read
+     * @throws XMLStreamException - if the XML is malformed
+     * @throws IOException        - if the response is an OAI-PMH error
+     */
+    private static OaiPmhHarvester.HarvestedRecord readRecord(XMLStreamReader reader, Collector collector,
+            Predicate<IdNoEntry> stopWhen) throws XMLStreamException, IOException {
+        List<IdNoEntry> entries = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        String identifier = null;
+        String datestamp = null;
+        boolean deleted = false;
+        int metadataDepth = 0;
+
+        while (reader.hasNext() && !collector.isDone()) {
+            int event = reader.next();
+            if (metadataDepth > 0) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    metadataDepth++;
+                    text.setLength(0);
+                    collector.startElement(reader, metadataDepth - 1);
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    int length = Math.min(reader.getTextLength(),
+                            IdNoStreamExtractor.MAX_VALUE_LENGTH - text.length());
+                    if (length > 0) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), length);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    metadataDepth--;
+                    if (metadataDepth == 0) {
+                        break;
+                    }
+                    IdNoEntry entry = collector.endElement(reader, metadataDepth, text.toString().trim());
+                    text.setLength(0);
+                    if (entry != null && !entry.value().isEmpty()) {
+                        entries.add(entry);
+                        if (stopWhen.test(entry) || entries.size() >= IdNoStreamExtractor.MAX_ENTRIES) {
+                            break;
+                        }
+                    }
+                }
+            } else if (event == XMLStreamConstants.START_ELEMENT
+                    && OaiPmhHarvester.OAI_NAMESPACE.equals(reader.getNamespaceURI())) {
+                switch (reader.getLocalName()) {
+                    case "header" -> deleted = "deleted".equals(reader.getAttributeValue(null, "status"));
+                    case "identifier" -> identifier = reader.getElementText().trim();
+                    case "datestamp" -> datestamp = reader.getElementText().trim();
+                    case "metadata" -> metadataDepth = 1;
+                    case "error" -> {
+                        String code = reader.getAttributeValue(null, "code");
+                        String message = reader.getElementText().trim();
+                        if (CANNOT_DISSEMINATE_FORMAT.equals(code)) {
+                            throw new PidSourceExtractor.FormatUnavailableException(message);
+                        }
+                        throw new IOException("OAI-PMH error " + code + ": " + message);
+                    }
+                    default -> {
+                        // other OAI-PMH elements carry nothing the check needs
+                    }
+                }
+            }
+        }
+        return new OaiPmhHarvester.HarvestedRecord(identifier, datestamp, deleted, entries);
+    }
+
+    /**
+     * Whether the element at the reader is in a namespace starting with the
+     * given prefix, so that all versions of a schema are matched.
+     *
+     * @param reader          - the StAX reader positioned on an element
+     * @param namespacePrefix - e.g. {@code http://datacite.org/schema/kernel-}
+     * @param localName       - the expected local name
+     * @return true if the element matches
+     */
+    static boolean isElement(XMLStreamReader reader, String namespacePrefix, String localName) {
+        String namespace = reader.getNamespaceURI();
+        return localName.equals(reader.getLocalName()) && namespace != null && namespace.startsWith(namespacePrefix);
+    }
+}
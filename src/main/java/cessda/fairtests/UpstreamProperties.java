@@ -0,0 +1,53 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * UpstreamProperties
+ *
+ * The {@code cessda.upstream.*} settings: how hard record fetches may push the
+ * OAI-PMH endpoint, see {@link AdaptiveConcurrencyLimiter} and
+ * {@link GuardedHttpSender.RetryPolicy}.
+ *
+ * @param maxConcurrency - upper bound of the adaptive fetch concurrency limit
+ * @param maxRetries     - retries of a fetch answered with 429 or 503
+ */
+@ConfigurationProperties("cessda.upstream")
+public record UpstreamProperties(
+        @DefaultValue("" + AdaptiveConcurrencyLimiter.DEFAULT_MAX_LIMIT) int maxConcurrency,
+        @DefaultValue("3") int maxRetries) {
+
+    /**
+     * Give the checker a concurrency limiter and retry policy with these
+     * bounds.
+     *
+     * @param checker - the checker to configure
+     */
+    void applyTo(MetadataUsesCessdaPids checker) {
+        checker.setConcurrencyLimiter(new AdaptiveConcurrencyLimiter(
+                Math.min(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, maxConcurrency),
+                AdaptiveConcurrencyLimiter.DEFAULT_MIN_LIMIT, maxConcurrency,
+                AdaptiveConcurrencyLimiter.DEFAULT_BACKOFF_RATIO));
+        GuardedHttpSender.RetryPolicy retryPolicy = GuardedHttpSender.RetryPolicy.DEFAULT;
+        checker.setRetryPolicy(new GuardedHttpSender.RetryPolicy(maxRetries, retryPolicy.baseDelay(),
+                retryPolicy.maxDelay()));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package cessda.fairtests;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * VocabularyProperties
+ *
+ * The {@code cessda.vocabulary.*} settings: where the PID vocabulary is read
+ * from, which version of it the checker pins and where the
+ * {@link VocabularySnapshot} is kept.
+ *
+ * @param url          - the URL of the PID vocabulary JSON
+ * @param version      - the pinned version, or "latest"
+ * @param snapshotPath - the file the vocabulary is saved to, or empty
+ */
+@ConfigurationProperties("cessda.vocabulary")
+public record VocabularyProperties(
+        @DefaultValue(MetadataUsesCessdaPids.DEFAULT_PID_VOCAB_URL) String url,
+        @DefaultValue(VocabularySnapshot.FOLLOW_LATEST) String version,
+        @DefaultValue("") String snapshotPath) {
+
+    /**
+     * Pin the checker to the version and give it the snapshot file, if a path
+     * is set. The URL is not applied here, the checker is created with it.
+     *
+     * @param checker - the checker to configure
+     */
+    void applyTo(MetadataUsesCessdaPids checker) {
+        checker.setVocabularyVersion(version);
+        if (snapshotPath != null && !snapshotPath.isBlank()) {
+            checker.setVocabularySnapshotPath(Path.of(snapshotPath));
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * SPDX-FileCopyrightText: 2025 CESSDA ERIC (support@cessda.eu)
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package cessda.fairtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * VocabularySnapshot
+ *
+ * One version of the CESSDA persistent identifier types vocabulary, as served
+ * by the vocabulary service and as kept on disk between runs.
+ *
+ * Behaviour:
+ * - Holds the concepts (title, notation, pattern) of a single vocabulary
+ * version, its published version number, and the ETag and Last-Modified
+ * validators it was served with, so a refresh can be a conditional GET.
+ * - {@link #version()} identifies the content: the published number, if any,
+ * followed by a hash of the approved schemas. Results record it.
+ * - Saving writes and syncs a temporary file and renames it over the old one
+ * atomically, like {@link HarvestCheckpoint}.
+ * - A copy of the vocabulary is bundled with the application and used when
+ * neither the service nor a saved snapshot is available.
+ */
+public final class VocabularySnapshot {
+
+    /** Pin value that follows the newest version the vocabulary service lists. */
+    public static final String FOLLOW_LATEST = "latest";
+
+    private static final String BUNDLED_RESOURCE = "/pid-vocabulary.json";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String NUMBER = "number";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String FETCHED_AT = "fetchedAt";
+    private static final String CONCEPTS = "concepts";
+    private static final String TITLE = "title";
+    private static final String NOTATION = "notation";
+    private static final String PATTERN = "pattern";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String number;
+    private final String etag;
+    private final String lastModified;
+    private final Instant fetchedAt;
+    private final List<Concept> concepts;
+    private final Set<String> schemas;
+    private final Map<String, String> patterns;
+    private final String version;
+
+    /**
+     * A concept of the vocabulary: an approved PID schema.
+     *
+     * @param title    the schema name matched against IDNo agencies, e.g. DOI
+     * @param notation the concept notation, or null
+     * @param pattern  the regular expression PIDs of the schema match, or null
+     */
+    public record Concept(String title, String notation, String pattern) {
+    }
+
+    /**
+     * @param number       - the published version number, or null if unknown
+     * @param etag         - the ETag the vocabulary was served with, or null
+     * @param lastModified - the Last-Modified it was served with, or null
+     * @param fetchedAt    - when it was fetched or last revalidated
+     * @param concepts     - the concepts; titles must be unique
+     */
+    public VocabularySnapshot(String number, String etag, String lastModified, Instant fetchedAt,
+            List<Concept> concepts) {
+        this.number = number;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+        this.concepts = List.copyOf(concepts);
+        Set<String> titles = new LinkedHashSet<>();
+        Map<String, String> titlePatterns = new LinkedHashMap<>();
+        for (Concept concept : this.concepts) {
+            titles.add(concept.title());
+            if (concept.pattern() != null) {
+                titlePatterns.put(concept.title(), concept.pattern());
+            }
+        }
+        this.schemas = Collections.unmodifiableSet(titles);
+        this.patterns = Collections.unmodifiableMap(titlePatterns);
+        String hash = PidVocabulary.versionOf(schemas);
+        this.version = number == null ? hash : number + "+" + hash;
+    }
+
+    /**
+     * A snapshot of bare schema names, without patterns or a version number.
+     *
+     * @param schemas   - the approved PID schemas
+     * @param fetchedAt - when they were loaded
+     * @return the snapshot
+     */
+    public static VocabularySnapshot of(Set<String> schemas, Instant fetchedAt) {
+        return new VocabularySnapshot(null, null, null, fetchedAt,
+                schemas.stream().map(title -> new Concept(title, null, null)).toList());
+    }
+
+    /**
+     * Read one version from a vocabulary service response.
+     *
+     * @param root         - the parsed response
+     * @param pin          - the version number to read, or
+     *                     {@link #FOLLOW_LATEST} (or null) for the newest
+     *                     version listed
+     * @param etag         - the response ETag, or null
+     * @param lastModified - the response Last-Modified, or null
+     * @param fetchedAt    - when the response was received
+     * @return the snapshot
+     * @throws IOException - if the pinned version is not listed or the version
+     *                     read has no concepts
+     */
+    public static VocabularySnapshot parse(JsonNode root, String pin, String etag, String lastModified,
+            Instant fetchedAt) throws IOException {
+        JsonNode selected = null;
+        for (JsonNode candidate : root.path("versions")) {
+            String candidateNumber = candidate.path(NUMBER).asText(null);
+            if (isFollowingLatest(pin)) {
+                if (selected == null
+                        || compareNumbers(candidateNumber, selected.path(NUMBER).asText(null)) > 0) {
+                    selected = candidate;
+                }
+            } else if (pin.equals(candidateNumber)) {
+                selected = candidate;
+            }
+        }
+        if (selected == null) {
+            throw new IOException(isFollowingLatest(pin) ? "No versions in vocabulary response"
+                    : "Pinned vocabulary version " + pin + " not in vocabulary response");
+        }
+        VocabularySnapshot snapshot = new VocabularySnapshot(selected.path(NUMBER).asText(null), etag, lastModified,
+                fetchedAt, readConcepts(selected.path(CONCEPTS)));
+        if (snapshot.schemas.isEmpty()) {
+            throw new IOException("No valid PID schemas found in vocabulary response");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Read a saved snapshot.
+     *
+     * @param path - the snapshot file
+     * @return the snapshot, or null if none has been saved
+     * @throws IOException - if the file exists but cannot be read or parsed
+     */
+    public static VocabularySnapshot load(Path path) throws IOException {
+        try {
+            return fromJson(MAPPER.readTree(Files.readAllBytes(path)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The copy of the vocabulary bundled with the application.
+     *
+     * @return the bundled snapshot
+     */
+    public static VocabularySnapshot bundled() {
+        try (InputStream in = VocabularySnapshot.class.getResourceAsStream(BUNDLED_RESOURCE)) {
+            if (in == null) {
+                throw new IOException(BUNDLED_RESOURCE + " is missing");
+            }
+            return fromJson(MAPPER.readTree(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the bundled PID vocabulary", e);
+        }
+    }
+
+    /**
+     * Atomically replace the saved snapshot.
+     *
+     * @param path - the snapshot file; its directory must exist
+     * @throws IOException - if the snapshot cannot be written
+     */
+    public void save(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(toJson()));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The same vocabulary, confirmed unchanged by the service (HTTP 304).
+     *
+     * @param revalidatedAt - when it was confirmed
+     * @return a snapshot with the new fetch time
+     */
+    public VocabularySnapshot revalidated(Instant revalidatedAt) {
+        return new VocabularySnapshot(number, etag, lastModified, revalidatedAt, concepts);
+    }
+
+    /**
+     * @return the published version number, or null if unknown
+     */
+    public String number() {
+        return number;
+    }
+
+    /**
+     * @return the ETag the vocabulary was served with, or null
+     */
+    public String etag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified the vocabulary was served with, or null
+     */
+    public String lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return when the vocabulary was fetched or last revalidated
+     */
+    public Instant fetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return the concepts in vocabulary order
+     */
+    public List<Concept> concepts() {
+        return concepts;
+    }
+
+    /**
+     * @return the approved PID schemas (concept titles); the same instance on
+     *         every call
+     */
+    public Set<String> schemas() {
+        return schemas;
+    }
+
+    /**
+     * @return the patterns of the schemas that have one, by title
+     */
+    public Map<String, String> patterns() {
+        return patterns;
+    }
+
+    /**
+     * @return the published number followed by a hash of the schemas, e.g.
+     *         {@code 1.0.0+1a2b3c4d5e6f7a8b}; just the hash if the number is
+     *         unknown
+     */
+    public String version() {
+        return version;
+    }
+
+    /**
+     * Whether a pin follows the newest version.
+     *
+     * @param pin - the configured version, may be null or blank
+     * @return true unless a specific version is pinned
+     */
+    static boolean isFollowingLatest(String pin) {
+        return pin == null || pin.isBlank() || FOLLOW_LATEST.equalsIgnoreCase(pin);
+    }
+
+    /**
+     * Compare dotted version numbers numerically (1.10.0 is newer than 1.9.1).
+     * A missing number is older than any other.
+     *
+     * @param a - a version number, or null
+     * @param b - a version number, or null
+     * @return negative, zero or positive as a is older than, the same as or
+     *         newer than b
+     */
+    static int compareNumbers(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        String[] left = a.split("\\D+");
+        String[] right = b.split("\\D+");
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            int order = Long.compare(segment(left, i), segment(right, i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    private static long segment(String[] segments, int index) {
+        if (index >= segments.length || segments[index].isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(segments[index]);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static List<Concept> readConcepts(JsonNode nodes) {
+        List<Concept> concepts = new ArrayList<>();
+        Set<String> titles = new LinkedHashSet<>();
+        for (JsonNode node : nodes) {
+            String title = trimmed(node.path(TITLE));
+            if (title != null && titles.add(title)) {
+                concepts.add(new Concept(title, trimmed(node.path(NOTATION)), trimmed(node.path(PATTERN))));
+            }
+        }
+        return concepts;
+    }
+
+    private static String trimmed(JsonNode node) {
+        String value = node.asText(null);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static VocabularySnapshot fromJson(JsonNode root) throws IOException {
+        List<Concept> concepts = readConcepts(root.path(CONCEPTS));
+        if (concepts.isEmpty()) {
+            throw new IOException("Vocabulary snapshot has no concepts");
+        }
+        try {
+            return new VocabularySnapshot(trimmed(root.path(NUMBER)), trimmed(root.path(ETAG)),
+                    trimmed(root.path(LAST_MODIFIED)), Instant.parse(root.path(FETCHED_AT).asText()), concepts);
+        } catch (DateTimeParseException e) {
+            throw new IOException("Vocabulary snapshot has an invalid fetch time", e);
+        }
+    }
+
+    private ObjectNode toJson() {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put(NUMBER, number);
+        root.put(ETAG, etag);
+        root.put(LAST_MODIFIED, lastModified);
+        root.put(FETCHED_AT, fetchedAt.toString());
+        ArrayNode nodes = root.putArray(CONCEPTS);
+        for (Concept concept : concepts) {
+            nodes.addObject().put(TITLE, concept.title()).put(NOTATION, concept.notation())
+                    .put(PATTERN, concept.pattern());
+        }
+        return root;
+    }
+}
@@ -0,0 +1,112 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, 0.5, now::get);
+
+    @Test
+    void testWaitersAreGrantedWhenPermitsReturn() throws Exception {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(4);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter = limiter.acquireAsync();
+        assertFalse(waiter.isDone());
+
+        permits.get(0).ignore();
+
+        assertTrue(waiter.isDone());
+        assertEquals(4, limiter.inFlight());
+    }
+
+    @Test
+    void testSuccessesUnderLoadGrowLimit() throws Exception {
+        for (int round = 0; round < 2; round++) {
+            for (AdaptiveConcurrencyLimiter.Permit permit : acquire(limiter.limit())) {
+                now.incrementAndGet();
+                permit.success();
+            }
+        }
+
+        assertEquals(5, limiter.limit());
+    }
+
+    @Test
+    void testDropsOfConcurrentCallsHalveLimitOnce() throws Exception {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(4);
+        now.incrementAndGet();
+
+        permits.forEach(AdaptiveConcurrencyLimiter.Permit::dropped);
+
+        assertEquals(2, limiter.limit());
+        assertEquals(4, limiter.dropCount());
+    }
+
+    @Test
+    void testLimitNeverFallsBelowMinimum() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            now.incrementAndGet();
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+            now.incrementAndGet();
+            permit.dropped();
+        }
+
+        assertEquals(1, limiter.limit());
+    }
+
+    @Test
+    void testPermitIsReturnedOnlyOnce() throws Exception {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+
+        permit.success();
+        permit.dropped();
+
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.dropCount());
+    }
+
+    @Test
+    void testCancelledWaiterIsSkipped() throws Exception {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(4);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> cancelled = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> next = limiter.acquireAsync();
+
+        cancelled.cancel(false);
+        permits.get(0).ignore();
+
+        assertTrue(next.isDone() && !next.isCancelled());
+        assertEquals(4, limiter.inFlight());
+    }
+
+    @Test
+    void testTryAcquireDoesNotQueue() throws Exception {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(3);
+        AdaptiveConcurrencyLimiter.Permit last = limiter.tryAcquire();
+
+        assertNotNull(last);
+        assertNull(limiter.tryAcquire());
+        assertEquals(4, limiter.inFlight());
+
+        permits.get(0).ignore();
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    private List<AdaptiveConcurrencyLimiter.Permit> acquire(int count) throws InterruptedException {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(limiter.acquire());
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,136 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunnerTest {
+
+    @TempDir
+    Path directory;
+
+    /** Result taken from the last path segment of the URL. */
+    private static String resultOf(String url) {
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
+
+    private static BufferedReader lines(String... lines) {
+        return new BufferedReader(new StringReader(String.join("\n", lines)));
+    }
+
+    @Test
+    void testRun_writesCsvRowsAndSummary() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchRunner runner = new BatchRunner(BatchRunnerTest::resultOf, 4, BatchRunner.Format.CSV);
+
+        BatchRunner.Summary summary = runner.run(
+                lines("# nightly", "https://x/pass", "", "  https://x/fail  ", "https://x/pass"),
+                new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        List<String> output = bytes.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals("url,result", output.get(0));
+        assertEquals(Set.of("https://x/pass,pass", "https://x/fail,fail"), Set.copyOf(output.subList(1, 4)));
+        assertEquals(4, output.size());
+        assertEquals(2, summary.pass());
+        assertEquals(1, summary.fail());
+        assertEquals(3, summary.total());
+        assertEquals(BatchRunner.EXIT_FAIL, summary.exitCode());
+    }
+
+    @Test
+    void testRun_writesJsonLines() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchRunner runner = new BatchRunner(BatchRunnerTest::resultOf, 1, BatchRunner.Format.JSONL);
+
+        BatchRunner.Summary summary = runner.run(lines("https://x/indeterminate"),
+                new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        assertEquals("{\"url\":\"https://x/indeterminate\",\"result\":\"indeterminate\"}",
+                bytes.toString(StandardCharsets.UTF_8).strip());
+        assertEquals(BatchRunner.EXIT_INDETERMINATE, summary.exitCode());
+    }
+
+    @Test
+    void testRun_boundsParallelism() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        BatchRunner runner = new BatchRunner(url -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return "pass";
+        }, 3, BatchRunner.Format.CSV);
+
+        String[] urls = new String[30];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = "https://x/" + i;
+        }
+        BatchRunner.Summary summary = runner.run(lines(urls), new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(30, summary.pass());
+        assertEquals(BatchRunner.EXIT_PASS, summary.exitCode());
+        assertTrue(peak.get() <= 3, "peak concurrency " + peak.get());
+    }
+
+    @Test
+    void testFormatRow_quotesCsvFields() {
+        BatchRunner runner = new BatchRunner(BatchRunnerTest::resultOf, 1, BatchRunner.Format.CSV);
+
+        assertEquals("\"https://x/?a=1,b=\"\"2\"\"\",pass", runner.formatRow("https://x/?a=1,b=\"2\"", "pass"));
+    }
+
+    @Test
+    void testConstructor_rejectsNonPositiveParallelism() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchRunner(BatchRunnerTest::resultOf, 0, BatchRunner.Format.CSV));
+    }
+
+    @Test
+    void testRunBatch_readsFileAndStdinWithSharedChecker() throws Exception {
+        MetadataUsesCessdaPids checker = spy(new MetadataUsesCessdaPids());
+        Set<String> checked = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            checked.add(url);
+            return resultOf(url);
+        }).when(checker).containsApprovedPid(anyString());
+        Path file = Files.writeString(directory.resolve("urls.txt"), "https://x/pass\nhttps://x/pass2\n");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+        int fromFile = checker.runBatch(file.toString(), 2, BatchRunner.Format.CSV,
+                new ByteArrayInputStream(new byte[0]), out);
+        int fromStdin = checker.runBatch("-", 2, BatchRunner.Format.JSONL,
+                new ByteArrayInputStream("https://x/fail\n".getBytes(StandardCharsets.UTF_8)), out);
+        int missing = checker.runBatch(directory.resolve("missing.txt").toString(), 2, BatchRunner.Format.CSV,
+                new ByteArrayInputStream(new byte[0]), out);
+
+        assertEquals(BatchRunner.EXIT_INDETERMINATE, fromFile);
+        assertEquals(BatchRunner.EXIT_FAIL, fromStdin);
+        assertEquals(BatchRunner.EXIT_ERROR, missing);
+        assertEquals(Set.of("https://x/pass", "https://x/pass2", "https://x/fail"), checked);
+    }
+}
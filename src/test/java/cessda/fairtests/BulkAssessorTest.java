@@ -0,0 +1,102 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BulkAssessorTest {
+
+    @Test
+    void testAssess_reportsEveryResult() throws Exception {
+        BulkAssessor assessor = new BulkAssessor(id -> id.endsWith("1") ? "pass" : "fail", 4);
+        List<BulkAssessor.BulkResult> results = new ArrayList<>();
+
+        long count = assessor.assess(List.of("a1", "b2", "c1").iterator(), results::add);
+
+        assertEquals(3, count);
+        assertEquals(3, results.size());
+        assertTrue(results.contains(new BulkAssessor.BulkResult("b2", "fail")));
+    }
+
+    @Test
+    void testAssess_neverExceedsMaxConcurrency() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        BulkAssessor assessor = new BulkAssessor(id -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return "pass";
+        }, 3);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add("id" + i);
+        }
+        assessor.assess(ids.iterator(), result -> {
+        });
+
+        assertTrue(maxSeen.get() <= 3, "max in flight was " + maxSeen.get());
+    }
+
+    @Test
+    void testAssess_streamsFastResultsBeforeSlowOnes() throws Exception {
+        CountDownLatch fastReported = new CountDownLatch(1);
+        BulkAssessor assessor = new BulkAssessor(id -> {
+            if (id.equals("slow")) {
+                try {
+                    fastReported.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "pass";
+        }, 2);
+        List<String> order = new ArrayList<>();
+
+        assessor.assess(List.of("slow", "fast").iterator(), result -> {
+            order.add(result.resourceIdentifier());
+            fastReported.countDown();
+        });
+
+        assertEquals(List.of("fast", "slow"), order);
+    }
+
+    @Test
+    void testAssess_checkExceptionIsIndeterminate() throws Exception {
+        BulkAssessor assessor = new BulkAssessor(id -> {
+            throw new IllegalStateException("boom");
+        }, 1);
+        List<BulkAssessor.BulkResult> results = new ArrayList<>();
+
+        assessor.assess(List.of("x").iterator(), results::add);
+
+        assertEquals("indeterminate", results.get(0).result());
+    }
+
+    @Test
+    void testAssess_sinkFailureStopsAndPropagates() {
+        BulkAssessor assessor = new BulkAssessor(id -> "pass", 1);
+
+        assertThrows(IllegalStateException.class, () -> assessor.assess(List.of("a", "b", "c").iterator(), result -> {
+            throw new IllegalStateException("client gone");
+        }));
+    }
+
+    @Test
+    void testConstructor_rejectsNonPositiveConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new BulkAssessor(id -> "pass", 0));
+    }
+}
@@ -0,0 +1,102 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class CheckEventsTest {
+
+    private static final String DDI = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation>"
+            + "<ddi:titlStmt><ddi:IDNo agency='Local'>x1</ddi:IDNo><ddi:IDNo agency='DOI'>10.123/abc</ddi:IDNo>"
+            + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDomCheckEmitsStageAndDecisionEvents() throws Exception {
+        byte[] body = DDI.getBytes(StandardCharsets.UTF_8);
+        HttpClient client = mock(HttpClient.class);
+        HttpResponse<byte[]> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body);
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<byte[]>>any()))
+                .thenReturn(response);
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", client);
+        checker.setStreamingExtraction(false);
+
+        List<RecordedEvent> events = record(() -> assertEquals("pass",
+                checker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/rec1")));
+
+        RecordedEvent fetch = only(events, "cessda.pid.Fetch");
+        assertEquals("rec1", fetch.getString("recordId"));
+        assertEquals(200, fetch.getInt("status"));
+        assertEquals(body.length, fetch.getLong("bytes"));
+        assertEquals(body.length, only(events, "cessda.pid.Parse").getLong("bytes"));
+        assertEquals("rec1", only(events, "cessda.pid.CodeBookImport").getString("recordId"));
+        assertEquals(2, only(events, "cessda.pid.XPath").getInt("idNoCount"));
+        RecordedEvent decision = only(events, "cessda.pid.Decision");
+        assertEquals("rec1", decision.getString("recordId"));
+        assertEquals("pass", decision.getString("outcome"));
+        assertEquals(CheckMetrics.CAUSE_NONE, decision.getString("cause"));
+        assertEquals("DOI", decision.getString("matchedAgency"));
+    }
+
+    @Test
+    void testStreamingCheckEmitsDecisionWithIdNoCount() throws Exception {
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mock(HttpClient.class));
+        String ddi = DDI.replace("agency='DOI'", "agency='Other'").replace("10.123/abc", "plain");
+
+        List<RecordedEvent> events = record(() -> assertEquals("fail", checker.checkLocalDocument(
+                new ByteArrayInputStream(ddi.getBytes(StandardCharsets.UTF_8)), "local.xml")));
+
+        RecordedEvent decision = only(events, "cessda.pid.Decision");
+        assertEquals("local.xml", decision.getString("recordId"));
+        assertEquals("fail", decision.getString("outcome"));
+        assertEquals(CheckMetrics.CAUSE_NO_APPROVED_AGENCY, decision.getString("cause"));
+        assertEquals(2, decision.getInt("idNoCount"));
+    }
+
+    private List<RecordedEvent> record(Runnable check) throws Exception {
+        Path file = tempDir.resolve("check.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("Fetch", "Extract", "Parse", "CodeBookImport", "XPath", "Decision")) {
+                recording.enable("cessda.pid." + name).withoutThreshold();
+            }
+            recording.start();
+            check.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .toList();
+        assertTrue(matching.size() == 1, "expected one " + name + " event, got " + matching.size());
+        return matching.get(0);
+    }
+}
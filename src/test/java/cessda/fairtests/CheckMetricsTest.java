@@ -0,0 +1,122 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CheckMetricsTest {
+
+    private static final String RECORD = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><GetRecord><record>"
+            + "<header><identifier>abc</identifier><datestamp>2024-01-01</datestamp></header><metadata>"
+            + "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+            + "<IDNo agency='DOI'>10.123</IDNo></titlStmt></citation></stdyDscr></codeBook>"
+            + "</metadata></record></GetRecord></OAI-PMH>";
+
+    @Test
+    void testCauseOf_classifiesFailuresAndErrors() {
+        assertEquals(CheckMetrics.CAUSE_NONE, CheckMetrics.causeOf("pass", List.of(new IdNoEntry("DOI", "1"))));
+        assertEquals(CheckMetrics.CAUSE_NO_IDNO, CheckMetrics.causeOf("fail", List.of()));
+        assertEquals(CheckMetrics.CAUSE_NO_APPROVED_AGENCY,
+                CheckMetrics.causeOf("fail", List.of(new IdNoEntry("XYZ", "1"))));
+
+        assertEquals(CheckMetrics.CAUSE_INVALID_URL, CheckMetrics.causeOf(new IllegalArgumentException()));
+        assertEquals(CheckMetrics.CAUSE_TIMEOUT, CheckMetrics.causeOf(new HttpTimeoutException("slow")));
+        assertEquals(CheckMetrics.CAUSE_PARSE,
+                CheckMetrics.causeOf(new IOException("bad", new XMLStreamException("eof"))));
+        assertEquals(CheckMetrics.CAUSE_UPSTREAM, CheckMetrics.causeOf(new IOException("HTTP 503")));
+        assertEquals(CheckMetrics.CAUSE_INTERRUPTED, CheckMetrics.causeOf(new InterruptedException()));
+        assertEquals(CheckMetrics.CAUSE_ERROR, CheckMetrics.causeOf(new IllegalStateException()));
+    }
+
+    @Test
+    void testContainsApprovedPid_recordsStagesSizeAndOutcome() throws Exception {
+        HttpClient client = mock(HttpClient.class);
+        @SuppressWarnings("unchecked")
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        byte[] body = RECORD.getBytes(StandardCharsets.UTF_8);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(new ByteArrayInputStream(body));
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(response);
+
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids();
+        var field = MetadataUsesCessdaPids.class.getDeclaredField("httpClient");
+        field.setAccessible(true);
+        field.set(checker, client);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        checker.setMeterRegistry(registry);
+
+        assertEquals("pass", checker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc"));
+        assertEquals("indeterminate", checker.containsApprovedPid("https://datacatalogue.cessda.eu/other"));
+
+        assertEquals(1, registry.get("cessda.pid.check.stage").tag("stage", "fetch").timer().count());
+        assertEquals(1, registry.get("cessda.pid.check.stage").tag("stage", "extract").timer().count());
+        assertEquals(body.length, registry.get("cessda.pid.response.size").summary().totalAmount(), 0.0);
+        assertEquals(1, registry.get("cessda.pid.check.result")
+                .tags("outcome", "pass", "cause", "none").counter().count(), 0.0);
+        assertEquals(1, registry.get("cessda.pid.check.result")
+                .tags("outcome", "indeterminate", "cause", "invalid_url").counter().count(), 0.0);
+        assertNotNull(registry.get("cessda.pid.vocabulary.age").gauge());
+    }
+
+    @Test
+    void testSetMeterRegistry_eachCheckerReportsOnlyToItsOwnRegistry() {
+        MetadataUsesCessdaPids first = new MetadataUsesCessdaPids();
+        MetadataUsesCessdaPids second = new MetadataUsesCessdaPids();
+        assertNull(Metrics.globalRegistry.find("cessda.pid.vocabulary.age").gauge());
+
+        SimpleMeterRegistry firstRegistry = new SimpleMeterRegistry();
+        SimpleMeterRegistry secondRegistry = new SimpleMeterRegistry();
+        first.setMeterRegistry(firstRegistry);
+        second.setMeterRegistry(secondRegistry);
+        first.containsApprovedPid("not a detail url");
+
+        assertEquals(1, firstRegistry.get("cessda.pid.check.result")
+                .tags("outcome", "indeterminate", "cause", "invalid_url").counter().count(), 0.0);
+        assertNull(secondRegistry.find("cessda.pid.check.result").counter());
+        assertNotNull(secondRegistry.get("cessda.pid.vocabulary.age").gauge());
+    }
+
+    @Test
+    void testSetResultCache_reportsCacheSetAfterTheRegistry() {
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        checker.setMeterRegistry(registry);
+        assertEquals(0, registry.get("cessda.pid.result.cache").tag("result", "hit").functionCounter().count(), 0.0);
+
+        ResultCache cache = new ResultCache(Duration.ofHours(1), 1, false);
+        checker.setResultCache(cache);
+        cache.put("a", "pass", null, "v1");
+        cache.put("b", "fail", null, "v1");
+        cache.get("b", "v1", id -> null);
+        cache.get("a", "v1", id -> null);
+
+        assertEquals(1, registry.get("cessda.pid.result.cache").tag("result", "hit").functionCounter().count(), 0.0);
+        assertEquals(1, registry.get("cessda.pid.result.cache").tag("result", "miss").functionCounter().count(), 0.0);
+        assertEquals(1, registry.get("cessda.pid.result.cache").tag("result", "evicted").functionCounter().count(),
+                0.0);
+        assertEquals(1, registry.get("cessda.pid.result.cache.size").gauge().value(), 0.0);
+    }
+}
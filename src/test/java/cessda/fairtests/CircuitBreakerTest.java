@@ -0,0 +1,87 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 4, Duration.ofSeconds(30), now::get);
+
+    @Test
+    void testOpensAtFailureRateOnceMinimumCallsSeen() throws Exception {
+        fail(3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        fail(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+        assertEquals(1, breaker.rejectedCount());
+    }
+
+    @Test
+    void testStaysClosedBelowFailureRate() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            breaker.acquire();
+            if (i % 3 == 2) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testHalfOpenAllowsOneTrialThatClosesOnSuccess() throws Exception {
+        fail(4);
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertDoesNotThrow(breaker::acquire);
+    }
+
+    @Test
+    void testFailedTrialReopens() throws Exception {
+        fail(4);
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+    }
+
+    @Test
+    void testReleasedTrialLetsAnotherThrough() throws Exception {
+        fail(4);
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        breaker.acquire();
+        breaker.release();
+
+        assertDoesNotThrow(breaker::acquire);
+    }
+
+    private void fail(int times) throws CircuitBreaker.OpenException {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+}
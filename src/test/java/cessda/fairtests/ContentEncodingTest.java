@@ -0,0 +1,92 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class ContentEncodingTest {
+
+    private static final byte[] XML = "<OAI-PMH><GetRecord/></OAI-PMH>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testDecode_gzip() throws Exception {
+        assertArrayEquals(XML, decode(gzip(XML), "gzip"));
+        assertArrayEquals(XML, decode(gzip(XML), "x-gzip"));
+    }
+
+    @Test
+    void testDecode_deflateZlibWrappedOrRaw() throws Exception {
+        assertArrayEquals(XML, decode(deflate(XML, false), "deflate"));
+        assertArrayEquals(XML, decode(deflate(XML, true), "deflate"));
+    }
+
+    @Test
+    void testDecode_identityIsReadAsIs() throws Exception {
+        InputStream in = new ByteArrayInputStream(XML);
+        assertSame(in, ContentEncoding.decode(in, null));
+        assertSame(in, ContentEncoding.decode(in, "identity"));
+    }
+
+    @Test
+    void testDecode_unsupportedEncodingFails() {
+        assertThrows(IOException.class, () -> ContentEncoding.decode(new ByteArrayInputStream(XML), "br"));
+    }
+
+    @Test
+    void testOf_normalisesHeaderAndToleratesMissingHeaders() {
+        HttpResponse<?> response = mock(HttpResponse.class);
+        assertNull(ContentEncoding.of(response));
+
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of(" GZip ")),
+                (name, value) -> true));
+        assertEquals("gzip", ContentEncoding.of(response));
+
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of("identity")),
+                (name, value) -> true));
+        assertNull(ContentEncoding.of(response));
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] bytes, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] body, String encoding) throws IOException {
+        try (InputStream in = ContentEncoding.decode(new ByteArrayInputStream(body), encoding)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+class DdiParsingContextTest {
+
+    @Test
+    void testAcquire_reusesReleasedParser() throws Exception {
+        DdiParsingContext context = new DdiParsingContext(2);
+        DdiParsingContext.Parser first;
+        try (DdiParsingContext.Lease lease = context.acquire()) {
+            first = lease.parser();
+        }
+        try (DdiParsingContext.Lease lease = context.acquire()) {
+            assertSame(first, lease.parser());
+        }
+    }
+
+    @Test
+    void testRelease_keepsAtMostMaxIdle() throws Exception {
+        DdiParsingContext context = new DdiParsingContext(1);
+        DdiParsingContext.Lease a = context.acquire();
+        DdiParsingContext.Lease b = context.acquire();
+        assertNotSame(a.parser(), b.parser());
+
+        a.close();
+        b.close();
+        b.close();
+
+        assertEquals(1, context.idleCount());
+    }
+
+    @Test
+    void testConcurrentParsing_onVirtualThreads() throws Exception {
+        DdiParsingContext context = new DdiParsingContext(4);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                int idNos = i % 5 + 1;
+                results.add(executor.submit(() -> countIdNos(context, idNos)));
+            }
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i % 5 + 1, results.get(i).get());
+        }
+    }
+
+    private static int countIdNos(DdiParsingContext context, int idNos) throws Exception {
+        StringBuilder xml = new StringBuilder("<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr>"
+                + "<ddi:citation><ddi:titlStmt>");
+        for (int i = 0; i < idNos; i++) {
+            xml.append("<ddi:IDNo agency='DOI'>10.1/").append(i).append("</ddi:IDNo>");
+        }
+        xml.append("</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>");
+
+        try (DdiParsingContext.Lease lease = context.acquire()) {
+            Document doc = lease.parser().builder()
+                    .parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+            NodeList nodes = (NodeList) lease.parser().idNoSearchPath().evaluate(doc, XPathConstants.NODESET);
+            return nodes.getLength();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class GuardedHttpSenderTest {
+
+    private static final HttpRequest REQUEST = HttpRequest.newBuilder(URI.create("http://localhost/oai")).build();
+
+    private final HttpClient client = mock(HttpClient.class);
+    private final GuardedHttpSender sender = new GuardedHttpSender();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_hedgeWinsWhenPrimaryIsSlow() throws Exception {
+        HttpResponse<String> hedged = mock(HttpResponse.class);
+        when(hedged.statusCode()).thenReturn(200);
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(slow)
+                .thenReturn(CompletableFuture.completedFuture(hedged));
+        sender.setHedgePolicy(new GuardedHttpSender.HedgePolicy(0.95, Duration.ofMillis(10),
+                Duration.ofMillis(10), 20));
+
+        HttpResponse<String> response = sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(),
+                r -> { }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(hedged, response);
+        assertTrue(slow.isCancelled());
+        assertEquals(1, sender.stats().hedgesSent());
+        assertEquals(1, sender.stats().hedgesWon());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_noHedgeWhenPrimaryIsFast() throws Exception {
+        HttpResponse<String> fast = mock(HttpResponse.class);
+        when(fast.statusCode()).thenReturn(200);
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(fast));
+        sender.setHedgePolicy(GuardedHttpSender.HedgePolicy.atPercentile(0.95));
+
+        assertEquals(fast, sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { })
+                .get(5, TimeUnit.SECONDS));
+
+        Thread.sleep(50);
+        verify(client, times(1)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+        assertEquals(0, sender.stats().hedgesSent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_noHedgeWithoutFreePermit() throws Exception {
+        HttpResponse<String> slowResponse = mock(HttpResponse.class);
+        when(slowResponse.statusCode()).thenReturn(200);
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class))).thenReturn(slow);
+        sender.setConcurrencyLimiter(new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5));
+        sender.setHedgePolicy(new GuardedHttpSender.HedgePolicy(0.95, Duration.ofMillis(10),
+                Duration.ofMillis(10), 20));
+
+        CompletableFuture<HttpResponse<String>> response = sender.sendAsync(client, REQUEST,
+                HttpResponse.BodyHandlers.ofString(), r -> { });
+        Thread.sleep(100);
+        slow.complete(slowResponse);
+
+        assertEquals(slowResponse, response.get(5, TimeUnit.SECONDS));
+        verify(client, times(1)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+        assertEquals(0, sender.stats().hedgesSent());
+        assertEquals(0, sender.getConcurrencyLimiter().inFlight());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_hedgeReturnsItsPermit() throws Exception {
+        HttpResponse<String> hedged = mock(HttpResponse.class);
+        when(hedged.statusCode()).thenReturn(200);
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(new CompletableFuture<>())
+                .thenReturn(CompletableFuture.completedFuture(hedged));
+        sender.setHedgePolicy(new GuardedHttpSender.HedgePolicy(0.95, Duration.ofMillis(10),
+                Duration.ofMillis(10), 20));
+
+        assertEquals(hedged, sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { })
+                .get(5, TimeUnit.SECONDS));
+
+        assertEquals(0, sender.getConcurrencyLimiter().inFlight());
+    }
+
+    @Test
+    void testWithoutHedging_sharesBreakerAndLimiter() {
+        sender.setHedgePolicy(GuardedHttpSender.HedgePolicy.atPercentile(0.95));
+
+        GuardedHttpSender pages = sender.withoutHedging();
+
+        assertSame(sender.getCircuitBreaker(), pages.getCircuitBreaker());
+        assertSame(sender.getConcurrencyLimiter(), pages.getConcurrencyLimiter());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_openBreakerFailsFastWithoutSending() throws Exception {
+        HttpResponse<String> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(500);
+        when(client.send(any(), any(HttpResponse.BodyHandler.class))).thenReturn(unavailable);
+        sender.setCircuitBreaker(new CircuitBreaker(0.5, 4, 2, Duration.ofMinutes(1)));
+
+        sender.send(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { });
+        sender.send(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { });
+
+        assertThrows(CircuitBreaker.OpenException.class,
+                () -> sender.send(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { }));
+        verify(client, times(2)).send(any(), any(HttpResponse.BodyHandler.class));
+        assertEquals(CircuitBreaker.State.OPEN, sender.stats().state());
+        assertEquals(1, sender.stats().rejected());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_openBreakerCompletesExceptionally() throws Exception {
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("refused")));
+        sender.setCircuitBreaker(new CircuitBreaker(0.5, 2, 1, Duration.ofMinutes(1)));
+
+        ExecutionException first = assertThrows(ExecutionException.class,
+                () -> sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { }).get());
+        ExecutionException second = assertThrows(ExecutionException.class,
+                () -> sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { }).get());
+
+        assertEquals("refused", first.getCause().getMessage());
+        assertInstanceOf(CircuitBreaker.OpenException.class, second.getCause());
+        verify(client, times(1)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+        verify(client, never()).send(any(), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_retriesTooManyRequestsAfterRetryAfter() throws Exception {
+        HttpResponse<String> throttled = mock(HttpResponse.class);
+        when(throttled.statusCode()).thenReturn(429);
+        when(throttled.headers()).thenReturn(headers(Map.of("Retry-After", List.of("0"))));
+        HttpResponse<String> ok = mock(HttpResponse.class);
+        when(ok.statusCode()).thenReturn(200);
+        when(client.send(any(), any(HttpResponse.BodyHandler.class))).thenReturn(throttled).thenReturn(ok);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, 0.5);
+        sender.setConcurrencyLimiter(limiter);
+
+        assertEquals(ok, sender.send(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { }));
+
+        assertEquals(1, sender.stats().retries());
+        assertEquals(1, limiter.dropCount());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(CircuitBreaker.State.CLOSED, sender.stats().state());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendAsync_returnsLastUnavailableResponseOnceRetriesAreSpent() throws Exception {
+        HttpResponse<String> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(503);
+        when(unavailable.headers()).thenReturn(headers(Map.of()));
+        when(client.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(unavailable));
+        sender.setRetryPolicy(new GuardedHttpSender.RetryPolicy(2, Duration.ofMillis(1), Duration.ofSeconds(1)));
+
+        assertEquals(503, sender.sendAsync(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { })
+                .get(5, TimeUnit.SECONDS).statusCode());
+
+        verify(client, times(3)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+        assertEquals(2, sender.stats().retries());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_retryAfterBeyondMaxDelayIsNotWaitedFor() throws Exception {
+        HttpResponse<String> throttled = mock(HttpResponse.class);
+        when(throttled.statusCode()).thenReturn(429);
+        when(throttled.headers()).thenReturn(headers(Map.of("Retry-After", List.of("3600"))));
+        when(client.send(any(), any(HttpResponse.BodyHandler.class))).thenReturn(throttled);
+
+        assertEquals(throttled, sender.send(client, REQUEST, HttpResponse.BodyHandlers.ofString(), r -> { }));
+
+        verify(client, times(1)).send(any(), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testRetryAfter_secondsAndHttpDate() {
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        assertEquals(Duration.ofSeconds(120), GuardedHttpSender.RetryPolicy.retryAfter(
+                headers(Map.of("Retry-After", List.of("120"))), now));
+        assertEquals(Duration.ofSeconds(30), GuardedHttpSender.RetryPolicy.retryAfter(
+                headers(Map.of("Retry-After", List.of("Wed, 01 Jan 2025 00:00:30 GMT"))), now));
+        assertEquals(null, GuardedHttpSender.RetryPolicy.retryAfter(
+                headers(Map.of("Retry-After", List.of("soon"))), now));
+    }
+
+    private static HttpHeaders headers(Map<String, List<String>> values) {
+        return HttpHeaders.of(values, (name, value) -> true);
+    }
+}
@@ -0,0 +1,141 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+
+class HarvestCheckpointTest {
+
+    private static final String ENDPOINT = "https://oai.example.org/oai";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLoad_missingOrEmptyIsNull() throws Exception {
+        Path path = directory.resolve("checkpoint");
+        assertNull(new HarvestCheckpoint(path).load());
+
+        Files.writeString(path, "\n");
+        assertNull(new HarvestCheckpoint(path).load());
+    }
+
+    @Test
+    void testSave_replacesCheckpointWithoutLeavingTemporaryFile() throws Exception {
+        Path path = directory.resolve("checkpoint");
+        HarvestCheckpoint checkpoint = new HarvestCheckpoint(path);
+
+        checkpoint.save("2024-01-01T00:00:00Z");
+        checkpoint.save("2024-02-01T00:00:00Z");
+
+        assertEquals("2024-02-01T00:00:00Z", new HarvestCheckpoint(path).load());
+        assertFalse(Files.exists(directory.resolve("checkpoint.tmp")));
+    }
+
+    @Test
+    void testAtGranularityOf_keepsSecondsOnlyForSecondDatestamps() {
+        assertEquals("2024-01-03T10:00:00Z",
+                HarvestCheckpoint.atGranularityOf("2024-01-03T10:00:00Z", "2024-01-01T08:30:00Z"));
+        assertEquals("2024-01-03", HarvestCheckpoint.atGranularityOf("2024-01-03T10:00:00Z", "2024-01-01"));
+        assertEquals("2024-01-03", HarvestCheckpoint.atGranularityOf("2024-01-03T10:00:00Z", null));
+    }
+
+    @Test
+    void testRunIncremental_harvestsFromCheckpointAndAdvancesIt() throws Exception {
+        Path path = directory.resolve("checkpoint");
+        Files.writeString(path, "2023-12-31\n");
+        List<String> urls = new ArrayList<>();
+        HttpClient client = OaiPmhHarvesterTest.mockClient(Map.of("from=2023-12-31", OaiPmhHarvesterTest.page(
+                OaiPmhHarvesterTest.record("r1", "DOI") + OaiPmhHarvesterTest.deletedRecord("r2"), "",
+                "2024-01-03T10:00:00Z")));
+        HttpClient recordingClient = recording(client, urls);
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(ENDPOINT, "https://oai.example.org/vocab",
+                recordingClient);
+        Path indexPath = directory.resolve("pids.idx");
+        checker.setPidIndexPath(indexPath);
+        checker.getPidIndex().put("r2", List.of(new IdNoEntry("DOI", "10.1000/r2")));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        int exitCode = checker.runIncremental(path, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        assertEquals(0, exitCode);
+        List<String> lines = bytes.toString(StandardCharsets.UTF_8).lines().toList();
+        String version = checker.getVocabularyVersion();
+        assertEquals(List.of(
+                "{\"identifier\":\"r1\",\"datestamp\":\"2024-01-01\",\"result\":\"pass\",\"vocabularyVersion\":\""
+                        + version + "\"}",
+                "{\"identifier\":\"r2\",\"datestamp\":\"2024-01-02\",\"result\":\"deleted\",\"vocabularyVersion\":\""
+                        + version + "\"}"), lines);
+        // the repository's responseDate, at its day granularity, not the latest record datestamp
+        assertEquals("2024-01-03", new HarvestCheckpoint(path).load());
+        assertEquals(1, urls.stream().filter(url -> url.contains("verb=ListRecords")).count());
+        PidIndex saved = PidIndex.load(indexPath);
+        assertEquals("r1", saved.resolve("https://doi.org/10.1000/R1"));
+        assertNull(saved.resolve("10.1000/r2"));
+    }
+
+    @Test
+    void testRunIncremental_withoutResponseDateAdvancesToHarvestStart() throws Exception {
+        Path path = directory.resolve("checkpoint");
+        Files.writeString(path, "2023-12-31T00:00:00Z\n");
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(ENDPOINT, "https://oai.example.org/vocab",
+                OaiPmhHarvesterTest.mockClient(Map.of("verb=ListRecords",
+                        OaiPmhHarvesterTest.page(OaiPmhHarvesterTest.record("r1", "DOI"), ""))));
+        Instant before = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+        assertEquals(0, checker.runIncremental(path, new PrintStream(new ByteArrayOutputStream())));
+
+        Instant saved = Instant.parse(new HarvestCheckpoint(path).load());
+        assertFalse(saved.isBefore(before));
+        assertFalse(saved.isAfter(Instant.now()));
+    }
+
+    @Test
+    void testRunIncremental_failedHarvestKeepsCheckpoint() throws Exception {
+        Path path = directory.resolve("checkpoint");
+        Files.writeString(path, "2023-12-31\n");
+        String error = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='badArgument'>bad from</error></OAI-PMH>";
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(ENDPOINT, "https://oai.example.org/vocab",
+                OaiPmhHarvesterTest.mockClient(Map.of("verb=ListRecords", error)));
+
+        assertEquals(1, checker.runIncremental(path, new PrintStream(new ByteArrayOutputStream())));
+        assertEquals("2023-12-31", new HarvestCheckpoint(path).load());
+    }
+
+    /** Wrap a mock client so the URLs it is asked for are recorded. */
+    private static HttpClient recording(HttpClient delegate, List<String> urls) throws Exception {
+        HttpClient client = mock(HttpClient.class);
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenAnswer(invocation -> {
+                    HttpRequest request = invocation.getArgument(0);
+                    synchronized (urls) {
+                        urls.add(request.uri().toString());
+                    }
+                    return delegate.send(request, invocation.getArgument(1));
+                });
+        return client;
+    }
+}
@@ -0,0 +1,115 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class IdNoStreamExtractorTest {
+
+    private static final String OAI_PREFIX = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+            + "<GetRecord><record><header><identifier>abc</identifier></header><metadata>";
+    private static final String OAI_SUFFIX = "</metadata></record></GetRecord></OAI-PMH>";
+
+    private final IdNoStreamExtractor extractor = new IdNoStreamExtractor();
+
+    @Test
+    void testExtract_readsAllIdNoEntriesFromOaiEnvelope() throws Exception {
+        String xml = OAI_PREFIX + "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'>"
+                + "<ddi:docDscr><ddi:citation><ddi:titlStmt><ddi:IDNo agency='ignored'>x</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:docDscr>"
+                + "<ddi:stdyDscr><ddi:citation><ddi:titlStmt><ddi:titl>Study</ddi:titl>"
+                + "<ddi:IDNo agency='XYZ'> 999 </ddi:IDNo><ddi:IDNo>no-agency</ddi:IDNo>"
+                + "<ddi:IDNo agency='DOI'>10.123/abc</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>" + OAI_SUFFIX;
+
+        List<IdNoEntry> entries = extractor.extract(stream(xml));
+
+        assertEquals(3, entries.size());
+        assertEquals(new IdNoEntry("XYZ", "999"), entries.get(0));
+        assertNull(entries.get(1).agency());
+        assertEquals(new IdNoEntry("DOI", "10.123/abc"), entries.get(2));
+    }
+
+    @Test
+    void testExtract_stopsWhenPredicateMatches() throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo><ddi:IDNo agency='URN'>urn:x</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+
+        List<IdNoEntry> entries = extractor.extract(stream(xml), entry -> "DOI".equals(entry.agency()));
+
+        assertEquals(List.of(new IdNoEntry("DOI", "10.123")), entries);
+    }
+
+    @Test
+    void testExtract_doesNotReadPastTitleStatement() throws Exception {
+        String head = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo></ddi:titlStmt>";
+        // The tail is malformed, so the extractor only succeeds if it never reads it
+        InputStream in = new SequenceInputStream(stream(head), stream("<ddi:dataDscr><broken"));
+
+        assertEquals(List.of(new IdNoEntry("DOI", "10.123")), extractor.extract(in));
+    }
+
+    @Test
+    void testExtract_stopsAtDataDescriptionWhenNoTitleStatement() throws Exception {
+        String head = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr/><ddi:dataDscr>";
+        InputStream in = new SequenceInputStream(stream(head), stream("<broken"));
+
+        assertTrue(extractor.extract(in).isEmpty());
+    }
+
+    @Test
+    void testExtract_limitsValueLength() throws Exception {
+        String longValue = "x".repeat(IdNoStreamExtractor.MAX_VALUE_LENGTH * 2);
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>" + longValue + "</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+
+        List<IdNoEntry> entries = extractor.extract(stream(xml));
+
+        assertEquals(IdNoStreamExtractor.MAX_VALUE_LENGTH, entries.get(0).value().length());
+    }
+
+    @Test
+    void testExtractRecord_readsOaiHeader() throws Exception {
+        String xml = OAI_PREFIX.replace("<identifier>abc</identifier>",
+                "<identifier>abc</identifier><datestamp>2024-05-01T10:00:00Z</datestamp>")
+                + "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo></ddi:titlStmt></ddi:citation></ddi:stdyDscr>"
+                + "</ddi:codeBook>" + OAI_SUFFIX;
+
+        OaiPmhHarvester.HarvestedRecord oaiRecord = extractor.extractRecord(stream(xml), entry -> false);
+
+        assertEquals("abc", oaiRecord.identifier());
+        assertEquals("2024-05-01T10:00:00Z", oaiRecord.datestamp());
+        assertEquals(List.of(new IdNoEntry("DOI", "10.123")), oaiRecord.idNos());
+    }
+
+    @Test
+    void testReadDatestamp_stopsAfterHeader() throws Exception {
+        String head = OAI_PREFIX.replace("</header>", "<datestamp>2024-05-01</datestamp></header>");
+        InputStream in = new SequenceInputStream(stream(head), stream("<broken"));
+
+        assertEquals("2024-05-01", extractor.readDatestamp(in));
+    }
+
+    @Test
+    void testExtract_malformedXml_throwsIOException() {
+        assertThrows(IOException.class, () -> extractor.extract(stream("<ddi:codeBook")));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
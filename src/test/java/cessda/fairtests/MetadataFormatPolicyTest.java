@@ -0,0 +1,166 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+
+class MetadataFormatPolicyTest {
+
+    private static final String ENDPOINT = "https://oai.example.org/oai";
+    private static final String FORMATS = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><ListMetadataFormats>"
+            + "<metadataFormat><metadataPrefix>oai_dc</metadataPrefix></metadataFormat>"
+            + "<metadataFormat><metadataPrefix>oai_datacite</metadataPrefix></metadataFormat>"
+            + "<metadataFormat><metadataPrefix>oai_ddi25</metadataPrefix></metadataFormat>"
+            + "</ListMetadataFormats></OAI-PMH>";
+    private static final String DDI25 = "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+            + "<IDNo agency='DOI'>10.123/abc</IDNo></titlStmt></citation></stdyDscr></codeBook>";
+
+    private static List<String> prefixes(List<PidSourceExtractor> extractors) {
+        return extractors.stream().map(PidSourceExtractor::metadataPrefix).toList();
+    }
+
+    @Test
+    void testFormats_cheapestOfferedFirst() {
+        MetadataFormatPolicy policy = new MetadataFormatPolicy(List.of(new Ddi25PidExtractor(),
+                new DdiLifecyclePidExtractor(), new DataCitePidExtractor()));
+        AtomicInteger listed = new AtomicInteger();
+
+        List<PidSourceExtractor> formats = policy.formats(() -> {
+            listed.incrementAndGet();
+            return Set.of("oai_ddi25", "oai_datacite");
+        });
+
+        assertEquals(List.of("oai_datacite", "oai_ddi25"), prefixes(formats));
+        assertEquals(formats, policy.formats(() -> Set.of()));
+        assertEquals(1, listed.get());
+    }
+
+    @Test
+    void testFormats_listingFailureTriesAllAndRetries() {
+        MetadataFormatPolicy policy = new MetadataFormatPolicy(List.of(new Ddi25PidExtractor(),
+                new DublinCorePidExtractor()));
+
+        assertEquals(List.of("oai_dc", "oai_ddi25"), prefixes(policy.formats(() -> {
+            throw new IOException("down");
+        })));
+        assertFalse(policy.isResolved());
+        assertEquals(List.of("oai_ddi25"), prefixes(policy.formats(() -> Set.of("oai_ddi25"))));
+        assertTrue(policy.isResolved());
+    }
+
+    @Test
+    void testFormats_singleFormatNeedsNoListing() {
+        MetadataFormatPolicy policy = MetadataFormatPolicy.ddi25Only();
+
+        assertTrue(policy.isResolved());
+        assertEquals(List.of("oai_ddi25"), prefixes(policy.formats(() -> {
+            throw new AssertionError("listed");
+        })));
+        assertThrows(IllegalArgumentException.class, () -> new MetadataFormatPolicy(List.of()));
+    }
+
+    @Test
+    void testParseMetadataFormats() throws Exception {
+        assertEquals(Set.of("oai_dc", "oai_datacite", "oai_ddi25"), MetadataFormatPolicy.parseMetadataFormats(
+                new ByteArrayInputStream(FORMATS.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void testContainsApprovedPid_passesFromCheapestFormat() throws Exception {
+        List<String> urls = new CopyOnWriteArrayList<>();
+        MetadataUsesCessdaPids checker = checker(urls, Map.of(
+                "ListMetadataFormats", FORMATS,
+                "metadataPrefix=oai_datacite", PidSourceExtractorTest.getRecord(PidSourceExtractorTest.DATACITE)));
+
+        assertEquals("pass", checker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/rec1"));
+        assertEquals("pass", checker.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/rec2").get());
+
+        assertEquals(List.of(ENDPOINT + "?verb=ListMetadataFormats",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_datacite&identifier=rec1",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_datacite&identifier=rec2"),
+                urls.stream().filter(url -> url.startsWith(ENDPOINT)).toList());
+    }
+
+    @Test
+    void testContainsApprovedPid_fallsBackToDdiWithoutApprovedPid() throws Exception {
+        List<String> urls = new CopyOnWriteArrayList<>();
+        String unavailable = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='cannotDisseminateFormat'>no</error></OAI-PMH>";
+        MetadataUsesCessdaPids checker = checker(urls, Map.of(
+                "ListMetadataFormats", FORMATS,
+                "metadataPrefix=oai_dc&identifier=rec1", PidSourceExtractorTest.getRecord(
+                        "<oai_dc:dc xmlns:oai_dc='http://www.openarchives.org/OAI/2.0/oai_dc/'/>"),
+                "metadataPrefix=oai_dc&identifier=rec2", unavailable,
+                "metadataPrefix=oai_ddi25", PidSourceExtractorTest.getRecord(DDI25)));
+        checker.setMetadataFormats(List.of("oai_ddi25", "oai_dc"));
+
+        assertEquals("pass", checker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/rec1"));
+        assertEquals("pass", checker.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/rec2").get());
+
+        assertEquals(List.of(ENDPOINT + "?verb=ListMetadataFormats",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_dc&identifier=rec1",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=rec1",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_dc&identifier=rec2",
+                ENDPOINT + "?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=rec2"),
+                urls.stream().filter(url -> url.startsWith(ENDPOINT)).toList());
+    }
+
+    /**
+     * A checker with datacite and DDI 2.5 configured, whose HTTP client
+     * answers each request with the body whose key occurs in the URL.
+     */
+    @SuppressWarnings("unchecked")
+    private static MetadataUsesCessdaPids checker(List<String> urls, Map<String, String> bodies) throws Exception {
+        HttpClient client = mock(HttpClient.class);
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenAnswer(invocation -> {
+                    HttpResponse<InputStream> response = mock(HttpResponse.class);
+                    byte[] body = answer(invocation.getArgument(0), urls, bodies);
+                    when(response.statusCode()).thenReturn(body != null ? 200 : 404);
+                    when(response.body()).thenReturn(new ByteArrayInputStream(body != null ? body : new byte[0]));
+                    return response;
+                });
+        when(client.sendAsync(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenAnswer(invocation -> {
+                    HttpResponse<InputStream> response = mock(HttpResponse.class);
+                    byte[] body = answer(invocation.getArgument(0), urls, bodies);
+                    when(response.statusCode()).thenReturn(body != null ? 200 : 404);
+                    when(response.body()).thenReturn(new ByteArrayInputStream(body != null ? body : new byte[0]));
+                    return CompletableFuture.completedFuture(response);
+                });
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids(ENDPOINT, "https://oai.example.org/vocab", client);
+        checker.setMetadataFormats(List.of("oai_ddi25", "oai_datacite"));
+        return checker;
+    }
+
+    private static byte[] answer(HttpRequest request, List<String> urls, Map<String, String> bodies) {
+        String url = request.uri().toString();
+        urls.add(url);
+        return bodies.entrySet().stream()
+                .filter(entry -> url.contains(entry.getKey()))
+                .map(entry -> entry.getValue().getBytes(StandardCharsets.UTF_8))
+                .findFirst()
+                .orElse(null);
+    }
+}
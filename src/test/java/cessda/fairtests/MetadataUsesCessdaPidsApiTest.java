@@ -0,0 +1,100 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MetadataUsesCessdaPidsApiTest {
+
+    /**
+     * Checker stub that passes any URL ending in "ok" without network access,
+     * and hangs on URLs ending in "slow".
+     */
+    private static final class StubChecker extends MetadataUsesCessdaPids {
+        @Override
+        public String containsApprovedPid(String url) {
+            if (url.endsWith("slow")) {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return url.endsWith("ok") ? "pass" : "fail";
+        }
+
+        @Override
+        public String getVocabularyVersion() {
+            return "1.0.0+v";
+        }
+    }
+
+    private final MetadataUsesCessdaPidsApi api = new MetadataUsesCessdaPidsApi(new StubChecker(), 4,
+            Duration.ofMillis(200));
+
+    @Test
+    void testSingle_returnsCheckerResult() throws Exception {
+        var response = api.cessdaPidResponse(new MetadataUsesCessdaPidsApi.CessdaPidRequest("https://x/detail/ok"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("pass", response.getBody().getResult());
+        assertEquals("1.0.0+v", response.getBody().getVocabularyVersion());
+    }
+
+    @Test
+    void testSingle_timeoutIsIndeterminate() throws Exception {
+        var response = api.cessdaPidResponse(new MetadataUsesCessdaPidsApi.CessdaPidRequest("https://x/detail/slow"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("indeterminate", response.getBody().getResult());
+    }
+
+    @Test
+    void testClose_letsCheckInFlightFinish() throws Exception {
+        var response = api.cessdaPidResponse(new MetadataUsesCessdaPidsApi.CessdaPidRequest("https://x/detail/ok"));
+
+        api.close();
+
+        assertEquals("pass", response.get(5, TimeUnit.SECONDS).getBody().getResult());
+    }
+
+    @Test
+    void testBulk_jsonArrayOfStringsAndObjects() throws Exception {
+        String body = "[\"https://x/detail/ok\", {\"resourceIdentifier\": \"https://x/detail/bad\"}]";
+
+        List<String> lines = runBulk(body);
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.contains(
+                "{\"resourceIdentifier\":\"https://x/detail/ok\",\"result\":\"pass\",\"vocabularyVersion\":\"1.0.0+v\"}"));
+        assertTrue(lines.contains(
+                "{\"resourceIdentifier\":\"https://x/detail/bad\",\"result\":\"fail\",\"vocabularyVersion\":\"1.0.0+v\"}"));
+    }
+
+    @Test
+    void testBulk_ndjsonStream() throws Exception {
+        String body = "\"https://x/detail/ok\"\n{\"resourceIdentifier\": \"https://x/detail/ok\"}\n";
+
+        List<String> lines = runBulk(body);
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.contains("\"result\":\"pass\"")));
+    }
+
+    private List<String> runBulk(String body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        api.cessdaPidBulkResponse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)))
+                .getBody()
+                .writeTo(out);
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -1,5 +1,6 @@
 package cessda.fairtests;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -9,20 +10,38 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentMatchers;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -96,6 +115,48 @@ class MetadataUsesCessdaPidsTest {
         assertThrows(Exception.class, () -> localChecker.fetchAndParseDocument("https://bad.url"));
     }
 
+    @Test
+    void testFetchIdNoEntries_streamsTitleStatement() throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='XYZ'>999</ddi:IDNo><ddi:IDNo agency='DOI'>10.123</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+
+        when(mockStreamResponse.statusCode()).thenReturn(200);
+        when(mockStreamResponse.body()).thenReturn(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        when(mockHttpClient.send(
+                any(HttpRequest.class),
+                ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any())).thenReturn(mockStreamResponse);
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids();
+        var field = MetadataUsesCessdaPids.class.getDeclaredField("httpClient");
+        field.setAccessible(true);
+        field.set(localChecker, mockHttpClient);
+
+        List<IdNoEntry> entries = localChecker.fetchIdNoEntries("https://fakeurl.org/abc",
+                entry -> "DOI".equals(entry.agency()));
+        assertEquals(2, entries.size());
+        assertEquals("10.123", entries.get(1).value());
+    }
+
+    @Test
+    void testContainsApprovedPid_usesCachedResult() throws Exception {
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenThrow(new IOException("offline"));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids();
+        var field = MetadataUsesCessdaPids.class.getDeclaredField("httpClient");
+        field.setAccessible(true);
+        field.set(localChecker, mockHttpClient);
+        ResultCache cache = new ResultCache(Duration.ofMinutes(5), 10, true);
+        cache.put("abc123", "pass", "2024-01-01", localChecker.getVocabularyVersion());
+        localChecker.setResultCache(cache);
+
+        assertEquals("pass", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123?lang=en"));
+        assertEquals("indeterminate", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/other"));
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+    }
+
     @Test
     void testCheckDocumentForApprovedPid_passesWhenAgencyMatches() throws Exception {
         String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'>" +
@@ -135,6 +196,31 @@ class MetadataUsesCessdaPidsTest {
         assertEquals("fail", method.invoke(checker, doc, "abc"));
     }
 
+    @Test
+    void testCheckDocumentForApprovedPid_classifiesValueWhenAgencyMissing() throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'>" +
+                "<ddi:stdyDscr><ddi:citation><ddi:titlStmt>" +
+                "<ddi:IDNo>999</ddi:IDNo>" +
+                "<ddi:IDNo agency='XYZ'>https://doi.org/10.5281/zenodo.123</ddi:IDNo>" +
+                "</ddi:titlStmt></ddi:citation></ddi:stdyDscr>" +
+                "</ddi:codeBook>";
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("pass", checker.checkDocumentForApprovedPid(doc, "abc"));
+    }
+
+    @Test
+    void testCheckLocalDocument_classifiesValueWhenAgencyWrong() {
+        String xml = "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+                + "<IDNo>local-1</IDNo><IDNo agency='Other'>urn:nbn:de:0168-ssoar-12345</IDNo>"
+                + "</titlStmt></citation></stdyDscr></codeBook>";
+
+        assertEquals("pass", checker.checkLocalDocument(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "local.xml"));
+    }
+
     @Test
     void testGetApprovedPidSchemas_fromVocabulary() throws Exception {
         String json = """
@@ -186,6 +272,44 @@ class MetadataUsesCessdaPidsTest {
         assertTrue(result.contains("DOI"));
     }
 
+    @Test
+    void testVocabularySnapshot_servedAtOnceAndRevalidatedConditionally(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("vocabulary.json");
+        VocabularySnapshot saved = new VocabularySnapshot("1.0.0", "\"e1\"", null,
+                Instant.now().minus(Duration.ofDays(1)), List.of(new VocabularySnapshot.Concept("ARK", null, null)));
+        saved.save(path);
+        when(mockStringResponse.statusCode()).thenReturn(304);
+        when(mockHttpClient.send(
+                any(HttpRequest.class),
+                ArgumentMatchers.<HttpResponse.BodyHandler<String>>any())).thenReturn(mockStringResponse);
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        localChecker.setVocabularySnapshotPath(path);
+
+        assertEquals(saved.version(), localChecker.getVocabularyVersion());
+        assertEquals(Set.of("ARK"), localChecker.getPidVocabulary().get());
+        verify(mockHttpClient, Mockito.timeout(5_000)).send(
+                ArgumentMatchers.argThat(request -> request.headers().firstValue("If-None-Match")
+                        .filter("\"e1\""::equals).isPresent()),
+                any());
+        assertEquals(saved.version(), localChecker.getVocabularyVersion());
+    }
+
+    @Test
+    void testVocabularySnapshot_otherThanPinnedVersionIsNotServed(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("vocabulary.json");
+        new VocabularySnapshot("1.0.0", null, null, Instant.now(),
+                List.of(new VocabularySnapshot.Concept("ARK", null, null))).save(path);
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        localChecker.setVocabularyVersion("2.0.0");
+        localChecker.setVocabularySnapshotPath(path);
+
+        assertEquals(VocabularySnapshot.bundled().version(), localChecker.getVocabularyVersion());
+    }
+
     @Test
     void testMain_invocation() {
         try (MockedStatic<System> mockedSystem = mockStatic(System.class)) {
@@ -207,6 +331,225 @@ class MetadataUsesCessdaPidsTest {
         assertEquals(4, result.size());
     }
 
+    @Test
+    void testContainsApprovedPid_usesStoredResult(@TempDir Path storeDirectory) throws Exception {
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenThrow(new IOException("offline"));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        try (ResultStore store = ResultStore.open(storeDirectory, Duration.ofDays(1))) {
+            store.put(new ResultStore.Entry("abc123", "pass", "DOI", "v1", Instant.now()));
+            localChecker.setResultStore(store);
+
+            assertEquals("pass", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+            assertEquals("indeterminate", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/other"));
+        }
+    }
+
+    @Test
+    void testContainsApprovedPid_gzipRecordIsCachedAndReparsedOffline(@TempDir Path cacheDirectory) throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo><ddi:IDNo agency='XYZ'>999</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+        byte[] gzipped = ContentEncodingTest.gzip(xml.getBytes(StandardCharsets.UTF_8));
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+        when(mockStreamResponse.statusCode()).thenReturn(200);
+        when(mockStreamResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Encoding", List.of("gzip")),
+                (name, value) -> true));
+        when(mockStreamResponse.body()).thenAnswer(invocation -> new ByteArrayInputStream(gzipped));
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenAnswer(invocation -> {
+            HttpRequest request = invocation.getArgument(0);
+            if (request.uri().toString().contains("verb=GetRecord")) {
+                return mockStreamResponse;
+            }
+            throw new IOException("offline");
+        });
+        PayloadCache cache = PayloadCache.open(cacheDirectory, Duration.ofDays(1));
+
+        MetadataUsesCessdaPids online = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        online.setPayloadCache(cache);
+        assertEquals("pass", online.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+        verify(mockHttpClient).send(ArgumentMatchers.argThat(request -> request.uri().toString()
+                .contains("verb=GetRecord") && request.headers().firstValue("Accept-Encoding")
+                .orElse("").contains("gzip")), any());
+        assertArrayEquals(gzipped, cache.find("https://fakeurl.org/oai"
+                + "?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=abc123").bytes());
+
+        HttpClient offlineClient = mock(HttpClient.class);
+        when(offlineClient.send(any(HttpRequest.class), any())).thenThrow(new IOException("offline"));
+        MetadataUsesCessdaPids offline = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", offlineClient);
+        offline.setPayloadCache(cache);
+        offline.setStreamingExtraction(false);
+        assertEquals("pass", offline.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+        assertEquals("pass", offline.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/abc123")
+                .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testContainsApprovedPid_changedRecordIsNotReparsedFromCachedPayload(@TempDir Path cacheDirectory)
+            throws Exception {
+        String recordTemplate = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><GetRecord><record>"
+                + "<header><identifier>abc123</identifier><datestamp>%s</datestamp></header><metadata>"
+                + "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+                + "<IDNo agency='%s'>10.123</IDNo></titlStmt></citation></stdyDscr></codeBook>"
+                + "</metadata></record></GetRecord></OAI-PMH>";
+        AtomicReference<String> current = new AtomicReference<>(String.format(recordTemplate, "2024-01-01", "DOI"));
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+        when(mockStreamResponse.statusCode()).thenReturn(200);
+        when(mockStreamResponse.body()).thenAnswer(
+                invocation -> new ByteArrayInputStream(current.get().getBytes(StandardCharsets.UTF_8)));
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenAnswer(invocation -> {
+            HttpRequest request = invocation.getArgument(0);
+            if (request.uri().toString().contains("verb=GetRecord")) {
+                return mockStreamResponse;
+            }
+            throw new IOException("offline");
+        });
+        AtomicLong clock = new AtomicLong();
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        PayloadCache payloads = PayloadCache.open(cacheDirectory, Duration.ofDays(1));
+        localChecker.setPayloadCache(payloads);
+        localChecker.setResultCache(new ResultCache(Duration.ofSeconds(10), 10, true, clock::get));
+
+        assertEquals("pass", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+
+        current.set(String.format(recordTemplate, "2024-02-01", "XYZ"));
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertEquals("fail", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+        assertNotNull(payloads.find("https://fakeurl.org/oai?verb=GetRecord&metadataPrefix=oai_ddi25"
+                + "&identifier=abc123", "2024-02-01"));
+    }
+
+    @Test
+    void testContainsApprovedPid_parsedRecordPidsAreIndexed() throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.1000/182</ddi:IDNo><ddi:IDNo agency='Handle'>hdl:11304/abc</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+        HttpResponse<byte[]> mockBytesResponse = mockHttpResponse();
+        when(mockBytesResponse.statusCode()).thenReturn(200);
+        when(mockBytesResponse.body()).thenReturn(xml.getBytes(StandardCharsets.UTF_8));
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenAnswer(invocation -> {
+            HttpRequest request = invocation.getArgument(0);
+            if (request.uri().toString().contains("verb=GetRecord")) {
+                return mockBytesResponse;
+            }
+            throw new IOException("offline");
+        });
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        localChecker.setStreamingExtraction(false);
+
+        assertEquals("pass", localChecker.containsApprovedPid("https://datacatalogue.cessda.eu/detail/abc123"));
+
+        assertEquals("abc123", localChecker.getPidIndex().resolve("https://doi.org/10.1000/182"));
+        assertEquals("abc123", localChecker.getPidIndex().resolve("hdl:11304/abc"));
+    }
+
+    @Test
+    void testContainsApprovedPid_reloadsPidIndexFileReplacedByAnotherProcess(@TempDir Path directory)
+            throws Exception {
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenThrow(new IOException("offline"));
+        Path indexPath = directory.resolve("pids.idx");
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        localChecker.setPidIndexPath(indexPath);
+        ResultCache cache = new ResultCache(Duration.ofMinutes(5), 10, false);
+        cache.put("abc123", "pass", null, localChecker.getVocabularyVersion());
+        localChecker.setResultCache(cache);
+        assertEquals("indeterminate", localChecker.containsApprovedPid("doi:10.1000/182"));
+
+        PidIndex harvested = new PidIndex();
+        harvested.put("abc123", List.of(new IdNoEntry("DOI", "10.1000/182")));
+        harvested.save(indexPath);
+        Files.setLastModifiedTime(indexPath, FileTime.from(Instant.now().plus(Duration.ofMinutes(1))));
+
+        assertEquals("pass", localChecker.containsApprovedPid("doi:10.1000/182"));
+    }
+
+    @Test
+    void testContainsApprovedPid_resolvesIndexedPidToStoredResult(@TempDir Path storeDirectory) throws Exception {
+        when(mockHttpClient.send(any(HttpRequest.class), any())).thenThrow(new IOException("offline"));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+        localChecker.getPidIndex().put("abc123", List.of(new IdNoEntry("DOI", "10.1000/182")));
+        try (ResultStore store = ResultStore.open(storeDirectory, Duration.ofDays(1))) {
+            store.put(new ResultStore.Entry("abc123", "pass", "DOI", "v1", Instant.now()));
+            localChecker.setResultStore(store);
+
+            assertEquals("pass", localChecker.containsApprovedPid("https://doi.org/10.1000/182"));
+            assertEquals("pass", localChecker.containsApprovedPidAsync("doi:10.1000/182").get(5, TimeUnit.SECONDS));
+            assertEquals("indeterminate", localChecker.containsApprovedPid("https://doi.org/10.1000/999"));
+        }
+    }
+
+    @Test
+    void testContainsApprovedPidAsync_passesWithoutBlockingSend() throws Exception {
+        String xml = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo></ddi:titlStmt></ddi:citation></ddi:stdyDscr></ddi:codeBook>";
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+        when(mockStreamResponse.statusCode()).thenReturn(200);
+        when(mockStreamResponse.body()).thenReturn(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        when(mockHttpClient.sendAsync(
+                any(HttpRequest.class),
+                ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.completedFuture(mockStreamResponse));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+
+        assertEquals("pass", localChecker.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/abc123")
+                .get(5, TimeUnit.SECONDS));
+        verify(mockHttpClient, never()).send(
+                ArgumentMatchers.argThat(request -> request.uri().toString().contains("verb=GetRecord")), any());
+    }
+
+    @Test
+    void testContainsApprovedPidAsync_stopsReadingAtFirstApprovedPid() throws Exception {
+        String head = "<ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='DOI'>10.123</ddi:IDNo></ddi:titlStmt></ddi:citation></ddi:stdyDscr>";
+        byte[] tail = ("<ddi:dataDscr>" + "<ddi:var name='v'/>".repeat(100_000) + "</ddi:dataDscr></ddi:codeBook>")
+                .getBytes(StandardCharsets.UTF_8);
+        CountingInputStream body = new CountingInputStream(new SequenceInputStream(
+                new ByteArrayInputStream(head.getBytes(StandardCharsets.UTF_8)), new ByteArrayInputStream(tail)));
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+        when(mockStreamResponse.statusCode()).thenReturn(200);
+        when(mockStreamResponse.body()).thenReturn(body);
+        when(mockHttpClient.sendAsync(
+                any(HttpRequest.class),
+                ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.completedFuture(mockStreamResponse));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+
+        assertEquals("pass", localChecker.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/abc123")
+                .get(5, TimeUnit.SECONDS));
+        assertTrue(body.getCount() < tail.length);
+    }
+
+    @Test
+    void testContainsApprovedPidAsync_errorsAreIndeterminate() throws Exception {
+        HttpResponse<InputStream> mockStreamResponse = mockHttpResponse();
+        when(mockStreamResponse.statusCode()).thenReturn(503);
+        when(mockHttpClient.sendAsync(
+                any(HttpRequest.class),
+                ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(CompletableFuture.completedFuture(mockStreamResponse));
+
+        MetadataUsesCessdaPids localChecker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mockHttpClient);
+
+        assertEquals("indeterminate", localChecker.containsApprovedPidAsync("https://datacatalogue.cessda.eu/detail/abc")
+                .get(5, TimeUnit.SECONDS));
+        assertEquals("indeterminate", localChecker.containsApprovedPidAsync("not a detail url")
+                .get(5, TimeUnit.SECONDS));
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> T invokePrivate(Object target, String methodName, Class<?>... paramTypes) throws Exception {
         var method = target.getClass().getDeclaredMethod(methodName, paramTypes);
@@ -0,0 +1,165 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+
+class OaiPmhHarvesterTest {
+
+    private static final String ENDPOINT = "https://oai.example.org/oai";
+
+    @Test
+    void testHarvest_followsResumptionTokens() throws Exception {
+        String page1 = page(record("r1", "DOI") + deletedRecord("r2"), "token 1");
+        String page2 = page(record("r3", "XYZ"), "");
+        HttpClient client = mockClient(Map.of(
+                "metadataPrefix=oai_ddi25", page1,
+                "resumptionToken=token+1", page2));
+
+        List<OaiPmhHarvester.HarvestedRecord> records = new ArrayList<>();
+        long count = new OaiPmhHarvester(client, ENDPOINT, "oai_ddi25", 1).harvest(records::add);
+
+        assertEquals(3, count);
+        assertEquals("r1", records.get(0).identifier());
+        assertEquals("2024-01-01", records.get(0).datestamp());
+        assertEquals(List.of(new IdNoEntry("DOI", "10.1000/r1")), records.get(0).idNos());
+        assertTrue(records.get(1).deleted());
+        assertTrue(records.get(1).idNos().isEmpty());
+        assertEquals("XYZ", records.get(2).idNos().get(0).agency());
+    }
+
+    @Test
+    void testHarvest_fromRestrictsFirstPageOnly() throws Exception {
+        String page1 = page(record("r1", "DOI"), "token 1");
+        String page2 = page(deletedRecord("r2"), "");
+        HttpClient client = mockClient(Map.of(
+                "metadataPrefix=oai_ddi25&from=2024-01-01T00%3A00%3A00Z", page1,
+                "resumptionToken=token+1", page2));
+
+        List<OaiPmhHarvester.HarvestedRecord> records = new ArrayList<>();
+        long count = new OaiPmhHarvester(client, ENDPOINT, "oai_ddi25").harvest("2024-01-01T00:00:00Z", records::add);
+
+        assertEquals(2, count);
+        assertTrue(records.get(1).deleted());
+    }
+
+    @Test
+    void testHarvest_keepsResponseDateOfFirstPage() throws Exception {
+        HttpClient client = mockClient(Map.of(
+                "metadataPrefix=oai_ddi25", page(record("r1", "DOI"), "token 1", "2024-01-03T10:00:00Z"),
+                "resumptionToken=token+1", page(record("r2", "DOI"), "", "2024-01-03T10:05:00Z")));
+        OaiPmhHarvester harvester = new OaiPmhHarvester(client, ENDPOINT, "oai_ddi25");
+
+        harvester.harvest(r -> {
+        });
+
+        assertEquals("2024-01-03T10:00:00Z", harvester.responseDate());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testHarvest_retriesPageTurnedAwayWith503() throws Exception {
+        HttpResponse<InputStream> unavailable = mock(HttpResponse.class);
+        when(unavailable.statusCode()).thenReturn(503);
+        HttpResponse<InputStream> ok = mock(HttpResponse.class);
+        when(ok.statusCode()).thenReturn(200);
+        when(ok.body()).thenReturn(new ByteArrayInputStream(
+                page(record("r1", "DOI"), "").getBytes(StandardCharsets.UTF_8)));
+        HttpClient client = mock(HttpClient.class);
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenReturn(unavailable)
+                .thenReturn(ok);
+        GuardedHttpSender sender = new GuardedHttpSender();
+        sender.setRetryPolicy(new GuardedHttpSender.RetryPolicy(1, Duration.ofMillis(1), Duration.ofMillis(10)));
+
+        List<OaiPmhHarvester.HarvestedRecord> records = new ArrayList<>();
+        new OaiPmhHarvester(client, sender, ENDPOINT, "oai_ddi25").harvest(records::add);
+
+        assertEquals("r1", records.get(0).identifier());
+        assertEquals(1, sender.stats().retries());
+    }
+
+    @Test
+    void testHarvest_noRecordsMatchIsEmpty() throws Exception {
+        String error = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='noRecordsMatch'>none</error></OAI-PMH>";
+        HttpClient client = mockClient(Map.of("metadataPrefix", error));
+
+        assertEquals(0, new OaiPmhHarvester(client, ENDPOINT, "oai_ddi25").harvest(r -> {
+        }));
+    }
+
+    @Test
+    void testHarvest_oaiErrorFails() throws Exception {
+        String error = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='badResumptionToken'>expired</error></OAI-PMH>";
+        HttpClient client = mockClient(Map.of("metadataPrefix", error));
+
+        assertThrows(IOException.class, () -> new OaiPmhHarvester(client, ENDPOINT, "oai_ddi25").harvest(r -> {
+        }));
+    }
+
+    static String page(String records, String token) {
+        return "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><ListRecords>" + records
+                + "<resumptionToken>" + token + "</resumptionToken></ListRecords></OAI-PMH>";
+    }
+
+    static String page(String records, String token, String responseDate) {
+        return page(records, token).replace("<ListRecords>",
+                "<responseDate>" + responseDate + "</responseDate><ListRecords>");
+    }
+
+    static String record(String id, String agency) {
+        return "<record><header><identifier>" + id + "</identifier><datestamp>2024-01-01</datestamp></header>"
+                + "<metadata><ddi:codeBook xmlns:ddi='ddi:codebook:2_5'><ddi:stdyDscr><ddi:citation><ddi:titlStmt>"
+                + "<ddi:IDNo agency='" + agency + "'>10.1000/" + id + "</ddi:IDNo>"
+                + "</ddi:titlStmt></ddi:citation></ddi:stdyDscr><ddi:dataDscr><ddi:var name='v1'/></ddi:dataDscr>"
+                + "</ddi:codeBook></metadata></record>";
+    }
+
+    static String deletedRecord(String id) {
+        return "<record><header status='deleted'><identifier>" + id + "</identifier>"
+                + "<datestamp>2024-01-02</datestamp></header></record>";
+    }
+
+    /**
+     * HttpClient mock answering each request with the page whose key occurs in
+     * the request URL.
+     */
+    static HttpClient mockClient(Map<String, String> pages) throws Exception {
+        HttpClient client = mock(HttpClient.class);
+        when(client.send(any(HttpRequest.class), ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+                .thenAnswer(invocation -> {
+                    String url = invocation.<HttpRequest>getArgument(0).uri().toString();
+                    String body = pages.entrySet().stream()
+                            .filter(entry -> url.contains(entry.getKey()))
+                            .map(Map.Entry::getValue)
+                            .findFirst()
+                            .orElseThrow();
+                    @SuppressWarnings("unchecked")
+                    HttpResponse<InputStream> response = mock(HttpResponse.class);
+                    when(response.statusCode()).thenReturn(200);
+                    when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+                    return response;
+                });
+        return client;
+    }
+}
@@ -0,0 +1,94 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OfflineAssessorTest {
+
+    private static final String PASSING = "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+            + "<IDNo agency='DOI'>10.123</IDNo></titlStmt></citation></stdyDscr></codeBook>";
+    private static final String FAILING = "<codeBook xmlns='ddi:codebook:2_5'><stdyDscr><citation><titlStmt>"
+            + "<IDNo agency='XYZ'>1</IDNo></titlStmt></citation></stdyDscr></codeBook>";
+
+    @TempDir
+    Path directory;
+
+    /** Passes documents mentioning agency DOI, without parsing them. */
+    private static String containsDoi(InputStream in, String source) {
+        try {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("'DOI'") ? "pass" : "fail";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void testAssess_walksDirectoriesArchivesAndLargeFiles() throws Exception {
+        Files.createDirectories(directory.resolve("a/b"));
+        Files.writeString(directory.resolve("a/one.xml"), PASSING);
+        Files.writeString(directory.resolve("a/b/two.XML"), FAILING);
+        Files.writeString(directory.resolve("a/notes.txt"), PASSING);
+        Files.writeString(directory.resolve("large.xml"),
+                PASSING + "<!--" + "x".repeat((int) OfflineAssessor.MAP_THRESHOLD_BYTES) + "-->");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(directory.resolve("dump.zip")))) {
+            zip.putNextEntry(new ZipEntry("records/three.xml"));
+            zip.write(PASSING.getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("four.xml"));
+            zip.write(FAILING.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, String> results = new TreeMap<>();
+        long checked = new OfflineAssessor(OfflineAssessorTest::containsDoi, new ForkJoinPool(4))
+                .assess(List.of(directory), result -> results.put(result.source(), result.result()));
+
+        String root = directory.toString();
+        assertEquals(5, checked);
+        assertEquals(Map.of(
+                root + "/a/one.xml", "pass",
+                root + "/a/b/two.XML", "fail",
+                root + "/large.xml", "pass",
+                root + "/dump.zip!/records/three.xml", "pass",
+                root + "/dump.zip!/four.xml", "fail"), results);
+    }
+
+    @Test
+    void testAssess_missingRootIsAnError() {
+        OfflineAssessor assessor = new OfflineAssessor(OfflineAssessorTest::containsDoi, ForkJoinPool.commonPool());
+
+        assertThrows(IOException.class, () -> assessor.assess(List.of(directory.resolve("missing")), result -> {
+        }));
+    }
+
+    @Test
+    void testAssess_usesCheckerLogic() throws Exception {
+        Files.writeString(directory.resolve("pass.xml"), PASSING);
+        Files.writeString(directory.resolve("fail.xml"), FAILING);
+        Files.writeString(directory.resolve("broken.xml"), "<codeBook");
+        MetadataUsesCessdaPids checker = new MetadataUsesCessdaPids("https://fakeurl.org/oai",
+                "https://fakeurl.org/vocab", mock(HttpClient.class));
+
+        Map<String, String> results = new TreeMap<>();
+        new OfflineAssessor(checker).assess(List.of(directory),
+                result -> results.put(directory.relativize(Path.of(result.source())).toString(), result.result()));
+
+        assertEquals(Map.of("pass.xml", "pass", "fail.xml", "fail", "broken.xml", "indeterminate"), results);
+    }
+}
@@ -0,0 +1,137 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PayloadCacheTest {
+
+    private static final String URL = "https://fakeurl.org/oai?verb=GetRecord&metadataPrefix=oai_ddi25&identifier=abc";
+    private static final byte[] XML = "<OAI-PMH><GetRecord><record/></GetRecord></OAI-PMH>"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final String DATESTAMP = "2024-01-01T00:00:00Z";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPut_storesCompressedAndFindsDecodable() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        assertNull(cache.find(URL));
+
+        cache.put(URL, new ContentEncoding.EncodedBody(XML, null), DATESTAMP);
+
+        ContentEncoding.EncodedBody found = cache.find(URL);
+        assertEquals("gzip", found.encoding());
+        assertArrayEquals(XML, readAll(found));
+        byte[] file = Files.readAllBytes(cache.pathOf(URL));
+        assertArrayEquals(found.bytes(), Arrays.copyOfRange(file, PayloadCache.HEADER_SIZE, file.length));
+    }
+
+    @Test
+    void testPut_keepsGzipBodyAsReceived() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        byte[] gzipped = ContentEncodingTest.gzip(XML);
+
+        cache.put(URL, new ContentEncoding.EncodedBody(gzipped, "gzip"), DATESTAMP);
+
+        assertArrayEquals(gzipped, cache.find(URL).bytes());
+    }
+
+    @Test
+    void testCapture_storesWholeBodyAfterPartialRead() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        for (String encoding : new String[] { null, "gzip" }) {
+            byte[] received = encoding == null ? XML : ContentEncodingTest.gzip(XML);
+            try (PayloadCache.Capture capture = cache.capture(URL, new ByteArrayInputStream(received), encoding)) {
+                assertEquals('<', capture.body().read());
+                capture.commit(DATESTAMP);
+            }
+            assertArrayEquals(XML, readAll(cache.find(URL)));
+        }
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    void testCapture_uncommittedIsDiscarded() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        try (PayloadCache.Capture capture = cache.capture(URL, new ByteArrayInputStream(XML), null)) {
+            capture.body().readNBytes(5);
+        }
+
+        assertNull(cache.find(URL));
+        assertEquals(0, countFiles());
+        assertThrows(IOException.class, () -> cache.capture(URL, new ByteArrayInputStream(XML), "br"));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    void testFind_expiresAfterMaxAge() throws Exception {
+        Instant now = Instant.parse("2025-01-10T00:00:00Z");
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(7), Clock.fixed(now, ZoneOffset.UTC));
+        cache.put(URL, new ContentEncoding.EncodedBody(XML, null), DATESTAMP);
+
+        Files.setLastModifiedTime(cache.pathOf(URL), FileTime.from(now.minus(Duration.ofDays(6))));
+        assertArrayEquals(XML, readAll(cache.find(URL)));
+
+        Files.setLastModifiedTime(cache.pathOf(URL), FileTime.from(now.minus(Duration.ofDays(8))));
+        assertNull(cache.find(URL));
+        assertFalse(Files.exists(cache.pathOf(URL)));
+        assertTrue(Files.isDirectory(directory));
+    }
+
+    @Test
+    void testFind_evictsPayloadStoredWithAnotherDatestamp() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        cache.put(URL, new ContentEncoding.EncodedBody(XML, null), DATESTAMP);
+
+        assertArrayEquals(XML, readAll(cache.find(URL, DATESTAMP)));
+        assertNull(cache.find(URL, "2024-02-01T00:00:00Z"));
+        assertFalse(Files.exists(cache.pathOf(URL)));
+
+        cache.put(URL, new ContentEncoding.EncodedBody(XML, null), null);
+        assertArrayEquals(XML, readAll(cache.find(URL)));
+        assertNull(cache.find(URL, DATESTAMP));
+    }
+
+    @Test
+    void testFind_ignoresFileWithoutHeader() throws Exception {
+        PayloadCache cache = PayloadCache.open(directory, Duration.ofDays(1));
+        Files.write(cache.pathOf(URL), ContentEncodingTest.gzip(XML));
+
+        assertNull(cache.find(URL));
+        assertEquals(0, countFiles());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] readAll(ContentEncoding.EncodedBody body) throws IOException {
+        try (InputStream in = body.open()) {
+            return in.readAllBytes();
+        }
+    }
+}
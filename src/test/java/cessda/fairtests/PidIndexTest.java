@@ -0,0 +1,109 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PidIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testNormalise_removesResolversAndCase() {
+        assertEquals("doi:10.1000/182", PidIndex.normalise("https://doi.org/10.1000/182"));
+        assertEquals("doi:10.1000/182", PidIndex.normalise(" DOI:10.1000/182 "));
+        assertEquals("doi:10.1000/182", PidIndex.normalise("http://dx.doi.org/10.1000/182"));
+        assertEquals("hdl:10.1000/182", PidIndex.normalise("https://hdl.handle.net/10.1000/182"));
+        assertEquals("hdl:11304/abc-1", PidIndex.normalise("hdl:11304/ABC-1"));
+        assertEquals("urn:nbn:de:0168-ssoar-1", PidIndex.normalise("https://nbn-resolving.org/urn:nbn:de:0168-ssoar-1"));
+        assertEquals("ark:12345/x9", PidIndex.normalise("https://n2t.net/ark:/12345/x9"));
+        assertNull(PidIndex.normalise("ZA1234"));
+        assertNull(PidIndex.normalise("2021/001"));
+        assertNull(PidIndex.normalise(null));
+    }
+
+    @Test
+    void testNormalise_agreesWithCheckerClassification() {
+        PidPatternMatcher matcher = PidPatternMatcher.compile(PidPatternMatcher.DEFAULT_PATTERNS.keySet(), Map.of());
+        for (String value : List.of("10.5281/zenodo.123", "https://doi.org/10.5281/zenodo.123", "10.1/short",
+                "hdl:11304/abc", "https://hdl.handle.net/10.1000/182", "urn:nbn:de:1", "ark:/13030/tf5p30086k",
+                "ark:/1/x", "ZA1234", "2021/001", "21.11116/abc")) {
+            String schema = matcher.classify(value);
+            String pid = PidIndex.normalise(value);
+            if (schema == null) {
+                assertNull(pid, value);
+            } else {
+                assertTrue(pid.startsWith(PidPatternMatcher.BUILT_IN_SYNTAXES.get(schema).indexPrefix()), value);
+            }
+        }
+    }
+
+    @Test
+    void testPut_replacesPidsOfRecord() {
+        PidIndex index = new PidIndex();
+        index.put("r1", List.of(new IdNoEntry("DOI", "10.1000/1"), new IdNoEntry("Local", "ZA1"),
+                new IdNoEntry("Handle", "hdl:11304/1"), new IdNoEntry("Local", "2021/001")));
+        assertEquals("r1", index.resolve("https://doi.org/10.1000/1"));
+        assertEquals("r1", index.resolve("hdl:11304/1"));
+        assertEquals(2, index.size());
+
+        index.put("r1", List.of(new IdNoEntry("DOI", "10.1000/2")));
+        assertNull(index.resolve("10.1000/1"));
+        assertEquals("r1", index.resolve("10.1000/2"));
+
+        index.add("r1", List.of(new IdNoEntry("DOI", "10.1000/3")));
+        assertEquals("r1", index.resolve("10.1000/2"));
+        assertEquals("r1", index.resolve("10.1000/3"));
+    }
+
+    @Test
+    void testRemove_keepsPidClaimedByAnotherRecord() {
+        PidIndex index = new PidIndex();
+        index.put("old", List.of(new IdNoEntry("DOI", "10.1000/shared")));
+        index.put("new", List.of(new IdNoEntry("DOI", "10.1000/shared")));
+
+        index.remove("old");
+
+        assertEquals("new", index.resolve("10.1000/shared"));
+        index.remove("new");
+        assertNull(index.resolve("10.1000/shared"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testSave_roundTripsWithoutTemporaryFile() throws Exception {
+        Path path = directory.resolve("pids.idx");
+        assertEquals(0, PidIndex.load(path).size());
+        PidIndex index = new PidIndex();
+        index.put("r1", List.of(new IdNoEntry("DOI", "10.1000/1"), new IdNoEntry("URN", "urn:nbn:de:1")));
+        index.put("r2", List.of(new IdNoEntry("ARK", "ark:/12345/r2")));
+
+        index.save(path);
+        PidIndex loaded = PidIndex.load(path);
+
+        assertEquals(3, loaded.size());
+        assertEquals("r1", loaded.resolve("urn:nbn:de:1"));
+        assertEquals("r2", loaded.resolve("ark:12345/r2"));
+        assertFalse(Files.exists(directory.resolve("pids.idx.tmp")));
+    }
+
+    @Test
+    void testLoad_rejectsOtherFiles() throws Exception {
+        Path path = directory.resolve("pids.idx");
+        Files.writeString(path, "not an index at all");
+
+        assertThrows(IOException.class, () -> PidIndex.load(path));
+    }
+}
@@ -0,0 +1,61 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PidPatternMatcherTest {
+
+    private final PidPatternMatcher matcher = PidPatternMatcher.compile(Set.of("URN", "Handle", "ARK", "DOI"), Map.of());
+
+    @Test
+    void testClassify_builtInSchemas() {
+        assertEquals("DOI", matcher.classify("10.5281/zenodo.123"));
+        assertEquals("DOI", matcher.classify(" https://doi.org/10.5281/ZENODO.123 "));
+        assertEquals("DOI", matcher.classify("doi:10.1000/xyz"));
+        assertEquals("Handle", matcher.classify("hdl:11304/abc-def"));
+        assertEquals("Handle", matcher.classify("https://hdl.handle.net/21.11116/0000-0001"));
+        assertEquals("Handle", matcher.classify("21.11116/0000-0001"));
+        assertEquals("Handle", matcher.classify("hdl:12/345"));
+        assertEquals("URN", matcher.classify("urn:nbn:de:0168-ssoar-12345"));
+        assertEquals("ARK", matcher.classify("ark:/13030/tf5p30086k"));
+        assertEquals("ARK", matcher.classify("https://n2t.net/ark:/13030/tf5p30086k"));
+    }
+
+    @Test
+    void testClassify_noneForOtherValues() {
+        assertNull(matcher.classify("999"));
+        assertNull(matcher.classify("10.123"));
+        assertNull(matcher.classify("see urn:nbn:de:1"));
+        assertNull(matcher.classify("2021/001"));
+        assertNull(matcher.classify("12/345"));
+        assertNull(matcher.classify(""));
+        assertNull(matcher.classify(null));
+    }
+
+    @Test
+    void testCompile_onlyApprovedSchemasInPriorityOrder() {
+        PidPatternMatcher handleOnly = PidPatternMatcher.compile(Set.of("Handle", "Other"), Map.of());
+
+        assertEquals(List.of("DOI", "ARK", "URN", "Handle"), matcher.schemas());
+        assertEquals(List.of("Handle"), handleOnly.schemas());
+        assertEquals("Handle", handleOnly.classify("10.5281/zenodo.123"));
+        assertNull(handleOnly.classify("urn:nbn:de:1"));
+    }
+
+    @Test
+    void testCompile_vocabularyPatternsTakePrecedence() {
+        PidPatternMatcher custom = PidPatternMatcher.compile(Set.of("DOI", "Local", "Broken"),
+                Map.of("Local", "^LOCAL-\\d+$", "DOI", "10\\.1234/.+", "Broken", "(unclosed"));
+
+        assertEquals(List.of("DOI", "Local"), custom.schemas());
+        assertEquals("Local", custom.classify("local-42"));
+        assertEquals("DOI", custom.classify("10.1234/abc"));
+        assertNull(custom.classify("10.5281/zenodo.123"));
+    }
+}
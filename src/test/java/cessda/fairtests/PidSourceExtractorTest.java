@@ -0,0 +1,106 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PidSourceExtractorTest {
+
+    static final String DATACITE = "<resource xmlns='http://datacite.org/schema/kernel-4'>"
+            + "<identifier identifierType='DOI'>10.123/abc</identifier>"
+            + "<alternateIdentifiers><alternateIdentifier alternateIdentifierType='Handle'>11.1/x"
+            + "</alternateIdentifier></alternateIdentifiers><titles><title>T</title></titles></resource>";
+    static final String DUBLIN_CORE = "<oai_dc:dc xmlns:oai_dc='http://www.openarchives.org/OAI/2.0/oai_dc/'"
+            + " xmlns:dc='http://purl.org/dc/elements/1.1/'><dc:title>T</dc:title>"
+            + "<dc:identifier>https://doi.org/10.123/abc</dc:identifier><dc:identifier>local-1</dc:identifier>"
+            + "</oai_dc:dc>";
+    static final String DDI_LIFECYCLE = "<ddi:DDIInstance xmlns:ddi='ddi:instance:3_2' xmlns:s='ddi:studyunit:3_2'"
+            + " xmlns:r='ddi:reusable:3_2'><s:StudyUnit><r:UserID typeOfUserID='URN'>urn:nbn:1</r:UserID>"
+            + "<r:Citation><r:Title><r:String>T</r:String></r:Title><r:InternationalIdentifier>"
+            + "<r:IdentifierContent>10.123/abc</r:IdentifierContent><r:ManagingAgency>DOI</r:ManagingAgency>"
+            + "</r:InternationalIdentifier></r:Citation>"
+            + "<r:OtherMaterial><r:Citation><r:InternationalIdentifier><r:IdentifierContent>10.9/other"
+            + "</r:IdentifierContent><r:ManagingAgency>DOI</r:ManagingAgency></r:InternationalIdentifier>"
+            + "</r:Citation></r:OtherMaterial></s:StudyUnit><s:StudyUnit><r:UserID typeOfUserID='X'>2"
+            + "</r:UserID></s:StudyUnit></ddi:DDIInstance>";
+
+    static String getRecord(String metadata) {
+        return "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'><GetRecord><record><header>"
+                + "<identifier>rec1</identifier><datestamp>2024-03-01</datestamp></header>"
+                + "<metadata>" + metadata + "</metadata></record></GetRecord></OAI-PMH>";
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testDataCite_readsIdentifierTypesAsAgencies() throws Exception {
+        OaiPmhHarvester.HarvestedRecord oaiRecord = new DataCitePidExtractor()
+                .extractRecord(stream(getRecord(DATACITE)), entry -> false);
+
+        assertEquals("rec1", oaiRecord.identifier());
+        assertEquals("2024-03-01", oaiRecord.datestamp());
+        assertEquals(List.of(new IdNoEntry("DOI", "10.123/abc"), new IdNoEntry("Handle", "11.1/x")),
+                oaiRecord.idNos());
+    }
+
+    @Test
+    void testDublinCore_readsIdentifiersWithoutAgency() throws Exception {
+        List<IdNoEntry> entries = new DublinCorePidExtractor()
+                .extractRecord(stream(getRecord(DUBLIN_CORE)), entry -> false).idNos();
+
+        assertEquals(List.of(new IdNoEntry(null, "https://doi.org/10.123/abc"), new IdNoEntry(null, "local-1")),
+                entries);
+    }
+
+    @Test
+    void testDdiLifecycle_readsFirstStudyUnitCitationAndUserIds() throws Exception {
+        List<IdNoEntry> entries = new DdiLifecyclePidExtractor()
+                .extractRecord(stream(getRecord(DDI_LIFECYCLE)), entry -> false).idNos();
+
+        assertEquals(List.of(new IdNoEntry("URN", "urn:nbn:1"), new IdNoEntry("DOI", "10.123/abc")), entries);
+    }
+
+    @Test
+    void testExtract_stopsAtFirstAcceptedEntry() throws Exception {
+        List<IdNoEntry> entries = new DataCitePidExtractor()
+                .extractRecord(stream(getRecord(DATACITE)), entry -> "DOI".equals(entry.agency())).idNos();
+
+        assertEquals(List.of(new IdNoEntry("DOI", "10.123/abc")), entries);
+    }
+
+    @Test
+    void testExtract_cannotDisseminateFormatIsFormatUnavailable() {
+        String error = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='cannotDisseminateFormat'>no datacite</error></OAI-PMH>";
+        String missing = "<OAI-PMH xmlns='http://www.openarchives.org/OAI/2.0/'>"
+                + "<error code='idDoesNotExist'>unknown</error></OAI-PMH>";
+
+        assertThrows(PidSourceExtractor.FormatUnavailableException.class,
+                () -> new DataCitePidExtractor().extractRecord(stream(error), entry -> false));
+        IOException e = assertThrows(IOException.class,
+                () -> new DublinCorePidExtractor().extractRecord(stream(missing), entry -> false));
+        assertTrue(e.getMessage().contains("idDoesNotExist"));
+    }
+
+    @Test
+    void testForPrefix_mapsPrefixesToExtractors() {
+        assertInstanceOf(Ddi25PidExtractor.class, PidSourceExtractor.forPrefix("oai_ddi25"));
+        assertInstanceOf(DublinCorePidExtractor.class, PidSourceExtractor.forPrefix("oai_dc"));
+        assertInstanceOf(DataCitePidExtractor.class, PidSourceExtractor.forPrefix("datacite"));
+        PidSourceExtractor lifecycle = PidSourceExtractor.forPrefix("oai_ddi33");
+        assertInstanceOf(DdiLifecyclePidExtractor.class, lifecycle);
+        assertEquals("oai_ddi33", lifecycle.metadataPrefix());
+        assertThrows(IllegalArgumentException.class, () -> PidSourceExtractor.forPrefix("marc21"));
+    }
+}
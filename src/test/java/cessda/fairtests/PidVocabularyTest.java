@@ -0,0 +1,184 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PidVocabularyTest {
+
+    private static final Set<String> FALLBACK = Set.of("DOI");
+
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void testGet_servesFallbackWithoutBlockingUntilFirstLoad() {
+        PidVocabulary vocabulary = vocabulary(() -> Set.of("DOI", "ARK"));
+
+        assertEquals(FALLBACK, vocabulary.get());
+        assertEquals(1, pending.size());
+        runPending();
+
+        assertEquals(Set.of("DOI", "ARK"), vocabulary.get());
+        assertFalse(vocabulary.snapshot().fallback());
+    }
+
+    @Test
+    void testGet_cachesFallbackAndRetriesAfterRetryInterval() {
+        AtomicInteger loads = new AtomicInteger();
+        PidVocabulary vocabulary = vocabulary(() -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IOException("vocabulary down");
+            }
+            return Set.of("Handle");
+        });
+
+        vocabulary.get();
+        runPending();
+        assertTrue(vocabulary.snapshot().fallback());
+
+        // within the retry interval readers get the cached fallback and start nothing
+        vocabulary.get();
+        assertTrue(pending.isEmpty());
+
+        clock.advance(Duration.ofSeconds(61));
+        assertEquals(FALLBACK, vocabulary.get());
+        runPending();
+        assertEquals(Set.of("Handle"), vocabulary.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGet_keepsServingLastGoodSetWhileRefreshFails() {
+        AtomicInteger loads = new AtomicInteger();
+        PidVocabulary vocabulary = vocabulary(() -> {
+            if (loads.incrementAndGet() > 1) {
+                throw new IOException("vocabulary down");
+            }
+            return Set.of("URN");
+        });
+        vocabulary.get();
+        runPending();
+
+        clock.advance(Duration.ofHours(7));
+        assertEquals(Set.of("URN"), vocabulary.get());
+        assertEquals(1, pending.size());
+        // a second reader does not start another refresh while one is queued
+        vocabulary.get();
+        assertEquals(1, pending.size());
+        runPending();
+
+        assertEquals(Set.of("URN"), vocabulary.get());
+        assertFalse(vocabulary.snapshot().fallback());
+        assertEquals(clock.instant().plus(PidVocabulary.DEFAULT_RETRY_INTERVAL), vocabulary.snapshot().refreshDueAt());
+    }
+
+    @Test
+    void testSeed_servesSavedVocabularyAtOnceAndRefreshesWhenDue() throws Exception {
+        List<VocabularySnapshot> revalidated = new ArrayList<>();
+        VocabularySnapshot saved = VocabularySnapshot.of(Set.of("ARK"), clock.instant().minus(Duration.ofHours(1)));
+        PidVocabulary vocabulary = new PidVocabulary(current -> {
+            revalidated.add(current);
+            return current.revalidated(clock.instant());
+        }, VocabularySnapshot.of(FALLBACK, Instant.EPOCH), PidVocabulary.DEFAULT_REFRESH_INTERVAL,
+                PidVocabulary.DEFAULT_RETRY_INTERVAL, pending::add, clock);
+
+        vocabulary.seed(saved);
+
+        assertTrue(vocabulary.awaitFirstLoad(Duration.ZERO));
+        assertEquals(Set.of("ARK"), vocabulary.get());
+        assertEquals(saved.version(), vocabulary.version());
+        assertTrue(pending.isEmpty());
+
+        // due six hours after it was fetched, not after it was seeded
+        clock.advance(Duration.ofHours(5).plusSeconds(1));
+        vocabulary.get();
+        runPending();
+        assertEquals(List.of(saved), revalidated);
+        assertEquals(clock.instant(), vocabulary.snapshot().loadedAt());
+    }
+
+    @Test
+    void testSeed_ignoredOnceLoaded() {
+        PidVocabulary vocabulary = vocabulary(() -> Set.of("URN"));
+        vocabulary.get();
+        runPending();
+
+        vocabulary.seed(VocabularySnapshot.of(Set.of("ARK"), clock.instant()));
+
+        assertEquals(Set.of("URN"), vocabulary.get());
+    }
+
+    @Test
+    void testRefresh_scheduledWithoutReadsOnScheduledExecutor() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            PidVocabulary vocabulary = new PidVocabulary(() -> {
+                loads.incrementAndGet();
+                return Set.of("URN");
+            }, FALLBACK, Duration.ofMillis(20), Duration.ofMillis(20), scheduler, Clock.systemUTC());
+
+            assertTrue(vocabulary.awaitFirstLoad(Duration.ofSeconds(5)));
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (loads.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertTrue(loads.get() >= 3);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private PidVocabulary vocabulary(PidVocabulary.Loader loader) {
+        return new PidVocabulary(loader, FALLBACK, PidVocabulary.DEFAULT_REFRESH_INTERVAL,
+                PidVocabulary.DEFAULT_RETRY_INTERVAL, pending::add, clock);
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.poll().run();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
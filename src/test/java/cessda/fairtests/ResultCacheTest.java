@@ -0,0 +1,107 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class ResultCacheTest {
+
+    private static final ResultCache.DatestampSource NO_REVALIDATION = id -> {
+        throw new AssertionError("unexpected revalidation of " + id);
+    };
+
+    private static final String VERSION = "v1";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testGet_hitWithinTtlAndMissAfter() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, false, clock::get);
+        cache.put("abc", "pass", "2024-01-01", VERSION);
+
+        assertEquals("pass", cache.get("abc", VERSION, NO_REVALIDATION));
+        clock.set(Duration.ofSeconds(11).toNanos());
+        assertNull(cache.get("abc", VERSION, NO_REVALIDATION));
+        assertNull(cache.get("other", VERSION, NO_REVALIDATION));
+
+        ResultCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(0, stats.size());
+    }
+
+    @Test
+    void testPut_evictsLeastRecentlyUsed() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 2, false, clock::get);
+        cache.put("a", "pass", null, VERSION);
+        cache.put("b", "fail", null, VERSION);
+        cache.get("a", VERSION, NO_REVALIDATION);
+        cache.put("c", "pass", null, VERSION);
+
+        assertEquals("pass", cache.get("a", VERSION, NO_REVALIDATION));
+        assertNull(cache.get("b", VERSION, NO_REVALIDATION));
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void testPut_ignoresIndeterminate() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, false, clock::get);
+        cache.put("abc", "indeterminate", null, VERSION);
+
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void testGet_revalidatesUnchangedDatestamp() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, true, clock::get);
+        AtomicInteger lookups = new AtomicInteger();
+        cache.put("abc", "pass", "2024-01-01", VERSION);
+        clock.set(Duration.ofSeconds(11).toNanos());
+
+        assertEquals("pass", cache.get("abc", VERSION, id -> {
+            lookups.incrementAndGet();
+            return "2024-01-01";
+        }));
+        // renewed, so the next lookup is a plain hit
+        assertEquals("pass", cache.get("abc", VERSION, NO_REVALIDATION));
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.stats().revalidations());
+        assertEquals(1, cache.stats().hits());
+    }
+
+    @Test
+    void testGet_changedDatestampIsMiss() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, true, clock::get);
+        cache.put("abc", "fail", "2024-01-01", VERSION);
+        clock.set(Duration.ofSeconds(11).toNanos());
+
+        assertNull(cache.get("abc", VERSION, id -> "2024-02-01"));
+        assertEquals(1, cache.stats().misses());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void testGet_otherVocabularyVersionIsMiss() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, true, clock::get);
+        cache.put("abc", "pass", "2024-01-01", VERSION);
+
+        assertNull(cache.get("abc", "v2", NO_REVALIDATION));
+        assertEquals(1, cache.stats().misses());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void testGet_unchangedDatestampDoesNotRenewAcrossVocabularyVersions() {
+        ResultCache cache = new ResultCache(Duration.ofSeconds(10), 10, true, clock::get);
+        cache.put("abc", "fail", "2024-01-01", VERSION);
+        clock.set(Duration.ofSeconds(11).toNanos());
+
+        assertNull(cache.get("abc", "v2", NO_REVALIDATION));
+        assertEquals(0, cache.stats().revalidations());
+    }
+}
@@ -0,0 +1,180 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPut_isFoundAfterReopen() throws Exception {
+        try (ResultStore store = open(100)) {
+            store.put(entry("abc", "pass", "DOI"));
+            store.put(entry("def", "fail", null));
+            store.put(entry("skip", "indeterminate", null));
+            assertEquals("DOI", store.find("abc").matchedAgency());
+        }
+
+        try (ResultStore store = open(100)) {
+            assertEquals(entry("abc", "pass", "DOI"), store.find("abc"));
+            assertEquals(entry("def", "fail", null), store.find("def"));
+            assertNull(store.find("skip"));
+            assertEquals(2, store.stats().tailEntries());
+        }
+    }
+
+    @Test
+    void testCompaction_keepsLatestEntryAndIndexesIt() throws Exception {
+        try (ResultStore store = open(3)) {
+            store.put(entry("a", "fail", null));
+            store.put(entry("a", "pass", "DOI"));
+            store.put(entry("b", "fail", null));
+            store.put(entry("c", "pass", "URN"));
+            store.put(entry("b", "pass", "Handle"));
+
+            assertEquals(3, store.stats().indexedEntries());
+            assertEquals(1, store.stats().tailEntries());
+        }
+
+        try (ResultStore store = open(3)) {
+            assertEquals(3, store.stats().indexedEntries());
+            assertEquals(1, store.stats().tailEntries());
+            assertEquals("pass", store.find("a").outcome());
+            assertEquals("Handle", store.find("b").matchedAgency());
+            assertEquals("URN", store.find("c").matchedAgency());
+            assertNull(store.find("missing"));
+
+            store.compact();
+            assertEquals(3, store.stats().indexedEntries());
+            assertEquals(0, store.stats().tailEntries());
+            assertEquals("Handle", store.find("b").matchedAgency());
+        }
+    }
+
+    @Test
+    void testCompaction_isTriggeredByRewritesOfTheSameRecord() throws Exception {
+        try (ResultStore store = open(100)) {
+            for (int i = 0; i < 20; i++) {
+                store.put(entry("a", i % 2 == 0 ? "fail" : "pass", i % 2 == 0 ? null : "DOI"));
+                ResultStore.Stats stats = store.stats();
+                assertTrue(stats.logBytes() <= 16 + ResultStore.COMPACTION_LOG_TO_LIVE_RATIO * stats.liveBytes(),
+                        "log of " + stats.logBytes() + " bytes for " + stats.liveBytes() + " live bytes");
+            }
+            assertEquals(1, store.stats().indexedEntries());
+            assertEquals("DOI", store.find("a").matchedAgency());
+        }
+        try (ResultStore store = open(100)) {
+            assertEquals("pass", store.find("a").outcome());
+        }
+    }
+
+    @Test
+    void testOpen_discardsTornTail() throws Exception {
+        try (ResultStore store = open(100)) {
+            store.put(entry("abc", "pass", "DOI"));
+        }
+        long intact = Files.size(directory.resolve(ResultStore.LOG_FILE));
+        Files.write(directory.resolve(ResultStore.LOG_FILE), new byte[] { 0, 0, 0, 40, 1, 2, 3 },
+                StandardOpenOption.APPEND);
+
+        try (ResultStore store = open(100)) {
+            assertEquals("pass", store.find("abc").outcome());
+            assertEquals(intact, store.stats().logBytes());
+            store.put(entry("def", "fail", null));
+        }
+        try (ResultStore store = open(100)) {
+            assertEquals("fail", store.find("def").outcome());
+        }
+    }
+
+    @Test
+    void testOpen_replaysWholeLogWhenIndexDoesNotMatch() throws Exception {
+        try (ResultStore store = open(2)) {
+            store.put(entry("a", "pass", "DOI"));
+            store.put(entry("b", "fail", null));
+        }
+        Files.write(directory.resolve(ResultStore.INDEX_FILE), new byte[64]);
+
+        try (ResultStore store = open(100)) {
+            assertEquals(0, store.stats().indexedEntries());
+            assertEquals("pass", store.find("a").outcome());
+            assertEquals("fail", store.find("b").outcome());
+        }
+    }
+
+    @Test
+    void testReusableOutcome_respectsMaxAgeAndVocabularyVersion() throws Exception {
+        try (ResultStore store = open(100)) {
+            store.put(new ResultStore.Entry("old", "pass", "DOI", PidVocabulary.versionOf(Set.of("DOI")),
+                    NOW.minus(Duration.ofDays(8))));
+            store.put(new ResultStore.Entry("current", "pass", "DOI", PidVocabulary.versionOf(Set.of("DOI")), NOW));
+            store.put(new ResultStore.Entry("other", "fail", null, PidVocabulary.versionOf(Set.of("URN")), NOW));
+
+            PidVocabulary unloaded = vocabulary(Set.of("DOI"), false);
+            assertNull(store.reusableOutcome("old", unloaded));
+            assertEquals("pass", store.reusableOutcome("current", unloaded));
+            assertEquals("fail", store.reusableOutcome("other", unloaded));
+
+            PidVocabulary loaded = vocabulary(Set.of("DOI"), true);
+            assertEquals("pass", store.reusableOutcome("current", loaded));
+            assertNull(store.reusableOutcome("other", loaded));
+            assertNull(store.reusableOutcome("missing", loaded));
+        }
+    }
+
+    @Test
+    void testOpen_rejectsForeignFile() throws Exception {
+        Files.write(directory.resolve(ResultStore.LOG_FILE), new byte[32]);
+
+        assertTrue(assertThrowsIo(() -> open(100)).getMessage().contains("Not a result store"));
+    }
+
+    private ResultStore open(int compactionThreshold) throws IOException {
+        return ResultStore.open(directory, ResultStore.DEFAULT_MAX_AGE, compactionThreshold, CLOCK);
+    }
+
+    private static ResultStore.Entry entry(String recordId, String outcome, String agency) {
+        return new ResultStore.Entry(recordId, outcome, agency, "v1", NOW);
+    }
+
+    private static PidVocabulary vocabulary(Set<String> schemas, boolean load) {
+        PidVocabulary vocabulary = new PidVocabulary(() -> schemas, Set.of("DOI", "Handle", "URN", "ARK"),
+                PidVocabulary.DEFAULT_REFRESH_INTERVAL, PidVocabulary.DEFAULT_RETRY_INTERVAL, Runnable::run, CLOCK);
+        if (load) {
+            vocabulary.get();
+        }
+        return vocabulary;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static IOException assertThrowsIo(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            return e;
+        }
+        throw new AssertionError("expected an IOException");
+    }
+}
@@ -0,0 +1,52 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.Test;
+
+class SharedHttpClientTest {
+
+    @Test
+    void testGet_returnsOneHttp2Client() {
+        HttpClient client = SharedHttpClient.get();
+
+        assertSame(client, SharedHttpClient.get());
+        assertEquals(HttpClient.Version.HTTP_2, client.version());
+        assertEquals(SharedHttpClient.CONNECT_TIMEOUT, client.connectTimeout().orElseThrow());
+    }
+
+    @Test
+    void testConfigure_afterCreationIsRejected() {
+        SharedHttpClient.get();
+
+        assertThrows(IllegalStateException.class, () -> SharedHttpClient.configure(Runnable::run));
+    }
+
+    @Test
+    void testShutdown_closesClientAndExecutorAndNextUseCreatesAnother() throws Exception {
+        HttpClient client = SharedHttpClient.get();
+        ExecutorService executor = (ExecutorService) client.executor().orElseThrow();
+
+        SharedHttpClient.shutdown(Duration.ofSeconds(1));
+
+        assertTrue(client.isTerminated());
+        assertTrue(executor.isShutdown());
+        assertNotSame(client, SharedHttpClient.get());
+    }
+
+    @Test
+    void testNewClient_usesGivenExecutor() {
+        Executor executor = Runnable::run;
+
+        assertSame(executor, SharedHttpClient.newClient(executor).executor().orElseThrow());
+    }
+}
@@ -0,0 +1,117 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+
+    @Test
+    void testExecute_concurrentCallersShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> flight.execute("abc", () -> {
+                    calls.incrementAndGet();
+                    awaitQuietly(release);
+                    return "pass";
+                })));
+            }
+            while (flight.stats().leaders() + flight.stats().coalesced() < 8) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("pass", result.get(5, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(new SingleFlight.Stats(1, 7, 0), flight.stats());
+    }
+
+    @Test
+    void testExecute_keyIsReleasedAfterCompletion() throws Exception {
+        assertEquals("pass", flight.execute("abc", () -> "pass"));
+        assertEquals("fail", flight.execute("abc", () -> "fail"));
+
+        assertEquals(2, flight.stats().leaders());
+        assertEquals(0, flight.stats().coalesced());
+    }
+
+    @Test
+    void testExecute_failureReachesLeaderAndReleasesKey() throws Exception {
+        assertThrows(IllegalStateException.class, () -> flight.execute("abc", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals("pass", flight.execute("abc", () -> "pass"));
+        assertEquals(0, flight.stats().inFlight());
+    }
+
+    @Test
+    void testExecuteAsync_followersShareLeaderResult() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> leader = flight.executeAsync("abc", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> follower = flight.executeAsync("abc", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        follower.cancel(true);
+        CompletableFuture<String> second = flight.executeAsync("abc", CompletableFuture::new);
+
+        assertFalse(leader.isDone());
+        upstream.complete("pass");
+
+        assertEquals("pass", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("pass", second.get(5, TimeUnit.SECONDS));
+        assertTrue(follower.isCancelled());
+        assertEquals(1, calls.get());
+        assertEquals(new SingleFlight.Stats(1, 2, 0), flight.stats());
+    }
+
+    @Test
+    void testExecuteAsync_failureIsShared() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = flight.executeAsync("abc", () -> upstream);
+        CompletableFuture<String> follower = flight.executeAsync("abc", CompletableFuture::new);
+
+        upstream.completeExceptionally(new IllegalStateException("boom"));
+
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.stats().inFlight());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
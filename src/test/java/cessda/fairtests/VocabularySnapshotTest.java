@@ -0,0 +1,105 @@
+package cessda.fairtests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class VocabularySnapshotTest {
+
+    private static final Instant NOW = Instant.parse("2025-06-01T12:00:00Z");
+    private static final String TWO_VERSIONS = """
+            {"versions": [
+              {"number": "1.0.0", "concepts": [{"title": "DOI", "notation": "doi"}, {"title": "Handle"}]},
+              {"number": "1.10.0", "concepts": [
+                {"title": " DOI ", "pattern": "^10\\\\..+/.+$"}, {"title": "ARK"}, {"title": ""}, {"title": "DOI"}]}
+            ]}
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testParse_followsNewestVersion() throws Exception {
+        VocabularySnapshot snapshot = VocabularySnapshot.parse(json(TWO_VERSIONS), VocabularySnapshot.FOLLOW_LATEST,
+                "\"e1\"", null, NOW);
+
+        assertEquals("1.10.0", snapshot.number());
+        assertEquals(Set.of("DOI", "ARK"), snapshot.schemas());
+        assertEquals(Map.of("DOI", "^10\\..+/.+$"), snapshot.patterns());
+        assertEquals("1.10.0+" + PidVocabulary.versionOf(Set.of("DOI", "ARK")), snapshot.version());
+        assertEquals("\"e1\"", snapshot.etag());
+    }
+
+    @Test
+    void testParse_readsPinnedVersionOrFails() throws Exception {
+        VocabularySnapshot snapshot = VocabularySnapshot.parse(json(TWO_VERSIONS), "1.0.0", null, null, NOW);
+
+        assertEquals("1.0.0", snapshot.number());
+        assertEquals(List.of(new VocabularySnapshot.Concept("DOI", "doi", null),
+                new VocabularySnapshot.Concept("Handle", null, null)), snapshot.concepts());
+        assertThrows(IOException.class, () -> VocabularySnapshot.parse(json(TWO_VERSIONS), "2.0.0", null, null, NOW));
+        assertThrows(IOException.class, () -> VocabularySnapshot.parse(
+                json("{\"versions\": [{\"concepts\": []}]}"), null, null, null, NOW));
+    }
+
+    @Test
+    void testSaveAndLoad_roundTripsEverything() throws Exception {
+        Path path = directory.resolve("vocabulary.json");
+        assertNull(VocabularySnapshot.load(path));
+
+        VocabularySnapshot saved = VocabularySnapshot.parse(json(TWO_VERSIONS), null, "\"e1\"",
+                "Sun, 01 Jun 2025 10:00:00 GMT", NOW);
+        saved.save(path);
+        VocabularySnapshot loaded = VocabularySnapshot.load(path);
+
+        assertEquals(saved.version(), loaded.version());
+        assertEquals(saved.concepts(), loaded.concepts());
+        assertEquals("\"e1\"", loaded.etag());
+        assertEquals("Sun, 01 Jun 2025 10:00:00 GMT", loaded.lastModified());
+        assertEquals(NOW, loaded.fetchedAt());
+        assertTrue(Files.notExists(directory.resolve("vocabulary.json.tmp")));
+    }
+
+    @Test
+    void testLoad_corruptSnapshotFails() throws Exception {
+        Path path = directory.resolve("vocabulary.json");
+        Files.writeString(path, "{\"concepts\": []}");
+
+        assertThrows(IOException.class, () -> VocabularySnapshot.load(path));
+    }
+
+    @Test
+    void testBundled_hasTheApprovedSchemas() {
+        VocabularySnapshot bundled = VocabularySnapshot.bundled();
+
+        assertEquals(Set.of("DOI", "Handle", "URN", "ARK"), bundled.schemas());
+        assertEquals(PidVocabulary.versionOf(bundled.schemas()), bundled.version());
+    }
+
+    @Test
+    void testCompareNumbers_isNumericPerSegment() {
+        assertTrue(VocabularySnapshot.compareNumbers("1.10.0", "1.9.1") > 0);
+        assertTrue(VocabularySnapshot.compareNumbers("1.0", "1.0.1") < 0);
+        assertEquals(0, VocabularySnapshot.compareNumbers("1.0", "1.0.0"));
+        assertTrue(VocabularySnapshot.compareNumbers(null, "0.1") < 0);
+    }
+
+    private static JsonNode json(String text) throws IOException {
+        return new ObjectMapper().readTree(text);
+    }
+}